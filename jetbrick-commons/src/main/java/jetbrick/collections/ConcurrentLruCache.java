@@ -0,0 +1,170 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.collections;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 线程安全，有容量上限的缓存 (近似 LRU).
+ * <p>
+ * 读操作无锁 (基于 ConcurrentHashMap)，每个 entry 有一个访问标志位。
+ * 超过容量上限的时候，使用 CLOCK (second-chance) 算法进行淘汰：
+ * 最近被访问过的 entry 会被清除标志位并保留一轮，没有被访问过的 entry 会被淘汰。
+ * </p>
+ * <p>
+ * 同时提供 hit/miss/eviction 计数，用于评估缓存的大小是否合适。
+ * </p>
+ */
+public class ConcurrentLruCache<K, V> {
+    private final ConcurrentHashMap<K, Node<V>> map;
+    private final int maxSize;
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    public ConcurrentLruCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be > 0");
+        }
+        this.maxSize = maxSize;
+        this.map = new ConcurrentHashMap<K, Node<V>>(Math.min(maxSize, 1024));
+    }
+
+    public V get(K key) {
+        Node<V> node = map.get(key);
+        if (node == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        node.accessed = true;
+        hitCount.incrementAndGet();
+        return node.value;
+    }
+
+    public V put(K key, V value) {
+        Node<V> old = map.put(key, new Node<V>(value));
+        if (old == null) {
+            evictIfNecessary();
+            return null;
+        }
+        return old.value;
+    }
+
+    public V putIfAbsent(K key, V value) {
+        Node<V> old = map.putIfAbsent(key, new Node<V>(value));
+        if (old == null) {
+            evictIfNecessary();
+            return null;
+        }
+        old.accessed = true;
+        return old.value;
+    }
+
+    public V remove(K key) {
+        Node<V> old = map.remove(key);
+        return (old == null) ? null : old.value;
+    }
+
+    public void clear() {
+        map.clear();
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    /**
+     * 返回当前所有的 key (弱一致性的视图，允许在遍历过程中删除).
+     */
+    public Set<K> keySet() {
+        return map.keySet();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    public void resetStatistics() {
+        hitCount.set(0);
+        missCount.set(0);
+        evictionCount.set(0);
+    }
+
+    private void evictIfNecessary() {
+        if (map.size() <= maxSize) {
+            return;
+        }
+        // 只需要一个线程进行淘汰，其他线程直接返回
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            Iterator<Map.Entry<K, Node<V>>> it = map.entrySet().iterator();
+            while (map.size() > maxSize) {
+                if (!it.hasNext()) {
+                    it = map.entrySet().iterator();
+                    if (!it.hasNext()) {
+                        break;
+                    }
+                }
+                Map.Entry<K, Node<V>> entry = it.next();
+                Node<V> node = entry.getValue();
+                if (node.accessed) {
+                    node.accessed = false; // second chance
+                } else if (map.remove(entry.getKey(), node)) {
+                    evictionCount.incrementAndGet();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrentLruCache(size=" + map.size() + ", maxSize=" + maxSize + ", hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount + ")";
+    }
+
+    static final class Node<V> {
+        final V value;
+        volatile boolean accessed;
+
+        Node(V value) {
+            this.value = value;
+        }
+    }
+}
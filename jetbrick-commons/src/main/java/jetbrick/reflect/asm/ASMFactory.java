@@ -54,15 +54,7 @@ public final class ASMFactory {
                 generatedKlass = loader.loadClass(generatedKlassName);
             } catch (ClassNotFoundException e) {
                 byte[] byteCode = ASMBuilder.create(generatedKlassName, delegateKlass);
-                if (ASM_DEBUG_ENABLED) {
-                    File dir = new File(System.getProperty("java.io.tmpdir"));
-                    File file = new File(dir, generatedKlassName.replace('.', '/') + ".class");
-                    file.getParentFile().mkdirs();
-
-                    LoggerFactory.getLogger(ASMFactory.class).info("ASMFactory generated {}", file);
-                    IoUtils.write(byteCode, file);
-                }
-                generatedKlass = loader.defineClass(generatedKlassName, byteCode, delegateType.getProtectionDomain());
+                generatedKlass = doDefineClass(loader, generatedKlassName, byteCode, delegateType);
             }
         }
 
@@ -72,4 +64,35 @@ public final class ASMFactory {
             throw new RuntimeException("Error constructing access class: " + generatedKlassName, e);
         }
     }
+
+    /**
+     * 将外部生成的字节码定义到 delegateType 所在的 ClassLoader 中 (如果已经定义过，那么直接返回).
+     *
+     * @param generatedKlassName - 生成的类名
+     * @param byteCode - 字节码
+     * @param delegateType - 生成的类所访问的目标类
+     * @return 生成的类
+     */
+    public static Class<?> defineClass(String generatedKlassName, byte[] byteCode, Class<?> delegateType) {
+        ASMClassLoader loader = ASMClassLoader.get(delegateType);
+        synchronized (loader) {
+            try {
+                return loader.loadClass(generatedKlassName);
+            } catch (ClassNotFoundException e) {
+                return doDefineClass(loader, generatedKlassName, byteCode, delegateType);
+            }
+        }
+    }
+
+    private static Class<?> doDefineClass(ASMClassLoader loader, String generatedKlassName, byte[] byteCode, Class<?> delegateType) {
+        if (ASM_DEBUG_ENABLED) {
+            File dir = new File(System.getProperty("java.io.tmpdir"));
+            File file = new File(dir, generatedKlassName.replace('.', '/') + ".class");
+            file.getParentFile().mkdirs();
+
+            LoggerFactory.getLogger(ASMFactory.class).info("ASMFactory generated {}", file);
+            IoUtils.write(byteCode, file);
+        }
+        return loader.defineClass(generatedKlassName, byteCode, delegateType.getProtectionDomain());
+    }
 }
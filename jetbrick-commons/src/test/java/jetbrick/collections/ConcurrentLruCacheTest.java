@@ -0,0 +1,56 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConcurrentLruCacheTest {
+
+    @Test
+    public void getAndPut() {
+        ConcurrentLruCache<String, Integer> cache = new ConcurrentLruCache<String, Integer>(10);
+        Assert.assertNull(cache.get("a"));
+        cache.put("a", 1);
+        Assert.assertEquals(Integer.valueOf(1), cache.get("a"));
+        Assert.assertEquals(Integer.valueOf(1), cache.putIfAbsent("a", 2));
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void evictUnaccessed() {
+        ConcurrentLruCache<Integer, Integer> cache = new ConcurrentLruCache<Integer, Integer>(10);
+        for (int i = 0; i < 10; i++) {
+            cache.put(i, i);
+        }
+        cache.get(0);
+        cache.get(1);
+        for (int i = 10; i < 100; i++) {
+            cache.put(i, i);
+            cache.get(0);
+            cache.get(1);
+        }
+        Assert.assertEquals(10, cache.size());
+        Assert.assertEquals(Integer.valueOf(0), cache.get(0));
+        Assert.assertEquals(Integer.valueOf(1), cache.get(1));
+        Assert.assertEquals(90, cache.getEvictionCount());
+    }
+
+}
@@ -19,11 +19,14 @@
 package jetbrick.dao.dialect;
 
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import jetbrick.dao.dialect.supports.*;
 import jetbrick.lang.StringUtils;
 
 public abstract class SqlDialect {
     private static final Map<String, SqlDialect> dialect_map = new HashMap<String, SqlDialect>();
+    private static final Pattern insert_values_pattern = Pattern.compile("\\bvalues\\s*\\(", Pattern.CASE_INSENSITIVE);
     private static final Set<String> iso_reservedWords = new HashSet<String>(512);
     protected final Set<String> reservedWords = new HashSet<String>(256);
 
@@ -79,6 +82,22 @@ public abstract class SqlDialect {
         return false;
     }
 
+    /**
+     * 生成创建 sequence 的 sql
+     * @return 如果不支持，返回 null
+     */
+    public String sql_sequence_create(String name, long begin, int increment) {
+        return null;
+    }
+
+    /**
+     * 生成获取 sequence 下一个值的 sql
+     * @return 如果不支持，返回 null
+     */
+    public String sql_sequence_nextval(String name) {
+        return null;
+    }
+
     /**
      * 是否支持在添加字段的时候，指定字段位置
      */
@@ -228,6 +247,296 @@ public abstract class SqlDialect {
         return null;
     }
 
+    /**
+     * 是否支持 insert into ... values (...), (...) 多行插入
+     */
+    public boolean supportsMultiValuesInsert() {
+        return false;
+    }
+
+    /**
+     * 多行插入的时候，一条 SQL 中最多允许的行数
+     */
+    public int getMaxMultiValuesRows() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * 一条 SQL 中最多允许的参数 (?) 个数
+     */
+    public int getMaxParametersPerStatement() {
+        return Short.MAX_VALUE;
+    }
+
+    /**
+     * 将单行的 insert into ... values (?, ?) 改写成多行插入的 SQL.
+     * @param sql 原始的单行 insert sql
+     * @param rows 行数
+     * @return 如果不支持，或者无法识别 values (...)，返回 null
+     */
+    public String sql_insert_multi_values(String sql, int rows) {
+        if (!supportsMultiValuesInsert()) {
+            return null;
+        }
+        Matcher m = insert_values_pattern.matcher(sql);
+        int begin = -1;
+        while (m.find()) {
+            begin = m.end() - 1; // 最后一个 values (
+        }
+        if (begin < 0 || !sql.trim().toLowerCase().startsWith("insert")) {
+            return null;
+        }
+
+        // 查找匹配的右括号 (忽略字符串中的括号)
+        int end = -1;
+        int depth = 0;
+        boolean inQuote = false;
+        for (int i = begin; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                inQuote = !inQuote;
+            } else if (!inQuote) {
+                if (c == '(') {
+                    depth++;
+                } else if (c == ')' && --depth == 0) {
+                    end = i + 1;
+                    break;
+                }
+            }
+        }
+        if (end < 0) {
+            return null;
+        }
+
+        String values = sql.substring(begin, end);
+        StringBuilder sb = new StringBuilder(sql.length() + (values.length() + 2) * rows);
+        sb.append(sql, 0, end);
+        for (int i = 1; i < rows; i++) {
+            sb.append(", ").append(values);
+        }
+        sb.append(sql, end, sql.length());
+        return sb.toString();
+    }
+
+    /**
+     * 是否支持 upsert (记录存在则更新，否则插入)
+     */
+    public boolean supportsUpsert() {
+        return false;
+    }
+
+    /**
+     * 生成多行 upsert 的 sql：根据 keyColumns 判断记录是否存在，存在则更新其他的字段，否则插入.
+     * 参数按照行的顺序绑定，每一行按照 columns 的顺序。
+     * @param table 表名
+     * @param columns 所有的字段 (包含 keyColumns)
+     * @param keyColumns 主键或者唯一索引的字段
+     * @param rows 行数
+     * @return 如果不支持，返回 null
+     */
+    public String sql_upsert(String table, String[] columns, String[] keyColumns, int rows) {
+        return null;
+    }
+
+    /**
+     * 生成 merge into table d using source on (d.key = s.key) when matched then update ... when not matched then insert ...
+     * @param source 数据来源，别名必须为 s
+     */
+    protected String sql_merge(String table, String[] columns, String[] keyColumns, String source) {
+        StringBuilder sb = new StringBuilder(128 + source.length());
+        sb.append("merge into ").append(getIdentifier(table)).append(" d using ").append(source).append(" on (");
+        for (int i = 0; i < keyColumns.length; i++) {
+            if (i > 0) {
+                sb.append(" and ");
+            }
+            String column = getIdentifier(keyColumns[i]);
+            sb.append("d.").append(column).append(" = s.").append(column);
+        }
+        sb.append(")");
+
+        String[] updateColumns = getNonKeyColumns(columns, keyColumns);
+        if (updateColumns.length > 0) {
+            sb.append(" when matched then update set ");
+            for (int i = 0; i < updateColumns.length; i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                String column = getIdentifier(updateColumns[i]);
+                sb.append("d.").append(column).append(" = s.").append(column);
+            }
+        }
+
+        sb.append(" when not matched then insert (");
+        appendColumns(sb, null, columns);
+        sb.append(") values (");
+        appendColumns(sb, "s.", columns);
+        sb.append(")");
+        return sb.toString();
+    }
+
+    /**
+     * 返回 columns 中不属于 keyColumns 的字段 (不区分大小写).
+     */
+    protected static String[] getNonKeyColumns(String[] columns, String[] keyColumns) {
+        List<String> result = new ArrayList<String>(columns.length);
+        for (String column : columns) {
+            boolean isKey = false;
+            for (String key : keyColumns) {
+                if (key.equalsIgnoreCase(column)) {
+                    isKey = true;
+                    break;
+                }
+            }
+            if (!isKey) {
+                result.add(column);
+            }
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    /**
+     * 添加 a, b, c (prefix 不为 null 的时候: s.a, s.b, s.c).
+     */
+    protected void appendColumns(StringBuilder sb, String prefix, String[] columns) {
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            if (prefix != null) {
+                sb.append(prefix);
+            }
+            sb.append(getIdentifier(columns[i]));
+        }
+    }
+
+    /**
+     * 添加 (?, ?), (?, ?) 形式的多行参数.
+     */
+    protected static void appendValues(StringBuilder sb, int columns, int rows) {
+        for (int r = 0; r < rows; r++) {
+            sb.append(r == 0 ? "(" : ", (");
+            for (int i = 0; i < columns; i++) {
+                sb.append(i == 0 ? "?" : ", ?");
+            }
+            sb.append(")");
+        }
+    }
+
+    /**
+     * 流式查询 (游标) 的时候，实际传给 Statement.setFetchSize() 的值.
+     * @param fetchSize 期望每次从数据库读取的行数
+     */
+    public int getStreamingFetchSize(int fetchSize) {
+        return fetchSize;
+    }
+
+    /**
+     * 生成 keyset 分页的定位条件，默认为 (a > ?) or (a = ? and b > ?) 的形式，所有的数据库都支持.
+     * @param columns 排序字段
+     * @param descending 每个排序字段是否为降序
+     * @param lastKey 上一页最后一行的排序字段的值
+     * @param parameters 生成的条件中对应的参数 (按顺序追加)
+     */
+    public String sql_keyset_predicate(String[] columns, boolean[] descending, Object[] lastKey, List<Object> parameters) {
+        StringBuilder sb = new StringBuilder(64);
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sb.append(" or ");
+            }
+            sb.append('(');
+            for (int j = 0; j < i; j++) {
+                sb.append(columns[j]).append(" = ? and ");
+                parameters.add(lastKey[j]);
+            }
+            sb.append(columns[i]).append(descending[i] ? " < ?" : " > ?");
+            parameters.add(lastKey[i]);
+            sb.append(')');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 在一个标准的 select 语句中加入 keyset 分页的条件和排序 (原来的 order by 子句将被替换).
+     * 仅支持不带 group by/having/union 的 select 语句.
+     *
+     * @param sql 原始 sql
+     * @param predicate 定位条件，为 null 表示第一页
+     * @param orderBy 排序字段 (不含 order by 关键字)
+     */
+    public String sql_keyset_select(String sql, String predicate, String orderBy) {
+        int where_pos = -1;
+        int order_pos = -1;
+        int depth = 0;
+        boolean inQuote = false;
+        int length = sql.length();
+        for (int i = 0; i < length; i++) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                inQuote = !inQuote;
+            } else if (inQuote) {
+                continue;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (depth == 0 && Character.isLetter(c) && (i == 0 || !Character.isJavaIdentifierPart(sql.charAt(i - 1)))) {
+                int j = i + 1;
+                while (j < length && Character.isJavaIdentifierPart(sql.charAt(j))) {
+                    j++;
+                }
+                String word = sql.substring(i, j).toLowerCase();
+                if ("where".equals(word)) {
+                    where_pos = i;
+                } else if ("order".equals(word)) {
+                    order_pos = i;
+                } else if ("group".equals(word) || "having".equals(word) || "union".equals(word)) {
+                    throw new IllegalArgumentException("keyset pagination does not support " + word + ": " + sql);
+                }
+                i = j - 1;
+            }
+        }
+
+        String body = (order_pos > 0) ? sql.substring(0, order_pos).trim() : sql.trim();
+        StringBuilder sb = new StringBuilder(body.length() + 64);
+        if (predicate == null) {
+            sb.append(body);
+        } else if (where_pos > 0) {
+            // where a or b  ==>  where (a or b) and (predicate)
+            sb.append(body, 0, where_pos + 5);
+            sb.append(" (").append(body.substring(where_pos + 5).trim()).append(")");
+            sb.append(" and (").append(predicate).append(")");
+        } else {
+            sb.append(body).append(" where ").append(predicate);
+        }
+        sb.append(" order by ").append(orderBy);
+        return sb.toString();
+    }
+
+    /**
+     * 生成 keyset 分页 sql (只取前 limit 行).
+     * @param sql 原始 sql (不含 order by)
+     * @param predicate 定位条件，为 null 表示第一页
+     * @param orderBy 排序字段 (不含 order by 关键字)
+     * @param limit 返回的限制大小
+     * @return 如果不支持，返回 null
+     */
+    public String sql_keyset_pagelist(String sql, String predicate, String orderBy, int limit) {
+        sql = sql_keyset_select(sql, predicate, orderBy);
+        return sql_pagelist(sql, 0, limit);
+    }
+
+    /**
+     * 所有的排序字段的方向是否一致 (可以使用 (a, b) > (?, ?) 的形式).
+     */
+    protected static boolean isSameDirection(boolean[] descending) {
+        for (int i = 1; i < descending.length; i++) {
+            if (descending[i] != descending[0]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private static void init_sql92_reservedWords() {
         iso_reservedWords.add("ABSOLUTE");
         iso_reservedWords.add("ACTION");
@@ -18,6 +18,7 @@
  */
 package jetbrick.dao.dialect.supports;
 
+import java.util.List;
 import jetbrick.dao.dialect.*;
 import jetbrick.lang.StringUtils;
 
@@ -71,6 +72,34 @@ public class H2Dialect extends SqlDialect {
         return sql;
     }
 
+    /**
+     * 排序方向一致的时候，使用 (a, b) > (?, ?) 的形式，可以直接使用联合索引进行范围扫描.
+     */
+    @Override
+    public String sql_keyset_predicate(String[] columns, boolean[] descending, Object[] lastKey, List<Object> parameters) {
+        if (columns.length == 1 || !isSameDirection(descending)) {
+            return super.sql_keyset_predicate(columns, descending, lastKey, parameters);
+        }
+        StringBuilder sb = new StringBuilder(64);
+        sb.append('(');
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(columns[i]);
+        }
+        sb.append(descending[0] ? ") < (" : ") > (");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append('?');
+            parameters.add(lastKey[i]);
+        }
+        sb.append(')');
+        return sb.toString();
+    }
+
     @Override
     public boolean supportsColumnPosition() {
         return true;
@@ -81,6 +110,41 @@ public class H2Dialect extends SqlDialect {
         return true;
     }
 
+    @Override
+    public String sql_sequence_create(String name, long begin, int increment) {
+        return "create sequence if not exists " + name + " start with " + begin + " increment by " + increment;
+    }
+
+    @Override
+    public String sql_sequence_nextval(String name) {
+        return "select next value for " + name;
+    }
+
+    @Override
+    public boolean supportsMultiValuesInsert() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsUpsert() {
+        return true;
+    }
+
+    /**
+     * merge into ... (...) key (...) values (...), (...).
+     */
+    @Override
+    public String sql_upsert(String table, String[] columns, String[] keyColumns, int rows) {
+        StringBuilder sb = new StringBuilder(64 + columns.length * (rows * 3 + 16));
+        sb.append("merge into ").append(getIdentifier(table)).append(" (");
+        appendColumns(sb, null, columns);
+        sb.append(") key (");
+        appendColumns(sb, null, keyColumns);
+        sb.append(") values ");
+        appendValues(sb, columns.length, rows);
+        return sb.toString();
+    }
+
     @Override
     public String getHibernateDialect() {
         return "org.hibernate.dialect.H2Dialect";
@@ -18,6 +18,7 @@
  */
 package jetbrick.dao.dialect.supports;
 
+import java.util.List;
 import jetbrick.dao.dialect.SqlDialect;
 import jetbrick.dao.dialect.SubStyleType;
 import jetbrick.lang.StringUtils;
@@ -77,11 +78,84 @@ public class MySqlDialect extends SqlDialect {
         }
     }
 
+    /**
+     * 排序方向一致的时候，使用 (a, b) > (?, ?) 的形式，可以直接使用联合索引进行范围扫描.
+     */
+    @Override
+    public String sql_keyset_predicate(String[] columns, boolean[] descending, Object[] lastKey, List<Object> parameters) {
+        if (columns.length == 1 || !isSameDirection(descending)) {
+            return super.sql_keyset_predicate(columns, descending, lastKey, parameters);
+        }
+        StringBuilder sb = new StringBuilder(64);
+        sb.append('(');
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(columns[i]);
+        }
+        sb.append(descending[0] ? ") < (" : ") > (");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append('?');
+            parameters.add(lastKey[i]);
+        }
+        sb.append(')');
+        return sb.toString();
+    }
+
+    /**
+     * MySQL Connector/J 只有在 fetchSize = Integer.MIN_VALUE 的时候才会逐行读取，否则会读取全部结果集到内存中.
+     */
+    @Override
+    public int getStreamingFetchSize(int fetchSize) {
+        return Integer.MIN_VALUE;
+    }
+
     @Override
     public boolean supportsColumnPosition() {
         return true;
     }
 
+    @Override
+    public boolean supportsMultiValuesInsert() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsUpsert() {
+        return true;
+    }
+
+    /**
+     * insert into ... values (...), (...) on duplicate key update c = values(c).
+     * MySQL 根据表的主键和唯一索引判断记录是否存在 (忽略 keyColumns)，更新的记录 affected rows 为 2.
+     */
+    @Override
+    public String sql_upsert(String table, String[] columns, String[] keyColumns, int rows) {
+        StringBuilder sb = new StringBuilder(64 + columns.length * (rows * 3 + 32));
+        sb.append("insert into ").append(getIdentifier(table)).append(" (");
+        appendColumns(sb, null, columns);
+        sb.append(") values ");
+        appendValues(sb, columns.length, rows);
+        sb.append(" on duplicate key update ");
+
+        String[] updateColumns = getNonKeyColumns(columns, keyColumns);
+        if (updateColumns.length == 0) {
+            updateColumns = new String[] { keyColumns[0] }; // 只有主键的时候，不更新任何字段
+        }
+        for (int i = 0; i < updateColumns.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            String column = getIdentifier(updateColumns[i]);
+            sb.append(column).append(" = values(").append(column).append(")");
+        }
+        return sb.toString();
+    }
+
     @Override
     public String getHibernateDialect() {
         return "org.hibernate.dialect.MySQLDialect";
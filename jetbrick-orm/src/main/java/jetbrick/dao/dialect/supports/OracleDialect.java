@@ -69,6 +69,59 @@ public class OracleDialect extends SqlDialect {
         return sql;
     }
 
+    /**
+     * 第一页的时候不需要计算 ROWNUM 的别名，直接在外层过滤.
+     */
+    @Override
+    public String sql_keyset_pagelist(String sql, String predicate, String orderBy, int limit) {
+        sql = sql_keyset_select(sql, predicate, orderBy);
+        return "select * from (" + sql + ") where ROWNUM <= " + limit;
+    }
+
+    @Override
+    public boolean supportsSequences() {
+        return true;
+    }
+
+    @Override
+    public String sql_sequence_create(String name, long begin, int increment) {
+        return "create sequence " + name + " start with " + begin + " increment by " + increment + " nocache";
+    }
+
+    @Override
+    public String sql_sequence_nextval(String name) {
+        return "select " + name + ".nextval from dual";
+    }
+
+    @Override
+    public boolean supportsUpsert() {
+        return true;
+    }
+
+    /**
+     * merge into ... using (select ? a, ? b from dual union all select ?, ? from dual) s on (...) ...
+     */
+    @Override
+    public String sql_upsert(String table, String[] columns, String[] keyColumns, int rows) {
+        StringBuilder source = new StringBuilder(32 + rows * (columns.length * 3 + 24));
+        source.append("(");
+        for (int r = 0; r < rows; r++) {
+            source.append(r == 0 ? "select " : " union all select ");
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) {
+                    source.append(", ");
+                }
+                source.append("?");
+                if (r == 0) {
+                    source.append(" ").append(getIdentifier(columns[i]));
+                }
+            }
+            source.append(" from dual");
+        }
+        source.append(") s");
+        return sql_merge(table, columns, keyColumns, source.toString());
+    }
+
     @Override
     public String getHibernateDialect() {
         return "org.hibernate.dialect.OracleDialect";
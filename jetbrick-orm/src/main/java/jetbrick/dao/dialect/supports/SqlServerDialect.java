@@ -18,10 +18,13 @@
  */
 package jetbrick.dao.dialect.supports;
 
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import jetbrick.dao.dialect.*;
 
 public class SqlServerDialect extends SqlDialect {
     public static final String NAME = "Microsoft SQL Server";
+    private static final Pattern select_pattern = Pattern.compile("^\\s*select(\\s+distinct)?", Pattern.CASE_INSENSITIVE);
 
     @Override
     protected String getQuotedIdentifier(String name) {
@@ -90,6 +93,56 @@ public class SqlServerDialect extends SqlDialect {
         return sql;
     }
 
+    /**
+     * SQL Server 的子查询中不允许使用 order by，所以直接使用 select top n ... order by ...
+     */
+    @Override
+    public String sql_keyset_pagelist(String sql, String predicate, String orderBy, int limit) {
+        sql = sql_keyset_select(sql, predicate, orderBy);
+        Matcher m = select_pattern.matcher(sql);
+        if (!m.find()) {
+            return null;
+        }
+        return sql.substring(0, m.end()) + " top " + limit + sql.substring(m.end());
+    }
+
+    @Override
+    public boolean supportsMultiValuesInsert() {
+        return true;
+    }
+
+    /**
+     * SQL Server 限制: 每条 insert 最多 1000 行，每条 SQL 最多 2100 个参数.
+     */
+    @Override
+    public int getMaxMultiValuesRows() {
+        return 1000;
+    }
+
+    @Override
+    public int getMaxParametersPerStatement() {
+        return 2100;
+    }
+
+    @Override
+    public boolean supportsUpsert() {
+        return true;
+    }
+
+    /**
+     * merge into ... using (values (...), (...)) as s (...) on (...) ...; (merge 语句必须以分号结束).
+     */
+    @Override
+    public String sql_upsert(String table, String[] columns, String[] keyColumns, int rows) {
+        StringBuilder source = new StringBuilder(32 + columns.length * (rows * 3 + 16));
+        source.append("(values ");
+        appendValues(source, columns.length, rows);
+        source.append(") as s (");
+        appendColumns(source, null, columns);
+        source.append(")");
+        return sql_merge(table, columns, keyColumns, source.toString()) + ";";
+    }
+
     @Override
     public String getHibernateDialect() {
         return "org.hibernate.dialect.SQLServerDialect";
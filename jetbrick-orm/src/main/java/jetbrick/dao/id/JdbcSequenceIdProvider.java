@@ -19,17 +19,47 @@
 package jetbrick.dao.id;
 
 import java.sql.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import javax.sql.DataSource;
+import jetbrick.dao.dialect.SqlDialect;
+import jetbrick.dao.dialect.SubStyleType;
+import jetbrick.dao.orm.utils.DbUtils;
 
+/**
+ * 基于数据库的 {@link SequenceIdProvider}，多个节点可以同时使用同一个数据库.
+ *
+ * <p>
+ * {@link #reserve(String, long, int)} 在一个事务中执行 update ... set next_val = next_val + ?，
+ * 由数据库的行锁保证多个节点不会预留到相同的区间。
+ * 如果开启 nativeSequence，并且数据库支持 sequence，那么直接使用 sequence (increment by = block 大小)，
+ * 这时候所有的节点的 block 大小必须相同，并且不支持 adaptive。
+ * </p>
+ */
 public class JdbcSequenceIdProvider implements SequenceIdProvider {
 
     private static final String TABLE_NAME = "_SEQUANCE_";
+    private static final String SEQUENCE_PREFIX = "SEQ_";
     private final DataSource dataSource;
+    private final SqlDialect dialect;
+    private final boolean nativeSequence;
+    private final ConcurrentMap<String, Integer> sequenceIncrements = new ConcurrentHashMap<String, Integer>();
 
     public JdbcSequenceIdProvider(DataSource dataSource) {
+        this(dataSource, false);
+    }
+
+    /**
+     * @param nativeSequence 数据库支持 sequence 的时候，是否使用 sequence 代替 _SEQUANCE_ 表
+     */
+    public JdbcSequenceIdProvider(DataSource dataSource, boolean nativeSequence) {
         this.dataSource = dataSource;
+        this.dialect = DbUtils.doGetDialect(dataSource);
+        this.nativeSequence = nativeSequence && dialect.supportsSequences() && dialect.sql_sequence_nextval("x") != null;
 
-        confirmTableExists();
+        if (!this.nativeSequence) {
+            confirmTableExists();
+        }
     }
 
     @Override
@@ -38,7 +68,7 @@ public class JdbcSequenceIdProvider implements SequenceIdProvider {
     }
 
     @Override
-    public SequenceId create(String name, int begin) {
+    public SequenceId create(String name, long begin) {
         return new SequenceId(this, name, begin);
     }
 
@@ -53,7 +83,9 @@ public class JdbcSequenceIdProvider implements SequenceIdProvider {
 
             if (!found) {
                 Statement stmt = conn.createStatement();
-                String sql = "create table " + TABLE_NAME + " (name varchar(50) not null, next_val long not null, primary key(name))";
+                String name_type = dialect.asSqlType(SubStyleType.VARCHAR, 50, null);
+                String value_type = dialect.asSqlType(SubStyleType.LONG, null, null);
+                String sql = "create table " + TABLE_NAME + " (name " + name_type + " not null, next_val " + value_type + " not null, primary key(name))";
                 stmt.execute(sql);
                 stmt.close();
             }
@@ -75,8 +107,8 @@ public class JdbcSequenceIdProvider implements SequenceIdProvider {
     }
 
     @Override
-    public int load(String name) {
-        int value = SequenceId.NOT_FOUND;
+    public long load(String name) {
+        long value = SequenceId.NOT_FOUND;
         Connection conn = null;
         try {
             conn = dataSource.getConnection();
@@ -85,7 +117,7 @@ public class JdbcSequenceIdProvider implements SequenceIdProvider {
             ps.setString(1, name);
             ResultSet rs = ps.executeQuery();
             if (rs.next()) {
-                value = rs.getInt(1);
+                value = rs.getLong(1);
             }
             rs.close();
             ps.close();
@@ -98,24 +130,73 @@ public class JdbcSequenceIdProvider implements SequenceIdProvider {
     }
 
     @Override
-    public void store(String name, int value) {
+    public void store(String name, long value) {
         Connection conn = null;
+        PreparedStatement ps = null;
         try {
             conn = dataSource.getConnection();
+            if (dialect.supportsUpsert()) {
+                String sql = dialect.sql_upsert(TABLE_NAME, new String[] { "name", "next_val" }, new String[] { "name" }, 1);
+                ps = conn.prepareStatement(sql);
+                ps.setString(1, name);
+                ps.setLong(2, value);
+                ps.executeUpdate();
+                return;
+            }
+
             String sql = "update " + TABLE_NAME + " set next_val=? where name=?";
-            PreparedStatement ps = conn.prepareStatement(sql);
-            ps.setInt(1, value);
+            ps = conn.prepareStatement(sql);
+            ps.setLong(1, value);
             ps.setString(2, name);
             int updated = ps.executeUpdate();
-            ps.close();
+            DbUtils.closeQuietly(ps);
+            ps = null;
 
             if (updated == 0) {
                 sql = "insert into " + TABLE_NAME + " (name, next_val) values (?,?)";
                 ps = conn.prepareStatement(sql);
                 ps.setString(1, name);
-                ps.setInt(2, value);
+                ps.setLong(2, value);
                 ps.executeUpdate();
-                ps.close();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } finally {
+            DbUtils.closeQuietly(ps);
+            close(conn);
+        }
+    }
+
+    @Override
+    public long reserve(String name, long begin, int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be great than zero.");
+        }
+        Connection conn = null;
+        try {
+            conn = dataSource.getConnection();
+            if (nativeSequence) {
+                return reserveBySequence(conn, name, begin, size);
+            }
+
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                // 第一次的时候，其他节点可能同时 insert，失败之后重新 update 一次
+                for (int retry = 0;; retry++) {
+                    try {
+                        long first = reserveByTable(conn, name, begin, size);
+                        conn.commit();
+                        return first;
+                    } catch (SQLException e) {
+                        conn.rollback();
+                        if (retry > 0) {
+                            throw e;
+                        }
+                    }
+                }
+            } finally {
+                conn.setAutoCommit(autoCommit);
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
@@ -123,4 +204,70 @@ public class JdbcSequenceIdProvider implements SequenceIdProvider {
             close(conn);
         }
     }
+
+    // next_val 保存的是已经预留的最大的 ID
+    private long reserveByTable(Connection conn, String name, long begin, int size) throws SQLException {
+        PreparedStatement ps = conn.prepareStatement("update " + TABLE_NAME + " set next_val = next_val + ? where name = ?");
+        try {
+            ps.setLong(1, size);
+            ps.setString(2, name);
+            if (ps.executeUpdate() == 0) {
+                DbUtils.closeQuietly(ps);
+                ps = conn.prepareStatement("insert into " + TABLE_NAME + " (name, next_val) values (?, ?)");
+                ps.setString(1, name);
+                ps.setLong(2, begin - 1 + size);
+                ps.executeUpdate();
+                return begin;
+            }
+            DbUtils.closeQuietly(ps);
+
+            // 当前事务持有行锁，读到的就是自己更新之后的值
+            ps = conn.prepareStatement("select next_val from " + TABLE_NAME + " where name = ?");
+            ps.setString(1, name);
+            ResultSet rs = ps.executeQuery();
+            try {
+                if (!rs.next()) {
+                    throw new SQLException("sequence not found: " + name);
+                }
+                return rs.getLong(1) - size + 1;
+            } finally {
+                DbUtils.closeQuietly(rs);
+            }
+        } finally {
+            DbUtils.closeQuietly(ps);
+        }
+    }
+
+    private long reserveBySequence(Connection conn, String name, long begin, int size) throws SQLException {
+        Integer increment = sequenceIncrements.putIfAbsent(name, size);
+        if (increment != null && increment.intValue() != size) {
+            throw new IllegalStateException("native sequence " + name + " requires a fixed block size: " + increment);
+        }
+
+        String sequence = SEQUENCE_PREFIX + name;
+        try {
+            return querySequence(conn, sequence);
+        } catch (SQLException e) {
+            // sequence 不存在，创建之后重试 (如果已经被其他节点创建，忽略错误)
+            Statement stmt = conn.createStatement();
+            try {
+                stmt.execute(dialect.sql_sequence_create(sequence, begin, size));
+            } catch (SQLException ignore) {
+            } finally {
+                DbUtils.closeQuietly(stmt);
+            }
+            return querySequence(conn, sequence);
+        }
+    }
+
+    private long querySequence(Connection conn, String sequence) throws SQLException {
+        Statement stmt = conn.createStatement();
+        try {
+            ResultSet rs = stmt.executeQuery(dialect.sql_sequence_nextval(sequence));
+            rs.next();
+            return rs.getLong(1);
+        } finally {
+            DbUtils.closeQuietly(stmt);
+        }
+    }
 }
@@ -18,19 +18,48 @@
  */
 package jetbrick.dao.id;
 
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 序列号生成器.
+ *
+ * <p>
+ * 每次从 {@link SequenceIdProvider} 预留一段 ID (block)，然后在内存中通过 CAS 分配，不需要加锁。
+ * 当前 block 使用到 80% 的时候，在后台线程中预取下一个 block，所以正常情况下调用线程不会等待数据库。
+ * </p>
+ *
+ * <p>
+ * 开启 adaptive 之后，block 的大小会根据分配的速度自动调整 (在 blockSize 和 maxBlockSize 之间)。
+ * </p>
+ */
 public class SequenceId {
-    public static final int NOT_FOUND = 0;
-    private static final int CACHE_SIZE = 50;
+    public static final long NOT_FOUND = 0;
+    private static final int DEFAULT_BLOCK_SIZE = 50;
+    private static final int DEFAULT_MAX_BLOCK_SIZE = 10000;
+    private static final int PREFETCH_PERCENT = 80;
+    private static final long FAST_BLOCK_MILLIS = 1000; // block 用完的时间少于这个值，扩大 block
+    private static final long SLOW_BLOCK_MILLIS = 60000; // block 用完的时间大于这个值，缩小 block
+    private static final Executor DEFAULT_EXECUTOR = createDefaultExecutor();
+
     private final SequenceIdProvider provider;
     private final String name;
-    private final int beginValue;
-    private int value;
+    private final long beginValue;
+    private final Object allocateLock = new Object();
+    private volatile int blockSize = DEFAULT_BLOCK_SIZE;
+    private volatile int maxBlockSize = DEFAULT_MAX_BLOCK_SIZE;
+    private volatile boolean adaptive;
+    private volatile Executor executor = DEFAULT_EXECUTOR;
+
+    private volatile Block current = new Block(0, 0);
+    private FutureTask<Block> prefetchTask; // guarded by this
+    private int currentBlockSize; // guarded by allocateLock
+    private long lastAllocateMillis; // guarded by allocateLock
 
-    protected SequenceId(SequenceIdProvider provider, String name, int beginValue) {
+    protected SequenceId(SequenceIdProvider provider, String name, long beginValue) {
         this.provider = provider;
         this.name = name;
         this.beginValue = beginValue;
-        this.value = -1;
 
         if (beginValue <= 0) {
             throw new IllegalArgumentException("begin value must be great than zero.");
@@ -41,21 +70,171 @@ public class SequenceId {
         return name;
     }
 
-    public synchronized int nextVal() {
-        if (value < 0) {
-            value = provider.load(name);
-            if (value <= NOT_FOUND) {
-                value = beginValue - 1;
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * 每次从 provider 预留的 ID 个数 (默认 50).
+     */
+    public void setBlockSize(int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("blockSize must be great than zero.");
+        }
+        this.blockSize = blockSize;
+    }
+
+    public int getMaxBlockSize() {
+        return maxBlockSize;
+    }
+
+    /**
+     * adaptive 模式下，block 的最大值 (默认 10000).
+     */
+    public void setMaxBlockSize(int maxBlockSize) {
+        if (maxBlockSize <= 0) {
+            throw new IllegalArgumentException("maxBlockSize must be great than zero.");
+        }
+        this.maxBlockSize = maxBlockSize;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * 是否根据分配的速度自动调整 block 的大小.
+     */
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    /**
+     * 设置预取 block 的线程池 (默认使用共享的 daemon 线程).
+     */
+    public void setExecutor(Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor is null.");
+        }
+        this.executor = executor;
+    }
+
+    public long nextLong() {
+        for (;;) {
+            Block block = current;
+            long value = block.cursor.getAndIncrement();
+            if (value < block.end) {
+                if (value == block.prefetchAt) {
+                    prefetch(block);
+                }
+                return value;
             }
-            provider.store(name, value + CACHE_SIZE);
+            switchBlock(block);
         }
+    }
 
-        value++;
+    /**
+     * @deprecated 使用 {@link #nextLong()}
+     */
+    @Deprecated
+    public int nextVal() {
+        long value = nextLong();
+        if (value > Integer.MAX_VALUE) {
+            throw new IllegalStateException("sequence " + name + " is out of int range: " + value);
+        }
+        return (int) value;
+    }
+
+    private synchronized void prefetch(Block block) {
+        if (prefetchTask != null || current != block) {
+            return;
+        }
+        FutureTask<Block> task = new FutureTask<Block>(new Callable<Block>() {
+            @Override
+            public Block call() {
+                return allocate();
+            }
+        });
+        try {
+            executor.execute(task);
+            prefetchTask = task;
+        } catch (RejectedExecutionException e) {
+            // 用完的时候再同步获取
+        }
+    }
+
+    private synchronized void switchBlock(Block block) {
+        if (current != block) {
+            return; // 已经被其他线程切换
+        }
+        FutureTask<Block> task = prefetchTask;
+        prefetchTask = null;
+
+        Block next = null;
+        if (task != null) {
+            try {
+                next = task.get();
+            } catch (ExecutionException e) {
+                // 预取失败，下面同步重试 (如果还是失败，异常将抛给调用者)
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+        if (next == null) {
+            next = allocate();
+        }
+        current = next;
+    }
+
+    private Block allocate() {
+        synchronized (allocateLock) {
+            int size = nextBlockSize();
+            long first = provider.reserve(name, beginValue, size);
+            return new Block(first, first + size);
+        }
+    }
 
-        if (value % CACHE_SIZE == 0) {
-            provider.store(name, value + CACHE_SIZE);
+    private int nextBlockSize() {
+        int size = blockSize;
+        if (adaptive) {
+            long now = System.currentTimeMillis();
+            if (currentBlockSize > 0) {
+                long elapsed = now - lastAllocateMillis;
+                size = currentBlockSize;
+                if (elapsed < FAST_BLOCK_MILLIS) {
+                    size = Math.min(size * 2, Math.max(maxBlockSize, blockSize));
+                } else if (elapsed > SLOW_BLOCK_MILLIS) {
+                    size = Math.max(size / 2, blockSize);
+                }
+            }
+            lastAllocateMillis = now;
         }
+        currentBlockSize = size;
+        return size;
+    }
+
+    private static Executor createDefaultExecutor() {
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "jetbrick-sequence-prefetch");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    // 一段预留的 ID: [begin, end)
+    static final class Block {
+        final long end;
+        final long prefetchAt;
+        final AtomicLong cursor;
 
-        return value;
+        Block(long begin, long end) {
+            this.end = end;
+            this.prefetchAt = begin + (end - begin) * PREFETCH_PERCENT / 100;
+            this.cursor = new AtomicLong(begin);
+        }
     }
 }
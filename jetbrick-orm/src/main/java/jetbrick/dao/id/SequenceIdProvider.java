@@ -22,10 +22,20 @@ public interface SequenceIdProvider {
 
     public SequenceId create(String name);
 
-    public SequenceId create(String name, int begin);
+    public SequenceId create(String name, long begin);
 
-    public int load(String name);
+    public long load(String name);
 
-    public void store(String name, int value);
+    public void store(String name, long value);
+
+    /**
+     * 原子地预留一段连续的 ID: [返回值, 返回值 + size)
+     *
+     * @param name 序列名称
+     * @param begin 序列不存在的时候的起始值
+     * @param size 预留的个数
+     * @return 预留的第一个 ID
+     */
+    public long reserve(String name, long begin, int size);
 
 }
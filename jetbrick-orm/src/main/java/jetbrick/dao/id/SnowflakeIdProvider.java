@@ -0,0 +1,204 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.id;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Snowflake 风格的 ID 生成器，不需要访问数据库.
+ *
+ * <p>
+ * 64 位 ID 的组成：1 位符号位 (0) + 41 位毫秒时间戳 (相对于 epoch) + 10 位节点 ID + 12 位毫秒内序号。
+ * 同一个节点生成的 ID 按时间递增，每个节点每毫秒最多生成 4096 个 ID，超过之后等待下一毫秒。
+ * </p>
+ *
+ * <p>
+ * 时钟回拨不超过 maxBackwardMillis (默认 10ms) 的时候，继续使用上一次的时间戳 (序号用完之后 sleep 到时钟追上)；
+ * 超过的时候直接抛出 IllegalStateException。
+ * </p>
+ *
+ * <p>
+ * 所有的 name 共享同一个计数器：load 返回最后生成的 ID，store 保证之后生成的 ID 大于指定的值，
+ * reserve 在同一毫秒内预留连续的 ID (最多 4096 个)。
+ * </p>
+ */
+public class SnowflakeIdProvider implements SequenceIdProvider {
+    public static final long DEFAULT_EPOCH = 1388534400000L; // 2014-01-01 00:00:00 UTC
+    public static final int NODE_BITS = 10;
+    public static final int SEQUENCE_BITS = 12;
+    public static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final long DEFAULT_MAX_BACKWARD_MILLIS = 10;
+
+    private final long nodeId;
+    private final long epoch;
+    private final long maxBackwardMillis;
+    // (timestamp - epoch) << SEQUENCE_BITS | sequence
+    private final AtomicLong state = new AtomicLong();
+
+    public SnowflakeIdProvider(long nodeId) {
+        this(nodeId, DEFAULT_EPOCH, DEFAULT_MAX_BACKWARD_MILLIS);
+    }
+
+    /**
+     * @param nodeId 节点 ID (0 ~ 1023)，每个节点必须不同
+     * @param epoch 时间戳的起始时间 (毫秒)
+     * @param maxBackwardMillis 允许的最大时钟回拨 (毫秒)
+     */
+    public SnowflakeIdProvider(long nodeId, long epoch, long maxBackwardMillis) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("nodeId must be between 0 and " + MAX_NODE_ID);
+        }
+        if (epoch < 0 || epoch > System.currentTimeMillis()) {
+            throw new IllegalArgumentException("epoch must be in the past.");
+        }
+        this.nodeId = nodeId;
+        this.epoch = epoch;
+        this.maxBackwardMillis = maxBackwardMillis;
+    }
+
+    public long getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public SequenceId create(String name) {
+        return new SnowflakeSequenceId(this, name);
+    }
+
+    /**
+     * begin 没有意义 (ID 由时间戳决定)，等价于 {@link #create(String)}.
+     */
+    @Override
+    public SequenceId create(String name, long begin) {
+        return new SnowflakeSequenceId(this, name);
+    }
+
+    public long nextId() {
+        return allocate(1);
+    }
+
+    /**
+     * 获取 ID 中的时间戳 (毫秒).
+     */
+    public long getTimestamp(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + epoch;
+    }
+
+    /**
+     * 返回最后生成的 ID (所有的 name 共享)，还没有生成过 ID 的时候返回 {@link SequenceId#NOT_FOUND}.
+     */
+    @Override
+    public long load(String name) {
+        long last = state.get();
+        return (last == 0) ? SequenceId.NOT_FOUND : toId(last);
+    }
+
+    /**
+     * 保证之后生成的 ID 都大于 value (如: 从其他的节点或者数据库中恢复的最大 ID).
+     * 如果 value 的时间戳超过当前时间 maxBackwardMillis 以上，之后的 nextId() 会抛出 IllegalStateException.
+     */
+    @Override
+    public void store(String name, long value) {
+        long target = ((value >>> (NODE_BITS + SEQUENCE_BITS)) << SEQUENCE_BITS) | (value & SEQUENCE_MASK);
+        if (((value >>> SEQUENCE_BITS) & MAX_NODE_ID) > nodeId) {
+            // 同一毫秒内，当前节点的 ID 总是小于 value，所以跳过这一毫秒
+            target |= SEQUENCE_MASK;
+        }
+        for (;;) {
+            long last = state.get();
+            if (last >= target || state.compareAndSet(last, target)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 在同一毫秒内预留 size 个连续的 ID，begin 没有意义 (ID 由时间戳决定).
+     */
+    @Override
+    public long reserve(String name, long begin, int size) {
+        if (size <= 0 || size > SEQUENCE_MASK + 1) {
+            throw new IllegalArgumentException("size must be between 1 and " + (SEQUENCE_MASK + 1));
+        }
+        return allocate(size);
+    }
+
+    // 分配 size 个连续的 ID，返回第一个
+    private long allocate(int size) {
+        for (;;) {
+            long last = state.get();
+            long lastTimestamp = last >>> SEQUENCE_BITS;
+            long now = currentTimeMillis() - epoch;
+
+            long first;
+            if (now > lastTimestamp) {
+                first = now << SEQUENCE_BITS;
+            } else {
+                // 同一毫秒，或者时钟回拨：继续使用上一次的时间戳
+                if (lastTimestamp - now > maxBackwardMillis) {
+                    throw new IllegalStateException("Clock moved backwards by " + (lastTimestamp - now) + " ms.");
+                }
+                if ((last & SEQUENCE_MASK) + size > SEQUENCE_MASK) {
+                    // 当前毫秒的序号已经用完，等待下一毫秒
+                    sleep(lastTimestamp + 1 - now);
+                    continue;
+                }
+                first = last + 1;
+            }
+            if (state.compareAndSet(last, first + size - 1)) {
+                return toId(first);
+            }
+        }
+    }
+
+    // state -> id
+    private long toId(long state) {
+        long timestamp = state >>> SEQUENCE_BITS;
+        return (timestamp << (NODE_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | (state & SEQUENCE_MASK);
+    }
+
+    // 测试的时候可以覆盖，用来模拟时钟回拨
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the next millisecond.", e);
+        }
+    }
+
+    static final class SnowflakeSequenceId extends SequenceId {
+        private final SnowflakeIdProvider provider;
+
+        SnowflakeSequenceId(SnowflakeIdProvider provider, String name) {
+            super(provider, name, 1);
+            this.provider = provider;
+        }
+
+        @Override
+        public long nextLong() {
+            return provider.nextId();
+        }
+    }
+}
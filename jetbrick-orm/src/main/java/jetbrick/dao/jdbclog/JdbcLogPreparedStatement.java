@@ -18,19 +18,22 @@
  */
 package jetbrick.dao.jdbclog;
 
-import java.lang.reflect.*;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.*;
+import java.util.Calendar;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * PreparedStatement Wrapper to add logging
  */
-public final class JdbcLogPreparedStatement extends JdbcLogSupport implements InvocationHandler {
+public class JdbcLogPreparedStatement extends JdbcLogStatement implements PreparedStatement {
     private static final Logger log = LoggerFactory.getLogger(JdbcLogPreparedStatement.class);
     private final PreparedStatement statement;
-    private final String sql;
+    protected final String sql;
 
     /**
      * Creates a logging version of a PreparedStatement
@@ -39,48 +42,369 @@ public final class JdbcLogPreparedStatement extends JdbcLogSupport implements In
      *            - the statement
      * @param sql
      *            - the sql statement
-     * @return - the proxy
+     * @return - the statement with logging (or the original statement if logging is disabled)
      */
     public static PreparedStatement getInstance(PreparedStatement stmt, String sql) {
-        InvocationHandler handler = new JdbcLogPreparedStatement(stmt, sql);
-        ClassLoader cl = PreparedStatement.class.getClassLoader();
-        return (PreparedStatement) Proxy.newProxyInstance(cl, new Class[] { PreparedStatement.class }, handler);
+        if (!JdbcLogSupport.isActive(log)) {
+            return stmt;
+        }
+        return new JdbcLogPreparedStatement(stmt, sql, new JdbcLogTrace(log, "PreparedStatement", JdbcLogSupport.sample(log)));
     }
 
-    private JdbcLogPreparedStatement(PreparedStatement stmt, String sql) {
+    JdbcLogPreparedStatement(PreparedStatement stmt, String sql, JdbcLogTrace trace) {
+        super(stmt, trace);
         this.statement = stmt;
         this.sql = sql;
     }
 
     @Override
-    public Object invoke(Object proxy, Method method, Object[] params) throws Throwable {
+    protected String getSql() {
+        return sql;
+    }
+
+    @Override
+    public ResultSet executeQuery() throws SQLException {
+        long start = trace.begin(sql);
         try {
-            String methodName = method.getName();
-            if (EXECUTE_METHODS.contains(methodName)) {
-                if (log.isDebugEnabled()) {
-                    log.debug("#{} PreparedStatement.{}(): {}", id, methodName, formatSql(sql));
-                    log.debug("#{} Parameters: {}", id, getParamValueList());
-                    log.debug("#{} Types: {}", id, getParamTypeList());
-                }
-                resetParamsInfo();
-            } else if (RESULTSET_METHODS.contains(methodName)) {
-                Object value = method.invoke(statement, params);
-                if (value != null && value instanceof ResultSet) {
-                    value = JdbcLogResultSet.getInstance((ResultSet) value);
-                }
-                return value;
-            } else if (SET_METHODS.contains(methodName)) {
-                if ("setNull".equals(methodName)) {
-                    addParam(params[0], null);
-                } else {
-                    addParam(params[0], params[1]);
-                }
-            }
-
-            return method.invoke(statement, params);
-        } catch (Exception e) {
-            log.error("#{} <ERROR> in {}", id, toString(method, params));
-            throw unwrapThrowable(e);
+            return wrap(statement.executeQuery());
+        } catch (SQLException e) {
+            throw trace.error("executeQuery", sql, e);
+        } finally {
+            trace.end("executeQuery", sql, start);
         }
     }
+
+    @Override
+    public int executeUpdate() throws SQLException {
+        long start = trace.begin(sql);
+        try {
+            return trace.rows(statement.executeUpdate());
+        } catch (SQLException e) {
+            throw trace.error("executeUpdate", sql, e);
+        } finally {
+            trace.end("executeUpdate", sql, start);
+        }
+    }
+
+    @Override
+    public void setNull(int parameterIndex, int sqlType) throws SQLException {
+        trace.addParam(parameterIndex, null);
+        statement.setNull(parameterIndex, sqlType);
+    }
+
+    @Override
+    public void setBoolean(int parameterIndex, boolean x) throws SQLException {
+        trace.addParam(parameterIndex, x);
+        statement.setBoolean(parameterIndex, x);
+    }
+
+    @Override
+    public void setByte(int parameterIndex, byte x) throws SQLException {
+        trace.addParam(parameterIndex, x);
+        statement.setByte(parameterIndex, x);
+    }
+
+    @Override
+    public void setShort(int parameterIndex, short x) throws SQLException {
+        trace.addParam(parameterIndex, x);
+        statement.setShort(parameterIndex, x);
+    }
+
+    @Override
+    public void setInt(int parameterIndex, int x) throws SQLException {
+        trace.addParam(parameterIndex, x);
+        statement.setInt(parameterIndex, x);
+    }
+
+    @Override
+    public void setLong(int parameterIndex, long x) throws SQLException {
+        trace.addParam(parameterIndex, x);
+        statement.setLong(parameterIndex, x);
+    }
+
+    @Override
+    public void setFloat(int parameterIndex, float x) throws SQLException {
+        trace.addParam(parameterIndex, x);
+        statement.setFloat(parameterIndex, x);
+    }
+
+    @Override
+    public void setDouble(int parameterIndex, double x) throws SQLException {
+        trace.addParam(parameterIndex, x);
+        statement.setDouble(parameterIndex, x);
+    }
+
+    @Override
+    public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException {
+        trace.addParam(parameterIndex, x);
+        statement.setBigDecimal(parameterIndex, x);
+    }
+
+    @Override
+    public void setString(int parameterIndex, String x) throws SQLException {
+        trace.addParam(parameterIndex, x);
+        statement.setString(parameterIndex, x);
+    }
+
+    @Override
+    public void setBytes(int parameterIndex, byte[] x) throws SQLException {
+        trace.addParam(parameterIndex, x);
+        statement.setBytes(parameterIndex, x);
+    }
+
+    @Override
+    public void setDate(int parameterIndex, Date x) throws SQLException {
+        trace.addParam(parameterIndex, x);
+        statement.setDate(parameterIndex, x);
+    }
+
+    @Override
+    public void setTime(int parameterIndex, Time x) throws SQLException {
+        trace.addParam(parameterIndex, x);
+        statement.setTime(parameterIndex, x);
+    }
+
+    @Override
+    public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException {
+        trace.addParam(parameterIndex, x);
+        statement.setTimestamp(parameterIndex, x);
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream x, int length) throws SQLException {
+        trace.addParam(parameterIndex, x);
+        statement.setAsciiStream(parameterIndex, x, length);
+    }
+
+    @Deprecated
+    @Override
+    public void setUnicodeStream(int parameterIndex, InputStream x, int length) throws SQLException {
+        trace.addParam(parameterIndex, x);
+        statement.setUnicodeStream(parameterIndex, x, length);
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream x, int length) throws SQLException {
+        trace.addParam(parameterIndex, x);
+        statement.setBinaryStream(parameterIndex, x, length);
+    }
+
+    @Override
+    public void clearParameters() throws SQLException {
+        statement.clearParameters();
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException {
+        trace.addParam(parameterIndex, x);
+        statement.setObject(parameterIndex, x, targetSqlType);
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x) throws SQLException {
+        trace.addParam(parameterIndex, x);
+        statement.setObject(parameterIndex, x);
+    }
+
+    @Override
+    public boolean execute() throws SQLException {
+        long start = trace.begin(sql);
+        try {
+            return statement.execute();
+        } catch (SQLException e) {
+            throw trace.error("execute", sql, e);
+        } finally {
+            trace.end("execute", sql, start);
+        }
+    }
+
+    @Override
+    public void addBatch() throws SQLException {
+        statement.addBatch();
+        trace.batch("addBatch", sql);
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader reader, int length) throws SQLException {
+        trace.addParam(parameterIndex, reader);
+        statement.setCharacterStream(parameterIndex, reader, length);
+    }
+
+    @Override
+    public void setRef(int parameterIndex, Ref x) throws SQLException {
+        trace.addParam(parameterIndex, x);
+        statement.setRef(parameterIndex, x);
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, Blob x) throws SQLException {
+        trace.addParam(parameterIndex, x);
+        statement.setBlob(parameterIndex, x);
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Clob x) throws SQLException {
+        trace.addParam(parameterIndex, x);
+        statement.setClob(parameterIndex, x);
+    }
+
+    @Override
+    public void setArray(int parameterIndex, Array x) throws SQLException {
+        trace.addParam(parameterIndex, x);
+        statement.setArray(parameterIndex, x);
+    }
+
+    @Override
+    public ResultSetMetaData getMetaData() throws SQLException {
+        return statement.getMetaData();
+    }
+
+    @Override
+    public void setDate(int parameterIndex, Date x, Calendar cal) throws SQLException {
+        trace.addParam(parameterIndex, x);
+        statement.setDate(parameterIndex, x, cal);
+    }
+
+    @Override
+    public void setTime(int parameterIndex, Time x, Calendar cal) throws SQLException {
+        trace.addParam(parameterIndex, x);
+        statement.setTime(parameterIndex, x, cal);
+    }
+
+    @Override
+    public void setTimestamp(int parameterIndex, Timestamp x, Calendar cal) throws SQLException {
+        trace.addParam(parameterIndex, x);
+        statement.setTimestamp(parameterIndex, x, cal);
+    }
+
+    @Override
+    public void setNull(int parameterIndex, int sqlType, String typeName) throws SQLException {
+        trace.addParam(parameterIndex, null);
+        statement.setNull(parameterIndex, sqlType, typeName);
+    }
+
+    @Override
+    public void setURL(int parameterIndex, URL x) throws SQLException {
+        trace.addParam(parameterIndex, x);
+        statement.setURL(parameterIndex, x);
+    }
+
+    @Override
+    public ParameterMetaData getParameterMetaData() throws SQLException {
+        return statement.getParameterMetaData();
+    }
+
+    @Override
+    public void setRowId(int parameterIndex, RowId x) throws SQLException {
+        trace.addParam(parameterIndex, x);
+        statement.setRowId(parameterIndex, x);
+    }
+
+    @Override
+    public void setNString(int parameterIndex, String value) throws SQLException {
+        trace.addParam(parameterIndex, value);
+        statement.setNString(parameterIndex, value);
+    }
+
+    @Override
+    public void setNCharacterStream(int parameterIndex, Reader value, long length) throws SQLException {
+        trace.addParam(parameterIndex, value);
+        statement.setNCharacterStream(parameterIndex, value, length);
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, NClob value) throws SQLException {
+        trace.addParam(parameterIndex, value);
+        statement.setNClob(parameterIndex, value);
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Reader reader, long length) throws SQLException {
+        trace.addParam(parameterIndex, reader);
+        statement.setClob(parameterIndex, reader, length);
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, InputStream inputStream, long length) throws SQLException {
+        trace.addParam(parameterIndex, inputStream);
+        statement.setBlob(parameterIndex, inputStream, length);
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, Reader reader, long length) throws SQLException {
+        trace.addParam(parameterIndex, reader);
+        statement.setNClob(parameterIndex, reader, length);
+    }
+
+    @Override
+    public void setSQLXML(int parameterIndex, SQLXML xmlObject) throws SQLException {
+        trace.addParam(parameterIndex, xmlObject);
+        statement.setSQLXML(parameterIndex, xmlObject);
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x, int targetSqlType, int scaleOrLength) throws SQLException {
+        trace.addParam(parameterIndex, x);
+        statement.setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream x, long length) throws SQLException {
+        trace.addParam(parameterIndex, x);
+        statement.setAsciiStream(parameterIndex, x, length);
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream x, long length) throws SQLException {
+        trace.addParam(parameterIndex, x);
+        statement.setBinaryStream(parameterIndex, x, length);
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader reader, long length) throws SQLException {
+        trace.addParam(parameterIndex, reader);
+        statement.setCharacterStream(parameterIndex, reader, length);
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream x) throws SQLException {
+        trace.addParam(parameterIndex, x);
+        statement.setAsciiStream(parameterIndex, x);
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream x) throws SQLException {
+        trace.addParam(parameterIndex, x);
+        statement.setBinaryStream(parameterIndex, x);
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader reader) throws SQLException {
+        trace.addParam(parameterIndex, reader);
+        statement.setCharacterStream(parameterIndex, reader);
+    }
+
+    @Override
+    public void setNCharacterStream(int parameterIndex, Reader value) throws SQLException {
+        trace.addParam(parameterIndex, value);
+        statement.setNCharacterStream(parameterIndex, value);
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Reader reader) throws SQLException {
+        trace.addParam(parameterIndex, reader);
+        statement.setClob(parameterIndex, reader);
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, InputStream inputStream) throws SQLException {
+        trace.addParam(parameterIndex, inputStream);
+        statement.setBlob(parameterIndex, inputStream);
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, Reader reader) throws SQLException {
+        trace.addParam(parameterIndex, reader);
+        statement.setNClob(parameterIndex, reader);
+    }
 }
@@ -18,84 +18,1255 @@
  */
 package jetbrick.dao.jdbclog;
 
-import java.lang.reflect.*;
-import java.sql.ResultSet;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.*;
+import java.util.Calendar;
+import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * ResultSet Wrapper to add logging
+ * ResultSet Wrapper to add logging (只有在 Statement 需要输出 debug 日志的时候才会包装)
  */
-public final class JdbcLogResultSet extends JdbcLogSupport implements InvocationHandler {
+public final class JdbcLogResultSet implements ResultSet {
     private static final Logger log = LoggerFactory.getLogger(JdbcLogResultSet.class);
     private final ResultSet rs;
+    private final JdbcLogTrace trace;
+    private SqlStatistics statistics; // 读取完之后设置为 null
+    private long fetchNanos;
+    private long fetchRows;
 
     /**
      * Creates a logging version of a ResultSet
      *
-     * @param rs   - the ResultSet to proxy
+     * @param rs   - the ResultSet to wrap
      * @return - the ResultSet with logging
      */
     public static ResultSet getInstance(ResultSet rs) {
-        InvocationHandler handler = new JdbcLogResultSet(rs);
-        ClassLoader cl = ResultSet.class.getClassLoader();
-        return (ResultSet) Proxy.newProxyInstance(cl, new Class[] { ResultSet.class }, handler);
+        return new JdbcLogResultSet(rs, true, null);
     }
 
-    private JdbcLogResultSet(ResultSet rs) {
+    JdbcLogResultSet(ResultSet rs, boolean sampled, SqlStatistics statistics) {
         this.rs = rs;
+        this.trace = new JdbcLogTrace(log, "ResultSet", sampled && log.isDebugEnabled());
+        this.statistics = statistics;
+    }
+
+    // 统计 next() 的耗时和行数，读取完或者关闭的时候汇总一次
+    private void fetched(boolean hasNext, long start) {
+        if (statistics != null) {
+            if (start != 0) {
+                fetchNanos += System.nanoTime() - start;
+            }
+            if (hasNext) {
+                fetchRows++;
+            } else {
+                statistics.addFetch(fetchNanos, fetchRows);
+                statistics = null;
+            }
+        }
+    }
+
+    @Override
+    public boolean next() throws SQLException {
+        long start = (statistics == null) ? 0 : System.nanoTime();
+        boolean value = rs.next();
+        fetched(value, start);
+        trace.flush("Get");
+        return value;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        rs.close();
+        fetched(false, 0);
+        trace.flush("Get");
+    }
+
+    @Override
+    public boolean wasNull() throws SQLException {
+        return rs.wasNull();
+    }
+
+    @Override
+    public String getString(int columnIndex) throws SQLException {
+        String value = rs.getString(columnIndex);
+        trace.addParam(columnIndex, value);
+        return value;
+    }
+
+    @Override
+    public boolean getBoolean(int columnIndex) throws SQLException {
+        boolean value = rs.getBoolean(columnIndex);
+        trace.addParam(columnIndex, value);
+        return value;
+    }
+
+    @Override
+    public byte getByte(int columnIndex) throws SQLException {
+        byte value = rs.getByte(columnIndex);
+        trace.addParam(columnIndex, value);
+        return value;
+    }
+
+    @Override
+    public short getShort(int columnIndex) throws SQLException {
+        short value = rs.getShort(columnIndex);
+        trace.addParam(columnIndex, value);
+        return value;
+    }
+
+    @Override
+    public int getInt(int columnIndex) throws SQLException {
+        int value = rs.getInt(columnIndex);
+        trace.addParam(columnIndex, value);
+        return value;
+    }
+
+    @Override
+    public long getLong(int columnIndex) throws SQLException {
+        long value = rs.getLong(columnIndex);
+        trace.addParam(columnIndex, value);
+        return value;
+    }
+
+    @Override
+    public float getFloat(int columnIndex) throws SQLException {
+        float value = rs.getFloat(columnIndex);
+        trace.addParam(columnIndex, value);
+        return value;
+    }
+
+    @Override
+    public double getDouble(int columnIndex) throws SQLException {
+        double value = rs.getDouble(columnIndex);
+        trace.addParam(columnIndex, value);
+        return value;
+    }
+
+    @Deprecated
+    @Override
+    public BigDecimal getBigDecimal(int columnIndex, int scale) throws SQLException {
+        BigDecimal value = rs.getBigDecimal(columnIndex, scale);
+        trace.addParam(columnIndex, value);
+        return value;
+    }
+
+    @Override
+    public byte[] getBytes(int columnIndex) throws SQLException {
+        byte[] value = rs.getBytes(columnIndex);
+        trace.addParam(columnIndex, value);
+        return value;
+    }
+
+    @Override
+    public Date getDate(int columnIndex) throws SQLException {
+        Date value = rs.getDate(columnIndex);
+        trace.addParam(columnIndex, value);
+        return value;
+    }
+
+    @Override
+    public Time getTime(int columnIndex) throws SQLException {
+        Time value = rs.getTime(columnIndex);
+        trace.addParam(columnIndex, value);
+        return value;
+    }
+
+    @Override
+    public Timestamp getTimestamp(int columnIndex) throws SQLException {
+        Timestamp value = rs.getTimestamp(columnIndex);
+        trace.addParam(columnIndex, value);
+        return value;
+    }
+
+    @Override
+    public InputStream getAsciiStream(int columnIndex) throws SQLException {
+        InputStream value = rs.getAsciiStream(columnIndex);
+        trace.addParam(columnIndex, value);
+        return value;
+    }
+
+    @Deprecated
+    @Override
+    public InputStream getUnicodeStream(int columnIndex) throws SQLException {
+        InputStream value = rs.getUnicodeStream(columnIndex);
+        trace.addParam(columnIndex, value);
+        return value;
+    }
+
+    @Override
+    public InputStream getBinaryStream(int columnIndex) throws SQLException {
+        InputStream value = rs.getBinaryStream(columnIndex);
+        trace.addParam(columnIndex, value);
+        return value;
+    }
+
+    @Override
+    public String getString(String columnLabel) throws SQLException {
+        String value = rs.getString(columnLabel);
+        trace.addParam(columnLabel, value);
+        return value;
+    }
+
+    @Override
+    public boolean getBoolean(String columnLabel) throws SQLException {
+        boolean value = rs.getBoolean(columnLabel);
+        trace.addParam(columnLabel, value);
+        return value;
+    }
+
+    @Override
+    public byte getByte(String columnLabel) throws SQLException {
+        byte value = rs.getByte(columnLabel);
+        trace.addParam(columnLabel, value);
+        return value;
+    }
+
+    @Override
+    public short getShort(String columnLabel) throws SQLException {
+        short value = rs.getShort(columnLabel);
+        trace.addParam(columnLabel, value);
+        return value;
+    }
+
+    @Override
+    public int getInt(String columnLabel) throws SQLException {
+        int value = rs.getInt(columnLabel);
+        trace.addParam(columnLabel, value);
+        return value;
+    }
+
+    @Override
+    public long getLong(String columnLabel) throws SQLException {
+        long value = rs.getLong(columnLabel);
+        trace.addParam(columnLabel, value);
+        return value;
+    }
+
+    @Override
+    public float getFloat(String columnLabel) throws SQLException {
+        float value = rs.getFloat(columnLabel);
+        trace.addParam(columnLabel, value);
+        return value;
+    }
+
+    @Override
+    public double getDouble(String columnLabel) throws SQLException {
+        double value = rs.getDouble(columnLabel);
+        trace.addParam(columnLabel, value);
+        return value;
+    }
+
+    @Deprecated
+    @Override
+    public BigDecimal getBigDecimal(String columnLabel, int scale) throws SQLException {
+        BigDecimal value = rs.getBigDecimal(columnLabel, scale);
+        trace.addParam(columnLabel, value);
+        return value;
+    }
+
+    @Override
+    public byte[] getBytes(String columnLabel) throws SQLException {
+        byte[] value = rs.getBytes(columnLabel);
+        trace.addParam(columnLabel, value);
+        return value;
+    }
+
+    @Override
+    public Date getDate(String columnLabel) throws SQLException {
+        Date value = rs.getDate(columnLabel);
+        trace.addParam(columnLabel, value);
+        return value;
+    }
+
+    @Override
+    public Time getTime(String columnLabel) throws SQLException {
+        Time value = rs.getTime(columnLabel);
+        trace.addParam(columnLabel, value);
+        return value;
+    }
+
+    @Override
+    public Timestamp getTimestamp(String columnLabel) throws SQLException {
+        Timestamp value = rs.getTimestamp(columnLabel);
+        trace.addParam(columnLabel, value);
+        return value;
+    }
+
+    @Override
+    public InputStream getAsciiStream(String columnLabel) throws SQLException {
+        InputStream value = rs.getAsciiStream(columnLabel);
+        trace.addParam(columnLabel, value);
+        return value;
+    }
+
+    @Deprecated
+    @Override
+    public InputStream getUnicodeStream(String columnLabel) throws SQLException {
+        InputStream value = rs.getUnicodeStream(columnLabel);
+        trace.addParam(columnLabel, value);
+        return value;
+    }
+
+    @Override
+    public InputStream getBinaryStream(String columnLabel) throws SQLException {
+        InputStream value = rs.getBinaryStream(columnLabel);
+        trace.addParam(columnLabel, value);
+        return value;
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        return rs.getWarnings();
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+        rs.clearWarnings();
+    }
+
+    @Override
+    public String getCursorName() throws SQLException {
+        return rs.getCursorName();
+    }
+
+    @Override
+    public ResultSetMetaData getMetaData() throws SQLException {
+        return rs.getMetaData();
+    }
+
+    @Override
+    public Object getObject(int columnIndex) throws SQLException {
+        Object value = rs.getObject(columnIndex);
+        trace.addParam(columnIndex, value);
+        return value;
+    }
+
+    @Override
+    public Object getObject(String columnLabel) throws SQLException {
+        Object value = rs.getObject(columnLabel);
+        trace.addParam(columnLabel, value);
+        return value;
+    }
+
+    @Override
+    public int findColumn(String columnLabel) throws SQLException {
+        return rs.findColumn(columnLabel);
+    }
+
+    @Override
+    public Reader getCharacterStream(int columnIndex) throws SQLException {
+        Reader value = rs.getCharacterStream(columnIndex);
+        trace.addParam(columnIndex, value);
+        return value;
+    }
+
+    @Override
+    public Reader getCharacterStream(String columnLabel) throws SQLException {
+        Reader value = rs.getCharacterStream(columnLabel);
+        trace.addParam(columnLabel, value);
+        return value;
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(int columnIndex) throws SQLException {
+        BigDecimal value = rs.getBigDecimal(columnIndex);
+        trace.addParam(columnIndex, value);
+        return value;
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(String columnLabel) throws SQLException {
+        BigDecimal value = rs.getBigDecimal(columnLabel);
+        trace.addParam(columnLabel, value);
+        return value;
+    }
+
+    @Override
+    public boolean isBeforeFirst() throws SQLException {
+        return rs.isBeforeFirst();
+    }
+
+    @Override
+    public boolean isAfterLast() throws SQLException {
+        return rs.isAfterLast();
+    }
+
+    @Override
+    public boolean isFirst() throws SQLException {
+        return rs.isFirst();
+    }
+
+    @Override
+    public boolean isLast() throws SQLException {
+        return rs.isLast();
+    }
+
+    @Override
+    public void beforeFirst() throws SQLException {
+        rs.beforeFirst();
+        trace.flush("Get");
+    }
+
+    @Override
+    public void afterLast() throws SQLException {
+        rs.afterLast();
+        trace.flush("Get");
+    }
+
+    @Override
+    public boolean first() throws SQLException {
+        boolean value = rs.first();
+        trace.flush("Get");
+        return value;
+    }
+
+    @Override
+    public boolean last() throws SQLException {
+        boolean value = rs.last();
+        trace.flush("Get");
+        return value;
+    }
+
+    @Override
+    public int getRow() throws SQLException {
+        return rs.getRow();
+    }
+
+    @Override
+    public boolean absolute(int row) throws SQLException {
+        boolean value = rs.absolute(row);
+        trace.flush("Get");
+        return value;
+    }
+
+    @Override
+    public boolean relative(int rows) throws SQLException {
+        boolean value = rs.relative(rows);
+        trace.flush("Get");
+        return value;
+    }
+
+    @Override
+    public boolean previous() throws SQLException {
+        boolean value = rs.previous();
+        trace.flush("Get");
+        return value;
+    }
+
+    @Override
+    public void setFetchDirection(int direction) throws SQLException {
+        rs.setFetchDirection(direction);
+    }
+
+    @Override
+    public int getFetchDirection() throws SQLException {
+        return rs.getFetchDirection();
+    }
+
+    @Override
+    public void setFetchSize(int rows) throws SQLException {
+        rs.setFetchSize(rows);
+    }
+
+    @Override
+    public int getFetchSize() throws SQLException {
+        return rs.getFetchSize();
+    }
+
+    @Override
+    public int getType() throws SQLException {
+        return rs.getType();
+    }
+
+    @Override
+    public int getConcurrency() throws SQLException {
+        return rs.getConcurrency();
+    }
+
+    @Override
+    public boolean rowUpdated() throws SQLException {
+        return rs.rowUpdated();
+    }
+
+    @Override
+    public boolean rowInserted() throws SQLException {
+        return rs.rowInserted();
+    }
+
+    @Override
+    public boolean rowDeleted() throws SQLException {
+        return rs.rowDeleted();
+    }
+
+    @Override
+    public void updateNull(int columnIndex) throws SQLException {
+        trace.addParam(columnIndex, null);
+        rs.updateNull(columnIndex);
+    }
+
+    @Override
+    public void updateBoolean(int columnIndex, boolean x) throws SQLException {
+        trace.addParam(columnIndex, x);
+        rs.updateBoolean(columnIndex, x);
+    }
+
+    @Override
+    public void updateByte(int columnIndex, byte x) throws SQLException {
+        trace.addParam(columnIndex, x);
+        rs.updateByte(columnIndex, x);
+    }
+
+    @Override
+    public void updateShort(int columnIndex, short x) throws SQLException {
+        trace.addParam(columnIndex, x);
+        rs.updateShort(columnIndex, x);
+    }
+
+    @Override
+    public void updateInt(int columnIndex, int x) throws SQLException {
+        trace.addParam(columnIndex, x);
+        rs.updateInt(columnIndex, x);
+    }
+
+    @Override
+    public void updateLong(int columnIndex, long x) throws SQLException {
+        trace.addParam(columnIndex, x);
+        rs.updateLong(columnIndex, x);
+    }
+
+    @Override
+    public void updateFloat(int columnIndex, float x) throws SQLException {
+        trace.addParam(columnIndex, x);
+        rs.updateFloat(columnIndex, x);
+    }
+
+    @Override
+    public void updateDouble(int columnIndex, double x) throws SQLException {
+        trace.addParam(columnIndex, x);
+        rs.updateDouble(columnIndex, x);
+    }
+
+    @Override
+    public void updateBigDecimal(int columnIndex, BigDecimal x) throws SQLException {
+        trace.addParam(columnIndex, x);
+        rs.updateBigDecimal(columnIndex, x);
+    }
+
+    @Override
+    public void updateString(int columnIndex, String x) throws SQLException {
+        trace.addParam(columnIndex, x);
+        rs.updateString(columnIndex, x);
+    }
+
+    @Override
+    public void updateBytes(int columnIndex, byte[] x) throws SQLException {
+        trace.addParam(columnIndex, x);
+        rs.updateBytes(columnIndex, x);
+    }
+
+    @Override
+    public void updateDate(int columnIndex, Date x) throws SQLException {
+        trace.addParam(columnIndex, x);
+        rs.updateDate(columnIndex, x);
+    }
+
+    @Override
+    public void updateTime(int columnIndex, Time x) throws SQLException {
+        trace.addParam(columnIndex, x);
+        rs.updateTime(columnIndex, x);
+    }
+
+    @Override
+    public void updateTimestamp(int columnIndex, Timestamp x) throws SQLException {
+        trace.addParam(columnIndex, x);
+        rs.updateTimestamp(columnIndex, x);
+    }
+
+    @Override
+    public void updateAsciiStream(int columnIndex, InputStream x, int length) throws SQLException {
+        trace.addParam(columnIndex, x);
+        rs.updateAsciiStream(columnIndex, x, length);
+    }
+
+    @Override
+    public void updateBinaryStream(int columnIndex, InputStream x, int length) throws SQLException {
+        trace.addParam(columnIndex, x);
+        rs.updateBinaryStream(columnIndex, x, length);
+    }
+
+    @Override
+    public void updateCharacterStream(int columnIndex, Reader x, int length) throws SQLException {
+        trace.addParam(columnIndex, x);
+        rs.updateCharacterStream(columnIndex, x, length);
+    }
+
+    @Override
+    public void updateObject(int columnIndex, Object x, int scaleOrLength) throws SQLException {
+        trace.addParam(columnIndex, x);
+        rs.updateObject(columnIndex, x, scaleOrLength);
+    }
+
+    @Override
+    public void updateObject(int columnIndex, Object x) throws SQLException {
+        trace.addParam(columnIndex, x);
+        rs.updateObject(columnIndex, x);
+    }
+
+    @Override
+    public void updateNull(String columnLabel) throws SQLException {
+        trace.addParam(columnLabel, null);
+        rs.updateNull(columnLabel);
+    }
+
+    @Override
+    public void updateBoolean(String columnLabel, boolean x) throws SQLException {
+        trace.addParam(columnLabel, x);
+        rs.updateBoolean(columnLabel, x);
+    }
+
+    @Override
+    public void updateByte(String columnLabel, byte x) throws SQLException {
+        trace.addParam(columnLabel, x);
+        rs.updateByte(columnLabel, x);
+    }
+
+    @Override
+    public void updateShort(String columnLabel, short x) throws SQLException {
+        trace.addParam(columnLabel, x);
+        rs.updateShort(columnLabel, x);
+    }
+
+    @Override
+    public void updateInt(String columnLabel, int x) throws SQLException {
+        trace.addParam(columnLabel, x);
+        rs.updateInt(columnLabel, x);
+    }
+
+    @Override
+    public void updateLong(String columnLabel, long x) throws SQLException {
+        trace.addParam(columnLabel, x);
+        rs.updateLong(columnLabel, x);
+    }
+
+    @Override
+    public void updateFloat(String columnLabel, float x) throws SQLException {
+        trace.addParam(columnLabel, x);
+        rs.updateFloat(columnLabel, x);
+    }
+
+    @Override
+    public void updateDouble(String columnLabel, double x) throws SQLException {
+        trace.addParam(columnLabel, x);
+        rs.updateDouble(columnLabel, x);
+    }
+
+    @Override
+    public void updateBigDecimal(String columnLabel, BigDecimal x) throws SQLException {
+        trace.addParam(columnLabel, x);
+        rs.updateBigDecimal(columnLabel, x);
+    }
+
+    @Override
+    public void updateString(String columnLabel, String x) throws SQLException {
+        trace.addParam(columnLabel, x);
+        rs.updateString(columnLabel, x);
+    }
+
+    @Override
+    public void updateBytes(String columnLabel, byte[] x) throws SQLException {
+        trace.addParam(columnLabel, x);
+        rs.updateBytes(columnLabel, x);
+    }
+
+    @Override
+    public void updateDate(String columnLabel, Date x) throws SQLException {
+        trace.addParam(columnLabel, x);
+        rs.updateDate(columnLabel, x);
+    }
+
+    @Override
+    public void updateTime(String columnLabel, Time x) throws SQLException {
+        trace.addParam(columnLabel, x);
+        rs.updateTime(columnLabel, x);
+    }
+
+    @Override
+    public void updateTimestamp(String columnLabel, Timestamp x) throws SQLException {
+        trace.addParam(columnLabel, x);
+        rs.updateTimestamp(columnLabel, x);
+    }
+
+    @Override
+    public void updateAsciiStream(String columnLabel, InputStream x, int length) throws SQLException {
+        trace.addParam(columnLabel, x);
+        rs.updateAsciiStream(columnLabel, x, length);
+    }
+
+    @Override
+    public void updateBinaryStream(String columnLabel, InputStream x, int length) throws SQLException {
+        trace.addParam(columnLabel, x);
+        rs.updateBinaryStream(columnLabel, x, length);
+    }
+
+    @Override
+    public void updateCharacterStream(String columnLabel, Reader reader, int length) throws SQLException {
+        trace.addParam(columnLabel, reader);
+        rs.updateCharacterStream(columnLabel, reader, length);
+    }
+
+    @Override
+    public void updateObject(String columnLabel, Object x, int scaleOrLength) throws SQLException {
+        trace.addParam(columnLabel, x);
+        rs.updateObject(columnLabel, x, scaleOrLength);
+    }
+
+    @Override
+    public void updateObject(String columnLabel, Object x) throws SQLException {
+        trace.addParam(columnLabel, x);
+        rs.updateObject(columnLabel, x);
     }
 
     @Override
-    public Object invoke(Object proxy, Method method, Object[] params) throws Throwable {
-        try {
-            Object value = method.invoke(rs, params);
-
-            String methodName = method.getName();
-            if (GET_METHODS.contains(methodName)) {
-                String columnName;
-                if (params[0] instanceof String) {
-                    columnName = (String) params[0];
-                } else {
-                    Integer index = (Integer) params[0];
-                    columnName = rs.getMetaData().getColumnName(index);
-                }
-                if (rs.wasNull()) {
-                    value = null;
-                }
-                addParam(columnName, value);
-            } else if (MOVE_METHODS.contains(methodName)) {
-                if (isParamNotEmpty() && log.isDebugEnabled()) {
-                    log.debug("#{} ResultSet.Get(): {}", id, getParamNameList());
-                    log.debug("#{} Parameters: {}", id, getParamValueList());
-                    log.debug("#{} Types: {}", id, getParamTypeList());
-                }
-                resetParamsInfo();
-            } else if (UPDATE_METHODS.contains(methodName)) {
-                String columnName;
-                if (params[0] instanceof String) {
-                    columnName = (String) params[0];
-                } else {
-                    Integer index = (Integer) params[0];
-                    columnName = rs.getMetaData().getColumnName(index);
-                }
-                addParam(columnName, value);
-            } else if ("updateRow".equals(methodName) || "cancelRowUpdates".equals(methodName)) {
-                if (log.isDebugEnabled()) {
-                    log.debug("#{} ResultSet.{}(): {}", id, methodName, getParamNameList());
-                    log.debug("#{} Parameters: {}", id, getParamValueList());
-                    log.debug("#{} Types: {}", id, getParamTypeList());
-                }
-                resetParamsInfo();
-            } else if ("insertRow".equals(methodName)) {
-                log.debug("#{} ResultSet.insertRow()", id);
-                resetParamsInfo();
-            }
+    public void insertRow() throws SQLException {
+        rs.insertRow();
+        trace.flush("insertRow");
+    }
 
-            return value;
-        } catch (Exception e) {
-            log.error("#{} <ERROR> in {}", id, toString(method, params));
-            throw unwrapThrowable(e);
-        }
+    @Override
+    public void updateRow() throws SQLException {
+        rs.updateRow();
+        trace.flush("updateRow");
+    }
+
+    @Override
+    public void deleteRow() throws SQLException {
+        rs.deleteRow();
+    }
+
+    @Override
+    public void refreshRow() throws SQLException {
+        rs.refreshRow();
+    }
+
+    @Override
+    public void cancelRowUpdates() throws SQLException {
+        rs.cancelRowUpdates();
+        trace.flush("cancelRowUpdates");
+    }
+
+    @Override
+    public void moveToInsertRow() throws SQLException {
+        rs.moveToInsertRow();
+        trace.flush("Get");
+    }
+
+    @Override
+    public void moveToCurrentRow() throws SQLException {
+        rs.moveToCurrentRow();
+        trace.flush("Get");
+    }
+
+    @Override
+    public Statement getStatement() throws SQLException {
+        return rs.getStatement();
+    }
+
+    @Override
+    public Object getObject(int columnIndex, Map<String, Class<?>> map) throws SQLException {
+        Object value = rs.getObject(columnIndex, map);
+        trace.addParam(columnIndex, value);
+        return value;
+    }
+
+    @Override
+    public Ref getRef(int columnIndex) throws SQLException {
+        Ref value = rs.getRef(columnIndex);
+        trace.addParam(columnIndex, value);
+        return value;
+    }
+
+    @Override
+    public Blob getBlob(int columnIndex) throws SQLException {
+        Blob value = rs.getBlob(columnIndex);
+        trace.addParam(columnIndex, value);
+        return value;
+    }
+
+    @Override
+    public Clob getClob(int columnIndex) throws SQLException {
+        Clob value = rs.getClob(columnIndex);
+        trace.addParam(columnIndex, value);
+        return value;
+    }
+
+    @Override
+    public Array getArray(int columnIndex) throws SQLException {
+        Array value = rs.getArray(columnIndex);
+        trace.addParam(columnIndex, value);
+        return value;
+    }
+
+    @Override
+    public Object getObject(String columnLabel, Map<String, Class<?>> map) throws SQLException {
+        Object value = rs.getObject(columnLabel, map);
+        trace.addParam(columnLabel, value);
+        return value;
+    }
+
+    @Override
+    public Ref getRef(String columnLabel) throws SQLException {
+        Ref value = rs.getRef(columnLabel);
+        trace.addParam(columnLabel, value);
+        return value;
+    }
+
+    @Override
+    public Blob getBlob(String columnLabel) throws SQLException {
+        Blob value = rs.getBlob(columnLabel);
+        trace.addParam(columnLabel, value);
+        return value;
+    }
+
+    @Override
+    public Clob getClob(String columnLabel) throws SQLException {
+        Clob value = rs.getClob(columnLabel);
+        trace.addParam(columnLabel, value);
+        return value;
+    }
+
+    @Override
+    public Array getArray(String columnLabel) throws SQLException {
+        Array value = rs.getArray(columnLabel);
+        trace.addParam(columnLabel, value);
+        return value;
+    }
+
+    @Override
+    public Date getDate(int columnIndex, Calendar cal) throws SQLException {
+        Date value = rs.getDate(columnIndex, cal);
+        trace.addParam(columnIndex, value);
+        return value;
+    }
+
+    @Override
+    public Date getDate(String columnLabel, Calendar cal) throws SQLException {
+        Date value = rs.getDate(columnLabel, cal);
+        trace.addParam(columnLabel, value);
+        return value;
+    }
+
+    @Override
+    public Time getTime(int columnIndex, Calendar cal) throws SQLException {
+        Time value = rs.getTime(columnIndex, cal);
+        trace.addParam(columnIndex, value);
+        return value;
+    }
+
+    @Override
+    public Time getTime(String columnLabel, Calendar cal) throws SQLException {
+        Time value = rs.getTime(columnLabel, cal);
+        trace.addParam(columnLabel, value);
+        return value;
+    }
+
+    @Override
+    public Timestamp getTimestamp(int columnIndex, Calendar cal) throws SQLException {
+        Timestamp value = rs.getTimestamp(columnIndex, cal);
+        trace.addParam(columnIndex, value);
+        return value;
+    }
+
+    @Override
+    public Timestamp getTimestamp(String columnLabel, Calendar cal) throws SQLException {
+        Timestamp value = rs.getTimestamp(columnLabel, cal);
+        trace.addParam(columnLabel, value);
+        return value;
+    }
+
+    @Override
+    public URL getURL(int columnIndex) throws SQLException {
+        URL value = rs.getURL(columnIndex);
+        trace.addParam(columnIndex, value);
+        return value;
+    }
+
+    @Override
+    public URL getURL(String columnLabel) throws SQLException {
+        URL value = rs.getURL(columnLabel);
+        trace.addParam(columnLabel, value);
+        return value;
+    }
+
+    @Override
+    public void updateRef(int columnIndex, Ref x) throws SQLException {
+        trace.addParam(columnIndex, x);
+        rs.updateRef(columnIndex, x);
+    }
+
+    @Override
+    public void updateRef(String columnLabel, Ref x) throws SQLException {
+        trace.addParam(columnLabel, x);
+        rs.updateRef(columnLabel, x);
+    }
+
+    @Override
+    public void updateBlob(int columnIndex, Blob x) throws SQLException {
+        trace.addParam(columnIndex, x);
+        rs.updateBlob(columnIndex, x);
+    }
+
+    @Override
+    public void updateBlob(String columnLabel, Blob x) throws SQLException {
+        trace.addParam(columnLabel, x);
+        rs.updateBlob(columnLabel, x);
+    }
+
+    @Override
+    public void updateClob(int columnIndex, Clob x) throws SQLException {
+        trace.addParam(columnIndex, x);
+        rs.updateClob(columnIndex, x);
+    }
+
+    @Override
+    public void updateClob(String columnLabel, Clob x) throws SQLException {
+        trace.addParam(columnLabel, x);
+        rs.updateClob(columnLabel, x);
+    }
+
+    @Override
+    public void updateArray(int columnIndex, Array x) throws SQLException {
+        trace.addParam(columnIndex, x);
+        rs.updateArray(columnIndex, x);
+    }
+
+    @Override
+    public void updateArray(String columnLabel, Array x) throws SQLException {
+        trace.addParam(columnLabel, x);
+        rs.updateArray(columnLabel, x);
+    }
+
+    @Override
+    public RowId getRowId(int columnIndex) throws SQLException {
+        RowId value = rs.getRowId(columnIndex);
+        trace.addParam(columnIndex, value);
+        return value;
+    }
+
+    @Override
+    public RowId getRowId(String columnLabel) throws SQLException {
+        RowId value = rs.getRowId(columnLabel);
+        trace.addParam(columnLabel, value);
+        return value;
+    }
+
+    @Override
+    public void updateRowId(int columnIndex, RowId x) throws SQLException {
+        trace.addParam(columnIndex, x);
+        rs.updateRowId(columnIndex, x);
+    }
+
+    @Override
+    public void updateRowId(String columnLabel, RowId x) throws SQLException {
+        trace.addParam(columnLabel, x);
+        rs.updateRowId(columnLabel, x);
+    }
+
+    @Override
+    public int getHoldability() throws SQLException {
+        return rs.getHoldability();
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return rs.isClosed();
+    }
+
+    @Override
+    public void updateNString(int columnIndex, String nString) throws SQLException {
+        trace.addParam(columnIndex, nString);
+        rs.updateNString(columnIndex, nString);
+    }
+
+    @Override
+    public void updateNString(String columnLabel, String nString) throws SQLException {
+        trace.addParam(columnLabel, nString);
+        rs.updateNString(columnLabel, nString);
+    }
+
+    @Override
+    public void updateNClob(int columnIndex, NClob nClob) throws SQLException {
+        trace.addParam(columnIndex, nClob);
+        rs.updateNClob(columnIndex, nClob);
+    }
+
+    @Override
+    public void updateNClob(String columnLabel, NClob nClob) throws SQLException {
+        trace.addParam(columnLabel, nClob);
+        rs.updateNClob(columnLabel, nClob);
+    }
+
+    @Override
+    public NClob getNClob(int columnIndex) throws SQLException {
+        NClob value = rs.getNClob(columnIndex);
+        trace.addParam(columnIndex, value);
+        return value;
+    }
+
+    @Override
+    public NClob getNClob(String columnLabel) throws SQLException {
+        NClob value = rs.getNClob(columnLabel);
+        trace.addParam(columnLabel, value);
+        return value;
+    }
+
+    @Override
+    public SQLXML getSQLXML(int columnIndex) throws SQLException {
+        SQLXML value = rs.getSQLXML(columnIndex);
+        trace.addParam(columnIndex, value);
+        return value;
+    }
+
+    @Override
+    public SQLXML getSQLXML(String columnLabel) throws SQLException {
+        SQLXML value = rs.getSQLXML(columnLabel);
+        trace.addParam(columnLabel, value);
+        return value;
+    }
+
+    @Override
+    public void updateSQLXML(int columnIndex, SQLXML xmlObject) throws SQLException {
+        trace.addParam(columnIndex, xmlObject);
+        rs.updateSQLXML(columnIndex, xmlObject);
+    }
+
+    @Override
+    public void updateSQLXML(String columnLabel, SQLXML xmlObject) throws SQLException {
+        trace.addParam(columnLabel, xmlObject);
+        rs.updateSQLXML(columnLabel, xmlObject);
+    }
+
+    @Override
+    public String getNString(int columnIndex) throws SQLException {
+        String value = rs.getNString(columnIndex);
+        trace.addParam(columnIndex, value);
+        return value;
+    }
+
+    @Override
+    public String getNString(String columnLabel) throws SQLException {
+        String value = rs.getNString(columnLabel);
+        trace.addParam(columnLabel, value);
+        return value;
+    }
+
+    @Override
+    public Reader getNCharacterStream(int columnIndex) throws SQLException {
+        Reader value = rs.getNCharacterStream(columnIndex);
+        trace.addParam(columnIndex, value);
+        return value;
+    }
+
+    @Override
+    public Reader getNCharacterStream(String columnLabel) throws SQLException {
+        Reader value = rs.getNCharacterStream(columnLabel);
+        trace.addParam(columnLabel, value);
+        return value;
+    }
+
+    @Override
+    public void updateNCharacterStream(int columnIndex, Reader x, long length) throws SQLException {
+        trace.addParam(columnIndex, x);
+        rs.updateNCharacterStream(columnIndex, x, length);
+    }
+
+    @Override
+    public void updateNCharacterStream(String columnLabel, Reader reader, long length) throws SQLException {
+        trace.addParam(columnLabel, reader);
+        rs.updateNCharacterStream(columnLabel, reader, length);
+    }
+
+    @Override
+    public void updateAsciiStream(int columnIndex, InputStream x, long length) throws SQLException {
+        trace.addParam(columnIndex, x);
+        rs.updateAsciiStream(columnIndex, x, length);
+    }
+
+    @Override
+    public void updateBinaryStream(int columnIndex, InputStream x, long length) throws SQLException {
+        trace.addParam(columnIndex, x);
+        rs.updateBinaryStream(columnIndex, x, length);
+    }
+
+    @Override
+    public void updateCharacterStream(int columnIndex, Reader x, long length) throws SQLException {
+        trace.addParam(columnIndex, x);
+        rs.updateCharacterStream(columnIndex, x, length);
+    }
+
+    @Override
+    public void updateAsciiStream(String columnLabel, InputStream x, long length) throws SQLException {
+        trace.addParam(columnLabel, x);
+        rs.updateAsciiStream(columnLabel, x, length);
+    }
+
+    @Override
+    public void updateBinaryStream(String columnLabel, InputStream x, long length) throws SQLException {
+        trace.addParam(columnLabel, x);
+        rs.updateBinaryStream(columnLabel, x, length);
+    }
+
+    @Override
+    public void updateCharacterStream(String columnLabel, Reader reader, long length) throws SQLException {
+        trace.addParam(columnLabel, reader);
+        rs.updateCharacterStream(columnLabel, reader, length);
+    }
+
+    @Override
+    public void updateBlob(int columnIndex, InputStream inputStream, long length) throws SQLException {
+        trace.addParam(columnIndex, inputStream);
+        rs.updateBlob(columnIndex, inputStream, length);
+    }
+
+    @Override
+    public void updateBlob(String columnLabel, InputStream inputStream, long length) throws SQLException {
+        trace.addParam(columnLabel, inputStream);
+        rs.updateBlob(columnLabel, inputStream, length);
+    }
+
+    @Override
+    public void updateClob(int columnIndex, Reader reader, long length) throws SQLException {
+        trace.addParam(columnIndex, reader);
+        rs.updateClob(columnIndex, reader, length);
+    }
+
+    @Override
+    public void updateClob(String columnLabel, Reader reader, long length) throws SQLException {
+        trace.addParam(columnLabel, reader);
+        rs.updateClob(columnLabel, reader, length);
+    }
+
+    @Override
+    public void updateNClob(int columnIndex, Reader reader, long length) throws SQLException {
+        trace.addParam(columnIndex, reader);
+        rs.updateNClob(columnIndex, reader, length);
+    }
+
+    @Override
+    public void updateNClob(String columnLabel, Reader reader, long length) throws SQLException {
+        trace.addParam(columnLabel, reader);
+        rs.updateNClob(columnLabel, reader, length);
+    }
+
+    @Override
+    public void updateNCharacterStream(int columnIndex, Reader x) throws SQLException {
+        trace.addParam(columnIndex, x);
+        rs.updateNCharacterStream(columnIndex, x);
+    }
+
+    @Override
+    public void updateNCharacterStream(String columnLabel, Reader reader) throws SQLException {
+        trace.addParam(columnLabel, reader);
+        rs.updateNCharacterStream(columnLabel, reader);
+    }
+
+    @Override
+    public void updateAsciiStream(int columnIndex, InputStream x) throws SQLException {
+        trace.addParam(columnIndex, x);
+        rs.updateAsciiStream(columnIndex, x);
+    }
+
+    @Override
+    public void updateBinaryStream(int columnIndex, InputStream x) throws SQLException {
+        trace.addParam(columnIndex, x);
+        rs.updateBinaryStream(columnIndex, x);
+    }
+
+    @Override
+    public void updateCharacterStream(int columnIndex, Reader x) throws SQLException {
+        trace.addParam(columnIndex, x);
+        rs.updateCharacterStream(columnIndex, x);
+    }
+
+    @Override
+    public void updateAsciiStream(String columnLabel, InputStream x) throws SQLException {
+        trace.addParam(columnLabel, x);
+        rs.updateAsciiStream(columnLabel, x);
+    }
+
+    @Override
+    public void updateBinaryStream(String columnLabel, InputStream x) throws SQLException {
+        trace.addParam(columnLabel, x);
+        rs.updateBinaryStream(columnLabel, x);
+    }
+
+    @Override
+    public void updateCharacterStream(String columnLabel, Reader reader) throws SQLException {
+        trace.addParam(columnLabel, reader);
+        rs.updateCharacterStream(columnLabel, reader);
+    }
+
+    @Override
+    public void updateBlob(int columnIndex, InputStream inputStream) throws SQLException {
+        trace.addParam(columnIndex, inputStream);
+        rs.updateBlob(columnIndex, inputStream);
+    }
+
+    @Override
+    public void updateBlob(String columnLabel, InputStream inputStream) throws SQLException {
+        trace.addParam(columnLabel, inputStream);
+        rs.updateBlob(columnLabel, inputStream);
+    }
+
+    @Override
+    public void updateClob(int columnIndex, Reader reader) throws SQLException {
+        trace.addParam(columnIndex, reader);
+        rs.updateClob(columnIndex, reader);
+    }
+
+    @Override
+    public void updateClob(String columnLabel, Reader reader) throws SQLException {
+        trace.addParam(columnLabel, reader);
+        rs.updateClob(columnLabel, reader);
+    }
+
+    @Override
+    public void updateNClob(int columnIndex, Reader reader) throws SQLException {
+        trace.addParam(columnIndex, reader);
+        rs.updateNClob(columnIndex, reader);
+    }
+
+    @Override
+    public void updateNClob(String columnLabel, Reader reader) throws SQLException {
+        trace.addParam(columnLabel, reader);
+        rs.updateNClob(columnLabel, reader);
+    }
+
+    @Override
+    public <T> T getObject(int columnIndex, Class<T> type) throws SQLException {
+        T value = rs.getObject(columnIndex, type);
+        trace.addParam(columnIndex, value);
+        return value;
+    }
+
+    @Override
+    public <T> T getObject(String columnLabel, Class<T> type) throws SQLException {
+        T value = rs.getObject(columnLabel, type);
+        trace.addParam(columnLabel, value);
+        return value;
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return rs.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return rs.isWrapperFor(iface);
     }
 }
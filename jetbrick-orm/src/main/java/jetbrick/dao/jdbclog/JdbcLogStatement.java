@@ -18,56 +18,339 @@
  */
 package jetbrick.dao.jdbclog;
 
-import java.lang.reflect.*;
-import java.sql.ResultSet;
-import java.sql.Statement;
+import java.sql.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Statement Wrapper to add logging
  */
-public final class JdbcLogStatement extends JdbcLogSupport implements InvocationHandler {
+public class JdbcLogStatement implements Statement {
     private static final Logger log = LoggerFactory.getLogger(JdbcLogStatement.class);
     private final Statement statement;
+    protected final JdbcLogTrace trace;
 
     /**
      * Creates a logging version of a Statement
      *
      * @param stmt  - the statement
-     * @return - the proxy
+     * @return - the statement with logging (or the original statement if logging is disabled)
      */
     public static Statement getInstance(Statement stmt) {
-        InvocationHandler handler = new JdbcLogStatement(stmt);
-        ClassLoader cl = Statement.class.getClassLoader();
-        return (Statement) Proxy.newProxyInstance(cl, new Class[] { Statement.class }, handler);
+        if (!JdbcLogSupport.isActive(log)) {
+            return stmt;
+        }
+        return new JdbcLogStatement(stmt, new JdbcLogTrace(log, "Statement", JdbcLogSupport.sample(log)));
     }
 
-    private JdbcLogStatement(Statement stmt) {
+    JdbcLogStatement(Statement stmt, JdbcLogTrace trace) {
         this.statement = stmt;
+        this.trace = trace;
+    }
+
+    /**
+     * PreparedStatement 的 SQL (Statement 返回 null).
+     */
+    protected String getSql() {
+        return null;
+    }
+
+    protected ResultSet wrap(ResultSet rs) {
+        SqlStatistics statistics = trace.getStatistics();
+        if (rs != null && (trace.isSampled() || statistics != null)) {
+            return new JdbcLogResultSet(rs, trace.isSampled(), statistics);
+        }
+        return rs;
+    }
+
+    @Override
+    public ResultSet executeQuery(String sql) throws SQLException {
+        long start = trace.begin(sql);
+        try {
+            return wrap(statement.executeQuery(sql));
+        } catch (SQLException e) {
+            throw trace.error("executeQuery", sql, e);
+        } finally {
+            trace.end("executeQuery", sql, start);
+        }
+    }
+
+    @Override
+    public int executeUpdate(String sql) throws SQLException {
+        long start = trace.begin(sql);
+        try {
+            return trace.rows(statement.executeUpdate(sql));
+        } catch (SQLException e) {
+            throw trace.error("executeUpdate", sql, e);
+        } finally {
+            trace.end("executeUpdate", sql, start);
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        statement.close();
+    }
+
+    @Override
+    public int getMaxFieldSize() throws SQLException {
+        return statement.getMaxFieldSize();
+    }
+
+    @Override
+    public void setMaxFieldSize(int max) throws SQLException {
+        statement.setMaxFieldSize(max);
+    }
+
+    @Override
+    public int getMaxRows() throws SQLException {
+        return statement.getMaxRows();
+    }
+
+    @Override
+    public void setMaxRows(int max) throws SQLException {
+        statement.setMaxRows(max);
+    }
+
+    @Override
+    public void setEscapeProcessing(boolean enable) throws SQLException {
+        statement.setEscapeProcessing(enable);
+    }
+
+    @Override
+    public int getQueryTimeout() throws SQLException {
+        return statement.getQueryTimeout();
     }
 
     @Override
-    public Object invoke(Object proxy, Method method, Object[] params) throws Throwable {
+    public void setQueryTimeout(int seconds) throws SQLException {
+        statement.setQueryTimeout(seconds);
+    }
+
+    @Override
+    public void cancel() throws SQLException {
+        statement.cancel();
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        return statement.getWarnings();
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+        statement.clearWarnings();
+    }
+
+    @Override
+    public void setCursorName(String name) throws SQLException {
+        statement.setCursorName(name);
+    }
+
+    @Override
+    public boolean execute(String sql) throws SQLException {
+        long start = trace.begin(sql);
         try {
-            String methodName = method.getName();
-            if (EXECUTE_METHODS.contains(methodName)) {
-                if (log.isDebugEnabled()) {
-                    String sql = formatSql((String) params[0]);
-                    log.debug("#{} Statement.{}(): {}", id, methodName, sql);
-                }
-            } else if (RESULTSET_METHODS.contains(methodName)) {
-                Object value = method.invoke(statement, params);
-                if (value != null && value instanceof ResultSet) {
-                    value = JdbcLogResultSet.getInstance((ResultSet) value);
-                }
-                return value;
-            }
-
-            return method.invoke(statement, params);
-        } catch (Exception e) {
-            log.error("#{} <ERROR> in {}", id, toString(method, params));
-            throw unwrapThrowable(e);
+            return statement.execute(sql);
+        } catch (SQLException e) {
+            throw trace.error("execute", sql, e);
+        } finally {
+            trace.end("execute", sql, start);
         }
     }
+
+    @Override
+    public ResultSet getResultSet() throws SQLException {
+        return wrap(statement.getResultSet());
+    }
+
+    @Override
+    public int getUpdateCount() throws SQLException {
+        return statement.getUpdateCount();
+    }
+
+    @Override
+    public boolean getMoreResults() throws SQLException {
+        return statement.getMoreResults();
+    }
+
+    @Override
+    public void setFetchDirection(int direction) throws SQLException {
+        statement.setFetchDirection(direction);
+    }
+
+    @Override
+    public int getFetchDirection() throws SQLException {
+        return statement.getFetchDirection();
+    }
+
+    @Override
+    public void setFetchSize(int rows) throws SQLException {
+        statement.setFetchSize(rows);
+    }
+
+    @Override
+    public int getFetchSize() throws SQLException {
+        return statement.getFetchSize();
+    }
+
+    @Override
+    public int getResultSetConcurrency() throws SQLException {
+        return statement.getResultSetConcurrency();
+    }
+
+    @Override
+    public int getResultSetType() throws SQLException {
+        return statement.getResultSetType();
+    }
+
+    @Override
+    public void addBatch(String sql) throws SQLException {
+        statement.addBatch(sql);
+        trace.batch("addBatch", sql);
+    }
+
+    @Override
+    public void clearBatch() throws SQLException {
+        statement.clearBatch();
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException {
+        long start = trace.begin(getSql());
+        try {
+            return trace.rows(statement.executeBatch());
+        } catch (SQLException e) {
+            throw trace.error("executeBatch", getSql(), e);
+        } finally {
+            trace.end("executeBatch", getSql(), start);
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return statement.getConnection();
+    }
+
+    @Override
+    public boolean getMoreResults(int current) throws SQLException {
+        return statement.getMoreResults(current);
+    }
+
+    @Override
+    public ResultSet getGeneratedKeys() throws SQLException {
+        return statement.getGeneratedKeys();
+    }
+
+    @Override
+    public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+        long start = trace.begin(sql);
+        try {
+            return trace.rows(statement.executeUpdate(sql, autoGeneratedKeys));
+        } catch (SQLException e) {
+            throw trace.error("executeUpdate", sql, e);
+        } finally {
+            trace.end("executeUpdate", sql, start);
+        }
+    }
+
+    @Override
+    public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
+        long start = trace.begin(sql);
+        try {
+            return trace.rows(statement.executeUpdate(sql, columnIndexes));
+        } catch (SQLException e) {
+            throw trace.error("executeUpdate", sql, e);
+        } finally {
+            trace.end("executeUpdate", sql, start);
+        }
+    }
+
+    @Override
+    public int executeUpdate(String sql, String[] columnNames) throws SQLException {
+        long start = trace.begin(sql);
+        try {
+            return trace.rows(statement.executeUpdate(sql, columnNames));
+        } catch (SQLException e) {
+            throw trace.error("executeUpdate", sql, e);
+        } finally {
+            trace.end("executeUpdate", sql, start);
+        }
+    }
+
+    @Override
+    public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
+        long start = trace.begin(sql);
+        try {
+            return statement.execute(sql, autoGeneratedKeys);
+        } catch (SQLException e) {
+            throw trace.error("execute", sql, e);
+        } finally {
+            trace.end("execute", sql, start);
+        }
+    }
+
+    @Override
+    public boolean execute(String sql, int[] columnIndexes) throws SQLException {
+        long start = trace.begin(sql);
+        try {
+            return statement.execute(sql, columnIndexes);
+        } catch (SQLException e) {
+            throw trace.error("execute", sql, e);
+        } finally {
+            trace.end("execute", sql, start);
+        }
+    }
+
+    @Override
+    public boolean execute(String sql, String[] columnNames) throws SQLException {
+        long start = trace.begin(sql);
+        try {
+            return statement.execute(sql, columnNames);
+        } catch (SQLException e) {
+            throw trace.error("execute", sql, e);
+        } finally {
+            trace.end("execute", sql, start);
+        }
+    }
+
+    @Override
+    public int getResultSetHoldability() throws SQLException {
+        return statement.getResultSetHoldability();
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return statement.isClosed();
+    }
+
+    @Override
+    public void setPoolable(boolean poolable) throws SQLException {
+        statement.setPoolable(poolable);
+    }
+
+    @Override
+    public boolean isPoolable() throws SQLException {
+        return statement.isPoolable();
+    }
+
+    @Override
+    public void closeOnCompletion() throws SQLException {
+        statement.closeOnCompletion();
+    }
+
+    @Override
+    public boolean isCloseOnCompletion() throws SQLException {
+        return statement.isCloseOnCompletion();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return statement.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return statement.isWrapperFor(iface);
+    }
 }
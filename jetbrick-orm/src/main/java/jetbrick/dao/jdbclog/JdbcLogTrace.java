@@ -0,0 +1,170 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.jdbclog;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.slf4j.Logger;
+
+/**
+ * 一个 Statement/ResultSet 的日志状态：参数只有在需要输出 debug 日志，或者启用了慢查询日志的时候才会记录
+ * (用于 &lt;SLOW&gt; 和 &lt;ERROR&gt; 日志).
+ */
+final class JdbcLogTrace {
+    private final Logger log;
+    private final String type;
+    private final int id = JdbcLogSupport.nextId();
+    private final boolean statement; // Statement 会输出 <SLOW>/<ERROR> 日志 (ResultSet 不会)
+    private boolean sampled;
+    private List<Object> names;
+    private List<Object> values;
+    private String lastSql;
+    private SqlStatistics statistics;
+    private long rows;
+    private boolean failed;
+
+    JdbcLogTrace(Logger log, String type, boolean sampled) {
+        this.log = log;
+        this.type = type;
+        this.statement = !"ResultSet".equals(type);
+        this.sampled = sampled;
+
+        if (sampled) {
+            log.debug("#{} {}.Create()", id, type);
+        }
+    }
+
+    boolean isSampled() {
+        return sampled;
+    }
+
+    void addParam(Object name, Object value) {
+        if (sampled || (statement && JdbcLogSupport.getSlowQueryMillis() > 0)) {
+            if (names == null) {
+                names = new ArrayList<Object>();
+                values = new ArrayList<Object>();
+            }
+            names.add(name);
+            values.add(value);
+        }
+    }
+
+    /**
+     * 当前 SQL 的统计对象 (没有启用统计的时候为 null).
+     */
+    SqlStatistics getStatistics() {
+        return statistics;
+    }
+
+    long begin(String sql) {
+        if (sql != lastSql) {
+            lastSql = sql;
+            statistics = JdbcStatistics.getInstance().lookup(sql);
+        }
+        rows = 0;
+        failed = false;
+        return (sampled || statistics != null || JdbcLogSupport.getSlowQueryMillis() > 0) ? System.nanoTime() : 0;
+    }
+
+    int rows(int count) {
+        rows = count;
+        return count;
+    }
+
+    int[] rows(int[] counts) {
+        for (int count : counts) {
+            if (count > 0) {
+                rows += count;
+            }
+        }
+        return counts;
+    }
+
+    void end(String method, String sql, long start) {
+        if (start != 0) {
+            long nanos = System.nanoTime() - start;
+            if (statistics != null) {
+                statistics.addExecute(nanos, rows, failed);
+            }
+            long millis = nanos / 1000000;
+            long slowQueryMillis = JdbcLogSupport.getSlowQueryMillis();
+            if (slowQueryMillis > 0 && millis >= slowQueryMillis) {
+                log.warn("#{} <SLOW> {}.{}(): {} ms, {}, Parameters: {}", id, type, method, millis, JdbcLogSupport.formatSql(sql), getValues());
+            } else if (sampled) {
+                log.debug("#{} {}.{}(): {} ({} ms)", id, type, method, JdbcLogSupport.formatSql(sql), millis);
+                flushParams();
+            }
+        }
+        clear();
+        sampled = JdbcLogSupport.sample(log);
+    }
+
+    SQLException error(String method, String sql, SQLException e) {
+        failed = true;
+        log.error("#{} <ERROR> in {}.{}(): {}, Parameters: {}", id, type, method, JdbcLogSupport.formatSql(sql), getValues());
+        return e;
+    }
+
+    /**
+     * addBatch: 只输出日志，不统计.
+     */
+    void batch(String method, String sql) {
+        if (sampled) {
+            log.debug("#{} {}.{}(): {}", id, type, method, JdbcLogSupport.formatSql(sql));
+            flushParams();
+        }
+        clear();
+        sampled = JdbcLogSupport.sample(log);
+    }
+
+    /**
+     * 输出记录的参数 (ResultSet 读取/更新的字段).
+     */
+    void flush(String method) {
+        if (sampled && names != null && !names.isEmpty()) {
+            log.debug("#{} {}.{}(): {}", id, type, method, names);
+            flushParams();
+        }
+        clear();
+    }
+
+    private List<Object> getValues() {
+        return (values == null) ? Collections.emptyList() : values;
+    }
+
+    private void flushParams() {
+        if (values != null && !values.isEmpty()) {
+            List<String> types = new ArrayList<String>(values.size());
+            for (Object value : values) {
+                types.add((value == null) ? "null" : value.getClass().getName());
+            }
+            log.debug("#{} Parameters: {}", id, values);
+            log.debug("#{} Types: {}", id, types);
+        }
+    }
+
+    private void clear() {
+        if (names != null) {
+            names.clear();
+            values.clear();
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.jdbclog;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import jetbrick.collections.ConcurrentLruCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 按 SQL 汇总的统计信息 (通过 JdbcLogDriver 执行的所有 SQL).
+ *
+ * <p>
+ * SQL 中的常量 (字符串、数字) 会被替换成 ?，in (?, ?, ...) 会被合并成 in (?)，多行的 values (?, ?), (?, ?) 会被合并成一行，
+ * 所以同一类 SQL 只统计一次。
+ * 最多统计 jetbrick.jdbclog.stats.max.size (默认 500) 条 SQL，超过之后统计到 "&lt;others&gt;" 中。
+ * 默认不统计，设置 jetbrick.jdbclog.stats.enabled=true 或者调用 {@link #setEnabled(boolean)} 开启统计，
+ * 开启的时候才会注册 JMX (jetbrick.dao.jdbclog:type=JdbcStatistics)。
+ * </p>
+ */
+public final class JdbcStatistics implements JdbcStatisticsMBean {
+    private static final Logger log = LoggerFactory.getLogger(JdbcStatistics.class);
+    private static final String OTHERS_SQL = "<others>";
+    private static final int MAX_SIZE = Integer.getInteger("jetbrick.jdbclog.stats.max.size", 500);
+    private static final Pattern whitespace_pattern = Pattern.compile("\\s+");
+    private static final Pattern comma_pattern = Pattern.compile("\\s*,\\s*");
+    private static final Pattern in_list_pattern = Pattern.compile("\\bin\\s*\\(\\s*\\?(\\s*,\\s*\\?)*\\s*\\)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern values_list_pattern = Pattern.compile("(\\((\\s*\\?\\s*,)*\\s*\\?\\s*\\))(\\s*,\\s*\\1)+");
+    private static final JdbcStatistics instance = new JdbcStatistics();
+
+    private final ConcurrentMap<String, SqlStatistics> statistics = new ConcurrentHashMap<String, SqlStatistics>();
+    private final ConcurrentLruCache<String, SqlStatistics> sqlCache = new ConcurrentLruCache<String, SqlStatistics>(1024);
+    private volatile SqlStatistics others = new SqlStatistics(OTHERS_SQL);
+    private volatile boolean enabled;
+    private volatile int topN = 20;
+    private boolean registered;
+
+    public static JdbcStatistics getInstance() {
+        return instance;
+    }
+
+    private JdbcStatistics() {
+        if (Boolean.getBoolean("jetbrick.jdbclog.stats.enabled")) {
+            setEnabled(true);
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        if (enabled) {
+            registerMBean();
+        }
+        this.enabled = enabled;
+    }
+
+    // 第一次开启的时候注册 JMX
+    private synchronized void registerMBean() {
+        if (registered) {
+            return;
+        }
+        registered = true;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("jetbrick.dao.jdbclog:type=JdbcStatistics");
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (Exception e) {
+            log.warn("Can't register JdbcStatistics MBean.", e);
+        }
+    }
+
+    @Override
+    public int getSqlCount() {
+        return statistics.size();
+    }
+
+    @Override
+    public int getTopN() {
+        return topN;
+    }
+
+    @Override
+    public void setTopN(int topN) {
+        this.topN = topN;
+    }
+
+    @Override
+    public String[] getTopStatements() {
+        List<SqlStatistics> list = getTopStatistics(topN);
+        String[] lines = new String[list.size()];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = list.get(i).toString();
+        }
+        return lines;
+    }
+
+    @Override
+    public void reset() {
+        statistics.clear();
+        sqlCache.clear();
+        others = new SqlStatistics(OTHERS_SQL);
+    }
+
+    /**
+     * 返回所有 SQL 的统计信息的快照 (按总耗时倒序).
+     */
+    public List<SqlStatistics> getSnapshot() {
+        return getTopStatistics(Integer.MAX_VALUE);
+    }
+
+    /**
+     * 返回总耗时最多的 n 条 SQL 的统计信息的快照.
+     */
+    public List<SqlStatistics> getTopStatistics(int n) {
+        List<SqlStatistics> list = new ArrayList<SqlStatistics>(statistics.size() + 1);
+        for (SqlStatistics s : statistics.values()) {
+            list.add(s.copy());
+        }
+        if (others.getCalls() > 0) {
+            list.add(others.copy());
+        }
+        Collections.sort(list, new Comparator<SqlStatistics>() {
+            @Override
+            public int compare(SqlStatistics a, SqlStatistics b) {
+                long x = a.getTotalNanos();
+                long y = b.getTotalNanos();
+                return (x < y) ? 1 : ((x == y) ? 0 : -1);
+            }
+        });
+        return (list.size() > n) ? list.subList(0, n) : list;
+    }
+
+    /**
+     * 获取 sql 对应的统计对象，没有启用的时候返回 null.
+     */
+    SqlStatistics lookup(String sql) {
+        if (!enabled || sql == null) {
+            return null;
+        }
+        SqlStatistics s = sqlCache.get(sql);
+        if (s == null) {
+            String key = normalize(sql);
+            s = statistics.get(key);
+            if (s == null) {
+                if (statistics.size() >= MAX_SIZE) {
+                    s = others;
+                } else {
+                    SqlStatistics created = new SqlStatistics(key);
+                    s = statistics.putIfAbsent(key, created);
+                    if (s == null) {
+                        s = created;
+                    }
+                }
+            }
+            sqlCache.put(sql, s);
+        }
+        return s;
+    }
+
+    /**
+     * 将 SQL 中的常量替换成 ?，并且合并 in (?, ?, ...).
+     */
+    static String normalize(String sql) {
+        int length = sql.length();
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                // 字符串常量 ('' 表示转义的引号)
+                int j = i + 1;
+                while (j < length) {
+                    if (sql.charAt(j) == '\'') {
+                        if (j + 1 < length && sql.charAt(j + 1) == '\'') {
+                            j += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    j++;
+                }
+                sb.append('?');
+                i = j;
+            } else if (Character.isDigit(c) && (i == 0 || !Character.isJavaIdentifierPart(sql.charAt(i - 1)))) {
+                int j = i + 1;
+                while (j < length && (Character.isDigit(sql.charAt(j)) || sql.charAt(j) == '.')) {
+                    j++;
+                }
+                sb.append('?');
+                i = j - 1;
+            } else {
+                sb.append(c);
+            }
+        }
+        String result = whitespace_pattern.matcher(sb).replaceAll(" ").trim();
+        result = comma_pattern.matcher(result).replaceAll(", ");
+        result = in_list_pattern.matcher(result).replaceAll("in (?)");
+        result = values_list_pattern.matcher(result).replaceAll("$1");
+        return result;
+    }
+}
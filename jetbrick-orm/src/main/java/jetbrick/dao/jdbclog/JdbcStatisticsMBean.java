@@ -0,0 +1,45 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.jdbclog;
+
+/**
+ * JMX 接口: jetbrick.dao.jdbclog:type=JdbcStatistics
+ */
+public interface JdbcStatisticsMBean {
+
+    public boolean isEnabled();
+
+    public void setEnabled(boolean enabled);
+
+    /**
+     * 已经统计的 SQL 个数.
+     */
+    public int getSqlCount();
+
+    public int getTopN();
+
+    public void setTopN(int topN);
+
+    /**
+     * 按总耗时排序的前 N 条 SQL.
+     */
+    public String[] getTopStatements();
+
+    public void reset();
+}
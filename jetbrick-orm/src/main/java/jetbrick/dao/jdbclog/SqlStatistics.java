@@ -0,0 +1,216 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.jdbclog;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 一条 (规范化之后的) SQL 的统计信息：调用次数、影响/读取的行数、错误次数，以及执行和读取结果集的耗时分布.
+ *
+ * <p>
+ * 所有的计数器都是无锁的，{@link #copy()} 返回一个快照。
+ * </p>
+ */
+public final class SqlStatistics {
+    /**
+     * 耗时分布的每个区间的上限 (毫秒)，最后一个区间为大于 5000ms.
+     */
+    public static final long[] BUCKET_MILLIS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000 };
+    private static final long[] BUCKET_NANOS = new long[BUCKET_MILLIS.length];
+
+    static {
+        for (int i = 0; i < BUCKET_MILLIS.length; i++) {
+            BUCKET_NANOS[i] = BUCKET_MILLIS[i] * 1000000L;
+        }
+    }
+
+    private final String sql;
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong executeNanos = new AtomicLong();
+    private final AtomicLong maxExecuteNanos = new AtomicLong();
+    private final AtomicLongArray executeHistogram = new AtomicLongArray(BUCKET_MILLIS.length + 1);
+    private final AtomicLong fetches = new AtomicLong();
+    private final AtomicLong fetchRows = new AtomicLong();
+    private final AtomicLong fetchNanos = new AtomicLong();
+    private final AtomicLongArray fetchHistogram = new AtomicLongArray(BUCKET_MILLIS.length + 1);
+
+    SqlStatistics(String sql) {
+        this.sql = sql;
+    }
+
+    void addExecute(long nanos, long affectedRows, boolean failed) {
+        calls.incrementAndGet();
+        if (failed) {
+            errors.incrementAndGet();
+        }
+        if (affectedRows > 0) {
+            rows.addAndGet(affectedRows);
+        }
+        executeNanos.addAndGet(nanos);
+        executeHistogram.incrementAndGet(bucket(nanos));
+
+        long max = maxExecuteNanos.get();
+        while (nanos > max && !maxExecuteNanos.compareAndSet(max, nanos)) {
+            max = maxExecuteNanos.get();
+        }
+    }
+
+    void addFetch(long nanos, long fetchedRows) {
+        fetches.incrementAndGet();
+        fetchRows.addAndGet(fetchedRows);
+        fetchNanos.addAndGet(nanos);
+        fetchHistogram.incrementAndGet(bucket(nanos));
+    }
+
+    private static int bucket(long nanos) {
+        for (int i = 0; i < BUCKET_NANOS.length; i++) {
+            if (nanos <= BUCKET_NANOS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_NANOS.length;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * executeUpdate/executeBatch 影响的行数.
+     */
+    public long getRows() {
+        return rows.get();
+    }
+
+    public long getExecuteNanos() {
+        return executeNanos.get();
+    }
+
+    public long getMaxExecuteNanos() {
+        return maxExecuteNanos.get();
+    }
+
+    public long[] getExecuteHistogram() {
+        return toArray(executeHistogram);
+    }
+
+    /**
+     * 读取完 (或者关闭) 的结果集的个数.
+     */
+    public long getFetches() {
+        return fetches.get();
+    }
+
+    public long getFetchRows() {
+        return fetchRows.get();
+    }
+
+    public long getFetchNanos() {
+        return fetchNanos.get();
+    }
+
+    public long[] getFetchHistogram() {
+        return toArray(fetchHistogram);
+    }
+
+    /**
+     * 总耗时 (执行 + 读取结果集).
+     */
+    public long getTotalNanos() {
+        return executeNanos.get() + fetchNanos.get();
+    }
+
+    /**
+     * 根据耗时分布估算执行时间的百分位数 (返回区间的上限，毫秒)，超过最大区间返回 -1.
+     */
+    public long getExecutePercentileMillis(double percentile) {
+        long[] histogram = getExecuteHistogram();
+        long total = 0;
+        for (long count : histogram) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long threshold = (long) Math.ceil(total * percentile / 100);
+        long count = 0;
+        for (int i = 0; i < BUCKET_MILLIS.length; i++) {
+            count += histogram[i];
+            if (count >= threshold) {
+                return BUCKET_MILLIS[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 返回当前统计信息的快照.
+     */
+    public SqlStatistics copy() {
+        SqlStatistics s = new SqlStatistics(sql);
+        s.calls.set(calls.get());
+        s.errors.set(errors.get());
+        s.rows.set(rows.get());
+        s.executeNanos.set(executeNanos.get());
+        s.maxExecuteNanos.set(maxExecuteNanos.get());
+        s.fetches.set(fetches.get());
+        s.fetchRows.set(fetchRows.get());
+        s.fetchNanos.set(fetchNanos.get());
+        for (int i = 0; i <= BUCKET_MILLIS.length; i++) {
+            s.executeHistogram.set(i, executeHistogram.get(i));
+            s.fetchHistogram.set(i, fetchHistogram.get(i));
+        }
+        return s;
+    }
+
+    private static long[] toArray(AtomicLongArray array) {
+        long[] values = new long[array.length()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = array.get(i);
+        }
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        long calls = getCalls();
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("total=").append(getTotalNanos() / 1000000).append("ms");
+        sb.append(", calls=").append(calls);
+        sb.append(", avg=").append(calls == 0 ? 0 : getExecuteNanos() / calls / 1000).append("us");
+        sb.append(", p95<=").append(getExecutePercentileMillis(95)).append("ms");
+        sb.append(", max=").append(getMaxExecuteNanos() / 1000000).append("ms");
+        sb.append(", rows=").append(getRows());
+        sb.append(", fetchRows=").append(getFetchRows());
+        sb.append(", errors=").append(getErrors());
+        sb.append(", sql=").append(sql);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,34 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm;
+
+/**
+ * 批量执行的时候，每个批次 (chunk) 执行完毕之后的回调，用于统计吞吐量.
+ */
+public interface BatchListener {
+
+    /**
+     * @param chunkIndex 第几个批次 (从 0 开始)
+     * @param rows 本批次的行数
+     * @param affectedRows 本批次影响的行数
+     * @param elapsedNanos 本批次执行的时间 (包括参数绑定和提交)
+     */
+    public void afterChunk(int chunkIndex, int rows, int affectedRows, long elapsedNanos);
+
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm;
+
+/**
+ * 批量执行 (executeBatch) 的参数.
+ */
+public class BatchOptions {
+    private int chunkSize = 1000;
+    private boolean commitPerChunk;
+    private boolean multiValuesInsert;
+    private BatchListener listener;
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * 每个批次 (chunk) 的行数，默认 1000.
+     */
+    public BatchOptions setChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be > 0");
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    public boolean isCommitPerChunk() {
+        return commitPerChunk;
+    }
+
+    /**
+     * 每个批次执行完毕之后提交一次 (在事务中执行的时候忽略，由事务统一提交).
+     */
+    public BatchOptions setCommitPerChunk(boolean commitPerChunk) {
+        this.commitPerChunk = commitPerChunk;
+        return this;
+    }
+
+    public boolean isMultiValuesInsert() {
+        return multiValuesInsert;
+    }
+
+    /**
+     * 对于 insert into ... values (...) 语句，如果数据库支持，改写成一条多行插入的 SQL (insert ... values (...), (...)).
+     */
+    public BatchOptions setMultiValuesInsert(boolean multiValuesInsert) {
+        this.multiValuesInsert = multiValuesInsert;
+        return this;
+    }
+
+    public BatchListener getListener() {
+        return listener;
+    }
+
+    public BatchOptions setListener(BatchListener listener) {
+        this.listener = listener;
+        return this;
+    }
+}
@@ -0,0 +1,317 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm;
+
+import java.sql.*;
+import java.util.*;
+import jetbrick.dao.dialect.SqlDialect;
+import jetbrick.dao.orm.utils.*;
+import jetbrick.lang.IdentifiedNameUtils;
+import jetbrick.reflect.KlassInfo;
+import jetbrick.reflect.PropertyInfo;
+
+/**
+ * 分批次执行批量 insert/update.
+ *
+ * <p>
+ * 每一行参数可以是 Object[] (按照位置绑定)，Map 或者 Bean (按照 :name 绑定)。
+ * Bean 的属性在第一次遇到这个 Class 的时候解析，之后直接调用 getter (参数名不是属性名的时候，
+ * 按照字段名转换为属性名，如: user_id -&gt; userId)。
+ * </p>
+ */
+final class BatchUpdater {
+    private final Connection conn;
+    private final SqlDialect dialect;
+    private final BatchOptions options;
+    private final boolean commitPerChunk;
+
+    private final SqlTemplate template;
+    private Class<?> beanClass; // 上一次解析的 Bean
+    private PropertyInfo[] beanProperties;
+
+    public BatchUpdater(Connection conn, SqlDialect dialect, BatchOptions options, boolean commitPerChunk, String sql) {
+        this.conn = conn;
+        this.dialect = dialect;
+        this.options = options;
+        this.commitPerChunk = commitPerChunk;
+        this.template = SqlTemplate.parse(sql);
+    }
+
+    /**
+     * @return 影响的总行数 (驱动返回 SUCCESS_NO_INFO 的按照 1 行计算)
+     */
+    public int execute(List<?> rows) throws SQLException {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+
+        int rowsPerStatement = 1;
+        if (options.isMultiValuesInsert() && dialect.supportsMultiValuesInsert()) {
+            int parameterCount = getParameterCount(rows.get(0));
+            rowsPerStatement = Math.min(options.getChunkSize(), dialect.getMaxMultiValuesRows());
+            if (parameterCount > 0) {
+                rowsPerStatement = Math.min(rowsPerStatement, dialect.getMaxParametersPerStatement() / parameterCount);
+            }
+        }
+        if (rowsPerStatement > 1) {
+            MultiRowSql multiRowSql = new MultiRowSql() {
+                @Override
+                public String build(int rows) {
+                    return dialect.sql_insert_multi_values(template.getParsedSql(), rows);
+                }
+            };
+            String sql = multiRowSql.build(rowsPerStatement);
+            if (sql != null) {
+                return executeMultiRows(rows, multiRowSql, sql, rowsPerStatement);
+            }
+        }
+        return executeJdbcBatch(rows);
+    }
+
+    /**
+     * 批量 upsert，每个 chunk 是一条多行的 upsert SQL (参考 {@link SqlDialect#sql_upsert(String, String[], String[], int)}).
+     * 这时候 sql 中的参数名就是字段名。
+     */
+    public int executeUpsert(List<?> rows, final String table, final String[] columns, final String[] keyColumns) throws SQLException {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        // merge 语句中同一个 key 不能出现多次 (Oracle: ORA-30926)，所以先去重 (相同 key 的以最后一行为准)
+        rows = removeDuplicateKeys(rows, columns, keyColumns);
+
+        int rowsPerStatement = Math.min(options.getChunkSize(), dialect.getMaxMultiValuesRows());
+        rowsPerStatement = Math.max(1, Math.min(rowsPerStatement, dialect.getMaxParametersPerStatement() / columns.length));
+        rowsPerStatement = Math.min(rowsPerStatement, rows.size());
+
+        MultiRowSql multiRowSql = new MultiRowSql() {
+            @Override
+            public String build(int rows) {
+                return dialect.sql_upsert(table, columns, keyColumns, rows);
+            }
+        };
+        String sql = multiRowSql.build(rowsPerStatement);
+        if (sql == null) {
+            throw new SQLFeatureNotSupportedException("upsert is not supported by " + dialect.getName());
+        }
+        return executeMultiRows(rows, multiRowSql, sql, rowsPerStatement);
+    }
+
+    private List<?> removeDuplicateKeys(List<?> rows, String[] columns, String[] keyColumns) {
+        int[] keyIndexes = new int[keyColumns.length];
+        for (int i = 0; i < keyColumns.length; i++) {
+            keyIndexes[i] = -1;
+            for (int j = 0; j < columns.length; j++) {
+                if (columns[j].equalsIgnoreCase(keyColumns[i])) {
+                    keyIndexes[i] = j;
+                    break;
+                }
+            }
+            if (keyIndexes[i] < 0) {
+                throw new IllegalArgumentException("keyColumn is not in columns: " + keyColumns[i]);
+            }
+        }
+
+        // 从后往前扫描，保留每个 key 的最后一行
+        int size = rows.size();
+        Set<Object> keys = new HashSet<Object>(size * 2);
+        boolean[] duplicated = null;
+        for (int i = size - 1; i >= 0; i--) {
+            Object row = rows.get(i);
+            Object key;
+            if (keyIndexes.length == 1) {
+                key = getValue(row, keyIndexes[0]);
+            } else {
+                Object[] values = new Object[keyIndexes.length];
+                for (int j = 0; j < keyIndexes.length; j++) {
+                    values[j] = getValue(row, keyIndexes[j]);
+                }
+                key = Arrays.asList(values);
+            }
+            if (!keys.add(key)) {
+                if (duplicated == null) {
+                    duplicated = new boolean[size];
+                }
+                duplicated[i] = true;
+            }
+        }
+        if (duplicated == null) {
+            return rows;
+        }
+
+        List<Object> result = new ArrayList<Object>(keys.size());
+        for (int i = 0; i < size; i++) {
+            if (!duplicated[i]) {
+                result.add(rows.get(i));
+            }
+        }
+        return result;
+    }
+
+    // 获取一行中第 index 个参数的值
+    @SuppressWarnings("unchecked")
+    private Object getValue(Object row, int index) {
+        if (row instanceof Object[]) {
+            return ((Object[]) row)[index];
+        }
+        if (row instanceof Map) {
+            return ((Map<String, ?>) row).get(template.getParameterNames()[index]);
+        }
+        return getBeanProperties(row.getClass())[index].get(row);
+    }
+
+    // 每个 chunk 是一条多行的 SQL，最后一个 chunk 行数不足的时候，单独生成 SQL
+    private int executeMultiRows(List<?> rows, MultiRowSql multiRowSql, String sql, int rowsPerStatement) throws SQLException {
+        int total = 0;
+        int size = rows.size();
+        PreparedStatement ps = null;
+        try {
+            ps = conn.prepareStatement(sql);
+            int chunkIndex = 0;
+            for (int begin = 0; begin < size; begin += rowsPerStatement) {
+                long start = System.nanoTime();
+                int end = Math.min(begin + rowsPerStatement, size);
+                int affected;
+                if (end - begin == rowsPerStatement) {
+                    bindRows(ps, rows, begin, end);
+                    affected = ps.executeUpdate();
+                } else {
+                    String lastSql = multiRowSql.build(end - begin);
+                    PreparedStatement lastPs = conn.prepareStatement(lastSql);
+                    try {
+                        bindRows(lastPs, rows, begin, end);
+                        affected = lastPs.executeUpdate();
+                    } finally {
+                        DbUtils.closeQuietly(lastPs);
+                    }
+                }
+                total += affected;
+                afterChunk(chunkIndex++, end - begin, affected, start);
+            }
+        } finally {
+            DbUtils.closeQuietly(ps);
+        }
+        return total;
+    }
+
+    private int executeJdbcBatch(List<?> rows) throws SQLException {
+        int total = 0;
+        int size = rows.size();
+        int chunkSize = options.getChunkSize();
+        PreparedStatement ps = null;
+        try {
+            ps = conn.prepareStatement(template.getParsedSql());
+            int chunkIndex = 0;
+            for (int begin = 0; begin < size; begin += chunkSize) {
+                long start = System.nanoTime();
+                int end = Math.min(begin + chunkSize, size);
+                for (int i = begin; i < end; i++) {
+                    bindRow(ps, rows.get(i), 0);
+                    ps.addBatch();
+                }
+                int affected = 0;
+                for (int count : ps.executeBatch()) {
+                    affected += (count == Statement.SUCCESS_NO_INFO) ? 1 : count;
+                }
+                ps.clearBatch();
+                total += affected;
+                afterChunk(chunkIndex++, end - begin, affected, start);
+            }
+        } finally {
+            DbUtils.closeQuietly(ps);
+        }
+        return total;
+    }
+
+    private void afterChunk(int chunkIndex, int rows, int affected, long start) throws SQLException {
+        if (commitPerChunk) {
+            conn.commit();
+        }
+        BatchListener listener = options.getListener();
+        if (listener != null) {
+            listener.afterChunk(chunkIndex, rows, affected, System.nanoTime() - start);
+        }
+    }
+
+    private void bindRows(PreparedStatement ps, List<?> rows, int begin, int end) throws SQLException {
+        int offset = 0;
+        for (int i = begin; i < end; i++) {
+            offset += bindRow(ps, rows.get(i), offset);
+        }
+    }
+
+    // 绑定一行参数，返回绑定的参数个数
+    @SuppressWarnings("unchecked")
+    private int bindRow(PreparedStatement ps, Object row, int offset) throws SQLException {
+        if (row instanceof Object[]) {
+            Object[] values = (Object[]) row;
+            for (int i = 0; i < values.length; i++) {
+                PreparedStatementSetter.setValue(ps, offset + i + 1, values[i]);
+            }
+            return values.length;
+        }
+
+        String[] names = template.getParameterNames();
+        if (row instanceof Map) {
+            Map<String, ?> map = (Map<String, ?>) row;
+            for (int i = 0; i < names.length; i++) {
+                PreparedStatementSetter.setValue(ps, offset + i + 1, map.get(names[i]));
+            }
+        } else {
+            PropertyInfo[] properties = getBeanProperties(row.getClass());
+            for (int i = 0; i < names.length; i++) {
+                PreparedStatementSetter.setValue(ps, offset + i + 1, properties[i].get(row));
+            }
+        }
+        return names.length;
+    }
+
+    private int getParameterCount(Object row) {
+        if (row instanceof Object[]) {
+            return ((Object[]) row).length;
+        }
+        return template.getParameterCount();
+    }
+
+    private PropertyInfo[] getBeanProperties(Class<?> clazz) {
+        if (clazz != beanClass) {
+            KlassInfo klass = KlassInfo.create(clazz);
+            String[] names = template.getParameterNames();
+            PropertyInfo[] properties = new PropertyInfo[names.length];
+            for (int i = 0; i < names.length; i++) {
+                PropertyInfo property = klass.getProperty(names[i]);
+                if (property == null) {
+                    // upsert 的参数名是字段名 (如: user_id)，转换为属性名
+                    property = klass.getProperty(IdentifiedNameUtils.toCamelCase(names[i]));
+                }
+                if (property == null || !property.readable()) {
+                    throw new IllegalStateException("Property is not readable: " + clazz.getName() + "." + names[i]);
+                }
+                properties[i] = property;
+            }
+            beanClass = clazz;
+            beanProperties = properties;
+        }
+        return beanProperties;
+    }
+
+    // 生成包含指定行数的 SQL
+    interface MultiRowSql {
+        String build(int rows);
+    }
+}
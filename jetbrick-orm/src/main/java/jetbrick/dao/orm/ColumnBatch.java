@@ -0,0 +1,268 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm;
+
+import java.sql.*;
+import java.util.Arrays;
+
+/**
+ * 按列存储的查询结果 (参考 {@link DbHelper#queryAsColumnBatch(String, Object...)}).
+ *
+ * <p>
+ * 整数列保存在 long[] 中，浮点数列 (REAL/FLOAT/DOUBLE) 保存在 double[] 中 (不装箱)，其他的列保存在 Object[] 中
+ * (DECIMAL/NUMERIC 只有在没有小数位并且 precision &lt;= 18 的时候才保存在 long[] 中，否则为 BigDecimal)。
+ * 每一列有一个 null 的位图，数值列为 null 的时候值为 0。列的下标从 0 开始。
+ * </p>
+ */
+public final class ColumnBatch {
+    public static final int TYPE_LONG = 1;
+    public static final int TYPE_DOUBLE = 2;
+    public static final int TYPE_OBJECT = 3;
+
+    private final String[] labels;
+    private final int[] types;
+    private final long[][] longs;
+    private final double[][] doubles;
+    private final Object[][] objects;
+    private final long[][] nulls; // null 位图
+    private int rows;
+    private int capacity;
+
+    ColumnBatch(String[] labels, int[] types, int capacity) {
+        this.labels = labels;
+        this.types = types;
+        this.longs = new long[types.length][];
+        this.doubles = new double[types.length][];
+        this.objects = new Object[types.length][];
+        this.nulls = new long[types.length][];
+        this.capacity = Math.max(capacity, 16);
+        for (int i = 0; i < types.length; i++) {
+            switch (types[i]) {
+            case TYPE_LONG:
+                longs[i] = new long[this.capacity];
+                break;
+            case TYPE_DOUBLE:
+                doubles[i] = new double[this.capacity];
+                break;
+            default:
+                objects[i] = new Object[this.capacity];
+            }
+            nulls[i] = new long[(this.capacity + 63) >>> 6];
+        }
+    }
+
+    /**
+     * 根据 ResultSetMetaData 创建一个空的 ColumnBatch.
+     */
+    public static ColumnBatch create(ResultSetMetaData rsmd, int capacity) throws SQLException {
+        int cols = rsmd.getColumnCount();
+        String[] labels = new String[cols];
+        int[] types = new int[cols];
+        for (int i = 0; i < cols; i++) {
+            String columnName = rsmd.getColumnLabel(i + 1);
+            if (columnName == null || columnName.length() == 0) {
+                columnName = rsmd.getColumnName(i + 1);
+            }
+            labels[i] = columnName;
+            types[i] = getColumnType(rsmd, i + 1);
+        }
+        return new ColumnBatch(labels, types, capacity);
+    }
+
+    private static int getColumnType(ResultSetMetaData rsmd, int column) throws SQLException {
+        switch (rsmd.getColumnType(column)) {
+        case Types.TINYINT:
+        case Types.SMALLINT:
+        case Types.INTEGER:
+        case Types.BIGINT:
+            return TYPE_LONG;
+        case Types.NUMERIC:
+        case Types.DECIMAL:
+            // 没有小数位，并且不会超过 long 的范围；否则保存为 BigDecimal (不能丢失精度)
+            if (rsmd.getScale(column) == 0 && rsmd.getPrecision(column) > 0 && rsmd.getPrecision(column) <= 18) {
+                return TYPE_LONG;
+            }
+            return TYPE_OBJECT;
+        case Types.REAL:
+        case Types.FLOAT:
+        case Types.DOUBLE:
+            return TYPE_DOUBLE;
+        default:
+            return TYPE_OBJECT;
+        }
+    }
+
+    /**
+     * 读取 ResultSet 的当前行，追加到最后.
+     */
+    public void readRow(ResultSet rs) throws SQLException {
+        if (rows == capacity) {
+            grow();
+        }
+        int row = rows;
+        for (int i = 0; i < types.length; i++) {
+            boolean isNull;
+            switch (types[i]) {
+            case TYPE_LONG:
+                longs[i][row] = rs.getLong(i + 1);
+                isNull = rs.wasNull();
+                break;
+            case TYPE_DOUBLE:
+                doubles[i][row] = rs.getDouble(i + 1);
+                isNull = rs.wasNull();
+                break;
+            default:
+                Object value = rs.getObject(i + 1);
+                objects[i][row] = value;
+                isNull = (value == null);
+            }
+            if (isNull) {
+                nulls[i][row >>> 6] |= 1L << row;
+            }
+        }
+        rows++;
+    }
+
+    private void grow() {
+        int newCapacity = capacity << 1;
+        for (int i = 0; i < types.length; i++) {
+            if (longs[i] != null) {
+                longs[i] = Arrays.copyOf(longs[i], newCapacity);
+            } else if (doubles[i] != null) {
+                doubles[i] = Arrays.copyOf(doubles[i], newCapacity);
+            } else {
+                objects[i] = Arrays.copyOf(objects[i], newCapacity);
+            }
+            nulls[i] = Arrays.copyOf(nulls[i], (newCapacity + 63) >>> 6);
+        }
+        capacity = newCapacity;
+    }
+
+    public int getRowCount() {
+        return rows;
+    }
+
+    public int getColumnCount() {
+        return types.length;
+    }
+
+    public String getColumnLabel(int column) {
+        return labels[column];
+    }
+
+    /**
+     * 根据列名查找列的下标 (不区分大小写)，不存在返回 -1.
+     */
+    public int getColumnIndex(String label) {
+        for (int i = 0; i < labels.length; i++) {
+            if (labels[i].equalsIgnoreCase(label)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 返回列的存储类型: TYPE_LONG, TYPE_DOUBLE, TYPE_OBJECT.
+     */
+    public int getColumnType(int column) {
+        return types[column];
+    }
+
+    public boolean isNull(int column, int row) {
+        checkRow(row);
+        return (nulls[column][row >>> 6] & (1L << row)) != 0;
+    }
+
+    public long getLong(int column, int row) {
+        checkRow(row);
+        switch (types[column]) {
+        case TYPE_LONG:
+            return longs[column][row];
+        case TYPE_DOUBLE:
+            return (long) doubles[column][row];
+        default:
+            Object value = objects[column][row];
+            return (value instanceof Number) ? ((Number) value).longValue() : 0L;
+        }
+    }
+
+    public double getDouble(int column, int row) {
+        checkRow(row);
+        switch (types[column]) {
+        case TYPE_LONG:
+            return longs[column][row];
+        case TYPE_DOUBLE:
+            return doubles[column][row];
+        default:
+            Object value = objects[column][row];
+            return (value instanceof Number) ? ((Number) value).doubleValue() : 0D;
+        }
+    }
+
+    public Object getObject(int column, int row) {
+        if (isNull(column, row)) {
+            return null;
+        }
+        switch (types[column]) {
+        case TYPE_LONG:
+            return longs[column][row];
+        case TYPE_DOUBLE:
+            return doubles[column][row];
+        default:
+            return objects[column][row];
+        }
+    }
+
+    /**
+     * 返回 TYPE_LONG 列的数据 (长度为 rowCount 的副本).
+     */
+    public long[] getLongs(int column) {
+        checkType(column, TYPE_LONG);
+        return Arrays.copyOf(longs[column], rows);
+    }
+
+    /**
+     * 返回 TYPE_DOUBLE 列的数据 (长度为 rowCount 的副本).
+     */
+    public double[] getDoubles(int column) {
+        checkType(column, TYPE_DOUBLE);
+        return Arrays.copyOf(doubles[column], rows);
+    }
+
+    /**
+     * 返回 TYPE_OBJECT 列的数据 (长度为 rowCount 的副本).
+     */
+    public Object[] getObjects(int column) {
+        checkType(column, TYPE_OBJECT);
+        return Arrays.copyOf(objects[column], rows);
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= rows) {
+            throw new IndexOutOfBoundsException("row: " + row + ", rowCount: " + rows);
+        }
+    }
+
+    private void checkType(int column, int type) {
+        if (types[column] != type) {
+            throw new IllegalStateException("Column " + labels[column] + " type is " + types[column] + ", not " + type);
+        }
+    }
+}
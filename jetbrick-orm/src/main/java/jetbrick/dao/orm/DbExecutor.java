@@ -0,0 +1,143 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import jetbrick.lang.Validate;
+
+/**
+ * DbHelper 的异步操作 ({@link DbHelperAsync}) 使用的线程池.
+ *
+ * <p>
+ * 同时执行的数据库操作不超过 maxConcurrency 个 (一般设置为连接池的最大连接数，避免线程阻塞在获取连接上)，
+ * 排队等待的操作不超过 queueCapacity 个，超过的时候拒绝执行 ({@link RejectedExecutionException})。
+ * </p>
+ *
+ * <p>
+ * 如果 JDK 支持虚拟线程 (Java 21+)，那么每个操作使用一个虚拟线程，并发数由信号量控制；
+ * 否则使用固定大小的 daemon 线程池。可以使用 -Djetbrick.orm.async.virtual.disabled 禁用虚拟线程。
+ * </p>
+ */
+public class DbExecutor implements Executor {
+    private static final boolean VIRTUAL_THREAD_DISABLED = System.getProperty("jetbrick.orm.async.virtual.disabled") != null;
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final int maxConcurrency;
+    private final int queueCapacity;
+    private final ExecutorService executor;
+    private final Semaphore semaphore; // 使用虚拟线程的时候控制并发数，否则为 null
+    private final AtomicInteger pending = new AtomicInteger(); // 正在执行和排队的任务数
+
+    public DbExecutor(int maxConcurrency, int queueCapacity) {
+        Validate.isTrue(maxConcurrency > 0, "maxConcurrency must be > 0.");
+        Validate.isTrue(queueCapacity >= 0, "queueCapacity must be >= 0.");
+
+        this.maxConcurrency = maxConcurrency;
+        this.queueCapacity = queueCapacity;
+
+        ExecutorService virtualExecutor = VIRTUAL_THREAD_DISABLED ? null : createVirtualThreadExecutor();
+        if (virtualExecutor != null) {
+            this.executor = virtualExecutor;
+            this.semaphore = new Semaphore(maxConcurrency);
+        } else {
+            this.executor = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "jetbrick-orm-async-" + THREAD_COUNTER.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            ((ThreadPoolExecutor) executor).allowCoreThreadTimeOut(true);
+            this.semaphore = null;
+        }
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * 正在执行和排队等待的任务数.
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    public boolean isVirtualThreads() {
+        return semaphore != null;
+    }
+
+    @Override
+    public void execute(final Runnable task) {
+        Validate.notNull(task, "task is null.");
+
+        if (pending.incrementAndGet() > maxConcurrency + queueCapacity) {
+            pending.decrementAndGet();
+            throw new RejectedExecutionException("Too many pending database operations: " + (maxConcurrency + queueCapacity));
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (semaphore == null) {
+                            task.run();
+                        } else {
+                            semaphore.acquireUninterruptibly();
+                            try {
+                                task.run();
+                            } finally {
+                                semaphore.release();
+                            }
+                        }
+                    } finally {
+                        pending.decrementAndGet();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * 关闭线程池，已经提交的任务会继续执行.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() 在 Java 21 中才有
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -21,7 +21,9 @@ package jetbrick.dao.orm;
 import java.sql.*;
 import java.util.*;
 import java.util.Date;
+import java.util.concurrent.*;
 import javax.sql.DataSource;
+import jetbrick.collections.ConcurrentLruCache;
 import jetbrick.dao.DbException;
 import jetbrick.dao.TransactionException;
 import jetbrick.dao.dialect.SqlDialect;
@@ -29,7 +31,10 @@ import jetbrick.dao.orm.handlers.*;
 import jetbrick.dao.orm.mappers.*;
 import jetbrick.dao.orm.tx.*;
 import jetbrick.dao.orm.utils.DbUtils;
+import jetbrick.dao.orm.utils.PreparedStatementCache;
 import jetbrick.dao.orm.utils.PreparedStatementCreator;
+import jetbrick.dao.pool.PooledDataSource;
+import jetbrick.lang.ArrayUtils;
 import jetbrick.lang.Validate;
 
 /**
@@ -38,11 +43,19 @@ import jetbrick.lang.Validate;
 @SuppressWarnings("unchecked")
 public class DbHelper {
     private static final boolean ALLOW_NESTED_TRANSACTION = System.getProperty("jetbrick.orm.transaction.nested.disabled") == null;
+    private static final int COUNT_CACHE_SIZE = Integer.getInteger("jetbrick.orm.count.cache.size", 256);
+    private static final int ASYNC_THREADS = Integer.getInteger("jetbrick.orm.async.threads", 10);
+    private static final int ASYNC_QUEUE_SIZE = Integer.getInteger("jetbrick.orm.async.queue.size", 1000);
 
     // 当前线程(事务)
     private final ThreadLocal<JdbcTransaction> transationHandler = new ThreadLocal<JdbcTransaction>();
     private final DataSource dataSource;
     private final SqlDialect dialect;
+    private int streamingFetchSize = 500; // 流式查询每次读取的行数
+    private volatile QueryCache queryCache; // 查询结果缓存，默认不启用
+    private volatile ReplicaRouter replicaRouter; // 读写分离，默认不启用
+    private volatile Executor asyncExecutor; // 异步操作的线程池，第一次使用的时候创建
+    private final ConcurrentLruCache<String, long[]> countCache = new ConcurrentLruCache<String, long[]>(COUNT_CACHE_SIZE); // keyset 分页的总记录数: {expires, count}
 
     public DbHelper(DataSource dataSource) {
         this.dataSource = dataSource;
@@ -53,6 +66,77 @@ public class DbHelper {
         return dataSource;
     }
 
+    public int getStreamingFetchSize() {
+        return streamingFetchSize;
+    }
+
+    /**
+     * 设置流式查询 (queryAsCursor/queryForEach) 每次从数据库读取的行数.
+     */
+    public void setStreamingFetchSize(int streamingFetchSize) {
+        Validate.isTrue(streamingFetchSize > 0, "streamingFetchSize must be > 0.");
+        this.streamingFetchSize = streamingFetchSize;
+    }
+
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * 启用查询结果缓存 (queryAsList/queryAsObject 等)，null 表示禁用.
+     */
+    public void setQueryCache(QueryCache queryCache) {
+        this.queryCache = queryCache;
+    }
+
+    public ReplicaRouter getReplicaRouter() {
+        return replicaRouter;
+    }
+
+    /**
+     * 启用读写分离，事务之外的查询路由到从库，null 表示禁用.
+     */
+    public void setReplicaRouter(ReplicaRouter replicaRouter) {
+        this.replicaRouter = replicaRouter;
+    }
+
+    /**
+     * 返回异步操作 ({@link DbHelperAsync}) 使用的线程池，如果没有设置，那么创建一个默认的 {@link DbExecutor}
+     * (并发数: jetbrick.orm.async.threads，并且不超过 {@link PooledDataSource} 的最大连接数，排队数: jetbrick.orm.async.queue.size).
+     */
+    public Executor getAsyncExecutor() {
+        Executor executor = asyncExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = asyncExecutor;
+                if (executor == null) {
+                    int threads = ASYNC_THREADS;
+                    if (dataSource instanceof PooledDataSource) {
+                        // 并发数不超过连接池的最大连接数
+                        threads = Math.min(threads, ((PooledDataSource) dataSource).getMaxActive());
+                    }
+                    executor = new DbExecutor(threads, ASYNC_QUEUE_SIZE);
+                    asyncExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * 设置异步操作使用的线程池，并发数应该不超过连接池的最大连接数.
+     */
+    public void setAsyncExecutor(Executor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+    }
+
+    /**
+     * 当前线程是否在事务中.
+     */
+    boolean isInTransaction() {
+        return transationHandler.get() != null;
+    }
+
     /**
      * 启动一个事务(默认支持子事务)
      */
@@ -88,6 +172,49 @@ public class DbHelper {
         }
     }
 
+    /**
+     * 为只读查询选择一个从库，如果在事务中，或者在写操作之后的粘滞时间内，返回 null (使用主库).
+     */
+    private ReplicaRouter.Replica acquireReplica() {
+        ReplicaRouter router = replicaRouter;
+        if (router == null || transationHandler.get() != null || router.isSticky()) {
+            return null;
+        }
+        return router.acquire();
+    }
+
+    /**
+     * 获取一个只读查询使用的连接.
+     */
+    private Connection getReadConnection(ReplicaRouter.Replica replica) {
+        if (replica != null) {
+            Connection conn = replicaRouter.getConnection(replica);
+            if (conn != null) {
+                return conn;
+            }
+        }
+        return getConnection();
+    }
+
+    /**
+     * 获取当前事务的 PreparedStatement 缓存，如果不在事务中，返回 null。
+     */
+    private PreparedStatementCache getStatementCache() {
+        JdbcTransaction tx = transationHandler.get();
+        return (tx == null) ? null : tx.getStatementCache();
+    }
+
+    /**
+     * 释放一个 PreparedStatement，如果被缓存了，则归还到缓存中，否则关闭它。
+     */
+    private void closeStatement(PreparedStatementCache cache, PreparedStatement ps) {
+        if (cache == null) {
+            DbUtils.closeQuietly(ps);
+        } else {
+            cache.release(ps);
+        }
+    }
+
     /**
      * 释放一个连接，如果 Connection 不在事务中，则关闭它，否则不处理。
      */
@@ -102,26 +229,103 @@ public class DbHelper {
         Validate.notNull(rowMapper, "rowMapper is null.");
 
         ResultSetHandler<List<T>> rsh = new RowListHandler<T>(rowMapper);
-        return query(rsh, sql, parameters);
+        return queryWithCache(rsh, getCacheType(rowMapper), sql, parameters);
     }
 
     public <T> List<T> queryAsList(Class<T> beanClass, String sql, Object... parameters) {
         Validate.notNull(beanClass, "beanClass is null.");
 
-        RowMapper<T> rowMapper = getRowMapper(beanClass);
-        return queryAsList(rowMapper, sql, parameters);
+        ResultSetHandler<List<T>> rsh = new RowListHandler<T>(getRowMapper(beanClass));
+        return queryWithCache(rsh, getCacheType(beanClass), sql, parameters);
     }
 
     public <T> T queryAsObject(RowMapper<T> rowMapper, String sql, Object... parameters) {
         ResultSetHandler<T> rsh = new SingleRowHandler<T>(rowMapper);
-        return query(rsh, sql, parameters);
+        return queryWithCache(rsh, getCacheType(rowMapper), sql, parameters);
     }
 
     public <T> T queryAsObject(Class<T> beanClass, String sql, Object... parameters) {
         Validate.notNull(beanClass, "beanClass is null.");
 
-        RowMapper<T> rowMapper = getRowMapper(beanClass);
-        return queryAsObject(rowMapper, sql, parameters);
+        ResultSetHandler<T> rsh = new SingleRowHandler<T>(getRowMapper(beanClass));
+        return queryWithCache(rsh, getCacheType(beanClass), sql, parameters);
+    }
+
+    /**
+     * 如果启用了查询结果缓存，并且不在事务中，那么先从缓存中查找.
+     * @param resultType 返回的类型，为 null 表示不能缓存
+     */
+    private <T> T queryWithCache(ResultSetHandler<T> rsh, Object resultType, String sql, Object[] parameters) {
+        QueryCache cache = queryCache;
+        if (cache == null || resultType == null || sql == null || transationHandler.get() != null) {
+            return query(rsh, sql, parameters);
+        }
+        QueryCache.Key key = cache.createKey(sql, parameters, rsh.getClass(), resultType);
+        if (key == null) {
+            return query(rsh, sql, parameters);
+        }
+
+        Object value = cache.get(key);
+        if (value != QueryCache.MISS) {
+            return (T) value;
+        }
+        long[] versions = cache.getVersions(key); // 必须在查询之前获取
+        T result = query(rsh, sql, parameters);
+        cache.put(key, versions, result);
+        return result;
+    }
+
+    /**
+     * Bean 等可变的对象不缓存 (缓存的结果被多个调用者共享).
+     */
+    private Object getCacheType(Class<?> beanClass) {
+        return QueryCache.isCacheableType(beanClass) ? beanClass : null;
+    }
+
+    /**
+     * 内置的通用 RowMapper 不能区分返回的类型，不缓存.
+     * 自定义的 RowMapper 返回的结果，在放入缓存的时候检查是否可以缓存 (参考 {@link QueryCache})。
+     */
+    private Object getCacheType(RowMapper<?> rowMapper) {
+        if (rowMapper == null || rowMapper.getClass().getName().startsWith("jetbrick.dao.orm.mappers.")) {
+            return null;
+        }
+        return rowMapper.getClass();
+    }
+
+    /**
+     * 执行写操作之后，让相关的查询缓存失效，并开始读写分离的主库粘滞时间.
+     * 在事务中的时候，提交/回滚之后再次处理 (在此期间其他线程读取到的还是旧的数据).
+     * @param sql 为 null 表示不能识别，让所有的缓存失效
+     */
+    private void afterUpdate(final String sql) {
+        final QueryCache cache = queryCache;
+        final ReplicaRouter router = replicaRouter;
+        if (cache == null && router == null) {
+            return;
+        }
+        Runnable callback = new Runnable() {
+            @Override
+            public void run() {
+                if (router != null) {
+                    router.markWrite();
+                }
+                if (cache == null) {
+                    return;
+                }
+                if (sql == null) {
+                    cache.invalidateAll();
+                } else {
+                    cache.invalidateBySql(sql);
+                }
+            }
+        };
+        callback.run();
+
+        JdbcTransaction tx = transationHandler.get();
+        if (tx != null) {
+            tx.addCompletionCallback(callback);
+        }
     }
 
     public Integer queryAsInt(String sql, Object... parameters) {
@@ -157,6 +361,34 @@ public class DbHelper {
         }
     }
 
+    /**
+     * 将第一列读取到 long[] 中 (不装箱)，null 转换为 0.
+     */
+    public long[] queryAsLongArray(String sql, Object... parameters) {
+        return query(new LongArrayHandler(), sql, parameters);
+    }
+
+    /**
+     * 将第一列读取到 int[] 中 (不装箱)，null 转换为 0.
+     */
+    public int[] queryAsIntArray(String sql, Object... parameters) {
+        return query(new IntArrayHandler(), sql, parameters);
+    }
+
+    /**
+     * 将第一列读取到 double[] 中 (不装箱)，null 转换为 0.
+     */
+    public double[] queryAsDoubleArray(String sql, Object... parameters) {
+        return query(new DoubleArrayHandler(), sql, parameters);
+    }
+
+    /**
+     * 按列读取所有的数据，数值列使用 long[]/double[] 存储 (不装箱)，并记录 null.
+     */
+    public ColumnBatch queryAsColumnBatch(String sql, Object... parameters) {
+        return query(new ColumnBatchHandler(), sql, parameters);
+    }
+
     public <T> Pagelist<T> queryAsPagelist(PageInfo pageInfo, Class<T> beanClass, String sql, Object... parameters) {
         Validate.notNull(beanClass, "beanClass is null.");
 
@@ -168,6 +400,10 @@ public class DbHelper {
         Validate.notNull(pageInfo, "pageInfo is null.");
         Validate.notNull(rowMapper, "rowMapper is null.");
 
+        if (pageInfo instanceof KeysetPageInfo) {
+            return queryAsKeysetPagelist((KeysetPageInfo) pageInfo, rowMapper, sql, parameters);
+        }
+
         PagelistImpl<T> pagelist = new PagelistImpl<T>(pageInfo);
         if (pageInfo.getTotalCount() < 0) {
             String count_sql = DbUtils.get_sql_select_count(sql);
@@ -195,26 +431,209 @@ public class DbHelper {
         return pagelist;
     }
 
+    /**
+     * Keyset 分页：根据上一页最后一行的排序字段的值定位，不使用 offset.
+     */
+    private <T> Pagelist<T> queryAsKeysetPagelist(KeysetPageInfo pageInfo, RowMapper<T> rowMapper, String sql, Object[] parameters) {
+        if (parameters == null) {
+            parameters = ArrayUtils.EMPTY_OBJECT_ARRAY;
+        } else if (isNamedParameters(parameters)) {
+            // 定位条件使用 ? 参数，不能和 :name 参数混用
+            throw new IllegalArgumentException("keyset pagination does not support named parameters: " + sql);
+        }
+
+        PagelistImpl<T> pagelist = new PagelistImpl<T>(pageInfo);
+        if (pageInfo.isCountEnabled() && pageInfo.getTotalCount() < 0) {
+            pagelist.setTotalCount(queryAsKeysetCount(pageInfo, sql, parameters));
+        }
+
+        String[] columns = pageInfo.getKeyColumns();
+        boolean[] descending = pageInfo.getDescending();
+        StringBuilder orderBy = new StringBuilder(64);
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                orderBy.append(", ");
+            }
+            orderBy.append(columns[i]).append(descending[i] ? " desc" : " asc");
+        }
+
+        String predicate = null;
+        List<Object> seek_parameters = new ArrayList<Object>(parameters.length + columns.length * 2);
+        Collections.addAll(seek_parameters, parameters);
+        if (pageInfo.getLastKey() != null) {
+            predicate = dialect.sql_keyset_predicate(columns, descending, pageInfo.getLastKey(), seek_parameters);
+        }
+
+        // 多取一行，用来判断是否还有下一页
+        int limit = pageInfo.getPageSize() + 1;
+        String page_sql = dialect.sql_keyset_pagelist(sql, predicate, orderBy.toString(), limit);
+        if (page_sql == null) {
+            page_sql = dialect.sql_keyset_select(sql, predicate, orderBy.toString());
+        }
+
+        KeysetPagelistHandler<T> rsh = new KeysetPagelistHandler<T>(rowMapper, pageInfo.getKeyLabels(), pageInfo.getPageSize());
+        pagelist.setItems(query(rsh, page_sql, seek_parameters.toArray()));
+        pagelist.setNextKey(rsh.getNextKey());
+        return pagelist;
+    }
+
+    private int queryAsKeysetCount(KeysetPageInfo pageInfo, String sql, Object[] parameters) {
+        String count_sql = DbUtils.get_sql_select_count(sql);
+        long ttl = pageInfo.getCountCacheMillis();
+        if (ttl <= 0) {
+            return queryAsInt(count_sql, parameters);
+        }
+
+        String key = getCountCacheKey(count_sql, parameters);
+        if (key == null) {
+            return queryAsInt(count_sql, parameters);
+        }
+        long now = System.currentTimeMillis();
+        long[] cached = countCache.get(key);
+        if (cached != null && cached[0] > now) {
+            return (int) cached[1];
+        }
+        int count = queryAsInt(count_sql, parameters);
+        countCache.put(key, new long[] { now + ttl, count });
+        return count;
+    }
+
+    // 和 PreparedStatementCreator 一样：只有一个 Map 或者 Bean 参数的时候，为 :name 参数
+    private static boolean isNamedParameters(Object[] parameters) {
+        if (parameters.length != 1 || parameters[0] == null) {
+            return false;
+        }
+        Object value = parameters[0];
+        if (value instanceof Map) {
+            return true;
+        }
+        return !(value instanceof Collection) && !value.getClass().getName().startsWith("java.");
+    }
+
+    // 使用参数的值 (而不是对象的 identity) 生成 key，存在无法比较的参数的时候，返回 null (不缓存)
+    private static String getCountCacheKey(String count_sql, Object[] parameters) {
+        StringBuilder sb = new StringBuilder(count_sql.length() + parameters.length * 16);
+        sb.append(count_sql);
+        for (Object value : parameters) {
+            sb.append('\n');
+            if (value == null) {
+                sb.append("null");
+            } else if (value instanceof Date) {
+                // toString() 只精确到秒 (并且依赖时区)，使用毫秒数，Timestamp 还需要加上纳秒
+                sb.append(value.getClass().getName()).append(':').append(((Date) value).getTime());
+                if (value instanceof Timestamp) {
+                    sb.append('.').append(((Timestamp) value).getNanos());
+                }
+            } else if (value instanceof CharSequence || value instanceof Number || value instanceof Boolean || value instanceof Character || value instanceof Enum) {
+                String text = value.toString();
+                sb.append(value.getClass().getName()).append(':').append(text.length()).append(':').append(text);
+            } else {
+                return null;
+            }
+        }
+        return sb.toString();
+    }
+
+    public <T> RowCursor<T> queryAsCursor(Class<T> beanClass, String sql, Object... parameters) {
+        Validate.notNull(beanClass, "beanClass is null.");
+
+        RowMapper<T> rowMapper = getRowMapper(beanClass);
+        return queryAsCursor(rowMapper, sql, parameters);
+    }
+
+    /**
+     * 流式查询，返回一个游标 (不会一次性读取所有的数据到内存中)。
+     * 在游标关闭之前，会一直占用当前的 Connection，使用完毕之后必须调用 {@link RowCursor#close()}。
+     */
+    public <T> RowCursor<T> queryAsCursor(RowMapper<T> rowMapper, String sql, Object... parameters) {
+        Validate.notNull(rowMapper, "rowMapper is null.");
+        Validate.notNull(sql, "sql is null.");
+
+        // 游标的生命周期可能会超出当前的调用，所以在这里决定是否由游标负责关闭连接
+        boolean closeConnection = (transationHandler.get() == null);
+        final ReplicaRouter.Replica replica = acquireReplica();
+        Connection conn = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+
+        try {
+            conn = getReadConnection(replica);
+            ps = PreparedStatementCreator.createPreparedStatement(conn, sql, parameters);
+            ps.setFetchSize(dialect.getStreamingFetchSize(streamingFetchSize));
+            rs = ps.executeQuery();
+            RowCursor<T> cursor = new RowCursor<T>(conn, closeConnection, ps, rs, rowMapper, sql);
+            if (replica != null) {
+                cursor.setCloseCallback(new Runnable() {
+                    @Override
+                    public void run() {
+                        replica.release();
+                    }
+                });
+            }
+            return cursor;
+        } catch (SQLException e) {
+            DbUtils.closeQuietly(rs);
+            DbUtils.closeQuietly(ps);
+            if (closeConnection) {
+                DbUtils.closeQuietly(conn);
+            }
+            if (replica != null) {
+                replica.release();
+            }
+            throw new DbException(e).set("sql", sql).set("parameters", parameters);
+        }
+    }
+
+    public <T> void queryForEach(Class<T> beanClass, RowCallback<T> callback, String sql, Object... parameters) {
+        Validate.notNull(beanClass, "beanClass is null.");
+
+        RowMapper<T> rowMapper = getRowMapper(beanClass);
+        queryForEach(rowMapper, callback, sql, parameters);
+    }
+
+    /**
+     * 流式查询，逐行回调 (不会一次性读取所有的数据到内存中).
+     */
+    public <T> void queryForEach(RowMapper<T> rowMapper, RowCallback<T> callback, String sql, Object... parameters) {
+        Validate.notNull(callback, "callback is null.");
+
+        RowCursor<T> cursor = queryAsCursor(rowMapper, sql, parameters);
+        try {
+            while (cursor.hasNext()) {
+                callback.execute(cursor.next());
+            }
+        } catch (SQLException e) {
+            throw new DbException(e).set("sql", sql).set("parameters", parameters);
+        } finally {
+            cursor.close();
+        }
+    }
+
     public <T> T query(ResultSetHandler<T> rsh, String sql, Object... parameters) {
         Validate.notNull(rsh, "rsh is null.");
         Validate.notNull(sql, "sql is null.");
 
         Connection conn = null;
+        PreparedStatementCache cache = getStatementCache();
         PreparedStatement ps = null;
         ResultSet rs = null;
         T result = null;
+        ReplicaRouter.Replica replica = acquireReplica();
 
         try {
-            conn = getConnection();
-            ps = PreparedStatementCreator.createPreparedStatement(conn, sql, parameters);
+            conn = getReadConnection(replica);
+            ps = PreparedStatementCreator.createPreparedStatement(cache, conn, sql, parameters);
             rs = ps.executeQuery();
             result = rsh.handle(rs);
         } catch (SQLException e) {
             throw new DbException(e).set("sql", sql).set("parameters", parameters);
         } finally {
             DbUtils.closeQuietly(rs);
-            DbUtils.closeQuietly(ps);
+            closeStatement(cache, ps);
             closeConnection(conn);
+            if (replica != null) {
+                replica.release();
+            }
         }
 
         return result;
@@ -224,18 +643,20 @@ public class DbHelper {
         Validate.notNull(sql, "sql is null.");
 
         Connection conn = null;
+        PreparedStatementCache cache = getStatementCache();
         PreparedStatement ps = null;
         int rows = 0;
 
         try {
             conn = getConnection();
-            ps = PreparedStatementCreator.createPreparedStatement(conn, sql, parameters);
+            ps = PreparedStatementCreator.createPreparedStatement(cache, conn, sql, parameters);
             rows = ps.executeUpdate();
         } catch (SQLException e) {
             throw new DbException(e).set("sql", sql).set("parameters", parameters);
         } finally {
-            DbUtils.closeQuietly(ps);
+            closeStatement(cache, ps);
             closeConnection(conn);
+            afterUpdate(sql);
         }
 
         return rows;
@@ -263,11 +684,129 @@ public class DbHelper {
         } finally {
             DbUtils.closeQuietly(ps);
             closeConnection(conn);
+            afterUpdate(sql);
         }
 
         return rows;
     }
 
+    public int executeBatch(String sql, List<?> parameters, int chunkSize) {
+        return executeBatch(sql, parameters, new BatchOptions().setChunkSize(chunkSize));
+    }
+
+    /**
+     * 分批次执行批量 insert/update.
+     *
+     * @param sql 支持 ? 和 :name 参数
+     * @param parameters 每一行的参数，可以是 Object[]，Map 或者 Bean
+     * @param options 批次大小，是否每个批次提交，是否改写成多行 insert 等
+     * @return 影响的总行数
+     */
+    public int executeBatch(String sql, List<?> parameters, BatchOptions options) {
+        Validate.notNull(sql, "sql is null.");
+        Validate.notNull(parameters, "parameters is null.");
+        Validate.notNull(options, "options is null.");
+
+        // 在事务中，由事务统一提交
+        boolean commitPerChunk = options.isCommitPerChunk() && transationHandler.get() == null;
+        Connection conn = null;
+        boolean autoCommit = true;
+
+        try {
+            conn = getConnection();
+            if (commitPerChunk) {
+                autoCommit = conn.getAutoCommit();
+                conn.setAutoCommit(false);
+            }
+            BatchUpdater updater = new BatchUpdater(conn, dialect, options, commitPerChunk, sql);
+            return updater.execute(parameters);
+        } catch (SQLException e) {
+            if (commitPerChunk) {
+                try {
+                    conn.rollback();
+                } catch (SQLException ex) {
+                }
+            }
+            throw new DbException(e).set("sql", sql);
+        } finally {
+            if (commitPerChunk && conn != null) {
+                try {
+                    conn.setAutoCommit(autoCommit);
+                } catch (SQLException e) {
+                }
+            }
+            closeConnection(conn);
+            afterUpdate(sql);
+        }
+    }
+
+    public int upsertBatch(String table, String[] columns, String[] keyColumns, List<?> rows) {
+        return upsertBatch(table, columns, keyColumns, rows, new BatchOptions());
+    }
+
+    /**
+     * 批量 upsert：根据 keyColumns 判断记录是否存在，存在则更新其他的字段，否则插入.
+     * 使用数据库自身的语法 (MySQL: on duplicate key update, H2/Oracle/SQL Server: merge)，每个 chunk 只执行一条 SQL。
+     * rows 中 key 重复的行，只保留最后一行 (merge 语句不允许同一个 key 出现多次)。
+     *
+     * @param table 表名
+     * @param columns 所有的字段 (包含 keyColumns)
+     * @param keyColumns 主键或者唯一索引的字段
+     * @param rows 每一行可以是 Object[] (按照 columns 的顺序)，Map (按照字段名取值) 或者 Bean (字段名转换为属性名，如: user_id -> userId)
+     * @return 影响的总行数 (MySQL 中更新的记录按照 2 行计算)
+     */
+    public int upsertBatch(String table, String[] columns, String[] keyColumns, List<?> rows, BatchOptions options) {
+        Validate.notNull(table, "table is null.");
+        Validate.notNull(columns, "columns is null.");
+        Validate.notNull(keyColumns, "keyColumns is null.");
+        Validate.notNull(rows, "rows is null.");
+        Validate.notNull(options, "options is null.");
+        Validate.isTrue(columns.length > 0 && keyColumns.length > 0, "columns and keyColumns must not be empty.");
+
+        // 参数名为字段名，用于 Map/Bean 的取值
+        StringBuilder sb = new StringBuilder(64);
+        sb.append("insert into ").append(table).append(" values (");
+        for (int i = 0; i < columns.length; i++) {
+            sb.append(i == 0 ? ":" : ", :").append(columns[i]);
+        }
+        String sql = sb.append(")").toString();
+
+        boolean commitPerChunk = options.isCommitPerChunk() && transationHandler.get() == null;
+        Connection conn = null;
+        boolean autoCommit = true;
+
+        try {
+            conn = getConnection();
+            if (commitPerChunk) {
+                autoCommit = conn.getAutoCommit();
+                conn.setAutoCommit(false);
+            }
+            BatchUpdater updater = new BatchUpdater(conn, dialect, options, commitPerChunk, sql);
+            return updater.executeUpsert(rows, table, columns, keyColumns);
+        } catch (SQLException e) {
+            if (commitPerChunk) {
+                try {
+                    conn.rollback();
+                } catch (SQLException ex) {
+                }
+            }
+            throw new DbException(e).set("sql", dialect.sql_upsert(table, columns, keyColumns, 1));
+        } finally {
+            if (commitPerChunk && conn != null) {
+                try {
+                    conn.setAutoCommit(autoCommit);
+                } catch (SQLException e) {
+                }
+            }
+            closeConnection(conn);
+            afterUpdate(sql);
+        }
+    }
+
+    /**
+     * 使用主库的连接执行 callback，执行之后让所有的查询缓存失效 (不能识别 callback 执行的 SQL)。
+     * 如果 callback 只执行查询，请使用 {@link #query(ConnectionCallback)}。
+     */
     public void execute(ConnectionCallback callback) {
         Connection conn = null;
         try {
@@ -277,6 +816,28 @@ public class DbHelper {
             throw new DbException(e);
         } finally {
             closeConnection(conn);
+            if (conn != null) {
+                afterUpdate(null);
+            }
+        }
+    }
+
+    /**
+     * 使用只读查询的连接执行 callback (启用读写分离的时候可能是从库)，不会让查询缓存失效。
+     */
+    public void query(ConnectionCallback callback) {
+        Connection conn = null;
+        ReplicaRouter.Replica replica = acquireReplica();
+        try {
+            conn = getReadConnection(replica);
+            callback.execute(conn);
+        } catch (SQLException e) {
+            throw new DbException(e);
+        } finally {
+            closeConnection(conn);
+            if (replica != null) {
+                replica.release();
+            }
         }
     }
 
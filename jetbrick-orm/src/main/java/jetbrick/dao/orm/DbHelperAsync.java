@@ -0,0 +1,146 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import jetbrick.dao.TransactionException;
+import jetbrick.lang.Validate;
+
+/**
+ * DbHelper 的异步操作，返回 CompletableFuture (需要 JDK8 以上版本).
+ *
+ * <pre>
+ * DbHelperAsync async = new DbHelperAsync(dao);
+ * CompletableFuture&lt;List&lt;User&gt;&gt; users = async.queryAsListAsync(User.class, sql1);
+ * CompletableFuture&lt;Long&gt; count = async.queryAsObjectAsync(Long.class, sql2);
+ * </pre>
+ *
+ * <p>
+ * 操作在 {@link DbHelper#getAsyncExecutor()} 中执行，不能参与当前线程的事务，所以在事务中调用会抛出 {@link TransactionException}。
+ * 线程池已满的时候，返回的 CompletableFuture 以 {@link RejectedExecutionException} 结束。
+ * 启用读写分离的时候，异步操作和调用线程共享主库的粘滞时间 (写操作之后读到的是主库)。
+ * </p>
+ */
+public class DbHelperAsync {
+    private final DbHelper dbHelper;
+
+    public DbHelperAsync(DbHelper dbHelper) {
+        Validate.notNull(dbHelper, "dbHelper is null.");
+        this.dbHelper = dbHelper;
+    }
+
+    public DbHelper getDbHelper() {
+        return dbHelper;
+    }
+
+    public <T> CompletableFuture<List<T>> queryAsListAsync(final Class<T> beanClass, final String sql, final Object... parameters) {
+        return async(new Callable<List<T>>() {
+            @Override
+            public List<T> call() {
+                return dbHelper.queryAsList(beanClass, sql, parameters);
+            }
+        });
+    }
+
+    public <T> CompletableFuture<List<T>> queryAsListAsync(final RowMapper<T> rowMapper, final String sql, final Object... parameters) {
+        return async(new Callable<List<T>>() {
+            @Override
+            public List<T> call() {
+                return dbHelper.queryAsList(rowMapper, sql, parameters);
+            }
+        });
+    }
+
+    public <T> CompletableFuture<T> queryAsObjectAsync(final Class<T> beanClass, final String sql, final Object... parameters) {
+        return async(new Callable<T>() {
+            @Override
+            public T call() {
+                return dbHelper.queryAsObject(beanClass, sql, parameters);
+            }
+        });
+    }
+
+    public <T> CompletableFuture<T> queryAsync(final ResultSetHandler<T> rsh, final String sql, final Object... parameters) {
+        return async(new Callable<T>() {
+            @Override
+            public T call() {
+                return dbHelper.query(rsh, sql, parameters);
+            }
+        });
+    }
+
+    public CompletableFuture<Integer> executeAsync(final String sql, final Object... parameters) {
+        return async(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return dbHelper.execute(sql, parameters);
+            }
+        });
+    }
+
+    public CompletableFuture<int[]> executeBatchAsync(final String sql, final List<Object[]> parameters) {
+        return async(new Callable<int[]>() {
+            @Override
+            public int[] call() {
+                return dbHelper.executeBatch(sql, parameters);
+            }
+        });
+    }
+
+    /**
+     * 在 {@link DbHelper#getAsyncExecutor()} 中执行一个数据库操作.
+     */
+    public <T> CompletableFuture<T> async(final Callable<T> callable) {
+        Validate.notNull(callable, "callable is null.");
+        if (dbHelper.isInTransaction()) {
+            throw new TransactionException("Can't execute an async operation in a transaction.");
+        }
+
+        // 在提交的时候获取调用线程的粘滞状态，在执行的线程中使用
+        final ReplicaRouter router = dbHelper.getReplicaRouter();
+        final AtomicLong stickyState = (router == null) ? null : router.getStickyState();
+
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+        try {
+            dbHelper.getAsyncExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (future.isDone()) {
+                        return; // cancelled
+                    }
+                    AtomicLong previous = (router == null) ? null : router.bindStickyState(stickyState);
+                    try {
+                        future.complete(callable.call());
+                    } catch (Throwable e) {
+                        future.completeExceptionally(e);
+                    } finally {
+                        if (router != null) {
+                            router.bindStickyState(previous);
+                        }
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+}
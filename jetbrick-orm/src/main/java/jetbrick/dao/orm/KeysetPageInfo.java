@@ -0,0 +1,164 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm;
+
+import java.util.ArrayList;
+import java.util.List;
+import jetbrick.lang.StringUtils;
+
+/**
+ * Keyset (seek) 分页：根据上一页最后一行的排序字段的值定位下一页，而不是使用 offset，
+ * 所以翻页的速度不会随着页数的增加而变慢。
+ *
+ * <pre>
+ * KeysetPageInfo page = new KeysetPageInfo(20, "u.created_at desc", "u.id desc");
+ * page.setLastKey(lastCreatedAt, lastId); // 第一页不需要
+ * Pagelist&lt;User&gt; pagelist = dao.queryAsPagelist(page, User.class, "select * from users u where u.status = ?", 1);
+ * Object[] nextKey = pagelist.getNextKey(); // 为 null 表示没有下一页
+ * </pre>
+ *
+ * <p>
+ * 注意：SQL 中不要包含 order by (由排序字段自动生成)，排序字段必须能唯一确定一行 (一般最后一个字段为主键)。
+ * 排序字段在结果集中的列名为最后一个 "." 之后的部分。
+ * </p>
+ */
+public class KeysetPageInfo implements PageInfo {
+    private final int pageSize;
+    private final String[] keyColumns; // SQL 中的排序字段 (可以带表别名)
+    private final String[] keyLabels; // 结果集中的列名
+    private final boolean[] descending;
+    private int pageNo = 1;
+    private Object[] lastKey;
+    private boolean countEnabled;
+    private long countCacheMillis;
+    private int totalCount = -1;
+    private String pageUrl;
+
+    public KeysetPageInfo(int pageSize, String... orderBy) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be > 0");
+        }
+        if (orderBy == null || orderBy.length == 0) {
+            throw new IllegalArgumentException("orderBy is empty");
+        }
+        this.pageSize = pageSize;
+        this.keyColumns = new String[orderBy.length];
+        this.keyLabels = new String[orderBy.length];
+        this.descending = new boolean[orderBy.length];
+
+        for (int i = 0; i < orderBy.length; i++) {
+            List<String> parts = new ArrayList<String>();
+            for (String part : StringUtils.split(orderBy[i].trim(), ' ')) {
+                if (part.length() > 0) {
+                    parts.add(part);
+                }
+            }
+            String column = parts.get(0);
+            keyColumns[i] = column;
+            keyLabels[i] = column.substring(column.lastIndexOf('.') + 1);
+            descending[i] = parts.size() > 1 && "desc".equalsIgnoreCase(parts.get(1));
+        }
+    }
+
+    @Override
+    public int getPageNo() {
+        return pageNo;
+    }
+
+    /**
+     * 仅用于显示，不参与分页计算.
+     */
+    public void setPageNo(int pageNo) {
+        this.pageNo = pageNo;
+    }
+
+    @Override
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    @Override
+    public int getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * 设置上一次计算出来的总记录数 (大于等于 0 的时候，不再重新计算).
+     */
+    public void setTotalCount(int totalCount) {
+        this.totalCount = totalCount;
+    }
+
+    @Override
+    public String getPageUrl() {
+        return pageUrl;
+    }
+
+    public void setPageUrl(String pageUrl) {
+        this.pageUrl = pageUrl;
+    }
+
+    public String[] getKeyColumns() {
+        return keyColumns;
+    }
+
+    public String[] getKeyLabels() {
+        return keyLabels;
+    }
+
+    public boolean[] getDescending() {
+        return descending;
+    }
+
+    public Object[] getLastKey() {
+        return lastKey;
+    }
+
+    /**
+     * 上一页最后一行的排序字段的值 (即上一页的 {@link Pagelist#getNextKey()})，为 null 表示第一页.
+     */
+    public void setLastKey(Object... lastKey) {
+        if (lastKey != null && lastKey.length != keyColumns.length) {
+            throw new IllegalArgumentException("lastKey.length must be " + keyColumns.length);
+        }
+        this.lastKey = lastKey;
+    }
+
+    public boolean isCountEnabled() {
+        return countEnabled;
+    }
+
+    /**
+     * 是否需要计算总记录数 (select count(*))，默认不计算.
+     */
+    public void setCountEnabled(boolean countEnabled) {
+        this.countEnabled = countEnabled;
+    }
+
+    public long getCountCacheMillis() {
+        return countCacheMillis;
+    }
+
+    /**
+     * 总记录数的缓存时间 (相同的 SQL 和参数)，0 表示不缓存.
+     */
+    public void setCountCacheMillis(long countCacheMillis) {
+        this.countCacheMillis = countCacheMillis;
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * 多路归并的游标: 每个输入都已经按照 comparator 排好序 (如: 各个分库的 ORDER BY 查询结果)，
+ * 每次从所有输入的当前行中取出最小的一行，不需要一次性读取所有的数据.
+ *
+ * <p>
+ * 排序相等的行，按照输入的顺序返回 (稳定排序)。
+ * 输入如果是 {@link Closeable} (如: {@link RowCursor})，那么在 {@link #close()} 的时候一起关闭，使用完毕之后必须调用 {@link #close()}。
+ * </p>
+ */
+public class MergeCursor<T> implements Iterator<T>, Iterable<T>, Closeable {
+    private final List<? extends Iterator<? extends T>> inputs;
+    private final PriorityQueue<Head<T>> heads;
+    private boolean closed;
+
+    public MergeCursor(List<? extends Iterator<? extends T>> inputs, final Comparator<? super T> comparator) {
+        this.inputs = inputs;
+        this.heads = new PriorityQueue<Head<T>>(Math.max(inputs.size(), 1), new Comparator<Head<T>>() {
+            @Override
+            public int compare(Head<T> o1, Head<T> o2) {
+                int c = comparator.compare(o1.value, o2.value);
+                return (c != 0) ? c : (o1.index - o2.index);
+            }
+        });
+        try {
+            for (int i = 0; i < inputs.size(); i++) {
+                Iterator<? extends T> it = inputs.get(i);
+                if (it.hasNext()) {
+                    heads.add(new Head<T>(i, it.next()));
+                }
+            }
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (heads.isEmpty()) {
+            close();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        Head<T> head = heads.poll();
+        if (head == null) {
+            throw new NoSuchElementException();
+        }
+        T value = head.value;
+        try {
+            Iterator<? extends T> it = inputs.get(head.index);
+            if (it.hasNext()) {
+                // 重用 head 对象
+                head.value = it.next();
+                heads.add(head);
+            }
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+        return value;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * 游标只能遍历一次，返回自身.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return this;
+    }
+
+    /**
+     * 读取最多 maxResults 行 (跳过前面的 firstResult 行)，然后关闭游标.
+     */
+    public List<T> toList(int firstResult, int maxResults) {
+        try {
+            for (int i = 0; i < firstResult && hasNext(); i++) {
+                next();
+            }
+            List<T> items = new ArrayList<T>(Math.min(Math.max(maxResults, 0), 1024));
+            while ((maxResults < 0 || items.size() < maxResults) && hasNext()) {
+                items.add(next());
+            }
+            return items;
+        } finally {
+            close();
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * 关闭所有的输入.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        heads.clear();
+        for (Iterator<? extends T> it : inputs) {
+            if (it instanceof Closeable) {
+                try {
+                    ((Closeable) it).close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    static final class Head<T> {
+        final int index;
+        T value;
+
+        Head(int index, T value) {
+            this.index = index;
+            this.value = value;
+        }
+    }
+}
@@ -58,6 +58,12 @@ public interface Pagelist<T> extends PageInfo {
      */
     public boolean isLastPage();
 
+    /**
+     * Keyset 分页的时候，当前页最后一行的排序字段的值 (用于查询下一页)
+     * @return 没有下一页或者不是 keyset 分页，返回 null
+     */
+    public Object[] getNextKey();
+
     /**
      * 转成 JSON 字符串
      */
@@ -27,6 +27,7 @@ public final class PagelistImpl<T> implements Pagelist<T> {
     private int totalCount;
     private List<T> items;
     private String pageUrl;
+    private Object[] nextKey;
 
     public PagelistImpl(PageInfo page) {
         this.pageNo = page.getPageNo();
@@ -102,6 +103,15 @@ public final class PagelistImpl<T> implements Pagelist<T> {
         return pageNo == getPageCount();
     }
 
+    @Override
+    public Object[] getNextKey() {
+        return nextKey;
+    }
+
+    public void setNextKey(Object[] nextKey) {
+        this.nextKey = nextKey;
+    }
+
     @Override
     public String toJSONString() {
         Map<String, Object> json = new HashMap<String, Object>();
@@ -111,6 +121,9 @@ public final class PagelistImpl<T> implements Pagelist<T> {
         json.put("items", items);
         json.put("totalCount", totalCount);
         json.put("pageUrl", pageUrl);
+        if (nextKey != null) {
+            json.put("nextKey", nextKey);
+        }
         return JSONUtils.toJSONString(json);
     }
 
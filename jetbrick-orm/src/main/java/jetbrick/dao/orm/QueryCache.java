@@ -0,0 +1,376 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm;
+
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import jetbrick.collections.ConcurrentLruCache;
+import jetbrick.dao.orm.mappers.RowMap;
+
+/**
+ * DbHelper 的查询结果缓存 (通过 {@link DbHelper#setQueryCache(QueryCache)} 启用).
+ *
+ * <p>
+ * 缓存的 key 为 (SQL, 参数, 返回类型)，有数量和过期时间的限制。
+ * 每个表有一个版本号，DbHelper 执行 execute/executeBatch 的时候，增加 SQL 中涉及的表的版本号，
+ * 缓存的结果中记录了查询之前的版本号，版本号不一致的时候失效，所以失效的代价为 O(1)。
+ * </p>
+ *
+ * <p>
+ * 注意：
+ * <ul>
+ * <li>只缓存事务之外的查询，事务中的写操作会在提交/回滚之后再次失效。</li>
+ * <li>只有 tables 中的表 (为空表示所有的表) 的查询会被缓存，不能识别表名的 SQL 不缓存。</li>
+ * <li>只缓存不可变的对象 (String/数字/Boolean 等)，Date/数组/Map (RowMap) 在缓存和返回的时候复制一份，
+ * Bean 等其他可变的对象不缓存。返回的 List 为只读的。</li>
+ * <li>不经过 DbHelper 的写操作 (其他系统、存储过程等) 不会让缓存失效，只能等待过期。</li>
+ * </ul>
+ * </p>
+ */
+public class QueryCache {
+    static final Object MISS = new Object();
+    private static final Object NULL = new Object();
+    private static final Object UNCACHEABLE = new Object(); // 不能复制的可变对象 (如: Bean)
+    private static final String[] EMPTY_TABLES = new String[0];
+    private static final Pattern from_pattern = Pattern.compile("\\bfrom\\s+(.+?)(?=\\b(where|group|order|having|limit|union|join|left|right|inner|outer|cross|natural|on|for)\\b|\\)|$)", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern table_pattern = Pattern.compile("\\b(join|update|into)\\s+([^\\s,()]+)", Pattern.CASE_INSENSITIVE);
+
+    private final ConcurrentLruCache<Key, Entry> cache;
+    private final ConcurrentLruCache<String, String[]> sqlTables = new ConcurrentLruCache<String, String[]>(1024);
+    private final ConcurrentMap<String, AtomicLong> tableVersions = new ConcurrentHashMap<String, AtomicLong>();
+    private final AtomicLong globalVersion = new AtomicLong();
+    private final long ttlMillis;
+    private final Set<String> tables;
+
+    /**
+     * @param maxSize 最多缓存的查询结果数
+     * @param ttlMillis 过期时间 (毫秒)，0 表示不过期
+     * @param tables 允许缓存的表，为空表示所有的表
+     */
+    public QueryCache(int maxSize, long ttlMillis, String... tables) {
+        this.cache = new ConcurrentLruCache<Key, Entry>(maxSize);
+        this.ttlMillis = ttlMillis;
+        this.tables = new HashSet<String>();
+        for (String table : tables) {
+            this.tables.add(table.toUpperCase());
+        }
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * 让一个表相关的缓存失效.
+     */
+    public void invalidate(String table) {
+        AtomicLong version = tableVersions.get(table.toUpperCase());
+        if (version != null) {
+            version.incrementAndGet();
+        }
+    }
+
+    /**
+     * 让所有的缓存失效.
+     */
+    public void invalidateAll() {
+        globalVersion.incrementAndGet();
+    }
+
+    /**
+     * 执行一个写操作的 SQL 之后调用，不能识别表名的时候，让所有的缓存失效.
+     */
+    void invalidateBySql(String sql) {
+        String[] names = getTables(sql);
+        if (names.length == 0) {
+            invalidateAll();
+        } else {
+            for (String name : names) {
+                invalidate(name);
+            }
+        }
+    }
+
+    /**
+     * 创建缓存的 key，如果这个 SQL 不能缓存，返回 null.
+     */
+    Key createKey(String sql, Object[] parameters, Object handlerType, Object resultType) {
+        String[] names = getTables(sql);
+        if (names.length == 0) {
+            return null;
+        }
+        if (!tables.isEmpty()) {
+            for (String name : names) {
+                if (!tables.contains(name)) {
+                    return null;
+                }
+            }
+        }
+        return new Key(sql, parameters, handlerType, resultType, names);
+    }
+
+    /**
+     * 返回缓存的结果，没有的时候返回 {@link #MISS}.
+     */
+    Object get(Key key) {
+        Entry entry = cache.get(key);
+        if (entry == null) {
+            return MISS;
+        }
+        if ((entry.expires > 0 && entry.expires < System.currentTimeMillis()) || !Arrays.equals(entry.versions, getVersions(key))) {
+            cache.remove(key);
+            return MISS;
+        }
+        if (entry.value == NULL) {
+            return null;
+        }
+        return entry.shared ? entry.value : copy(entry.value);
+    }
+
+    /**
+     * 查询之前获取表的版本号，查询之后和结果一起保存.
+     */
+    long[] getVersions(Key key) {
+        long[] versions = new long[key.tables.length + 1];
+        versions[0] = globalVersion.get();
+        for (int i = 0; i < key.tables.length; i++) {
+            versions[i + 1] = getVersion(key.tables[i]).get();
+        }
+        return versions;
+    }
+
+    void put(Key key, long[] versions, Object value) {
+        // 第一个调用者拿到的是原始的对象，所以这里总是复制一份
+        boolean shared = isImmutableList(value);
+        if (shared) {
+            value = Collections.unmodifiableList(new ArrayList<Object>((List<?>) value));
+        } else {
+            shared = (value == null || isImmutableType(value.getClass()));
+            if (!shared) {
+                value = copy(value);
+                if (value == UNCACHEABLE) {
+                    return;
+                }
+            }
+        }
+        long expires = (ttlMillis > 0) ? System.currentTimeMillis() + ttlMillis : 0;
+        cache.put(key, new Entry((value == null) ? NULL : value, versions, expires, shared));
+    }
+
+    /**
+     * 这个类型的查询结果是否可以缓存 (不可变的对象，或者可以复制的 Date/数组/Map).
+     */
+    static boolean isCacheableType(Class<?> type) {
+        if (type.isPrimitive() || isImmutableType(type) || Date.class.isAssignableFrom(type) || type == Map.class) {
+            return true;
+        }
+        return type.isArray() && isCacheableType(type.getComponentType());
+    }
+
+    private static boolean isImmutableType(Class<?> type) {
+        return type == String.class || type == Integer.class || type == Long.class || type == Boolean.class || type == BigDecimal.class || type == Double.class || type == Float.class || type == Short.class || type == Byte.class || type == Character.class || type == BigInteger.class || type.isEnum();
+    }
+
+    private static boolean isImmutableList(Object value) {
+        if (!(value instanceof List)) {
+            return false;
+        }
+        for (Object item : (List<?>) value) {
+            if (item != null && !isImmutableType(item.getClass())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 复制一个查询结果，不可变的对象直接返回，不能复制的返回 {@link #UNCACHEABLE}.
+     */
+    private static Object copy(Object value) {
+        if (value == null || isImmutableType(value.getClass())) {
+            return value;
+        }
+        if (value instanceof Date) {
+            return ((Date) value).clone();
+        }
+        if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            List<Object> result = new ArrayList<Object>(list.size());
+            for (Object item : list) {
+                Object copied = copy(item);
+                if (copied == UNCACHEABLE) {
+                    return UNCACHEABLE;
+                }
+                result.add(copied);
+            }
+            return Collections.unmodifiableList(result);
+        }
+        if (value instanceof RowMap) {
+            RowMap map = (RowMap) value;
+            RowMap.Schema schema = map.getSchema();
+            if (map.size() != schema.size()) {
+                return UNCACHEABLE; // 结构已经被修改
+            }
+            Object[] values = new Object[schema.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = copy(map.get(schema.getKey(i)));
+                if (values[i] == UNCACHEABLE) {
+                    return UNCACHEABLE;
+                }
+            }
+            return new RowMap(schema, values);
+        }
+        Class<?> type = value.getClass();
+        if (type.isArray()) {
+            int length = Array.getLength(value);
+            Object result = Array.newInstance(type.getComponentType(), length);
+            if (type.getComponentType().isPrimitive()) {
+                System.arraycopy(value, 0, result, 0, length);
+                return result;
+            }
+            for (int i = 0; i < length; i++) {
+                Object copied = copy(Array.get(value, i));
+                if (copied == UNCACHEABLE) {
+                    return UNCACHEABLE;
+                }
+                Array.set(result, i, copied);
+            }
+            return result;
+        }
+        return UNCACHEABLE;
+    }
+
+    private AtomicLong getVersion(String table) {
+        AtomicLong version = tableVersions.get(table);
+        if (version == null) {
+            AtomicLong created = new AtomicLong();
+            version = tableVersions.putIfAbsent(table, created);
+            if (version == null) {
+                version = created;
+            }
+        }
+        return version;
+    }
+
+    private String[] getTables(String sql) {
+        String[] names = sqlTables.get(sql);
+        if (names == null) {
+            names = parseTables(sql);
+            sqlTables.put(sql, names);
+        }
+        return names;
+    }
+
+    /**
+     * 获取 SQL 中的表名 (大写，不含 schema).
+     */
+    static String[] parseTables(String sql) {
+        Set<String> names = new LinkedHashSet<String>();
+        Matcher m = from_pattern.matcher(sql);
+        while (m.find()) {
+            for (String item : m.group(1).split(",")) {
+                item = item.trim();
+                if (item.length() > 0 && item.charAt(0) != '(') {
+                    addTable(names, item.split("\\s+")[0]);
+                }
+            }
+        }
+        m = table_pattern.matcher(sql);
+        while (m.find()) {
+            addTable(names, m.group(2));
+        }
+        return names.isEmpty() ? EMPTY_TABLES : names.toArray(new String[names.size()]);
+    }
+
+    private static void addTable(Set<String> names, String name) {
+        name = name.substring(name.lastIndexOf('.') + 1);
+        name = name.replace("\"", "").replace("`", "").replace("[", "").replace("]", "");
+        if (name.length() > 0) {
+            names.add(name.toUpperCase());
+        }
+    }
+
+    static final class Key {
+        private final String sql;
+        private final Object[] parameters;
+        private final Object handlerType;
+        private final Object resultType;
+        private final String[] tables;
+        private final int hash;
+
+        Key(String sql, Object[] parameters, Object handlerType, Object resultType, String[] tables) {
+            this.sql = sql;
+            this.parameters = (parameters == null) ? null : parameters.clone();
+            this.handlerType = handlerType;
+            this.resultType = resultType;
+            this.tables = tables;
+            this.hash = ((sql.hashCode() * 31 + Arrays.deepHashCode(parameters)) * 31 + handlerType.hashCode()) * 31 + resultType.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hash == other.hash && sql.equals(other.sql) && handlerType.equals(other.handlerType) && resultType.equals(other.resultType) && Arrays.deepEquals(parameters, other.parameters);
+        }
+    }
+
+    static final class Entry {
+        final Object value;
+        final long[] versions;
+        final long expires;
+        final boolean shared; // 不可变的，返回的时候不需要复制
+
+        Entry(Object value, long[] versions, long expires, boolean shared) {
+            this.value = value;
+            this.versions = versions;
+            this.expires = expires;
+            this.shared = shared;
+        }
+    }
+}
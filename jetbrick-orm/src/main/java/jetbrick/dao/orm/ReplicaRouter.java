@@ -0,0 +1,256 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sql.DataSource;
+import jetbrick.lang.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 读写分离：DbHelper 的只读查询路由到从库 (通过 {@link DbHelper#setReplicaRouter(ReplicaRouter)} 启用).
+ *
+ * <p>
+ * 路由规则：
+ * <ul>
+ * <li>事务中的所有操作，以及 execute/executeBatch 等写操作，都使用主库 (DbHelper 自身的 DataSource)。</li>
+ * <li>事务之外的查询 (query/queryAsXXX/queryAsCursor 等)，按照 {@link Policy} 选择一个从库。</li>
+ * <li>当前线程执行写操作之后的 {@link #setStickyMillis(long)} 毫秒内，查询仍然使用主库，保证读到自己写入的数据。</li>
+ * <li>从库获取连接失败的时候，尝试下一个从库，全部失败之后使用主库。</li>
+ * </ul>
+ * </p>
+ */
+public class ReplicaRouter {
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRouter.class);
+
+    /**
+     * 从库的负载均衡策略.
+     */
+    public static enum Policy {
+        /** 轮询 */
+        ROUND_ROBIN,
+        /** 选择当前正在执行的查询数最少的从库 */
+        LEAST_IN_FLIGHT
+    }
+
+    private final Node[] replicas;
+    private final Policy policy;
+    private final AtomicInteger counter = new AtomicInteger();
+    private final ThreadLocal<AtomicLong> writeHandler = new ThreadLocal<AtomicLong>(); // 当前线程的主库粘滞截止时间
+    private volatile long stickyMillis;
+
+    public ReplicaRouter(List<DataSource> replicas) {
+        this(replicas, Policy.ROUND_ROBIN);
+    }
+
+    public ReplicaRouter(List<DataSource> replicas, Policy policy) {
+        Validate.notNull(replicas, "replicas is null.");
+        Validate.notNull(policy, "policy is null.");
+        Validate.isTrue(!replicas.isEmpty(), "replicas is empty.");
+
+        this.replicas = new Node[replicas.size()];
+        for (int i = 0; i < this.replicas.length; i++) {
+            DataSource ds = replicas.get(i);
+            Validate.notNull(ds, "replicas[" + i + "] is null.");
+            this.replicas[i] = new Node(i, ds);
+        }
+        this.policy = policy;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    public int getReplicaCount() {
+        return replicas.length;
+    }
+
+    /**
+     * 返回每个从库当前正在执行的查询数.
+     */
+    public int[] getInFlightCounts() {
+        int[] counts = new int[replicas.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = replicas[i].inFlight.get();
+        }
+        return counts;
+    }
+
+    public long getStickyMillis() {
+        return stickyMillis;
+    }
+
+    /**
+     * 写操作之后，当前线程的查询继续使用主库的时间 (毫秒)，默认为 0 (不粘滞).
+     * 一般设置为从库的复制延迟的上限。
+     */
+    public void setStickyMillis(long stickyMillis) {
+        Validate.isTrue(stickyMillis >= 0, "stickyMillis must be >= 0.");
+        this.stickyMillis = stickyMillis;
+    }
+
+    /**
+     * 记录当前线程执行了一次写操作.
+     */
+    void markWrite() {
+        long millis = stickyMillis;
+        if (millis <= 0) {
+            return;
+        }
+        AtomicLong expires = writeHandler.get();
+        if (expires == null) {
+            expires = new AtomicLong();
+            writeHandler.set(expires);
+        }
+        expires.set(System.currentTimeMillis() + millis);
+    }
+
+    /**
+     * 当前线程是否还在写操作之后的粘滞时间内.
+     */
+    boolean isSticky() {
+        AtomicLong expires = writeHandler.get();
+        if (expires == null) {
+            return false;
+        }
+        // 过期之后也保留 (可能被异步操作的线程共享)
+        return expires.get() > System.currentTimeMillis();
+    }
+
+    /**
+     * 返回当前线程的粘滞状态 (不粘滞的时候返回 null)，用于在异步操作的线程中共享 (参考 {@link #bindStickyState(AtomicLong)}).
+     * 如果需要的话创建一个，这样异步的写操作也可以让当前线程进入粘滞时间。
+     */
+    AtomicLong getStickyState() {
+        AtomicLong expires = writeHandler.get();
+        if (expires == null && stickyMillis > 0) {
+            expires = new AtomicLong();
+            writeHandler.set(expires);
+        }
+        return expires;
+    }
+
+    /**
+     * 将其他线程的粘滞状态绑定到当前线程，返回之前的状态 (用于恢复).
+     */
+    AtomicLong bindStickyState(AtomicLong expires) {
+        AtomicLong previous = writeHandler.get();
+        if (expires == null) {
+            writeHandler.remove();
+        } else {
+            writeHandler.set(expires);
+        }
+        return previous;
+    }
+
+    /**
+     * 选择一个从库，并增加它的 inFlight 计数，使用完毕之后必须调用 {@link Replica#release()}.
+     */
+    Replica acquire() {
+        Node node = select();
+        node.inFlight.incrementAndGet();
+        return new Replica(node);
+    }
+
+    private Node select() {
+        int n = replicas.length;
+        if (n == 1) {
+            return replicas[0];
+        }
+        int offset = (counter.getAndIncrement() & Integer.MAX_VALUE) % n;
+        if (policy == Policy.ROUND_ROBIN) {
+            return replicas[offset];
+        }
+        // LEAST_IN_FLIGHT: 从轮询的位置开始查找，避免计数相同的时候总是选择第一个
+        Node best = replicas[offset];
+        int min = best.inFlight.get();
+        for (int i = 1; i < n && min > 0; i++) {
+            Node r = replicas[(offset + i) % n];
+            int count = r.inFlight.get();
+            if (count < min) {
+                best = r;
+                min = count;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 从选中的从库获取连接，失败的时候依次尝试其他的从库，全部失败返回 null (由调用者使用主库).
+     * inFlight 计数跟随实际提供连接的从库转移。
+     */
+    Connection getConnection(Replica replica) {
+        Node node = replica.node;
+        if (node == null) {
+            return null;
+        }
+        int n = replicas.length;
+        for (int i = 0; i < n; i++) {
+            Node r = replicas[(node.index + i) % n];
+            if (r != replica.node) {
+                r.inFlight.incrementAndGet();
+                replica.release();
+                replica.node = r;
+            }
+            try {
+                return r.dataSource.getConnection();
+            } catch (SQLException e) {
+                log.warn("Can't get connection from replica[" + r.index + "], try next.", e);
+            }
+        }
+        replica.release();
+        return null;
+    }
+
+    // 一个从库
+    static final class Node {
+        final int index;
+        final DataSource dataSource;
+        final AtomicInteger inFlight = new AtomicInteger();
+
+        Node(int index, DataSource dataSource) {
+            this.index = index;
+            this.dataSource = dataSource;
+        }
+    }
+
+    /**
+     * 一次查询选中的从库，使用完毕之后必须调用 {@link #release()}.
+     */
+    static final class Replica {
+        Node node; // 已经释放之后为 null
+
+        Replica(Node node) {
+            this.node = node;
+        }
+
+        void release() {
+            Node n = node;
+            if (n != null) {
+                node = null;
+                n.inFlight.decrementAndGet();
+            }
+        }
+    }
+}
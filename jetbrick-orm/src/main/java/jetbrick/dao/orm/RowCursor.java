@@ -0,0 +1,144 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm;
+
+import java.io.Closeable;
+import java.sql.*;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import jetbrick.dao.DbException;
+import jetbrick.dao.orm.utils.DbUtils;
+
+/**
+ * 流式查询的游标，逐行读取 ResultSet，并转换成 T.
+ *
+ * <p>
+ * 在游标关闭之前，会一直占用 Connection，所以使用完毕之后必须调用 {@link #close()}。
+ * 读取完最后一行，或者发生异常的时候，会自动关闭。
+ * </p>
+ *
+ * <pre>
+ * RowCursor&lt;User&gt; cursor = dao.queryAsCursor(User.class, sql);
+ * try {
+ *     for (User user : cursor) {
+ *         ...
+ *     }
+ * } finally {
+ *     cursor.close();
+ * }
+ * </pre>
+ */
+public class RowCursor<T> implements Iterator<T>, Iterable<T>, Closeable {
+    private final Connection conn;
+    private final boolean closeConnection; // 不在事务中，由游标负责关闭连接
+    private final PreparedStatement ps;
+    private final ResultSet rs;
+    private final RowMapper<T> rowMapper;
+    private final String sql;
+    private Runnable closeCallback; // 关闭之后的回调 (如: 释放从库的计数)
+
+    private boolean fetched; // 是否已经调用 rs.next()
+    private boolean hasNext;
+    private boolean closed;
+
+    protected RowCursor(Connection conn, boolean closeConnection, PreparedStatement ps, ResultSet rs, RowMapper<T> rowMapper, String sql) {
+        this.conn = conn;
+        this.closeConnection = closeConnection;
+        this.ps = ps;
+        this.rs = rs;
+        this.rowMapper = rowMapper;
+        this.sql = sql;
+    }
+
+    void setCloseCallback(Runnable closeCallback) {
+        this.closeCallback = closeCallback;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed) {
+            return false;
+        }
+        if (!fetched) {
+            try {
+                hasNext = rs.next();
+                fetched = true;
+            } catch (SQLException e) {
+                close();
+                throw new DbException(e).set("sql", sql);
+            }
+            if (!hasNext) {
+                close();
+            }
+        }
+        return hasNext;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        fetched = false;
+        try {
+            return rowMapper.handle(rs);
+        } catch (SQLException e) {
+            close();
+            throw new DbException(e).set("sql", sql);
+        }
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * 游标只能遍历一次，返回自身.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return this;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * 关闭 ResultSet 和 Statement，如果 Connection 不在事务中，则同时关闭 Connection.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        hasNext = false;
+        DbUtils.closeQuietly(rs);
+        DbUtils.closeQuietly(ps);
+        if (closeConnection) {
+            DbUtils.closeQuietly(conn);
+        }
+        if (closeCallback != null) {
+            closeCallback.run();
+            closeCallback = null;
+        }
+    }
+}
@@ -0,0 +1,450 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import jetbrick.dao.DbException;
+import jetbrick.dao.orm.handlers.PagelistHandler;
+import jetbrick.dao.orm.utils.DbUtils;
+import jetbrick.lang.Validate;
+
+/**
+ * 分库操作 (水平拆分)。每个分库对应一个 {@link DbHelper}，单例使用.
+ *
+ * <ul>
+ * <li>单个分库的操作: 使用 {@link #route(Object)} 根据分库键找到对应的 DbHelper，然后直接操作 (包括事务)。</li>
+ * <li>跨分库的查询: 在线程池中并行查询所有的分库，然后合并结果。
+ * 如果 SQL 中带有 ORDER BY，那么可以传入相同排序规则的 Comparator，进行多路归并。</li>
+ * </ul>
+ *
+ * <p>
+ * 跨分库的操作在其他线程中执行，不能参与当前线程的事务。
+ * </p>
+ *
+ * <pre>
+ * ShardedDbHelper dao = new ShardedDbHelper(Arrays.asList(db0, db1, db2));
+ * dao.route(userId).execute("insert into orders ...", ...);
+ *
+ * // 所有分库的订单，按照 id 倒序，取第 2 页
+ * Pagelist&lt;Order&gt; page = dao.queryAsPagelist(pageInfo, comparator, Order.class, "select * from orders order by id desc");
+ * </pre>
+ */
+public class ShardedDbHelper {
+    private static final int SHARD_THREADS = Integer.getInteger("jetbrick.orm.shard.threads", 20);
+    private static final int SHARD_QUEUE_SIZE = Integer.getInteger("jetbrick.orm.shard.queue.size", 1000);
+
+    /**
+     * 默认的分库规则: 整数按照取模，其他的按照 hashCode() 取模.
+     */
+    public static final ShardFunction MOD = new ShardFunction() {
+        @Override
+        public int shard(Object shardKey, int shardCount) {
+            long value;
+            if (shardKey instanceof Long || shardKey instanceof Integer || shardKey instanceof Short || shardKey instanceof Byte) {
+                value = ((Number) shardKey).longValue();
+            } else {
+                value = shardKey.hashCode();
+            }
+            return (int) (((value % shardCount) + shardCount) % shardCount);
+        }
+    };
+
+    private final DbHelper[] shards;
+    private final ShardFunction shardFunction;
+    private volatile Executor executor; // 跨分库查询使用的线程池，第一次使用的时候创建
+
+    public ShardedDbHelper(List<DbHelper> shards) {
+        this(shards, MOD);
+    }
+
+    public ShardedDbHelper(List<DbHelper> shards, ShardFunction shardFunction) {
+        Validate.notEmpty(shards, "shards is empty.");
+        Validate.notNull(shardFunction, "shardFunction is null.");
+
+        this.shards = shards.toArray(new DbHelper[shards.size()]);
+        this.shardFunction = shardFunction;
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    public DbHelper getShard(int index) {
+        return shards[index];
+    }
+
+    public List<DbHelper> getShards() {
+        return Collections.unmodifiableList(Arrays.asList(shards));
+    }
+
+    /**
+     * 根据分库键计算分库的序号.
+     */
+    public int getShardIndex(Object shardKey) {
+        Validate.notNull(shardKey, "shardKey is null.");
+
+        int index = shardFunction.shard(shardKey, shards.length);
+        if (index < 0 || index >= shards.length) {
+            throw new DbException("Shard index out of range: " + index).set("shardKey", shardKey);
+        }
+        return index;
+    }
+
+    /**
+     * 根据分库键返回对应的分库.
+     */
+    public DbHelper route(Object shardKey) {
+        return shards[getShardIndex(shardKey)];
+    }
+
+    /**
+     * 返回跨分库查询使用的线程池，如果没有设置，那么创建一个默认的 {@link DbExecutor}
+     * (并发数: jetbrick.orm.shard.threads，排队数: jetbrick.orm.shard.queue.size).
+     */
+    public Executor getExecutor() {
+        Executor result = executor;
+        if (result == null) {
+            synchronized (this) {
+                result = executor;
+                if (result == null) {
+                    result = new DbExecutor(SHARD_THREADS, SHARD_QUEUE_SIZE);
+                    executor = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * 在所有的分库上并行执行，按照分库的顺序返回每个分库的结果.
+     *
+     * <p>
+     * 任何一个分库失败，都会等待其他的分库执行完毕 (关闭已经返回的 {@link Closeable} 结果)，然后抛出第一个异常。
+     * </p>
+     */
+    public <T> List<T> execute(final ShardCallback<T> callback) {
+        Validate.notNull(callback, "callback is null.");
+
+        if (shards.length == 1) {
+            return Collections.singletonList(callback.execute(shards[0]));
+        }
+
+        List<FutureTask<T>> tasks = new ArrayList<FutureTask<T>>(shards.length);
+        Throwable error = null;
+        Executor executor = getExecutor();
+        for (final DbHelper shard : shards) {
+            FutureTask<T> task = new FutureTask<T>(new Callable<T>() {
+                @Override
+                public T call() {
+                    return callback.execute(shard);
+                }
+            });
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                error = e;
+                break;
+            }
+            tasks.add(task);
+        }
+
+        List<T> results = new ArrayList<T>(shards.length);
+        boolean interrupted = false;
+        for (FutureTask<T> task : tasks) {
+            while (true) {
+                try {
+                    results.add(task.get());
+                    break;
+                } catch (InterruptedException e) {
+                    // 必须等待所有的任务结束，否则可能泄漏连接
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (error == null) {
+                        error = e.getCause();
+                    }
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (error != null) {
+            for (T result : results) {
+                if (result instanceof Closeable) {
+                    try {
+                        ((Closeable) result).close();
+                    } catch (IOException e) {
+                        // ignore
+                    }
+                }
+            }
+            if (error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            }
+            if (error instanceof Error) {
+                throw (Error) error;
+            }
+            throw new DbException(error);
+        }
+        return results;
+    }
+
+    /**
+     * 并行查询所有的分库，按照分库的顺序拼接结果.
+     */
+    public <T> List<T> queryAsList(Class<T> beanClass, String sql, Object... parameters) {
+        Validate.notNull(beanClass, "beanClass is null.");
+
+        return doQueryAsList(beanClass, null, sql, parameters);
+    }
+
+    /**
+     * rowMapper 会被所有分库的线程同时使用，必须是线程安全的 (Bean/Map 请使用 Class 参数的方法，每个分库使用独立的 RowMapper).
+     */
+    public <T> List<T> queryAsList(RowMapper<T> rowMapper, String sql, Object... parameters) {
+        Validate.notNull(rowMapper, "rowMapper is null.");
+
+        return doQueryAsList(null, rowMapper, sql, parameters);
+    }
+
+    private <T> List<T> doQueryAsList(final Class<T> beanClass, final RowMapper<T> rowMapper, final String sql, final Object... parameters) {
+        List<List<T>> results = execute(new ShardCallback<List<T>>() {
+            @Override
+            public List<T> execute(DbHelper shard) {
+                return shard.queryAsList(getRowMapper(shard, beanClass, rowMapper), sql, parameters);
+            }
+        });
+
+        int size = 0;
+        for (List<T> items : results) {
+            size += items.size();
+        }
+        List<T> items = new ArrayList<T>(size);
+        for (List<T> result : results) {
+            items.addAll(result);
+        }
+        return items;
+    }
+
+    /**
+     * 并行查询所有的分库，按照 comparator 归并排序 (SQL 中必须使用相同规则的 ORDER BY).
+     */
+    public <T> List<T> queryAsList(Comparator<? super T> comparator, Class<T> beanClass, String sql, Object... parameters) {
+        Validate.notNull(beanClass, "beanClass is null.");
+
+        return doQueryAsList(comparator, 0, -1, beanClass, null, sql, parameters);
+    }
+
+    public <T> List<T> queryAsList(Comparator<? super T> comparator, RowMapper<T> rowMapper, String sql, Object... parameters) {
+        return queryAsList(comparator, 0, -1, rowMapper, sql, parameters);
+    }
+
+    /**
+     * 并行查询所有的分库，按照 comparator 归并排序之后，返回全局的第 firstResult 行开始的 maxResults 行.
+     * 每个分库最多只读取 firstResult + maxResults 行。
+     *
+     * @param firstResult 从 0 开始
+     * @param maxResults 小于 0 代表不限制
+     */
+    public <T> List<T> queryAsList(Comparator<? super T> comparator, int firstResult, int maxResults, RowMapper<T> rowMapper, String sql, Object... parameters) {
+        Validate.notNull(rowMapper, "rowMapper is null.");
+
+        return doQueryAsList(comparator, firstResult, maxResults, null, rowMapper, sql, parameters);
+    }
+
+    private <T> List<T> doQueryAsList(Comparator<? super T> comparator, final int firstResult, final int maxResults, final Class<T> beanClass, final RowMapper<T> rowMapper, final String sql, final Object... parameters) {
+        Validate.notNull(comparator, "comparator is null.");
+        Validate.notNull(sql, "sql is null.");
+        Validate.isTrue(firstResult >= 0, "firstResult must be >= 0.");
+
+        if (maxResults == 0) {
+            return Collections.emptyList();
+        }
+
+        List<List<T>> results = execute(new ShardCallback<List<T>>() {
+            @Override
+            public List<T> execute(DbHelper shard) {
+                RowMapper<T> mapper = getRowMapper(shard, beanClass, rowMapper);
+                if (maxResults < 0) {
+                    return shard.queryAsList(mapper, sql, parameters);
+                }
+                // 每个分库最多需要前 firstResult + maxResults 行
+                int limit = (int) Math.min((long) firstResult + maxResults, Integer.MAX_VALUE);
+                String page_sql = shard.getDialect().sql_pagelist(sql, 0, limit);
+                PagelistHandler<T> rsh = new PagelistHandler<T>(mapper);
+                rsh.setMaxResults(limit);
+                return shard.query(rsh, (page_sql == null) ? sql : page_sql, parameters);
+            }
+        });
+
+        List<Iterator<T>> inputs = new ArrayList<Iterator<T>>(results.size());
+        for (List<T> items : results) {
+            inputs.add(items.iterator());
+        }
+        MergeCursor<T> cursor = new MergeCursor<T>(inputs, comparator);
+        try {
+            return cursor.toList(firstResult, maxResults);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * 流式的多路归并查询: 并行在所有的分库上打开游标，每次读取的时候，从所有分库的当前行中取出最小的一行.
+     * 在游标关闭之前，每个分库都会占用一个 Connection，使用完毕之后必须调用 {@link MergeCursor#close()}。
+     */
+    public <T> MergeCursor<T> queryAsCursor(Comparator<? super T> comparator, Class<T> beanClass, String sql, Object... parameters) {
+        Validate.notNull(beanClass, "beanClass is null.");
+
+        return doQueryAsCursor(comparator, beanClass, null, sql, parameters);
+    }
+
+    public <T> MergeCursor<T> queryAsCursor(Comparator<? super T> comparator, RowMapper<T> rowMapper, String sql, Object... parameters) {
+        Validate.notNull(rowMapper, "rowMapper is null.");
+
+        return doQueryAsCursor(comparator, null, rowMapper, sql, parameters);
+    }
+
+    private <T> MergeCursor<T> doQueryAsCursor(Comparator<? super T> comparator, final Class<T> beanClass, final RowMapper<T> rowMapper, final String sql, final Object... parameters) {
+        Validate.notNull(comparator, "comparator is null.");
+
+        List<RowCursor<T>> cursors = execute(new ShardCallback<RowCursor<T>>() {
+            @Override
+            public RowCursor<T> execute(DbHelper shard) {
+                RowCursor<T> cursor = shard.queryAsCursor(getRowMapper(shard, beanClass, rowMapper), sql, parameters);
+                try {
+                    // 在分库的线程中预读第一行，减少归并时的等待
+                    cursor.hasNext();
+                } catch (RuntimeException e) {
+                    cursor.close();
+                    throw e;
+                }
+                return cursor;
+            }
+        });
+        return new MergeCursor<T>(cursors, comparator);
+    }
+
+    /**
+     * 跨分库分页: 总记录数为所有分库的总和，每页的数据为所有分库归并排序之后的全局分页 (SQL 中必须使用和 comparator 相同规则的 ORDER BY).
+     * 不支持 {@link KeysetPageInfo}。
+     */
+    public <T> Pagelist<T> queryAsPagelist(PageInfo pageInfo, Comparator<? super T> comparator, Class<T> beanClass, String sql, Object... parameters) {
+        Validate.notNull(beanClass, "beanClass is null.");
+
+        return doQueryAsPagelist(pageInfo, comparator, beanClass, null, sql, parameters);
+    }
+
+    public <T> Pagelist<T> queryAsPagelist(PageInfo pageInfo, Comparator<? super T> comparator, RowMapper<T> rowMapper, String sql, Object... parameters) {
+        Validate.notNull(rowMapper, "rowMapper is null.");
+
+        return doQueryAsPagelist(pageInfo, comparator, null, rowMapper, sql, parameters);
+    }
+
+    private <T> Pagelist<T> doQueryAsPagelist(PageInfo pageInfo, Comparator<? super T> comparator, Class<T> beanClass, RowMapper<T> rowMapper, String sql, Object... parameters) {
+        Validate.notNull(pageInfo, "pageInfo is null.");
+        Validate.isFalse(pageInfo instanceof KeysetPageInfo, "KeysetPageInfo is not supported.");
+
+        PagelistImpl<T> pagelist = new PagelistImpl<T>(pageInfo);
+        if (pageInfo.getTotalCount() < 0) {
+            String count_sql = DbUtils.get_sql_select_count(sql);
+            long count = queryAsLongSum(count_sql, parameters);
+            pagelist.setTotalCount((int) Math.min(count, Integer.MAX_VALUE));
+        }
+
+        List<T> items = Collections.emptyList();
+        if (pagelist.getTotalCount() > pagelist.getFirstResult()) {
+            items = doQueryAsList(comparator, pagelist.getFirstResult(), pagelist.getPageSize(), beanClass, rowMapper, sql, parameters);
+        }
+        pagelist.setItems(items);
+
+        return pagelist;
+    }
+
+    /**
+     * 并行查询所有的分库，返回结果的总和 (如: select count(*) ...).
+     */
+    public long queryAsLongSum(final String sql, final Object... parameters) {
+        List<Long> results = execute(new ShardCallback<Long>() {
+            @Override
+            public Long execute(DbHelper shard) {
+                return shard.queryAsLong(sql, parameters);
+            }
+        });
+
+        long sum = 0;
+        for (Long value : results) {
+            if (value != null) {
+                sum += value;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * 在所有的分库上并行执行 SQL (每个分库是独立的，不保证原子性)，返回更新的总记录数.
+     */
+    public int execute(final String sql, final Object... parameters) {
+        List<Integer> results = execute(new ShardCallback<Integer>() {
+            @Override
+            public Integer execute(DbHelper shard) {
+                return shard.execute(sql, parameters);
+            }
+        });
+
+        int sum = 0;
+        for (Integer value : results) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    /**
+     * 每个分库使用独立的 RowMapper (内置的 RowMapper 缓存了当前 ResultSet 的映射计划，多个分库的线程共享的时候会互相覆盖).
+     */
+    private static <T> RowMapper<T> getRowMapper(DbHelper shard, Class<T> beanClass, RowMapper<T> rowMapper) {
+        return (beanClass == null) ? rowMapper : shard.getRowMapper(beanClass);
+    }
+
+    /**
+     * 分库规则.
+     */
+    public static interface ShardFunction {
+        /**
+         * @return 分库的序号 (0 ~ shardCount-1)
+         */
+        public int shard(Object shardKey, int shardCount);
+    }
+
+    /**
+     * 在单个分库上执行的操作.
+     */
+    public static interface ShardCallback<T> {
+        public T execute(DbHelper shard);
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm.handlers;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import jetbrick.dao.orm.ResultSetHandler;
+import jetbrick.dao.orm.RowMapper;
+
+/**
+ * Keyset 分页：读取 max + 1 行来判断是否还有下一页，同时记录最后一行的排序字段的值.
+ */
+public class KeysetPagelistHandler<T> implements ResultSetHandler<List<T>> {
+
+    private final RowMapper<T> mapper;
+    private final String[] keyLabels;
+    private final int max;
+    private Object[] nextKey;
+
+    public KeysetPagelistHandler(RowMapper<T> mapper, String[] keyLabels, int max) {
+        this.mapper = mapper;
+        this.keyLabels = keyLabels;
+        this.max = max;
+    }
+
+    @Override
+    public List<T> handle(ResultSet rs) throws SQLException {
+        List<T> rows = new ArrayList<T>(max);
+        Object[] lastKey = null;
+        while (rs.next()) {
+            if (rows.size() >= max) {
+                nextKey = lastKey; // 还有下一页
+                break;
+            }
+            rows.add(mapper.handle(rs));
+            lastKey = new Object[keyLabels.length];
+            for (int i = 0; i < keyLabels.length; i++) {
+                lastKey[i] = rs.getObject(keyLabels[i]);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * 当前页最后一行的排序字段的值，没有下一页的时候返回 null.
+     */
+    public Object[] getNextKey() {
+        return nextKey;
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm.handlers;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import jetbrick.dao.orm.ResultSetHandler;
+
+/**
+ * 将第一列读取到 long[] 中 (不装箱)，null 转换为 0.
+ */
+public class LongArrayHandler implements ResultSetHandler<long[]> {
+
+    @Override
+    public long[] handle(ResultSet rs) throws SQLException {
+        long[] values = new long[64];
+        int size = 0;
+        while (rs.next()) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size << 1);
+            }
+            values[size++] = rs.getLong(1);
+        }
+        return (size == values.length) ? values : Arrays.copyOf(values, size);
+    }
+}
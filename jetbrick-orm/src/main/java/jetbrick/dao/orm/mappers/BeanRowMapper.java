@@ -18,15 +18,23 @@
  */
 package jetbrick.dao.orm.mappers;
 
-import java.sql.*;
+import java.lang.ref.WeakReference;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import jetbrick.dao.orm.RowMapper;
-import jetbrick.lang.IdentifiedNameUtils;
 import jetbrick.reflect.KlassInfo;
-import jetbrick.reflect.PropertyInfo;
-import jetbrick.typecast.TypeCastUtils;
 
+/**
+ * 将一行 ResultSet 转换成 Bean.
+ *
+ * <p>
+ * 每个 ResultSet 只解析一次 ResultSetMetaData，column -> property 的映射计划按照 (Bean, 列结构) 全局缓存，
+ * 并使用 ASM 生成的 RowMapper 直接调用 rs.getXXX(i) 和 setter 方法。
+ * </p>
+ */
 public class BeanRowMapper<T> implements RowMapper<T> {
-    private KlassInfo klass;
+    private final KlassInfo klass;
+    private volatile ColumnPlan<T> plan;
 
     public BeanRowMapper(Class<T> beanClass) {
         this.klass = KlassInfo.create(beanClass);
@@ -34,30 +42,28 @@ public class BeanRowMapper<T> implements RowMapper<T> {
 
     @Override
     public T handle(ResultSet rs) throws SQLException {
-        try {
-            @SuppressWarnings("unchecked")
-            T bean = (T) klass.newInstance();
-
-            ResultSetMetaData rsmd = rs.getMetaData();
-            int cols = rsmd.getColumnCount();
-            for (int i = 1; i <= cols; i++) {
-                String columnName = rsmd.getColumnLabel(i);
-                if (columnName == null || columnName.length() == 0) {
-                    columnName = rsmd.getColumnName(i);
-                }
-
-                String propertyName = IdentifiedNameUtils.toCamelCase(columnName);
-                Object value = rs.getObject(i);
-
-                PropertyInfo property = klass.getProperty(propertyName);
-                value = TypeCastUtils.convert(value, property.getType());
-                property.set(bean, value);
-            }
-            return bean;
+        ColumnPlan<T> plan = this.plan;
+        if (plan == null || plan.rs.get() != rs) {
+            RowMapper<T> mapper = BeanRowMapperCompiler.lookup(klass, rs.getMetaData());
+            plan = new ColumnPlan<T>(rs, mapper);
+            this.plan = plan;
+        }
 
-        } catch (Exception e) {
+        try {
+            return plan.mapper.handle(rs);
+        } catch (RuntimeException e) {
             throw new SQLException("Can't set bean property.", e);
         }
     }
 
+    // 绑定到某一个 ResultSet 上的 RowMapper (弱引用，不阻止 ResultSet 被回收)
+    static final class ColumnPlan<T> {
+        final WeakReference<ResultSet> rs;
+        final RowMapper<T> mapper;
+
+        ColumnPlan(ResultSet rs, RowMapper<T> mapper) {
+            this.rs = new WeakReference<ResultSet>(rs);
+            this.mapper = mapper;
+        }
+    }
 }
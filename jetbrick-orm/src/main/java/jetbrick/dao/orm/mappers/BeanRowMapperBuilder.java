@@ -0,0 +1,277 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm.mappers;
+
+import static jetbrick.asm.Opcodes.*;
+import java.lang.reflect.Method;
+import jetbrick.asm.*;
+import jetbrick.dao.orm.RowMapper;
+import jetbrick.dao.orm.mappers.BeanRowMapperCompiler.Column;
+import jetbrick.dao.orm.mappers.BeanRowMapperCompiler.JdbcGetter;
+import jetbrick.reflect.KlassInfo;
+
+/**
+ * 生成一个专用的 RowMapper，等价于:
+ *
+ * <pre>
+ * public Object handle(ResultSet rs) {
+ *     Bean bean = new Bean();
+ *     bean.setId(rs.getLong(1));
+ *     bean.setName(rs.getString(2));
+ *     bean.setOther((Other) TypeCastUtils.convert(rs.getObject(3), Other.class));
+ *     return bean;
+ * }
+ * </pre>
+ */
+final class BeanRowMapperBuilder {
+    private static final String RESULTSET_KLASS = "java/sql/ResultSet";
+    private static final int VAR_RS = 1;
+    private static final int VAR_BEAN = 2;
+    private static final int VAR_VALUE = 3; // long/double 占用 2 个 slot
+
+    private final ClassWriter cw;
+    private final String generatedKlassNameInternal;
+    private final String beanKlassNameInternal;
+
+    public BeanRowMapperBuilder(String generatedKlassName, String beanKlassName) {
+        generatedKlassNameInternal = generatedKlassName.replace('.', '/');
+        beanKlassNameInternal = beanKlassName.replace('.', '/');
+
+        // V1_5: 使用 ldc class 常量，并且不需要 StackMapTable
+        cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        String[] interfaces = new String[] { Type.getInternalName(RowMapper.class) };
+        cw.visit(V1_5, ACC_PUBLIC + ACC_SUPER + ACC_FINAL + ACC_SYNTHETIC, generatedKlassNameInternal, null, "java/lang/Object", interfaces);
+    }
+
+    public static byte[] create(String generatedKlassName, KlassInfo beanKlass, Column[] columns) {
+        BeanRowMapperBuilder builder = new BeanRowMapperBuilder(generatedKlassName, beanKlass.getName());
+        builder.insertConstructor();
+        builder.insertHandle(columns);
+        return builder.asByteCode();
+    }
+
+    public void insertConstructor() {
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC + ACC_SYNTHETIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(1, 1);
+        mv.visitEnd();
+    }
+
+    public void insertHandle(Column[] columns) {
+        String[] exceptions = new String[] { "java/sql/SQLException" };
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC + ACC_SYNTHETIC, "handle", "(Ljava/sql/ResultSet;)Ljava/lang/Object;", null, exceptions);
+        mv.visitCode();
+
+        // Bean bean = new Bean();
+        mv.visitTypeInsn(NEW, beanKlassNameInternal);
+        mv.visitInsn(DUP);
+        mv.visitMethodInsn(INVOKESPECIAL, beanKlassNameInternal, "<init>", "()V", false);
+        mv.visitVarInsn(ASTORE, VAR_BEAN);
+
+        for (Column column : columns) {
+            JdbcGetter getter = column.getter;
+            if (getter == null) {
+                insertConvertColumn(mv, column);
+            } else if (getter.isPrimitive() && !column.getType().isPrimitive()) {
+                insertWrapperColumn(mv, column);
+            } else if (getter.isPrimitive()) {
+                insertPrimitiveColumn(mv, column);
+            } else {
+                // bean.setXXX(rs.getXXX(i));
+                mv.visitVarInsn(ALOAD, VAR_BEAN);
+                insertGetColumn(mv, column);
+                insertInvokeSetter(mv, column);
+            }
+        }
+
+        mv.visitVarInsn(ALOAD, VAR_BEAN);
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    // bean.setXXX((Type) TypeCastUtils.convert(rs.getObject(i), Type.class));
+    private void insertConvertColumn(MethodVisitor mv, Column column) {
+        Type type = Type.getType(column.getType());
+
+        mv.visitVarInsn(ALOAD, VAR_BEAN);
+        mv.visitVarInsn(ALOAD, VAR_RS);
+        insertInt(mv, column.index);
+        mv.visitMethodInsn(INVOKEINTERFACE, RESULTSET_KLASS, "getObject", "(I)Ljava/lang/Object;", true);
+        mv.visitLdcInsn(boxedType(type));
+        mv.visitMethodInsn(INVOKESTATIC, "jetbrick/typecast/TypeCastUtils", "convert", "(Ljava/lang/Object;Ljava/lang/Class;)Ljava/lang/Object;", false);
+        insertUnbox(mv, type);
+        insertInvokeSetter(mv, column);
+    }
+
+    // value = rs.getXXX(i); bean.setXXX(rs.wasNull() ? null : Wrapper.valueOf(value));
+    private void insertWrapperColumn(MethodVisitor mv, Column column) {
+        JdbcGetter getter = column.getter;
+        Type primitiveType = Type.getType(getter.descriptor);
+
+        insertGetColumn(mv, column);
+        mv.visitVarInsn(primitiveType.getOpcode(ISTORE), VAR_VALUE);
+
+        Label labelNotNull = new Label();
+        Label labelEnd = new Label();
+        mv.visitVarInsn(ALOAD, VAR_RS);
+        mv.visitMethodInsn(INVOKEINTERFACE, RESULTSET_KLASS, "wasNull", "()Z", true);
+        mv.visitJumpInsn(IFEQ, labelNotNull);
+
+        mv.visitVarInsn(ALOAD, VAR_BEAN);
+        mv.visitInsn(ACONST_NULL);
+        insertInvokeSetter(mv, column);
+        mv.visitJumpInsn(GOTO, labelEnd);
+
+        mv.visitLabel(labelNotNull);
+        mv.visitVarInsn(ALOAD, VAR_BEAN);
+        mv.visitVarInsn(primitiveType.getOpcode(ILOAD), VAR_VALUE);
+        mv.visitMethodInsn(INVOKESTATIC, getter.wrapper, "valueOf", "(" + getter.descriptor + ")L" + getter.wrapper + ";", false);
+        insertInvokeSetter(mv, column);
+
+        mv.visitLabel(labelEnd);
+    }
+
+    // value = rs.getXXX(i); if (rs.wasNull()) throw new NullPointerException(...); bean.setXXX(value);
+    // 和反射方式一样，NULL 不能赋值给原始类型的属性
+    private void insertPrimitiveColumn(MethodVisitor mv, Column column) {
+        mv.visitVarInsn(ALOAD, VAR_BEAN);
+        insertGetColumn(mv, column);
+
+        Label labelNotNull = new Label();
+        mv.visitVarInsn(ALOAD, VAR_RS);
+        mv.visitMethodInsn(INVOKEINTERFACE, RESULTSET_KLASS, "wasNull", "()Z", true);
+        mv.visitJumpInsn(IFEQ, labelNotNull);
+        mv.visitTypeInsn(NEW, "java/lang/NullPointerException");
+        mv.visitInsn(DUP);
+        mv.visitLdcInsn("Can't set null to primitive property: " + column.property.getName());
+        mv.visitMethodInsn(INVOKESPECIAL, "java/lang/NullPointerException", "<init>", "(Ljava/lang/String;)V", false);
+        mv.visitInsn(ATHROW);
+
+        mv.visitLabel(labelNotNull);
+        insertInvokeSetter(mv, column);
+    }
+
+    private void insertGetColumn(MethodVisitor mv, Column column) {
+        JdbcGetter getter = column.getter;
+        mv.visitVarInsn(ALOAD, VAR_RS);
+        insertInt(mv, column.index);
+        mv.visitMethodInsn(INVOKEINTERFACE, RESULTSET_KLASS, getter.methodName, "(I)" + getter.descriptor, true);
+    }
+
+    private void insertInvokeSetter(MethodVisitor mv, Column column) {
+        Method setter = column.property.getSetter().getMethod();
+        mv.visitMethodInsn(INVOKEVIRTUAL, beanKlassNameInternal, setter.getName(), Type.getMethodDescriptor(setter), false);
+
+        // 忽略 setter 的返回值 (链式调用风格的 setter)
+        Type returnType = Type.getReturnType(setter);
+        if (returnType.getSize() == 1) {
+            mv.visitInsn(POP);
+        } else if (returnType.getSize() == 2) {
+            mv.visitInsn(POP2);
+        }
+    }
+
+    private static void insertInt(MethodVisitor mv, int value) {
+        if (value <= 5) {
+            mv.visitInsn(ICONST_0 + value);
+        } else if (value <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(BIPUSH, value);
+        } else {
+            mv.visitIntInsn(SIPUSH, value);
+        }
+    }
+
+    private static Type boxedType(Type type) {
+        switch (type.getSort()) {
+        case Type.BOOLEAN:
+            return Type.getType(Boolean.class);
+        case Type.BYTE:
+            return Type.getType(Byte.class);
+        case Type.CHAR:
+            return Type.getType(Character.class);
+        case Type.SHORT:
+            return Type.getType(Short.class);
+        case Type.INT:
+            return Type.getType(Integer.class);
+        case Type.FLOAT:
+            return Type.getType(Float.class);
+        case Type.LONG:
+            return Type.getType(Long.class);
+        case Type.DOUBLE:
+            return Type.getType(Double.class);
+        default:
+            return type;
+        }
+    }
+
+    private static void insertUnbox(MethodVisitor mv, Type type) {
+        switch (type.getSort()) {
+        case Type.BOOLEAN:
+            mv.visitTypeInsn(CHECKCAST, "java/lang/Boolean");
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Boolean", "booleanValue", "()Z", false);
+            break;
+        case Type.BYTE:
+            mv.visitTypeInsn(CHECKCAST, "java/lang/Number");
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Number", "byteValue", "()B", false);
+            break;
+        case Type.CHAR:
+            mv.visitTypeInsn(CHECKCAST, "java/lang/Character");
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Character", "charValue", "()C", false);
+            break;
+        case Type.SHORT:
+            mv.visitTypeInsn(CHECKCAST, "java/lang/Number");
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Number", "shortValue", "()S", false);
+            break;
+        case Type.INT:
+            mv.visitTypeInsn(CHECKCAST, "java/lang/Number");
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Number", "intValue", "()I", false);
+            break;
+        case Type.FLOAT:
+            mv.visitTypeInsn(CHECKCAST, "java/lang/Number");
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Number", "floatValue", "()F", false);
+            break;
+        case Type.LONG:
+            mv.visitTypeInsn(CHECKCAST, "java/lang/Number");
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Number", "longValue", "()J", false);
+            break;
+        case Type.DOUBLE:
+            mv.visitTypeInsn(CHECKCAST, "java/lang/Number");
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Number", "doubleValue", "()D", false);
+            break;
+        case Type.ARRAY:
+            mv.visitTypeInsn(CHECKCAST, type.getDescriptor());
+            break;
+        case Type.OBJECT:
+            String internalName = type.getInternalName();
+            if (!"java/lang/Object".equals(internalName)) {
+                mv.visitTypeInsn(CHECKCAST, internalName);
+            }
+            break;
+        }
+    }
+
+    public byte[] asByteCode() {
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+}
@@ -0,0 +1,312 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm.mappers;
+
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import jetbrick.dao.orm.RowMapper;
+import jetbrick.lang.IdentifiedNameUtils;
+import jetbrick.reflect.*;
+import jetbrick.reflect.asm.ASMFactory;
+import jetbrick.typecast.TypeCastUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 根据 ResultSetMetaData 解析出 column -> property 的映射计划，并生成对应的 RowMapper (有缓存).
+ *
+ * <p>
+ * 同一个 Bean 相同的列结构 (列名 + 列类型) 只解析一次，优先使用 ASM 生成的 RowMapper，
+ * 直接调用 rs.getXXX(i) 和 Bean 的 setter 方法；无法生成时，退回到反射方式。
+ * </p>
+ */
+final class BeanRowMapperCompiler {
+    private static final Logger log = LoggerFactory.getLogger(BeanRowMapperCompiler.class);
+
+    // 每个 Bean 最多缓存的列结构数量 (防止动态 SQL 导致内存无限增长)
+    private static final int MAX_PLANS_PER_KLASS = 64;
+    private static final boolean ASM_ENABLED = System.getProperty("jetbrick.orm.mapper.asm.disabled") == null;
+
+    private static final AtomicInteger sequence = new AtomicInteger();
+    private static final ConcurrentMap<Class<?>, ConcurrentMap<String, RowMapper<?>>> pool = new ConcurrentHashMap<Class<?>, ConcurrentMap<String, RowMapper<?>>>();
+
+    @SuppressWarnings("unchecked")
+    public static <T> RowMapper<T> lookup(KlassInfo klass, ResultSetMetaData rsmd) throws SQLException {
+        Class<?> beanClass = klass.getType();
+        ConcurrentMap<String, RowMapper<?>> plans = pool.get(beanClass);
+        if (plans == null) {
+            plans = new ConcurrentHashMap<String, RowMapper<?>>();
+            ConcurrentMap<String, RowMapper<?>> old = pool.putIfAbsent(beanClass, plans);
+            if (old != null) {
+                plans = old;
+            }
+        }
+
+        String signature = getSignature(rsmd);
+        RowMapper<?> mapper = plans.get(signature);
+        if (mapper == null) {
+            Column[] columns = resolveColumns(klass, rsmd);
+            if (plans.size() >= MAX_PLANS_PER_KLASS) {
+                // 缓存已满，不再生成新的 class (防止 Metaspace 无限增长)
+                return (RowMapper<T>) new ReflectBeanRowMapper(klass, columns);
+            }
+            mapper = compile(klass, columns);
+            RowMapper<?> old = plans.putIfAbsent(signature, mapper);
+            if (old != null) {
+                mapper = old;
+            }
+        }
+        return (RowMapper<T>) mapper;
+    }
+
+    private static String getSignature(ResultSetMetaData rsmd) throws SQLException {
+        int cols = rsmd.getColumnCount();
+        StringBuilder sb = new StringBuilder(cols * 16);
+        for (int i = 1; i <= cols; i++) {
+            sb.append(getColumnName(rsmd, i)).append(':').append(rsmd.getColumnType(i)).append(',');
+        }
+        return sb.toString();
+    }
+
+    private static String getColumnName(ResultSetMetaData rsmd, int index) throws SQLException {
+        String columnName = rsmd.getColumnLabel(index);
+        if (columnName == null || columnName.length() == 0) {
+            columnName = rsmd.getColumnName(index);
+        }
+        return columnName;
+    }
+
+    private static Column[] resolveColumns(KlassInfo klass, ResultSetMetaData rsmd) throws SQLException {
+        int cols = rsmd.getColumnCount();
+        Column[] columns = new Column[cols];
+        for (int i = 1; i <= cols; i++) {
+            String columnName = getColumnName(rsmd, i);
+            String propertyName = IdentifiedNameUtils.toCamelCase(columnName);
+            PropertyInfo property = klass.getProperty(propertyName);
+            if (property == null || !property.writable()) {
+                throw new SQLException("Can't set bean property: " + klass.getName() + "." + propertyName + " for column " + columnName);
+            }
+            Class<?> type = property.getSetter().getParameterTypes()[0];
+            columns[i - 1] = new Column(i, property, JdbcGetter.lookup(type, rsmd.getColumnType(i)));
+        }
+        return columns;
+    }
+
+    private static RowMapper<?> compile(KlassInfo klass, Column[] columns) {
+        if (ASM_ENABLED && isAccessible(klass, columns)) {
+            try {
+                return generate(klass, columns);
+            } catch (Throwable e) {
+                log.warn("Can't generate RowMapper for " + klass.getName() + ", fallback to reflection.", e);
+            }
+        }
+        return new ReflectBeanRowMapper(klass, columns);
+    }
+
+    private static boolean isAccessible(KlassInfo klass, Column[] columns) {
+        if (!klass.isPublic() || klass.isAbstract() || klass.isInterface()) {
+            return false;
+        }
+        if (klass.getType().getEnclosingClass() != null && !klass.isStatic()) {
+            return false;
+        }
+        ConstructorInfo ctor = klass.getDefaultConstructor();
+        if (ctor == null || !Modifier.isPublic(ctor.getModifiers())) {
+            return false;
+        }
+        for (Column column : columns) {
+            MethodInfo setter = column.property.getSetter();
+            if (setter.isStatic() || !Modifier.isPublic(setter.getModifiers())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static RowMapper<?> generate(KlassInfo klass, Column[] columns) throws Exception {
+        int id = sequence.incrementAndGet();
+        String generatedKlassName = BeanRowMapperCompiler.class.getPackage().getName() + ".delegate." + klass.getName().replace('.', '_') + "$" + id;
+        byte[] byteCode = BeanRowMapperBuilder.create(generatedKlassName, klass, columns);
+        Class<?> generatedKlass = ASMFactory.defineClass(generatedKlassName, byteCode, klass.getType());
+        return (RowMapper<?>) generatedKlass.newInstance();
+    }
+
+    /**
+     * 一个列的映射计划.
+     */
+    static final class Column {
+        final int index;
+        final PropertyInfo property;
+        final JdbcGetter getter; // null 表示需要使用 TypeCastUtils 转换
+
+        Column(int index, PropertyInfo property, JdbcGetter getter) {
+            this.index = index;
+            this.property = property;
+            this.getter = getter;
+        }
+
+        Class<?> getType() {
+            return property.getSetter().getParameterTypes()[0];
+        }
+    }
+
+    /**
+     * 对应 ResultSet 的 typed getter 方法，只有在列类型和属性类型兼容的情况下使用，
+     * 否则保持原来的 rs.getObject(i) + TypeCastUtils.convert() 的语义.
+     */
+    static enum JdbcGetter {
+        STRING("getString", "Ljava/lang/String;", null),
+        BOOLEAN("getBoolean", "Z", "java/lang/Boolean"),
+        BYTE("getByte", "B", "java/lang/Byte"),
+        SHORT("getShort", "S", "java/lang/Short"),
+        INT("getInt", "I", "java/lang/Integer"),
+        LONG("getLong", "J", "java/lang/Long"),
+        FLOAT("getFloat", "F", "java/lang/Float"),
+        DOUBLE("getDouble", "D", "java/lang/Double"),
+        BIG_DECIMAL("getBigDecimal", "Ljava/math/BigDecimal;", null),
+        BYTES("getBytes", "[B", null),
+        TIMESTAMP("getTimestamp", "Ljava/sql/Timestamp;", null),
+        DATE("getDate", "Ljava/sql/Date;", null),
+        TIME("getTime", "Ljava/sql/Time;", null);
+
+        final String methodName;
+        final String descriptor; // 返回值类型
+        final String wrapper; // 原始类型对应的包装类 (用于 boxing)
+
+        private JdbcGetter(String methodName, String descriptor, String wrapper) {
+            this.methodName = methodName;
+            this.descriptor = descriptor;
+            this.wrapper = wrapper;
+        }
+
+        boolean isPrimitive() {
+            return wrapper != null;
+        }
+
+        static JdbcGetter lookup(Class<?> type, int sqlType) {
+            if (type == String.class) {
+                return isCharacter(sqlType) ? STRING : null;
+            }
+            if (type == boolean.class || type == Boolean.class) {
+                return (sqlType == Types.BIT || sqlType == Types.BOOLEAN) ? BOOLEAN : null;
+            }
+            if (isNumeric(sqlType)) {
+                if (type == int.class || type == Integer.class) return INT;
+                if (type == long.class || type == Long.class) return LONG;
+                if (type == double.class || type == Double.class) return DOUBLE;
+                if (type == float.class || type == Float.class) return FLOAT;
+                if (type == short.class || type == Short.class) return SHORT;
+                if (type == byte.class || type == Byte.class) return BYTE;
+                if (type == BigDecimal.class) return BIG_DECIMAL;
+                return null;
+            }
+            if (type == byte[].class) {
+                return (sqlType == Types.BINARY || sqlType == Types.VARBINARY || sqlType == Types.LONGVARBINARY) ? BYTES : null;
+            }
+            if (type == java.util.Date.class) {
+                // 保持和 rs.getObject(i) 一样的返回类型
+                switch (sqlType) {
+                case Types.TIMESTAMP:
+                    return TIMESTAMP;
+                case Types.DATE:
+                    return DATE;
+                case Types.TIME:
+                    return TIME;
+                default:
+                    return null;
+                }
+            }
+            if (type == Timestamp.class) {
+                return sqlType == Types.TIMESTAMP ? TIMESTAMP : null;
+            }
+            if (type == java.sql.Date.class) {
+                return sqlType == Types.DATE ? DATE : null;
+            }
+            if (type == Time.class) {
+                return sqlType == Types.TIME ? TIME : null;
+            }
+            return null;
+        }
+
+        private static boolean isCharacter(int sqlType) {
+            switch (sqlType) {
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGNVARCHAR:
+                return true;
+            default:
+                return false;
+            }
+        }
+
+        private static boolean isNumeric(int sqlType) {
+            switch (sqlType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return true;
+            default:
+                return false;
+            }
+        }
+    }
+
+    /**
+     * 无法使用 ASM 的情况下 (非 public 的 Bean 等)，使用反射，但是列的映射计划依然是缓存的.
+     */
+    static final class ReflectBeanRowMapper implements RowMapper<Object> {
+        private final KlassInfo klass;
+        private final Column[] columns;
+
+        ReflectBeanRowMapper(KlassInfo klass, Column[] columns) {
+            this.klass = klass;
+            this.columns = columns;
+        }
+
+        @Override
+        public Object handle(ResultSet rs) throws SQLException {
+            try {
+                Object bean = klass.newInstance();
+                for (Column column : columns) {
+                    Object value = rs.getObject(column.index);
+                    value = TypeCastUtils.convert(value, column.getType());
+                    column.property.set(bean, value);
+                }
+                return bean;
+            } catch (SQLException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new SQLException("Can't set bean property.", e);
+            }
+        }
+    }
+}
@@ -18,28 +18,46 @@
  */
 package jetbrick.dao.orm.mappers;
 
-import java.sql.*;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.Map;
-import jetbrick.collections.CaseInsensitiveHashMap;
 import jetbrick.dao.orm.RowMapper;
 
+/**
+ * 将一行 ResultSet 转换成 Map (不区分大小写).
+ *
+ * <p>
+ * 每个 ResultSet 只解析一次 ResultSetMetaData，所有的行共享一个 {@link RowMap.Schema}，每行只保存一个 Object[]。
+ * </p>
+ */
 public class MapRowMapper implements RowMapper<Map<String, Object>> {
+    private volatile SchemaPlan plan;
 
     @Override
     public Map<String, Object> handle(ResultSet rs) throws SQLException {
-        Map<String, Object> result = new CaseInsensitiveHashMap<Object>();
-        ResultSetMetaData rsmd = rs.getMetaData();
-        int cols = rsmd.getColumnCount();
-
-        for (int i = 1; i <= cols; i++) {
-            String columnName = rsmd.getColumnLabel(i);
-            if (columnName == null || columnName.length() == 0) {
-                columnName = rsmd.getColumnName(i);
-            }
-            result.put(columnName, rs.getObject(i));
+        SchemaPlan plan = this.plan;
+        if (plan == null || plan.rs != rs) {
+            plan = new SchemaPlan(rs, RowMap.Schema.create(rs.getMetaData()));
+            this.plan = plan;
         }
 
-        return result;
+        RowMap.Schema schema = plan.schema;
+        int size = schema.size();
+        Object[] values = new Object[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = rs.getObject(schema.getColumn(i));
+        }
+        return new RowMap(schema, values);
     }
 
+    // 绑定到某一个 ResultSet 上的 Schema
+    static final class SchemaPlan {
+        final ResultSet rs;
+        final RowMap.Schema schema;
+
+        SchemaPlan(ResultSet rs, RowMap.Schema schema) {
+            this.rs = rs;
+            this.schema = schema;
+        }
+    }
 }
@@ -0,0 +1,307 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm.mappers;
+
+import java.io.Serializable;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.*;
+import jetbrick.collections.CaseInsensitiveHashMap;
+
+/**
+ * {@link MapRowMapper} 返回的一行数据，key 不区分大小写.
+ *
+ * <p>
+ * 同一个 ResultSet 的所有行共享一个不可变的 {@link Schema} (列名 -> 下标，只计算一次)，
+ * 每一行只保存一个 Object[]，比每行一个 HashMap 节省大量的内存。
+ * </p>
+ *
+ * <p>
+ * 修改已经存在的 key 直接写入数组；增加新的 key 或者删除 key 的时候 (包括 keySet()/values()/entrySet() 的删除)，
+ * 转换成一个普通的 {@link CaseInsensitiveHashMap}，后续的操作都在这个 Map 上进行。
+ * </p>
+ */
+public final class RowMap extends AbstractMap<String, Object> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final Schema schema;
+    private final Object[] values;
+    private Map<String, Object> overflow; // 结构被修改之后的数据
+
+    public RowMap(Schema schema, Object[] values) {
+        if (schema.size() != values.length) {
+            throw new IllegalArgumentException("values.length must be " + schema.size());
+        }
+        this.schema = schema;
+        this.values = values;
+    }
+
+    public Schema getSchema() {
+        return schema;
+    }
+
+    @Override
+    public int size() {
+        return (overflow != null) ? overflow.size() : values.length;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (overflow != null) {
+            return overflow.containsKey(key);
+        }
+        return schema.indexOf(key) >= 0;
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (overflow != null) {
+            return overflow.get(key);
+        }
+        int index = schema.indexOf(key);
+        return (index < 0) ? null : values[index];
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        if (overflow == null) {
+            int index = schema.indexOf(key);
+            if (index >= 0) {
+                Object old = values[index];
+                values[index] = value;
+                return old;
+            }
+            inflate();
+        }
+        return overflow.put(key, value);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        if (overflow == null) {
+            if (schema.indexOf(key) < 0) {
+                return null;
+            }
+            inflate();
+        }
+        return overflow.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        if (overflow == null) {
+            overflow = new CaseInsensitiveHashMap<Object>();
+        } else {
+            overflow.clear();
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        if (overflow != null) {
+            return overflow.entrySet();
+        }
+        return new EntrySet();
+    }
+
+    private void inflate() {
+        Map<String, Object> map = new CaseInsensitiveHashMap<Object>(values.length * 2);
+        for (int i = 0; i < values.length; i++) {
+            map.put(schema.keys[i], values[i]);
+        }
+        overflow = map;
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<String, Object>> {
+        @Override
+        public int size() {
+            return RowMap.this.size();
+        }
+
+        @Override
+        public Iterator<Map.Entry<String, Object>> iterator() {
+            if (overflow != null) {
+                return overflow.entrySet().iterator();
+            }
+            return new Iterator<Map.Entry<String, Object>>() {
+                private int index = 0;
+                private int last = -1; // 上一次 next() 返回的下标
+
+                @Override
+                public boolean hasNext() {
+                    return index < values.length;
+                }
+
+                @Override
+                public Map.Entry<String, Object> next() {
+                    if (index >= values.length) {
+                        throw new NoSuchElementException();
+                    }
+                    last = index;
+                    return new Entry(index++);
+                }
+
+                // 删除的时候转换成 CaseInsensitiveHashMap (和 RowMap.remove() 一样)，剩下的数据从 overflow 中读取
+                @Override
+                public void remove() {
+                    if (last < 0) {
+                        throw new IllegalStateException();
+                    }
+                    if (overflow == null) {
+                        inflate();
+                    }
+                    overflow.remove(schema.keys[last]);
+                    last = -1;
+                }
+            };
+        }
+    }
+
+    final class Entry implements Map.Entry<String, Object> {
+        private final int index;
+
+        Entry(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public String getKey() {
+            return schema.keys[index];
+        }
+
+        @Override
+        public Object getValue() {
+            return (overflow != null) ? overflow.get(schema.keys[index]) : values[index];
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            return put(schema.keys[index], value);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Object value = getValue();
+            return getKey().equals(e.getKey()) && (value == null ? e.getValue() == null : value.equals(e.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            Object value = getValue();
+            return getKey().hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+
+    /**
+     * 一个 ResultSet 的列结构 (不可变)，所有的行共享.
+     *
+     * <p>
+     * key 为小写的列名 (和 {@link CaseInsensitiveHashMap} 一致)，重复的列名以最后一列为准。
+     * </p>
+     */
+    public static final class Schema implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final String[] keys; // 小写的列名，不重复，按照列的顺序
+        final int[] columns; // 每个 key 对应的 ResultSet 中的列 (1-based)
+        private final Map<String, Integer> indexes; // 原始的列名和小写的列名 -> keys 的下标
+
+        public Schema(String... labels) {
+            Locale locale = Locale.getDefault();
+            Map<String, Integer> indexes = new HashMap<String, Integer>(labels.length * 4);
+            List<String> keys = new ArrayList<String>(labels.length);
+            List<Integer> columns = new ArrayList<Integer>(labels.length);
+            for (int i = 0; i < labels.length; i++) {
+                String key = labels[i].toLowerCase(locale);
+                Integer index = indexes.get(key);
+                if (index == null) {
+                    index = keys.size();
+                    keys.add(key);
+                    columns.add(i + 1);
+                    indexes.put(key, index);
+                } else {
+                    columns.set(index, i + 1);
+                }
+                indexes.put(labels[i], index);
+            }
+
+            this.keys = keys.toArray(new String[keys.size()]);
+            this.columns = new int[columns.size()];
+            for (int i = 0; i < this.columns.length; i++) {
+                this.columns[i] = columns.get(i);
+            }
+            this.indexes = indexes;
+        }
+
+        public static Schema create(ResultSetMetaData rsmd) throws SQLException {
+            int cols = rsmd.getColumnCount();
+            String[] labels = new String[cols];
+            for (int i = 1; i <= cols; i++) {
+                String columnName = rsmd.getColumnLabel(i);
+                if (columnName == null || columnName.length() == 0) {
+                    columnName = rsmd.getColumnName(i);
+                }
+                labels[i - 1] = columnName;
+            }
+            return new Schema(labels);
+        }
+
+        public int size() {
+            return keys.length;
+        }
+
+        public String getKey(int index) {
+            return keys[index];
+        }
+
+        /**
+         * 返回 key 在 ResultSet 中对应的列 (1-based).
+         */
+        public int getColumn(int index) {
+            return columns[index];
+        }
+
+        /**
+         * 查找 key 的下标 (不区分大小写)，不存在返回 -1.
+         */
+        public int indexOf(Object key) {
+            if (!(key instanceof String)) {
+                return -1;
+            }
+            Integer index = indexes.get(key);
+            if (index == null) {
+                // 先用原始的 key 查找，找不到再转换成小写
+                index = indexes.get(((String) key).toLowerCase(Locale.getDefault()));
+                if (index == null) {
+                    return -1;
+                }
+            }
+            return index;
+        }
+    }
+}
@@ -20,15 +20,23 @@ package jetbrick.dao.orm.tx;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import jetbrick.dao.TransactionException;
 import jetbrick.dao.orm.utils.DbUtils;
+import jetbrick.dao.orm.utils.PreparedStatementCache;
 
 /**
  * Jdbc 事务对象
  */
 public class JdbcTransaction implements Transaction {
+    // 每个事务最多缓存的 PreparedStatement 数量，0 表示禁用
+    private static final int STATEMENT_CACHE_SIZE = Integer.getInteger("jetbrick.orm.statement.cache.size", 32);
+
     private final Connection conn;
     private final ThreadLocal<JdbcTransaction> transationHandler;
+    private PreparedStatementCache statementCache;
+    private List<Runnable> completionCallbacks;
 
     public JdbcTransaction(Connection conn, ThreadLocal<JdbcTransaction> transationHandler) {
         this.conn = conn;
@@ -47,6 +55,36 @@ public class JdbcTransaction implements Transaction {
         return conn;
     }
 
+    /**
+     * 当前事务的 PreparedStatement 缓存，如果禁用，返回 null.
+     */
+    public PreparedStatementCache getStatementCache() {
+        if (statementCache == null && STATEMENT_CACHE_SIZE > 0) {
+            statementCache = new PreparedStatementCache(conn, STATEMENT_CACHE_SIZE);
+        }
+        return statementCache;
+    }
+
+    /**
+     * 注册一个回调，在事务提交、回滚或者结束之后执行 (只执行一次).
+     */
+    public void addCompletionCallback(Runnable callback) {
+        if (completionCallbacks == null) {
+            completionCallbacks = new ArrayList<Runnable>(4);
+        }
+        completionCallbacks.add(callback);
+    }
+
+    private void runCompletionCallbacks() {
+        if (completionCallbacks != null) {
+            List<Runnable> callbacks = completionCallbacks;
+            completionCallbacks = null;
+            for (Runnable callback : callbacks) {
+                callback.run();
+            }
+        }
+    }
+
     /**
      * 提交一个事务
      */
@@ -60,6 +98,8 @@ public class JdbcTransaction implements Transaction {
             conn.setAutoCommit(true);
         } catch (SQLException e) {
             throw new TransactionException(e);
+        } finally {
+            runCompletionCallbacks();
         }
     }
 
@@ -76,6 +116,8 @@ public class JdbcTransaction implements Transaction {
             conn.setAutoCommit(true);
         } catch (SQLException e) {
             throw new TransactionException(e);
+        } finally {
+            runCompletionCallbacks();
         }
     }
 
@@ -88,11 +130,15 @@ public class JdbcTransaction implements Transaction {
             if (conn.isClosed()) {
                 throw new TransactionException("the connection is closed in transaction.");
             }
+            if (statementCache != null) {
+                statementCache.close();
+            }
             DbUtils.closeQuietly(conn);
         } catch (SQLException e) {
             throw new TransactionException(e);
         } finally {
             transationHandler.set(null);
+            runCompletionCallbacks();
         }
     }
 
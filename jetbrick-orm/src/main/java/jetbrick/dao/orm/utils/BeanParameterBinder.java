@@ -0,0 +1,250 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm.utils;
+
+import java.lang.reflect.Modifier;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import jetbrick.reflect.*;
+import jetbrick.reflect.asm.ASMFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 使用 Bean 作为 :name 参数的绑定计划，按照 (SQL, Bean) 缓存.
+ *
+ * <p>
+ * 每个 :name 对应的属性只解析一次。如果没有 Array/Collection 类型的属性，
+ * 那么使用 ASM 生成的 {@link ParameterBinder}，直接调用 getter 和 ps.setLong()/setString() 等方法；
+ * 否则按照每个参数展开的个数，从 {@link SqlTemplate#getExpandedSql(int[])} 中获取缓存的 SQL。
+ * </p>
+ */
+public final class BeanParameterBinder {
+    private static final Logger log = LoggerFactory.getLogger(BeanParameterBinder.class);
+
+    // 每个 Bean 最多缓存的 SQL 数量 (防止动态 SQL 导致内存无限增长)
+    private static final int MAX_BINDERS_PER_KLASS = 256;
+    private static final boolean ASM_ENABLED = System.getProperty("jetbrick.orm.binder.asm.disabled") == null;
+
+    private static final AtomicInteger sequence = new AtomicInteger();
+    private static final ConcurrentMap<Class<?>, ConcurrentMap<String, BeanParameterBinder>> pool = new ConcurrentHashMap<Class<?>, ConcurrentMap<String, BeanParameterBinder>>();
+
+    private final SqlTemplate template;
+    private final PropertyInfo[] properties; // 每个 :name 对应的属性，不存在或者不可读为 null
+    private final boolean expandable; // 是否存在可能需要展开的参数 (Array/Collection)
+    private final ParameterBinder binder; // 不需要展开的时候使用
+
+    public static BeanParameterBinder lookup(String sql, Class<?> beanClass) {
+        ConcurrentMap<String, BeanParameterBinder> binders = pool.get(beanClass);
+        if (binders == null) {
+            binders = new ConcurrentHashMap<String, BeanParameterBinder>();
+            ConcurrentMap<String, BeanParameterBinder> old = pool.putIfAbsent(beanClass, binders);
+            if (old != null) {
+                binders = old;
+            }
+        }
+
+        BeanParameterBinder binder = binders.get(sql);
+        if (binder == null) {
+            if (binders.size() >= MAX_BINDERS_PER_KLASS) {
+                // 缓存已满，不再生成新的 class (防止 Metaspace 无限增长)
+                return new BeanParameterBinder(SqlTemplate.parse(sql), KlassInfo.create(beanClass), false);
+            }
+            binder = new BeanParameterBinder(SqlTemplate.parse(sql), KlassInfo.create(beanClass), ASM_ENABLED);
+            BeanParameterBinder old = binders.putIfAbsent(sql, binder);
+            if (old != null) {
+                binder = old;
+            }
+        }
+        return binder;
+    }
+
+    private BeanParameterBinder(SqlTemplate template, KlassInfo klass, boolean asm) {
+        String[] names = template.getParameterNames();
+        PropertyInfo[] properties = new PropertyInfo[names.length];
+        boolean expandable = false;
+        for (int i = 0; i < names.length; i++) {
+            PropertyInfo property = klass.getProperty(names[i]);
+            if (property != null && property.readable()) {
+                properties[i] = property;
+                expandable = expandable || isExpandable(getType(property));
+            }
+        }
+
+        this.template = template;
+        this.properties = properties;
+        this.expandable = expandable;
+        this.binder = expandable ? null : compile(klass, properties, asm);
+    }
+
+    /**
+     * 创建 PreparedStatement 并绑定参数，如果 cache 不为 null，那么从 cache 中获取.
+     */
+    public PreparedStatement createPreparedStatement(PreparedStatementCache cache, Connection conn, Object bean) throws SQLException {
+        if (!expandable) {
+            PreparedStatement ps = prepareStatement(cache, conn, template.getParsedSql());
+            try {
+                binder.bind(ps, bean);
+            } catch (SQLException e) {
+                release(cache, ps);
+                throw e;
+            } catch (RuntimeException e) {
+                release(cache, ps);
+                throw e;
+            }
+            return ps;
+        }
+
+        // 需要展开 Array/Collection
+        int count = properties.length;
+        Object[] values = new Object[count];
+        int[] arities = null;
+        for (int i = 0; i < count; i++) {
+            Object value = (properties[i] == null) ? null : properties[i].get(bean);
+            int arity = 1;
+            if (value instanceof Object[]) {
+                arity = Math.max(((Object[]) value).length, 1);
+            } else if (value instanceof Collection) {
+                arity = Math.max(((Collection<?>) value).size(), 1);
+            }
+            if (arity != 1) {
+                if (arities == null) {
+                    arities = new int[count];
+                    Arrays.fill(arities, 1);
+                }
+                arities[i] = arity;
+            }
+            values[i] = value;
+        }
+
+        PreparedStatement ps = prepareStatement(cache, conn, template.getExpandedSql(arities));
+        try {
+            int index = 1;
+            for (Object value : values) {
+                if (value instanceof Object[]) {
+                    Object[] array = (Object[]) value;
+                    if (array.length == 0) {
+                        ps.setObject(index++, null);
+                    }
+                    for (Object one : array) {
+                        PreparedStatementSetter.setValue(ps, index++, one);
+                    }
+                } else if (value instanceof Collection) {
+                    Collection<?> collection = (Collection<?>) value;
+                    if (collection.isEmpty()) {
+                        ps.setObject(index++, null);
+                    }
+                    for (Object one : collection) {
+                        PreparedStatementSetter.setValue(ps, index++, one);
+                    }
+                } else {
+                    PreparedStatementSetter.setValue(ps, index++, value);
+                }
+            }
+        } catch (SQLException e) {
+            release(cache, ps);
+            throw e;
+        }
+        return ps;
+    }
+
+    // 不需要展开的时候使用的 ParameterBinder (ASM 生成的或者反射)，否则为 null
+    ParameterBinder getParameterBinder() {
+        return binder;
+    }
+
+    private static PreparedStatement prepareStatement(PreparedStatementCache cache, Connection conn, String sql) throws SQLException {
+        return (cache == null) ? conn.prepareStatement(sql) : cache.prepareStatement(sql);
+    }
+
+    private static void release(PreparedStatementCache cache, PreparedStatement ps) {
+        if (cache == null) {
+            DbUtils.closeQuietly(ps);
+        } else {
+            cache.release(ps);
+        }
+    }
+
+    static Class<?> getType(PropertyInfo property) {
+        return property.getGetter().getReturnType();
+    }
+
+    // 运行时的值可能是 Object[] 或者 Collection
+    private static boolean isExpandable(Class<?> type) {
+        if (Object[].class.isAssignableFrom(type) || type.isAssignableFrom(Object[].class)) {
+            return true;
+        }
+        return Collection.class.isAssignableFrom(type) || type.isAssignableFrom(ArrayList.class);
+    }
+
+    private static ParameterBinder compile(KlassInfo klass, PropertyInfo[] properties, boolean asm) {
+        if (asm && isAccessible(klass, properties)) {
+            try {
+                int id = sequence.incrementAndGet();
+                String generatedKlassName = BeanParameterBinder.class.getPackage().getName() + ".delegate." + klass.getName().replace('.', '_') + "$Binder" + id;
+                byte[] byteCode = ParameterBinderBuilder.create(generatedKlassName, klass, properties);
+                Class<?> generatedKlass = ASMFactory.defineClass(generatedKlassName, byteCode, klass.getType());
+                return (ParameterBinder) generatedKlass.newInstance();
+            } catch (Throwable e) {
+                log.warn("Can't generate ParameterBinder for " + klass.getName() + ", fallback to reflection.", e);
+            }
+        }
+        return new ReflectParameterBinder(properties);
+    }
+
+    private static boolean isAccessible(KlassInfo klass, PropertyInfo[] properties) {
+        if (!klass.isPublic()) {
+            return false;
+        }
+        if (klass.getType().getEnclosingClass() != null && !klass.isStatic()) {
+            return false;
+        }
+        for (PropertyInfo property : properties) {
+            if (property != null) {
+                MethodInfo getter = property.getGetter();
+                if (getter.isStatic() || !Modifier.isPublic(getter.getModifiers()) || !Modifier.isPublic(getter.getDeclaringKlass().getModifiers())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 无法使用 ASM 的情况下 (非 public 的 Bean 等)，使用反射，但是属性的解析依然是缓存的.
+     */
+    static final class ReflectParameterBinder implements ParameterBinder {
+        private final PropertyInfo[] properties;
+
+        ReflectParameterBinder(PropertyInfo[] properties) {
+            this.properties = properties;
+        }
+
+        @Override
+        public void bind(PreparedStatement ps, Object bean) throws SQLException {
+            for (int i = 0; i < properties.length; i++) {
+                Object value = (properties[i] == null) ? null : properties[i].get(bean);
+                PreparedStatementSetter.setValue(ps, i + 1, value);
+            }
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm.utils;
+
+import static jetbrick.asm.Opcodes.*;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import jetbrick.asm.*;
+import jetbrick.reflect.KlassInfo;
+import jetbrick.reflect.PropertyInfo;
+
+/**
+ * 生成一个专用的 ParameterBinder，等价于:
+ *
+ * <pre>
+ * public void bind(PreparedStatement ps, Object object) {
+ *     Bean bean = (Bean) object;
+ *     ps.setLong(1, bean.getId());
+ *     String name = bean.getName();
+ *     if (name == null) ps.setObject(2, null); else ps.setString(2, name);
+ *     Integer age = bean.getAge();
+ *     if (age == null) ps.setObject(3, null); else ps.setInt(3, age.intValue());
+ *     PreparedStatementSetter.setValue(ps, 4, bean.getOther());
+ * }
+ * </pre>
+ */
+final class ParameterBinderBuilder {
+    private static final String PS_KLASS = "java/sql/PreparedStatement";
+    private static final int VAR_PS = 1;
+    private static final int VAR_BEAN = 3;
+    private static final int VAR_VALUE = 4;
+
+    // 对象类型 -> ps.setXXX 方法 (null 的时候使用 setObject)
+    private static final Map<Class<?>, String> OBJECT_SETTERS = new HashMap<Class<?>, String>();
+    // 原始类型 -> ps.setXXX 方法
+    private static final Map<Class<?>, String> PRIMITIVE_SETTERS = new HashMap<Class<?>, String>();
+    // 包装类 -> 原始类型
+    private static final Map<Class<?>, Class<?>> WRAPPERS = new HashMap<Class<?>, Class<?>>();
+
+    static {
+        OBJECT_SETTERS.put(String.class, "setString");
+        OBJECT_SETTERS.put(BigDecimal.class, "setBigDecimal");
+        OBJECT_SETTERS.put(java.sql.Timestamp.class, "setTimestamp");
+        OBJECT_SETTERS.put(java.sql.Date.class, "setDate");
+        OBJECT_SETTERS.put(java.sql.Time.class, "setTime");
+        OBJECT_SETTERS.put(byte[].class, "setBytes");
+
+        PRIMITIVE_SETTERS.put(boolean.class, "setBoolean");
+        PRIMITIVE_SETTERS.put(byte.class, "setByte");
+        PRIMITIVE_SETTERS.put(short.class, "setShort");
+        PRIMITIVE_SETTERS.put(int.class, "setInt");
+        PRIMITIVE_SETTERS.put(long.class, "setLong");
+        PRIMITIVE_SETTERS.put(float.class, "setFloat");
+        PRIMITIVE_SETTERS.put(double.class, "setDouble");
+
+        WRAPPERS.put(Boolean.class, boolean.class);
+        WRAPPERS.put(Byte.class, byte.class);
+        WRAPPERS.put(Short.class, short.class);
+        WRAPPERS.put(Integer.class, int.class);
+        WRAPPERS.put(Long.class, long.class);
+        WRAPPERS.put(Float.class, float.class);
+        WRAPPERS.put(Double.class, double.class);
+    }
+
+    private final ClassWriter cw;
+    private final String generatedKlassNameInternal;
+    private final String beanKlassNameInternal;
+
+    public ParameterBinderBuilder(String generatedKlassName, String beanKlassName) {
+        generatedKlassNameInternal = generatedKlassName.replace('.', '/');
+        beanKlassNameInternal = beanKlassName.replace('.', '/');
+
+        // V1_5: 不需要 StackMapTable
+        cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        String[] interfaces = new String[] { Type.getInternalName(ParameterBinder.class) };
+        cw.visit(V1_5, ACC_PUBLIC + ACC_SUPER + ACC_FINAL + ACC_SYNTHETIC, generatedKlassNameInternal, null, "java/lang/Object", interfaces);
+    }
+
+    public static byte[] create(String generatedKlassName, KlassInfo beanKlass, PropertyInfo[] properties) {
+        ParameterBinderBuilder builder = new ParameterBinderBuilder(generatedKlassName, beanKlass.getName());
+        builder.insertConstructor();
+        builder.insertBind(properties);
+        return builder.asByteCode();
+    }
+
+    public void insertConstructor() {
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC + ACC_SYNTHETIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(1, 1);
+        mv.visitEnd();
+    }
+
+    public void insertBind(PropertyInfo[] properties) {
+        String[] exceptions = new String[] { "java/sql/SQLException" };
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC + ACC_SYNTHETIC, "bind", "(Ljava/sql/PreparedStatement;Ljava/lang/Object;)V", null, exceptions);
+        mv.visitCode();
+
+        // Bean bean = (Bean) object;
+        mv.visitVarInsn(ALOAD, 2);
+        mv.visitTypeInsn(CHECKCAST, beanKlassNameInternal);
+        mv.visitVarInsn(ASTORE, VAR_BEAN);
+
+        for (int i = 0; i < properties.length; i++) {
+            PropertyInfo property = properties[i];
+            int index = i + 1;
+            if (property == null) {
+                insertSetNull(mv, index);
+                continue;
+            }
+
+            Class<?> type = BeanParameterBinder.getType(property);
+            String setter = PRIMITIVE_SETTERS.get(type);
+            if (setter != null) {
+                // ps.setXXX(i, bean.getXXX());
+                mv.visitVarInsn(ALOAD, VAR_PS);
+                insertInt(mv, index);
+                insertInvokeGetter(mv, property);
+                mv.visitMethodInsn(INVOKEINTERFACE, PS_KLASS, setter, "(I" + Type.getDescriptor(type) + ")V", true);
+            } else if (OBJECT_SETTERS.containsKey(type)) {
+                insertObjectValue(mv, property, type, index);
+            } else if (WRAPPERS.containsKey(type)) {
+                insertWrapperValue(mv, property, type, index);
+            } else {
+                // PreparedStatementSetter.setValue(ps, i, (Object) bean.getXXX());
+                mv.visitVarInsn(ALOAD, VAR_PS);
+                insertInt(mv, index);
+                insertInvokeGetter(mv, property);
+                if (type.isPrimitive()) {
+                    insertBox(mv, type);
+                }
+                mv.visitMethodInsn(INVOKESTATIC, Type.getInternalName(PreparedStatementSetter.class), "setValue", "(Ljava/sql/PreparedStatement;ILjava/lang/Object;)V", false);
+            }
+        }
+
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    // String value = bean.getXXX(); if (value == null) ps.setObject(i, null); else ps.setString(i, value);
+    // 和 PreparedStatementSetter.setValue() 一样，null 使用 setObject() 绑定
+    private void insertObjectValue(MethodVisitor mv, PropertyInfo property, Class<?> type, int index) {
+        insertInvokeGetter(mv, property);
+        mv.visitVarInsn(ASTORE, VAR_VALUE);
+
+        Label labelNotNull = new Label();
+        Label labelEnd = new Label();
+        mv.visitVarInsn(ALOAD, VAR_VALUE);
+        mv.visitJumpInsn(IFNONNULL, labelNotNull);
+        insertSetNull(mv, index);
+        mv.visitJumpInsn(GOTO, labelEnd);
+
+        mv.visitLabel(labelNotNull);
+        mv.visitVarInsn(ALOAD, VAR_PS);
+        insertInt(mv, index);
+        mv.visitVarInsn(ALOAD, VAR_VALUE);
+        mv.visitMethodInsn(INVOKEINTERFACE, PS_KLASS, OBJECT_SETTERS.get(type), "(I" + Type.getDescriptor(type) + ")V", true);
+
+        mv.visitLabel(labelEnd);
+    }
+
+    // Integer value = bean.getXXX(); if (value == null) ps.setObject(i, null); else ps.setInt(i, value.intValue());
+    private void insertWrapperValue(MethodVisitor mv, PropertyInfo property, Class<?> type, int index) {
+        Class<?> primitive = WRAPPERS.get(type);
+        String wrapperInternal = Type.getInternalName(type);
+        String primitiveDesc = Type.getDescriptor(primitive);
+
+        insertInvokeGetter(mv, property);
+        mv.visitVarInsn(ASTORE, VAR_VALUE);
+
+        Label labelNotNull = new Label();
+        Label labelEnd = new Label();
+        mv.visitVarInsn(ALOAD, VAR_VALUE);
+        mv.visitJumpInsn(IFNONNULL, labelNotNull);
+        insertSetNull(mv, index);
+        mv.visitJumpInsn(GOTO, labelEnd);
+
+        mv.visitLabel(labelNotNull);
+        mv.visitVarInsn(ALOAD, VAR_PS);
+        insertInt(mv, index);
+        mv.visitVarInsn(ALOAD, VAR_VALUE);
+        mv.visitMethodInsn(INVOKEVIRTUAL, wrapperInternal, primitive.getName() + "Value", "()" + primitiveDesc, false);
+        mv.visitMethodInsn(INVOKEINTERFACE, PS_KLASS, PRIMITIVE_SETTERS.get(primitive), "(I" + primitiveDesc + ")V", true);
+
+        mv.visitLabel(labelEnd);
+    }
+
+    // ps.setObject(i, null);
+    private void insertSetNull(MethodVisitor mv, int index) {
+        mv.visitVarInsn(ALOAD, VAR_PS);
+        insertInt(mv, index);
+        mv.visitInsn(ACONST_NULL);
+        mv.visitMethodInsn(INVOKEINTERFACE, PS_KLASS, "setObject", "(ILjava/lang/Object;)V", true);
+    }
+
+    private void insertInvokeGetter(MethodVisitor mv, PropertyInfo property) {
+        Method getter = property.getGetter().getMethod();
+        mv.visitVarInsn(ALOAD, VAR_BEAN);
+        mv.visitMethodInsn(INVOKEVIRTUAL, beanKlassNameInternal, getter.getName(), Type.getMethodDescriptor(getter), false);
+    }
+
+    private static void insertBox(MethodVisitor mv, Class<?> primitive) {
+        Type type = Type.getType(primitive);
+        String wrapper;
+        switch (type.getSort()) {
+        case Type.CHAR:
+            wrapper = "java/lang/Character";
+            break;
+        default:
+            // 其他的原始类型都在 PRIMITIVE_SETTERS 中
+            throw new IllegalStateException("Unsupported primitive type: " + primitive);
+        }
+        mv.visitMethodInsn(INVOKESTATIC, wrapper, "valueOf", "(" + type.getDescriptor() + ")L" + wrapper + ";", false);
+    }
+
+    private static void insertInt(MethodVisitor mv, int value) {
+        if (value <= 5) {
+            mv.visitInsn(ICONST_0 + value);
+        } else if (value <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(BIPUSH, value);
+        } else {
+            mv.visitIntInsn(SIPUSH, value);
+        }
+    }
+
+    public byte[] asByteCode() {
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+}
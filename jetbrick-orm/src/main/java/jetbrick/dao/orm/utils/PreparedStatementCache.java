@@ -0,0 +1,134 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm.utils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 绑定到一个 Connection 上的 PreparedStatement 缓存 (LRU, 有容量上限).
+ *
+ * <p>
+ * 用于事务中 (同一个 Connection) 重复执行相同的 SQL，避免每次都调用 conn.prepareStatement()。
+ * 非线程安全，和 Connection 一样只能在一个线程中使用。
+ * </p>
+ */
+public class PreparedStatementCache {
+    private static final AtomicLong hitCount = new AtomicLong();
+    private static final AtomicLong missCount = new AtomicLong();
+
+    private final Connection conn;
+    private final LinkedHashMap<String, CachedStatement> cache;
+    private final IdentityHashMap<PreparedStatement, CachedStatement> statements;
+
+    public PreparedStatementCache(Connection conn, final int maxSize) {
+        this.conn = conn;
+        this.statements = new IdentityHashMap<PreparedStatement, CachedStatement>();
+        this.cache = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() > maxSize) {
+                    CachedStatement entry = eldest.getValue();
+                    statements.remove(entry.ps);
+                    if (!entry.inUse) {
+                        DbUtils.closeQuietly(entry.ps);
+                    }
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 获取一个 PreparedStatement，使用完毕后需要调用 {@link #release(PreparedStatement)}.
+     * 如果缓存中的 PreparedStatement 正在被使用 (嵌套查询)，那么返回一个新的不缓存的 PreparedStatement.
+     */
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        CachedStatement entry = cache.get(sql);
+        if (entry != null) {
+            if (entry.inUse) {
+                return conn.prepareStatement(sql);
+            }
+            hitCount.incrementAndGet();
+            entry.ps.clearParameters();
+            entry.inUse = true;
+            return entry.ps;
+        }
+
+        missCount.incrementAndGet();
+        entry = new CachedStatement(conn.prepareStatement(sql));
+        entry.inUse = true;
+        statements.put(entry.ps, entry);
+        cache.put(sql, entry);
+        return entry.ps;
+    }
+
+    /**
+     * 释放一个 PreparedStatement，如果它不在缓存中，那么关闭它.
+     */
+    public void release(PreparedStatement ps) {
+        if (ps == null) {
+            return;
+        }
+        CachedStatement entry = statements.get(ps);
+        if (entry == null) {
+            DbUtils.closeQuietly(ps);
+        } else {
+            entry.inUse = false;
+        }
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * 关闭所有缓存的 PreparedStatement.
+     */
+    public void close() {
+        for (CachedStatement entry : cache.values()) {
+            DbUtils.closeQuietly(entry.ps);
+        }
+        cache.clear();
+        statements.clear();
+    }
+
+    public static long getHitCount() {
+        return hitCount.get();
+    }
+
+    public static long getMissCount() {
+        return missCount.get();
+    }
+
+    static final class CachedStatement {
+        final PreparedStatement ps;
+        boolean inUse;
+
+        CachedStatement(PreparedStatement ps) {
+            this.ps = ps;
+        }
+    }
+}
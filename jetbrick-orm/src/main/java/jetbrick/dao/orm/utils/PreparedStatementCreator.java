@@ -20,56 +20,67 @@ package jetbrick.dao.orm.utils;
 
 import java.sql.*;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import jetbrick.beans.ClassUtils;
 import jetbrick.collections.iterators.ArrayIterator;
-import jetbrick.lang.StringUtils;
-import jetbrick.reflect.BeanMap;
 
 public class PreparedStatementCreator {
-    private static final Pattern namedParameterPattern = Pattern.compile("\\:([a-zA-Z0-9_]+)");
 
-    @SuppressWarnings("unchecked")
     public static PreparedStatement createPreparedStatement(Connection conn, String sql, Object... parameters) throws SQLException {
+        return createPreparedStatement(null, conn, sql, parameters);
+    }
+
+    /**
+     * 创建 PreparedStatement，如果 cache 不为 null，那么从 cache 中获取 (使用完毕后需要调用 cache.release(ps)).
+     */
+    @SuppressWarnings("unchecked")
+    public static PreparedStatement createPreparedStatement(PreparedStatementCache cache, Connection conn, String sql, Object... parameters) throws SQLException {
         if (parameters == null) {
-            return createByIterator(conn, sql, null);
+            return createByIterator(cache, conn, sql, null);
         }
 
         if (parameters.length == 1) {
             Object value = parameters[0];
             Class<?> clazz = value.getClass();
-            if (ClassUtils.isAssignable(clazz, Map.class)) {
-                return createByMap(conn, sql, (Map<String, ?>) value);
-            } else if (ClassUtils.isAssignable(clazz, Collection.class)) {
-                return createByIterator(conn, sql, new ArrayIterator(parameters));
+            if (ClassUtils.isAssignable(Map.class, clazz)) {
+                return createByMap(cache, conn, sql, (Map<String, ?>) value);
+            } else if (ClassUtils.isAssignable(Collection.class, clazz)) {
+                return createByIterator(cache, conn, sql, new ArrayIterator(parameters));
             } else if (clazz.isPrimitive() || clazz.getName().startsWith("java.")) {
-                return createByIterator(conn, sql, new ArrayIterator(parameters));
+                return createByIterator(cache, conn, sql, new ArrayIterator(parameters));
             } else {
-                Map<String, Object> beanMap = new BeanMap(value);
-                return createByMap(conn, sql, beanMap);
+                BeanParameterBinder binder = BeanParameterBinder.lookup(sql, clazz);
+                return binder.createPreparedStatement(cache, conn, value);
             }
         } else {
-            return createByIterator(conn, sql, new ArrayIterator(parameters));
+            return createByIterator(cache, conn, sql, new ArrayIterator(parameters));
         }
     }
 
     /**
      * Support ? as parameter
      */
-    protected static PreparedStatement createByIterator(Connection conn, String sql, Iterator<?> parameters) throws SQLException {
-        PreparedStatement ps = conn.prepareStatement(sql);
-        if (parameters != null) {
-            int index = 1;
-            while (parameters.hasNext()) {
-                Object parameter = parameters.next();
-                if (parameter == null) {
-                    ps.setObject(index, null);
-                } else {
-                    ps.setObject(index, parameter);
+    protected static PreparedStatement createByIterator(PreparedStatementCache cache, Connection conn, String sql, Iterator<?> parameters) throws SQLException {
+        PreparedStatement ps = (cache == null) ? conn.prepareStatement(sql) : cache.prepareStatement(sql);
+        try {
+            if (parameters != null) {
+                int index = 1;
+                while (parameters.hasNext()) {
+                    Object parameter = parameters.next();
+                    if (parameter == null) {
+                        ps.setObject(index, null);
+                    } else {
+                        ps.setObject(index, parameter);
+                    }
+                    index++;
                 }
-                index++;
             }
+        } catch (SQLException e) {
+            if (cache == null) {
+                DbUtils.closeQuietly(ps);
+            } else {
+                cache.release(ps);
+            }
+            throw e;
         }
         return ps;
     }
@@ -77,47 +88,48 @@ public class PreparedStatementCreator {
     /**
      * Support :name as parameter, and Array or Collection type
      */
-    protected static PreparedStatement createByMap(Connection conn, String sql, Map<String, ?> parameters) throws SQLException {
-        StringBuffer sb = new StringBuffer();
-        List<Object> params = new ArrayList<Object>();
+    protected static PreparedStatement createByMap(PreparedStatementCache cache, Connection conn, String sql, Map<String, ?> parameters) throws SQLException {
+        SqlTemplate template = SqlTemplate.parse(sql);
+        String[] names = template.getParameterNames();
+        List<Object> params = new ArrayList<Object>(names.length);
+        int[] arities = null; // 只有 Array/Collection 参数才需要展开
 
-        Matcher m = namedParameterPattern.matcher(sql);
-        while (m.find()) {
-            String key = m.group(1);
-            Object value = parameters.get(key);
-            if (value == null) {
-                params.add(null);
-                m.appendReplacement(sb, "?");
-            } else if (value instanceof Object[]) {
+        for (int i = 0; i < names.length; i++) {
+            Object value = parameters.get(names[i]);
+            int arity = 1;
+            if (value instanceof Object[]) {
                 Object[] array = (Object[]) value;
                 if (array.length == 0) {
                     params.add(null);
-                    m.appendReplacement(sb, "?");
                 } else {
                     for (Object one : array) {
                         params.add(one);
                     }
-                    m.appendReplacement(sb, StringUtils.repeat("?", ",", array.length));
+                    arity = array.length;
                 }
             } else if (value instanceof Collection) {
                 Collection<?> collection = (Collection<?>) value;
                 if (collection.size() == 0) {
                     params.add(null);
-                    m.appendReplacement(sb, "?");
                 } else {
-                    for (Object one : collection) {
-                        params.add(one);
-                    }
-                    m.appendReplacement(sb, StringUtils.repeat("?", ",", collection.size()));
+                    params.addAll(collection);
+                    arity = collection.size();
                 }
             } else {
                 params.add(value);
-                m.appendReplacement(sb, "?");
+            }
+
+            if (arity != 1) {
+                if (arities == null) {
+                    arities = new int[names.length];
+                    Arrays.fill(arities, 1);
+                }
+                arities[i] = arity;
             }
         }
-        m.appendTail(sb);
 
-        return createByIterator(conn, sb.toString(), params.iterator());
+        String parsedSql = template.getExpandedSql(arities);
+        return createByIterator(cache, conn, parsedSql, params.iterator());
     }
 
 }
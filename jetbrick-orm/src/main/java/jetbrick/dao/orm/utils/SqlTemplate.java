@@ -0,0 +1,201 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm.utils;
+
+import java.util.*;
+import jetbrick.collections.ConcurrentLruCache;
+
+/**
+ * 解析后的命名参数 (:name) SQL 模板 (全局 LRU 缓存，线程安全，有容量上限).
+ * 由 {@link PreparedStatementCreator} 和 {@link NamedParameterStatement} 共享.
+ *
+ * <pre>
+ * select * from users where id = :id and name in (:names)
+ * =&gt; fragments = ["select * from users where id = ", " and name in (", ")"]
+ * =&gt; names     = ["id", "names"]
+ * </pre>
+ */
+public final class SqlTemplate {
+    private static final int MAX_EXPANDED_SQL = 32; // 每个模板最多缓存的展开 SQL 数量
+    private static final ConcurrentLruCache<String, SqlTemplate> cache = new ConcurrentLruCache<String, SqlTemplate>(Integer.getInteger("jetbrick.orm.sql.cache.size", 1024));
+
+    private final String[] fragments; // 参数之间的 SQL 片段 (names.length + 1 个)
+    private final String[] names; // 按照出现顺序的参数名
+    private final String parsedSql; // 所有的参数都替换成 ? 之后的 SQL
+    private final Map<String, int[]> nameIndexMap; // 参数名 -> parsedSql 中 ? 的位置 (从 1 开始)，只读
+    private final ConcurrentLruCache<Arities, String> expandedSqlCache = new ConcurrentLruCache<Arities, String>(MAX_EXPANDED_SQL); // 展开之后的 SQL
+
+    public static SqlTemplate parse(String sql) {
+        SqlTemplate template = cache.get(sql);
+        if (template == null) {
+            template = doParse(sql);
+            cache.put(sql, template);
+        }
+        return template;
+    }
+
+    /**
+     * 用于监控缓存的命中率 (hit/miss).
+     */
+    public static ConcurrentLruCache<String, SqlTemplate> getCache() {
+        return cache;
+    }
+
+    /**
+     * 解析命名参数，忽略单引号和双引号中的内容.
+     */
+    private static SqlTemplate doParse(String sql) {
+        List<String> fragments = new ArrayList<String>();
+        List<String> names = new ArrayList<String>();
+
+        int length = sql.length();
+        int last = 0;
+        boolean inSingleQuote = false;
+        boolean inDoubleQuote = false;
+        for (int i = 0; i < length; i++) {
+            char c = sql.charAt(i);
+            if (inSingleQuote) {
+                if (c == '\'') {
+                    inSingleQuote = false;
+                }
+            } else if (inDoubleQuote) {
+                if (c == '"') {
+                    inDoubleQuote = false;
+                }
+            } else if (c == '\'') {
+                inSingleQuote = true;
+            } else if (c == '"') {
+                inDoubleQuote = true;
+            } else if (c == ':' && i + 1 < length && Character.isJavaIdentifierStart(sql.charAt(i + 1))) {
+                int j = i + 2;
+                while (j < length && Character.isJavaIdentifierPart(sql.charAt(j))) {
+                    j++;
+                }
+                fragments.add(sql.substring(last, i));
+                names.add(sql.substring(i + 1, j));
+                last = j;
+                i = j - 1;
+            }
+        }
+        fragments.add(sql.substring(last));
+
+        return new SqlTemplate(fragments.toArray(new String[fragments.size()]), names.toArray(new String[names.size()]));
+    }
+
+    private SqlTemplate(String[] fragments, String[] names) {
+        this.fragments = fragments;
+        this.names = names;
+        this.parsedSql = expand(null);
+        this.nameIndexMap = createNameIndexMap(names);
+    }
+
+    private static Map<String, int[]> createNameIndexMap(String[] names) {
+        Map<String, int[]> map = new HashMap<String, int[]>();
+        for (int i = 0; i < names.length; i++) {
+            int[] indexes = map.get(names[i]);
+            if (indexes == null) {
+                indexes = new int[] { i + 1 };
+            } else {
+                indexes = Arrays.copyOf(indexes, indexes.length + 1);
+                indexes[indexes.length - 1] = i + 1;
+            }
+            map.put(names[i], indexes);
+        }
+        return map;
+    }
+
+    public String[] getParameterNames() {
+        return names;
+    }
+
+    public int getParameterCount() {
+        return names.length;
+    }
+
+    public String getParsedSql() {
+        return parsedSql;
+    }
+
+    /**
+     * 返回参数在 parsedSql 中对应的 ? 的位置 (从 1 开始)，不存在返回 null.
+     */
+    public int[] getParameterIndexes(String name) {
+        return nameIndexMap.get(name);
+    }
+
+    /**
+     * 和 {@link #expand(int[])} 一样，但是相同的 arities 只生成一次 SQL.
+     */
+    public String getExpandedSql(int[] arities) {
+        if (arities == null) {
+            return parsedSql;
+        }
+        Arities key = new Arities(arities);
+        String sql = expandedSqlCache.get(key);
+        if (sql == null) {
+            sql = expand(arities);
+            expandedSqlCache.put(key, sql);
+        }
+        return sql;
+    }
+
+    /**
+     * 生成 SQL，每个参数展开成 arities[i] 个 ?，用于 Array/Collection 参数.
+     * @param arities 每个参数对应的 ? 个数，为 null 表示都是 1 个
+     */
+    public String expand(int[] arities) {
+        if (names.length == 0) {
+            return fragments[0];
+        }
+        StringBuilder sb = new StringBuilder(fragments[0].length() * (names.length + 1) + 16);
+        sb.append(fragments[0]);
+        for (int i = 0; i < names.length; i++) {
+            int n = (arities == null) ? 1 : arities[i];
+            for (int j = 0; j < n; j++) {
+                if (j > 0) {
+                    sb.append(',');
+                }
+                sb.append('?');
+            }
+            sb.append(fragments[i + 1]);
+        }
+        return sb.toString();
+    }
+
+    // 展开 SQL 的缓存 key
+    static final class Arities {
+        private final int[] values;
+        private final int hash;
+
+        Arities(int[] values) {
+            this.values = values;
+            this.hash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Arities && Arrays.equals(values, ((Arities) obj).values);
+        }
+    }
+}
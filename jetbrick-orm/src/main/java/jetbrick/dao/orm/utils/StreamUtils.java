@@ -0,0 +1,51 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm.utils;
+
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import jetbrick.dao.orm.RowCursor;
+
+/**
+ * 将 {@link RowCursor} 转换成 JDK8 的 java.util.stream.Stream (需要 JDK8 以上版本).
+ *
+ * <pre>
+ * Stream&lt;User&gt; stream = StreamUtils.stream(dao.queryAsCursor(User.class, sql));
+ * try {
+ *     stream.filter(...).forEach(...);
+ * } finally {
+ *     stream.close();
+ * }
+ * </pre>
+ */
+public final class StreamUtils {
+
+    public static <T> Stream<T> stream(final RowCursor<T> cursor) {
+        Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED);
+        Stream<T> stream = StreamSupport.stream(spliterator, false);
+        return stream.onClose(new Runnable() {
+            @Override
+            public void run() {
+                cursor.close();
+            }
+        });
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.pool;
+
+import java.lang.ref.WeakReference;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 连接池中的一个物理连接.
+ */
+final class PoolEntry {
+    static final int STATE_IDLE = 0;
+    static final int STATE_IN_USE = 1;
+    static final int STATE_REMOVED = 2;
+
+    final Connection connection;
+    final long createTime;
+    final AtomicInteger state = new AtomicInteger(STATE_IN_USE);
+    final WeakReference<PoolEntry> ref = new WeakReference<PoolEntry>(this); // 用于 ThreadLocal，移除的时候 clear()
+
+    // 创建时候的默认状态，归还的时候如果被修改了，那么恢复
+    final boolean defaultAutoCommit;
+    final boolean defaultReadOnly;
+    final int defaultTransactionIsolation;
+    final String defaultCatalog;
+
+    volatile long lastAccessTime; // 最后一次归还的时间
+    volatile long borrowTime; // 最后一次借出的时间
+    volatile Throwable borrowStack; // 借出的调用堆栈 (启用泄露检测的时候)
+    volatile boolean leakReported;
+
+    PoolEntry(Connection connection) throws SQLException {
+        this.connection = connection;
+        this.createTime = System.currentTimeMillis();
+        this.lastAccessTime = createTime;
+        this.defaultAutoCommit = connection.getAutoCommit();
+        this.defaultReadOnly = connection.isReadOnly();
+        this.defaultTransactionIsolation = connection.getTransactionIsolation();
+        this.defaultCatalog = connection.getCatalog();
+    }
+
+    boolean compareAndSet(int expect, int update) {
+        return state.compareAndSet(expect, update);
+    }
+
+    /**
+     * 恢复连接的默认状态，未提交的事务回滚.
+     */
+    void reset() throws SQLException {
+        if (!connection.getAutoCommit()) {
+            connection.rollback();
+        }
+        if (connection.getAutoCommit() != defaultAutoCommit) {
+            connection.setAutoCommit(defaultAutoCommit);
+        }
+        if (connection.isReadOnly() != defaultReadOnly) {
+            connection.setReadOnly(defaultReadOnly);
+        }
+        if (connection.getTransactionIsolation() != defaultTransactionIsolation) {
+            connection.setTransactionIsolation(defaultTransactionIsolation);
+        }
+        if (defaultCatalog != null && !defaultCatalog.equals(connection.getCatalog())) {
+            connection.setCatalog(defaultCatalog);
+        }
+    }
+
+    void closeQuietly() {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+        }
+    }
+}
@@ -0,0 +1,710 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.pool;
+
+import java.io.Closeable;
+import java.io.PrintWriter;
+import java.lang.ref.WeakReference;
+import java.sql.*;
+import java.util.Properties;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+import jetbrick.dao.orm.utils.DbUtils;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 轻量级的 JDBC 连接池.
+ *
+ * <ul>
+ * <li>借出连接不需要加锁：先尝试当前线程上一次使用的连接，然后 CAS 扫描所有的空闲连接。</li>
+ * <li>信号量控制同时借出的连接数不超过 maxActive，超过 maxWaitMillis 抛出 SQLException。</li>
+ * <li>空闲时间超过 validationIdleMillis 的连接，借出之前先进行校验 (validationQuery 或者 Connection.isValid())。</li>
+ * <li>空闲时间超过 idleTimeoutMillis 的连接会被关闭 (保留 minIdle 个)，空闲的连接不足 minIdle 的时候，后台线程会补充。</li>
+ * <li>借出时间超过 leakDetectionMillis 仍然没有归还 (DbHelper 通过 DbUtils.closeQuietly 归还) 的连接，输出借出时候的堆栈。</li>
+ * </ul>
+ *
+ * <pre>
+ * PooledDataSource ds = new PooledDataSource();
+ * ds.setUrl("jdbc:mysql://localhost/test");
+ * ds.setUsername("root");
+ * ds.setPassword("");
+ * ds.setMaxActive(20);
+ * DbHelper dao = new DbHelper(ds);
+ * </pre>
+ */
+public class PooledDataSource implements DataSource, Closeable {
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(PooledDataSource.class);
+    private static final AtomicInteger POOL_COUNTER = new AtomicInteger();
+
+    // 配置
+    private String driverClassName;
+    private String url;
+    private String username;
+    private String password;
+    private Properties connectionProperties;
+    private DataSource dataSource; // 获取物理连接的 DataSource (没有设置 url 的时候)
+    private int maxActive = 10;
+    private int minIdle = 0;
+    private long maxWaitMillis = 30000L;
+    private String validationQuery;
+    private int validationTimeoutSeconds = 5;
+    private long validationIdleMillis = 5000L;
+    private long idleTimeoutMillis = 600000L;
+    private long leakDetectionMillis = 0L;
+    private long housekeepingMillis = 30000L;
+
+    // 运行时
+    private final CopyOnWriteArrayList<PoolEntry> entries = new CopyOnWriteArrayList<PoolEntry>();
+    private final ThreadLocal<WeakReference<PoolEntry>> threadEntry = new ThreadLocal<WeakReference<PoolEntry>>(); // 当前线程上一次使用的连接 (弱引用，移除之后可以被回收)
+    private final AtomicInteger totalCount = new AtomicInteger();
+    private volatile Semaphore semaphore;
+    private volatile ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+    private PrintWriter logWriter;
+    private int loginTimeout;
+
+    // 统计
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong leakCount = new AtomicLong();
+
+    public PooledDataSource() {
+    }
+
+    public PooledDataSource(String url, String username, String password) {
+        this.url = url;
+        this.username = username;
+        this.password = password;
+    }
+
+    /**
+     * 使用一个不带连接池的 DataSource 创建物理连接.
+     */
+    public PooledDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    // -------- pool -----------------------------------------------------------
+
+    private Semaphore getSemaphore() throws SQLException {
+        Semaphore semaphore = this.semaphore;
+        if (semaphore == null) {
+            synchronized (this) {
+                semaphore = this.semaphore;
+                if (semaphore == null) {
+                    semaphore = initialize();
+                    this.semaphore = semaphore;
+                }
+            }
+        }
+        return semaphore;
+    }
+
+    private Semaphore initialize() throws SQLException {
+        if (closed) {
+            throw new SQLException("DataSource is closed.");
+        }
+        if (url == null && dataSource == null) {
+            throw new SQLException("url or dataSource is required.");
+        }
+        if (driverClassName != null) {
+            try {
+                Class.forName(driverClassName);
+            } catch (ClassNotFoundException e) {
+                throw new SQLException("Driver class not found: " + driverClassName, e);
+            }
+        }
+
+        for (int i = 0; i < Math.min(minIdle, maxActive); i++) {
+            PoolEntry entry = createEntry();
+            if (entry != null) {
+                entry.state.set(PoolEntry.STATE_IDLE);
+            }
+        }
+
+        final String name = "jetbrick-pool-" + POOL_COUNTER.incrementAndGet();
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long period = housekeepingMillis;
+        if (leakDetectionMillis > 0) {
+            period = Math.min(period, Math.max(leakDetectionMillis / 2, 100));
+        }
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                housekeeping();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+        housekeeper = executor;
+
+        return new Semaphore(maxActive);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        Semaphore semaphore = getSemaphore();
+        try {
+            if (!semaphore.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                timeoutCount.incrementAndGet();
+                throw new SQLException("Timeout waiting for connection after " + maxWaitMillis + "ms, active: " + getActiveCount() + ", maxActive: " + maxActive);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for connection.", e);
+        }
+
+        try {
+            PoolEntry entry = borrow();
+            long now = System.currentTimeMillis();
+            entry.borrowTime = now;
+            entry.leakReported = false;
+            entry.borrowStack = (leakDetectionMillis > 0) ? new Throwable("Connection borrowed here") : null;
+
+            long elapsed = System.nanoTime() - start;
+            borrowCount.incrementAndGet();
+            waitNanos.addAndGet(elapsed);
+            long max;
+            while (elapsed > (max = maxWaitNanos.get()) && !maxWaitNanos.compareAndSet(max, elapsed)) {
+                // retry
+            }
+            return new PooledConnection(this, entry);
+        } catch (SQLException e) {
+            semaphore.release();
+            throw e;
+        } catch (RuntimeException e) {
+            semaphore.release();
+            throw e;
+        }
+    }
+
+    // 已经获得了信号量，所以借出的连接数 < maxActive，连接总数达到 maxActive 的时候一定有空闲的连接
+    private PoolEntry borrow() throws SQLException {
+        // 1. 当前线程上一次使用的连接
+        WeakReference<PoolEntry> ref = threadEntry.get();
+        PoolEntry entry = (ref == null) ? null : ref.get();
+        if (entry != null) {
+            if (entry.compareAndSet(PoolEntry.STATE_IDLE, PoolEntry.STATE_IN_USE)) {
+                if (validate(entry)) {
+                    return entry;
+                }
+            } else if (entry.state.get() == PoolEntry.STATE_REMOVED) {
+                threadEntry.remove();
+            }
+        }
+
+        while (true) {
+            if (closed) {
+                throw new SQLException("DataSource is closed.");
+            }
+            // 2. 扫描空闲的连接
+            for (PoolEntry e : entries) {
+                if (e.compareAndSet(PoolEntry.STATE_IDLE, PoolEntry.STATE_IN_USE)) {
+                    if (validate(e)) {
+                        threadEntry.set(e.ref);
+                        return e;
+                    }
+                }
+            }
+            // 3. 创建新的连接
+            entry = createEntry();
+            if (entry != null) {
+                threadEntry.set(entry.ref);
+                return entry;
+            }
+            // 其他线程正在归还连接
+            Thread.yield();
+        }
+    }
+
+    /**
+     * 创建一个物理连接 (状态为 IN_USE)，连接数已经达到 maxActive 的时候，返回 null.
+     */
+    private PoolEntry createEntry() throws SQLException {
+        int count;
+        do {
+            count = totalCount.get();
+            if (count >= maxActive) {
+                return null;
+            }
+        } while (!totalCount.compareAndSet(count, count + 1));
+
+        Connection conn = null;
+        try {
+            conn = createConnection();
+            PoolEntry entry = new PoolEntry(conn); // 读取连接的默认状态，可能失败
+            entries.add(entry);
+            createdCount.incrementAndGet();
+            return entry;
+        } catch (SQLException e) {
+            totalCount.decrementAndGet();
+            DbUtils.closeQuietly(conn);
+            throw e;
+        } catch (RuntimeException e) {
+            totalCount.decrementAndGet();
+            DbUtils.closeQuietly(conn);
+            throw e;
+        }
+    }
+
+    private Connection createConnection() throws SQLException {
+        if (url == null) {
+            return (username == null) ? dataSource.getConnection() : dataSource.getConnection(username, password);
+        }
+        Properties props = new Properties();
+        if (connectionProperties != null) {
+            props.putAll(connectionProperties);
+        }
+        if (username != null) {
+            props.setProperty("user", username);
+        }
+        if (password != null) {
+            props.setProperty("password", password);
+        }
+        return DriverManager.getConnection(url, props);
+    }
+
+    /**
+     * 校验空闲时间过长的连接，失败的时候移除.
+     */
+    private boolean validate(PoolEntry entry) {
+        if (System.currentTimeMillis() - entry.lastAccessTime < validationIdleMillis) {
+            return true;
+        }
+        boolean valid;
+        try {
+            if (validationQuery == null) {
+                valid = entry.connection.isValid(validationTimeoutSeconds);
+            } else {
+                Statement stmt = entry.connection.createStatement();
+                try {
+                    stmt.setQueryTimeout(validationTimeoutSeconds);
+                    stmt.execute(validationQuery);
+                } finally {
+                    DbUtils.closeQuietly(stmt);
+                }
+                valid = true;
+            }
+        } catch (Throwable e) {
+            valid = false;
+        }
+        if (!valid) {
+            log.warn("Remove invalid connection: {}", entry.connection);
+            remove(entry);
+        }
+        return valid;
+    }
+
+    /**
+     * 归还连接 (PooledConnection.close()).
+     */
+    void release(PoolEntry entry, boolean dirty) {
+        try {
+            if (closed || entry.connection.isClosed()) {
+                remove(entry);
+            } else {
+                if (dirty) {
+                    entry.reset();
+                }
+                entry.borrowStack = null;
+                entry.lastAccessTime = System.currentTimeMillis();
+                entry.state.set(PoolEntry.STATE_IDLE);
+            }
+        } catch (SQLException e) {
+            remove(entry);
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    /**
+     * 中止连接 (PooledConnection.abort())，不再归还到连接池中.
+     */
+    void abort(PoolEntry entry, Executor executor) throws SQLException {
+        try {
+            if (entry.state.getAndSet(PoolEntry.STATE_REMOVED) != PoolEntry.STATE_REMOVED) {
+                entries.remove(entry);
+                entry.ref.clear();
+                totalCount.decrementAndGet();
+                entry.connection.abort(executor);
+            }
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    private void remove(PoolEntry entry) {
+        if (entry.state.getAndSet(PoolEntry.STATE_REMOVED) != PoolEntry.STATE_REMOVED) {
+            entries.remove(entry);
+            entry.ref.clear(); // 其他线程的 threadEntry 不再引用这个连接
+            totalCount.decrementAndGet();
+            entry.closeQuietly();
+        }
+    }
+
+    // 关闭空闲超时的连接，检查泄露的连接，补充空闲的连接到 minIdle
+    private void housekeeping() {
+        long now = System.currentTimeMillis();
+        int idle = getIdleCount();
+        for (PoolEntry entry : entries) {
+            int state = entry.state.get();
+            if (state == PoolEntry.STATE_IDLE) {
+                if (idleTimeoutMillis > 0 && idle > minIdle && now - entry.lastAccessTime > idleTimeoutMillis) {
+                    if (entry.compareAndSet(PoolEntry.STATE_IDLE, PoolEntry.STATE_IN_USE)) {
+                        remove(entry);
+                        idle--;
+                    }
+                }
+            } else if (state == PoolEntry.STATE_IN_USE) {
+                Throwable stack = entry.borrowStack;
+                if (stack != null && !entry.leakReported && now - entry.borrowTime > leakDetectionMillis) {
+                    entry.leakReported = true;
+                    leakCount.incrementAndGet();
+                    log.warn("Connection leak detection triggered, connection has been borrowed for " + (now - entry.borrowTime) + "ms.", stack);
+                }
+            }
+        }
+        fillIdle();
+    }
+
+    // 补充空闲的连接 (被校验失败/空闲超时/泄露等移除之后)，连接总数不超过 maxActive
+    private void fillIdle() {
+        while (!closed && getIdleCount() < minIdle) {
+            PoolEntry entry;
+            try {
+                entry = createEntry();
+            } catch (Throwable e) {
+                log.warn("Can't create idle connection.", e);
+                return;
+            }
+            if (entry == null) {
+                return; // 已经达到 maxActive
+            }
+            entry.state.set(PoolEntry.STATE_IDLE);
+            if (closed && entry.compareAndSet(PoolEntry.STATE_IDLE, PoolEntry.STATE_IN_USE)) {
+                remove(entry); // 和 close() 同时执行
+            }
+        }
+    }
+
+    /**
+     * 关闭连接池，空闲的连接立即关闭，借出的连接在归还的时候关闭.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        ScheduledExecutorService executor = housekeeper;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        for (PoolEntry entry : entries) {
+            if (entry.compareAndSet(PoolEntry.STATE_IDLE, PoolEntry.STATE_IN_USE)) {
+                remove(entry);
+            }
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    // -------- metrics -----------------------------------------------------------
+
+    /**
+     * 已经借出的连接数.
+     */
+    public int getActiveCount() {
+        int count = 0;
+        for (PoolEntry entry : entries) {
+            if (entry.state.get() == PoolEntry.STATE_IN_USE) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 空闲的连接数.
+     */
+    public int getIdleCount() {
+        int count = 0;
+        for (PoolEntry entry : entries) {
+            if (entry.state.get() == PoolEntry.STATE_IDLE) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 物理连接总数.
+     */
+    public int getTotalCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * 正在等待连接的线程数 (估计值).
+     */
+    public int getWaitingCount() {
+        Semaphore semaphore = this.semaphore;
+        return (semaphore == null) ? 0 : semaphore.getQueueLength();
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    public long getLeakCount() {
+        return leakCount.get();
+    }
+
+    /**
+     * 获取连接的平均等待时间 (毫秒).
+     */
+    public double getAverageWaitTimeMillis() {
+        long count = borrowCount.get();
+        return (count == 0) ? 0D : waitNanos.get() / 1000000D / count;
+    }
+
+    /**
+     * 获取连接的最长等待时间 (毫秒).
+     */
+    public double getMaxWaitTimeMillis() {
+        return maxWaitNanos.get() / 1000000D;
+    }
+
+    @Override
+    public String toString() {
+        return "PooledDataSource [url=" + url + ", active=" + getActiveCount() + ", idle=" + getIdleCount() + ", waiting=" + getWaitingCount() + ", maxActive=" + maxActive + "]";
+    }
+
+    // -------- config -----------------------------------------------------------
+
+    public String getDriverClassName() {
+        return driverClassName;
+    }
+
+    public void setDriverClassName(String driverClassName) {
+        this.driverClassName = driverClassName;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    public Properties getConnectionProperties() {
+        return connectionProperties;
+    }
+
+    public void setConnectionProperties(Properties connectionProperties) {
+        this.connectionProperties = connectionProperties;
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public int getMaxActive() {
+        return maxActive;
+    }
+
+    /**
+     * 最大连接数，默认 10 (初始化之后修改无效).
+     */
+    public void setMaxActive(int maxActive) {
+        if (maxActive <= 0) {
+            throw new IllegalArgumentException("maxActive must be > 0");
+        }
+        this.maxActive = maxActive;
+    }
+
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    /**
+     * 最少保留的空闲连接数，默认 0.
+     */
+    public void setMinIdle(int minIdle) {
+        this.minIdle = minIdle;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    /**
+     * 获取连接的最长等待时间，默认 30 秒.
+     */
+    public void setMaxWaitMillis(long maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    public String getValidationQuery() {
+        return validationQuery;
+    }
+
+    /**
+     * 校验连接的 SQL，默认为 null (使用 Connection.isValid()).
+     */
+    public void setValidationQuery(String validationQuery) {
+        this.validationQuery = validationQuery;
+    }
+
+    public int getValidationTimeoutSeconds() {
+        return validationTimeoutSeconds;
+    }
+
+    public void setValidationTimeoutSeconds(int validationTimeoutSeconds) {
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+    }
+
+    public long getValidationIdleMillis() {
+        return validationIdleMillis;
+    }
+
+    /**
+     * 空闲时间超过这个值的连接，借出之前需要校验，默认 5 秒 (0 表示每次都校验).
+     */
+    public void setValidationIdleMillis(long validationIdleMillis) {
+        this.validationIdleMillis = validationIdleMillis;
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    /**
+     * 空闲时间超过这个值的连接将被关闭，默认 10 分钟 (0 表示不关闭).
+     */
+    public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    public long getLeakDetectionMillis() {
+        return leakDetectionMillis;
+    }
+
+    /**
+     * 连接借出超过这个时间没有归还，输出借出时候的堆栈，默认 0 (不检测，启用之后每次借出都会记录堆栈).
+     */
+    public void setLeakDetectionMillis(long leakDetectionMillis) {
+        this.leakDetectionMillis = leakDetectionMillis;
+    }
+
+    public long getHousekeepingMillis() {
+        return housekeepingMillis;
+    }
+
+    /**
+     * 后台检查空闲超时和泄露的周期，默认 30 秒.
+     */
+    public void setHousekeepingMillis(long housekeepingMillis) {
+        this.housekeepingMillis = housekeepingMillis;
+    }
+
+    // -------- DataSource -----------------------------------------------------------
+
+    /**
+     * 连接池中的连接使用相同的用户，不支持指定其他的用户.
+     */
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("getConnection(username, password)");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return logWriter;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        this.logWriter = out;
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        this.loginTimeout = seconds;
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return loginTimeout;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("DataSource of type [" + getClass().getName() + "] cannot be unwrapped as [" + iface.getName() + "]");
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this);
+    }
+}
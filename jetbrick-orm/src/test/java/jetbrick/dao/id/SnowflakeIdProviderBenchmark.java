@@ -0,0 +1,64 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.id;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * SnowflakeIdProvider 的吞吐量 (多个线程同时调用 nextId()，每毫秒最多 4096 个 ID).
+ *
+ * <pre>
+ * java jetbrick.dao.id.SnowflakeIdProviderBenchmark [threads] [iterations]
+ * </pre>
+ */
+public class SnowflakeIdProviderBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int threads = (args.length > 0) ? Integer.parseInt(args[0]) : 4;
+        int iterations = (args.length > 1) ? Integer.parseInt(args[1]) : 1000000;
+
+        SnowflakeIdProvider provider = new SnowflakeIdProvider(1);
+        for (int round = 0; round < 3; round++) { // 前面的作为预热
+            long nanos = run(provider, threads, iterations);
+            long ops = (long) threads * iterations;
+            System.out.println(String.format("threads=%d ops=%d: %.1fns/op, %.0f ids/s", threads, ops, (double) nanos / ops * threads, ops * 1e9 / nanos));
+        }
+    }
+
+    private static long run(final SnowflakeIdProvider provider, int threads, final int iterations) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(threads);
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < iterations; i++) {
+                            provider.nextId();
+                        }
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            }).start();
+        }
+        latch.await();
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.id;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.*;
+
+public class SnowflakeIdProviderTest {
+    private static final long EPOCH = SnowflakeIdProvider.DEFAULT_EPOCH;
+
+    // 使用手动控制的时钟，sleep() 直接把时钟往前拨
+    static class ManualClockIdProvider extends SnowflakeIdProvider {
+        long now = EPOCH + 100000;
+        long slept;
+
+        ManualClockIdProvider(long nodeId) {
+            super(nodeId, EPOCH, 10);
+        }
+
+        @Override
+        long currentTimeMillis() {
+            return now;
+        }
+
+        @Override
+        void sleep(long millis) {
+            slept += millis;
+            now += millis;
+        }
+    }
+
+    @Test
+    public void layout() {
+        ManualClockIdProvider provider = new ManualClockIdProvider(5);
+        long id = provider.nextId();
+        Assert.assertEquals(provider.now, provider.getTimestamp(id));
+        Assert.assertEquals(5, (id >>> SnowflakeIdProvider.SEQUENCE_BITS) & SnowflakeIdProvider.MAX_NODE_ID);
+        Assert.assertEquals(id, provider.load("any"));
+    }
+
+    @Test
+    public void clockRollbackWithinTolerance() {
+        ManualClockIdProvider provider = new ManualClockIdProvider(1);
+        long last = provider.nextId();
+        long timestamp = provider.getTimestamp(last);
+
+        provider.now -= 10; // 回拨 10ms，继续使用上一次的时间戳
+        for (int i = 0; i < 100; i++) {
+            long id = provider.nextId();
+            Assert.assertTrue(id > last);
+            Assert.assertEquals(timestamp, provider.getTimestamp(id));
+            last = id;
+        }
+        Assert.assertEquals(0, provider.slept);
+
+        provider.now += 11; // 时钟追上之后使用新的时间戳
+        long id = provider.nextId();
+        Assert.assertTrue(id > last);
+        Assert.assertEquals(timestamp + 1, provider.getTimestamp(id));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void clockRollbackBeyondTolerance() {
+        ManualClockIdProvider provider = new ManualClockIdProvider(1);
+        provider.nextId();
+        provider.now -= 11;
+        provider.nextId();
+    }
+
+    @Test
+    public void sequenceOverflow() {
+        ManualClockIdProvider provider = new ManualClockIdProvider(1);
+        long start = provider.now;
+        long last = -1;
+        for (int i = 0; i < 4096 * 3; i++) {
+            long id = provider.nextId();
+            Assert.assertTrue(id > last);
+            Assert.assertEquals(start + i / 4096, provider.getTimestamp(id));
+            last = id;
+        }
+        // 每毫秒的 4096 个序号用完之后，等待下一毫秒
+        Assert.assertEquals(2, provider.slept);
+    }
+
+    @Test
+    public void sequenceOverflowDuringRollback() {
+        ManualClockIdProvider provider = new ManualClockIdProvider(1);
+        long first = provider.nextId();
+        provider.now -= 5;
+        long last = first;
+        for (int i = 1; i < 4096; i++) {
+            last = provider.nextId();
+        }
+        Assert.assertEquals(provider.getTimestamp(first), provider.getTimestamp(last));
+
+        // 序号用完，sleep 到时钟追上上一次的时间戳之后的下一毫秒
+        long id = provider.nextId();
+        Assert.assertTrue(id > last);
+        Assert.assertEquals(6, provider.slept);
+        Assert.assertEquals(provider.getTimestamp(first) + 1, provider.getTimestamp(id));
+    }
+
+    @Test
+    public void reserve() {
+        ManualClockIdProvider provider = new ManualClockIdProvider(1);
+        provider.nextId();
+        long first = provider.reserve("any", 0, 4096);
+        Assert.assertEquals(1, provider.slept); // 当前毫秒剩下的序号不够
+        Assert.assertEquals(first + 4095, provider.load("any"));
+        Assert.assertTrue(provider.nextId() > first + 4095);
+    }
+
+    @Test
+    public void storeFromOtherNode() {
+        ManualClockIdProvider provider = new ManualClockIdProvider(1);
+        ManualClockIdProvider other = new ManualClockIdProvider(2);
+        long value = other.nextId();
+        provider.store("any", value);
+        // 同一毫秒内节点 1 的 ID 都小于节点 2 的 ID，所以跳到下一毫秒
+        Assert.assertTrue(provider.nextId() > value);
+    }
+
+    @Test
+    public void uniqueAndMonotonicAcrossThreads() throws Exception {
+        final SnowflakeIdProvider provider = new SnowflakeIdProvider(7);
+        final int threads = 4;
+        final int count = 20000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<long[]>> futures = new ArrayList<Future<long[]>>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(new Callable<long[]>() {
+                    @Override
+                    public long[] call() {
+                        long[] ids = new long[count];
+                        for (int i = 0; i < count; i++) {
+                            ids[i] = provider.nextId();
+                        }
+                        return ids;
+                    }
+                }));
+            }
+            Set<Long> all = new HashSet<Long>(threads * count * 2);
+            for (Future<long[]> future : futures) {
+                long[] ids = future.get();
+                for (int i = 0; i < ids.length; i++) {
+                    if (i > 0) {
+                        Assert.assertTrue(ids[i] > ids[i - 1]);
+                    }
+                    Assert.assertTrue(all.add(ids[i]));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.jdbclog;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.*;
+import java.sql.SQLException;
+import java.util.*;
+import javax.management.ObjectName;
+import org.junit.*;
+import org.slf4j.Logger;
+
+public class JdbcLogTraceTest {
+    private final List<String> warnings = new ArrayList<String>();
+    private final List<String> errors = new ArrayList<String>();
+    private Logger log;
+
+    @Before
+    public void setUp() {
+        // debug 日志关闭，只记录 warn/error 的参数
+        log = (Logger) Proxy.newProxyInstance(Logger.class.getClassLoader(), new Class<?>[] { Logger.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getReturnType() == boolean.class) {
+                    return Boolean.FALSE;
+                }
+                if ("warn".equals(method.getName())) {
+                    warnings.add(Arrays.deepToString(args));
+                } else if ("error".equals(method.getName())) {
+                    errors.add(Arrays.deepToString(args));
+                }
+                return null;
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        JdbcLogSupport.setSlowQueryMillis(0);
+    }
+
+    @Test
+    public void slowQueryWithParameters() throws Exception {
+        JdbcLogSupport.setSlowQueryMillis(1);
+
+        String sql = "select * from users where id = ? and name = ?";
+        JdbcLogTrace trace = new JdbcLogTrace(log, "PreparedStatement", false);
+        trace.addParam(1, 42);
+        trace.addParam(2, "abc");
+        long start = trace.begin(sql);
+        Thread.sleep(10);
+        trace.end("executeQuery", sql, start);
+
+        Assert.assertEquals(1, warnings.size());
+        Assert.assertTrue(warnings.get(0), warnings.get(0).contains("<SLOW>"));
+        Assert.assertTrue(warnings.get(0), warnings.get(0).contains("[42, abc]"));
+    }
+
+    @Test
+    public void errorWithParameters() {
+        JdbcLogSupport.setSlowQueryMillis(1000);
+
+        String sql = "update users set name = ? where id = ?";
+        JdbcLogTrace trace = new JdbcLogTrace(log, "PreparedStatement", false);
+        trace.addParam(1, "abc");
+        trace.addParam(2, 42);
+        trace.error("executeUpdate", sql, new SQLException("error"));
+
+        Assert.assertEquals(1, errors.size());
+        Assert.assertTrue(errors.get(0), errors.get(0).contains("[abc, 42]"));
+    }
+
+    @Test
+    public void noParametersWithoutSlowQueryLog() {
+        String sql = "select * from users where id = ?";
+        JdbcLogTrace trace = new JdbcLogTrace(log, "PreparedStatement", false);
+        trace.addParam(1, 42);
+        trace.error("executeQuery", sql, new SQLException("error"));
+
+        Assert.assertEquals(1, errors.size());
+        Assert.assertFalse(errors.get(0), errors.get(0).contains("42"));
+    }
+
+    @Test
+    public void inactiveByDefault() throws Exception {
+        ObjectName name = new ObjectName("jetbrick.dao.jdbclog:type=JdbcStatistics");
+        JdbcStatistics statistics = JdbcStatistics.getInstance();
+        Assert.assertFalse(statistics.isEnabled());
+        Assert.assertFalse(JdbcLogSupport.isActive(log));
+        Assert.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+
+        statistics.setEnabled(true);
+        try {
+            Assert.assertTrue(JdbcLogSupport.isActive(log));
+            Assert.assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+        } finally {
+            statistics.setEnabled(false);
+        }
+        Assert.assertFalse(JdbcLogSupport.isActive(log));
+    }
+
+}
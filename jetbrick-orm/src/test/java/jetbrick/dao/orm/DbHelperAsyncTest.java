@@ -0,0 +1,101 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import jetbrick.dao.TransactionException;
+import jetbrick.dao.orm.tx.Transaction;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.*;
+
+public class DbHelperAsyncTest {
+    private static final AtomicInteger sequence = new AtomicInteger();
+
+    private DbHelper db;
+    private DbHelperAsync async;
+
+    private DataSource createDataSource(String name) {
+        JdbcDataSource ds = new JdbcDataSource();
+        ds.setURL("jdbc:h2:mem:async_" + name + "_" + sequence.incrementAndGet() + ";DB_CLOSE_DELAY=-1");
+        DbHelper helper = new DbHelper(ds);
+        helper.execute("create table who (name varchar(20))");
+        helper.execute("insert into who values (?)", name);
+        return ds;
+    }
+
+    @Before
+    public void setUp() {
+        db = new DbHelper(createDataSource("primary"));
+        async = new DbHelperAsync(db);
+    }
+
+    @Test
+    public void queryAndExecute() throws Exception {
+        Assert.assertEquals(1, async.executeAsync("insert into who values (?)", "x").get().intValue());
+        List<String> names = async.queryAsListAsync(String.class, "select name from who order by name").get();
+        Assert.assertEquals(Arrays.asList("primary", "x"), names);
+        Assert.assertEquals(2L, async.queryAsObjectAsync(Long.class, "select count(*) from who").get().longValue());
+    }
+
+    @Test
+    public void failure() throws Exception {
+        try {
+            async.queryAsObjectAsync(Long.class, "select count(*) from not_exists").get();
+            Assert.fail();
+        } catch (java.util.concurrent.ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RuntimeException);
+        }
+    }
+
+    @Test(expected = TransactionException.class)
+    public void inTransaction() {
+        Transaction tx = db.transaction();
+        try {
+            async.queryAsListAsync(String.class, "select name from who");
+        } finally {
+            tx.close();
+        }
+    }
+
+    @Test
+    public void stickyAfterWrite() throws Exception {
+        ReplicaRouter router = new ReplicaRouter(Collections.singletonList(createDataSource("replica")));
+        db.setReplicaRouter(router);
+        Assert.assertEquals("replica", async.queryAsObjectAsync(String.class, "select name from who").get());
+
+        router.setStickyMillis(60000);
+        // 同步的写操作之后，异步的查询使用主库
+        db.execute("update who set name = 'p1'");
+        Assert.assertEquals("p1", async.queryAsObjectAsync(String.class, "select name from who").get());
+    }
+
+    @Test
+    public void stickyAfterAsyncWrite() throws Exception {
+        ReplicaRouter router = new ReplicaRouter(Collections.singletonList(createDataSource("replica")));
+        router.setStickyMillis(60000);
+        db.setReplicaRouter(router);
+
+        // 异步的写操作之后，当前线程和其他异步的查询都使用主库
+        async.executeAsync("update who set name = 'p2'").get();
+        Assert.assertEquals("p2", db.queryAsString("select name from who"));
+        Assert.assertEquals("p2", async.queryAsObjectAsync(String.class, "select name from who").get());
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.*;
+
+public class KeysetPagelistTest {
+    private static final AtomicInteger sequence = new AtomicInteger();
+
+    private DbHelper db;
+
+    @Before
+    public void setUp() {
+        JdbcDataSource ds = new JdbcDataSource();
+        ds.setURL("jdbc:h2:mem:keyset_" + sequence.incrementAndGet() + ";DB_CLOSE_DELAY=-1");
+        db = new DbHelper(ds);
+        db.execute("create table item (id int primary key, created timestamp)");
+        for (int i = 1; i <= 5; i++) {
+            // 所有记录都在同一秒内，只有毫秒不同
+            db.execute("insert into item values (?, ?)", i, new Timestamp(60000 + i * 100));
+        }
+    }
+
+    @Test
+    public void seekPages() {
+        KeysetPageInfo pageInfo = new KeysetPageInfo(2, "id desc");
+        Pagelist<Integer> page = db.queryAsPagelist(pageInfo, Integer.class, "select id from item");
+        Assert.assertEquals(Arrays.asList(5, 4), page.getItems());
+
+        pageInfo.setLastKey(page.getNextKey());
+        page = db.queryAsPagelist(pageInfo, Integer.class, "select id from item");
+        Assert.assertEquals(Arrays.asList(3, 2), page.getItems());
+
+        pageInfo.setLastKey(page.getNextKey());
+        page = db.queryAsPagelist(pageInfo, Integer.class, "select id from item");
+        Assert.assertEquals(Arrays.asList(1), page.getItems());
+        Assert.assertNull(page.getNextKey());
+    }
+
+    @Test
+    public void countCacheKeyUsesMillis() {
+        String sql = "select id from item where created > ?";
+
+        KeysetPageInfo pageInfo = new KeysetPageInfo(10, "id");
+        pageInfo.setCountEnabled(true);
+        pageInfo.setCountCacheMillis(60000);
+        Assert.assertEquals(4, db.queryAsPagelist(pageInfo, Integer.class, sql, new Timestamp(60100)).getTotalCount());
+
+        // 和上一次的参数的 toString() 只有毫秒不同，不能命中同一个缓存
+        pageInfo = new KeysetPageInfo(10, "id");
+        pageInfo.setCountEnabled(true);
+        pageInfo.setCountCacheMillis(60000);
+        Assert.assertEquals(2, db.queryAsPagelist(pageInfo, Integer.class, sql, new Timestamp(60300)).getTotalCount());
+
+        pageInfo = new KeysetPageInfo(10, "id");
+        pageInfo.setCountEnabled(true);
+        pageInfo.setCountCacheMillis(60000);
+        Assert.assertEquals(2, db.queryAsPagelist(pageInfo, Integer.class, sql, new java.util.Date(60300)).getTotalCount());
+    }
+
+    @Test
+    public void knownTotalCountIsKept() {
+        KeysetPageInfo pageInfo = new KeysetPageInfo(10, "id");
+        pageInfo.setCountEnabled(true);
+        pageInfo.setTotalCount(0);
+        Assert.assertEquals(0, db.queryAsPagelist(pageInfo, Integer.class, "select id from item").getTotalCount());
+
+        pageInfo.setTotalCount(-1);
+        Assert.assertEquals(5, db.queryAsPagelist(pageInfo, Integer.class, "select id from item").getTotalCount());
+    }
+}
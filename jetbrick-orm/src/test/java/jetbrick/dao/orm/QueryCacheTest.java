@@ -0,0 +1,123 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.*;
+
+public class QueryCacheTest {
+    private static final AtomicInteger sequence = new AtomicInteger();
+
+    private DbHelper db;
+    private DbHelper other; // 同一个数据库，但是不经过缓存
+
+    @Before
+    public void setUp() {
+        JdbcDataSource ds = new JdbcDataSource();
+        ds.setURL("jdbc:h2:mem:querycache_" + sequence.incrementAndGet() + ";DB_CLOSE_DELAY=-1");
+        other = new DbHelper(ds);
+        other.execute("create table item (id int primary key, name varchar(20), created timestamp)");
+        other.execute("insert into item values (?, ?, ?)", 1, "a", new Date(1000));
+        other.execute("insert into item values (?, ?, ?)", 2, "b", new Date(2000));
+
+        db = new DbHelper(ds);
+        db.setQueryCache(new QueryCache(100, 0));
+    }
+
+    @Test
+    public void immutableResults() {
+        Assert.assertEquals("a", db.queryAsString("select name from item where id = ?", 1));
+        other.execute("update item set name = 'x' where id = 1");
+        Assert.assertEquals("a", db.queryAsString("select name from item where id = ?", 1));
+
+        List<String> names = db.queryAsList(String.class, "select name from item order by id");
+        Assert.assertEquals(names, db.queryAsList(String.class, "select name from item order by id"));
+        try {
+            db.queryAsList(String.class, "select name from item order by id").add("c");
+            Assert.fail();
+        } catch (UnsupportedOperationException e) {
+        }
+    }
+
+    @Test
+    public void mapIsCopied() {
+        Map<String, Object> first = db.queryAsMap("select * from item where id = ?", 1);
+        first.put("name", "changed");
+        first.remove("id");
+
+        Map<String, Object> second = db.queryAsMap("select * from item where id = ?", 1);
+        Assert.assertEquals("a", second.get("NAME"));
+        Assert.assertEquals(1, second.get("id"));
+        ((Date) second.get("created")).setTime(0);
+
+        Map<String, Object> third = db.queryAsMap("select * from item where id = ?", 1);
+        Assert.assertEquals(1000, ((Date) third.get("created")).getTime());
+        Assert.assertTrue(db.getQueryCache().getHitCount() >= 2);
+    }
+
+    @Test
+    public void arrayIsCopied() {
+        Object[] first = db.queryAsObject(Object[].class, "select id, name from item where id = ?", 2);
+        first[1] = "changed";
+        Object[] second = db.queryAsObject(Object[].class, "select id, name from item where id = ?", 2);
+        Assert.assertEquals("b", second[1]);
+        Assert.assertNotSame(first, second);
+    }
+
+    @Test
+    public void dateIsCopied() {
+        Date first = db.queryAsDate("select created from item where id = ?", 1);
+        first.setTime(0);
+        Assert.assertEquals(1000, db.queryAsDate("select created from item where id = ?", 1).getTime());
+    }
+
+    @Test
+    public void beanIsNotCached() {
+        Item item = db.queryAsObject(Item.class, "select id, name from item where id = ?", 1);
+        Assert.assertEquals("a", item.getName());
+        item.setName("changed");
+
+        other.execute("update item set name = 'x' where id = 1");
+        Assert.assertEquals("x", db.queryAsObject(Item.class, "select id, name from item where id = ?", 1).getName());
+        Assert.assertEquals(0, db.getQueryCache().size());
+    }
+
+    public static class Item {
+        private Integer id;
+        private String name;
+
+        public Integer getId() {
+            return id;
+        }
+
+        public void setId(Integer id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.*;
+
+public class ShardedDbHelperTest {
+    private static final AtomicInteger sequence = new AtomicInteger();
+    private static final int SHARDS = 3;
+    private static final int ROWS = 20;
+
+    private List<DbHelper> dbs;
+    private ShardedDbHelper sharded;
+
+    // id 降序
+    private final Comparator<Map<String, Object>> desc = new Comparator<Map<String, Object>>() {
+        @Override
+        public int compare(Map<String, Object> a, Map<String, Object> b) {
+            return ((Integer) b.get("id")).compareTo((Integer) a.get("id"));
+        }
+    };
+
+    @Before
+    public void setUp() {
+        int id = sequence.incrementAndGet();
+        dbs = new ArrayList<DbHelper>(SHARDS);
+        for (int i = 0; i < SHARDS; i++) {
+            JdbcDataSource ds = new JdbcDataSource();
+            ds.setURL("jdbc:h2:mem:sharded_" + id + "_" + i + ";DB_CLOSE_DELAY=-1");
+            DbHelper db = new DbHelper(ds);
+            db.execute("create table orders (id int primary key, name varchar(20))");
+            dbs.add(db);
+        }
+        sharded = new ShardedDbHelper(dbs);
+        for (int i = 1; i <= ROWS; i++) {
+            sharded.route(i).execute("insert into orders values (?, ?)", i, "n" + i);
+        }
+    }
+
+    @Test
+    public void route() {
+        for (int i = 0; i < SHARDS; i++) {
+            List<Integer> ids = dbs.get(i).queryAsList(Integer.class, "select id from orders");
+            Assert.assertFalse(ids.isEmpty());
+            for (Integer id : ids) {
+                Assert.assertEquals(i, sharded.getShardIndex(id));
+            }
+        }
+        Assert.assertEquals(ROWS, sharded.queryAsLongSum("select count(*) from orders"));
+    }
+
+    @Test
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public void queryAsListMerged() {
+        List<Map> items = sharded.queryAsList((Comparator) desc, Map.class, "select * from orders order by id desc");
+        Assert.assertEquals(ROWS, items.size());
+        for (int i = 0; i < ROWS; i++) {
+            Assert.assertEquals(ROWS - i, items.get(i).get("id"));
+        }
+    }
+
+    @Test
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public void queryAsPagelist() {
+        List<Object> ids = new ArrayList<Object>();
+        for (int pageNo = 1; pageNo <= 3; pageNo++) {
+            Pagelist<Map> pagelist = sharded.queryAsPagelist(createPageInfo(pageNo, 7), (Comparator) desc, Map.class, "select * from orders order by id desc");
+            Assert.assertEquals(ROWS, pagelist.getTotalCount());
+            Assert.assertEquals(3, pagelist.getPageCount());
+            for (Map item : pagelist.getItems()) {
+                ids.add(item.get("id"));
+            }
+        }
+        Assert.assertEquals(ROWS, ids.size());
+        Assert.assertEquals(ROWS, ids.get(0));
+        Assert.assertEquals(1, ids.get(ROWS - 1));
+    }
+
+    @Test
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public void queryAsCursor() {
+        MergeCursor<Map> cursor = sharded.queryAsCursor((Comparator) desc, Map.class, "select id from orders order by id desc");
+        try {
+            int expected = ROWS;
+            for (Map item : cursor) {
+                Assert.assertEquals(expected--, item.get("id"));
+            }
+            Assert.assertEquals(0, expected);
+            Assert.assertTrue(cursor.isClosed());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public void rowMapperPerShard() {
+        // 内置的 RowMapper 缓存了当前 ResultSet 的映射计划，每个分库必须使用独立的实例
+        final Set<RowMapper<?>> mappers = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<RowMapper<?>, Boolean>()));
+        List<DbHelper> helpers = new ArrayList<DbHelper>();
+        for (DbHelper db : dbs) {
+            helpers.add(new DbHelper(db.getDataSource()) {
+                @Override
+                public <T> RowMapper<T> getRowMapper(Class<T> beanClass) {
+                    RowMapper<T> mapper = super.getRowMapper(beanClass);
+                    mappers.add(mapper);
+                    return mapper;
+                }
+            });
+        }
+        ShardedDbHelper helper = new ShardedDbHelper(helpers);
+
+        List<Map> items = helper.queryAsList((Comparator) desc, Map.class, "select * from orders order by id desc");
+        Assert.assertEquals(ROWS, items.size());
+        Assert.assertEquals(SHARDS, mappers.size());
+
+        mappers.clear();
+        MergeCursor<Map> cursor = helper.queryAsCursor((Comparator) desc, Map.class, "select * from orders order by id desc");
+        try {
+            Assert.assertEquals(ROWS, cursor.toList(0, -1).size());
+        } finally {
+            cursor.close();
+        }
+        Assert.assertEquals(SHARDS, mappers.size());
+    }
+
+    @Test
+    public void execute() {
+        Assert.assertEquals(5, sharded.execute("update orders set name = 'x' where id > ?", 15));
+        Assert.assertEquals(5, sharded.queryAsLongSum("select count(*) from orders where name = 'x'"));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void executeError() {
+        sharded.queryAsList(Map.class, "select * from not_exists");
+    }
+
+    private static PageInfo createPageInfo(final int pageNo, final int pageSize) {
+        return new PageInfo() {
+            @Override
+            public int getPageNo() {
+                return pageNo;
+            }
+
+            @Override
+            public int getPageSize() {
+                return pageSize;
+            }
+
+            @Override
+            public int getTotalCount() {
+                return -1; // 未知，需要计算
+            }
+
+            @Override
+            public String getPageUrl() {
+                return null;
+            }
+        };
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.*;
+
+public class UpsertBatchTest {
+    private static final AtomicInteger sequence = new AtomicInteger();
+    private static final String[] COLUMNS = { "user_id", "user_name", "score" };
+    private static final String[] KEYS = { "user_id" };
+
+    private DbHelper db;
+
+    @Before
+    public void setUp() {
+        JdbcDataSource ds = new JdbcDataSource();
+        ds.setURL("jdbc:h2:mem:upsert_" + sequence.incrementAndGet() + ";DB_CLOSE_DELAY=-1");
+        db = new DbHelper(ds);
+        db.execute("create table users (user_id int primary key, user_name varchar(20), score int)");
+        db.execute("insert into users values (?, ?, ?)", 1, "old", 0);
+    }
+
+    @Test
+    public void beanRows() {
+        List<User> rows = new ArrayList<User>();
+        for (int i = 1; i <= 5; i++) {
+            rows.add(new User(i, "u" + i, i * 10));
+        }
+        db.upsertBatch("users", COLUMNS, KEYS, rows, new BatchOptions().setChunkSize(2));
+
+        List<User> users = db.queryAsList(User.class, "select * from users order by user_id");
+        Assert.assertEquals(5, users.size());
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(i + 1, users.get(i).getUserId().intValue());
+            Assert.assertEquals("u" + (i + 1), users.get(i).getUserName());
+            Assert.assertEquals((i + 1) * 10, users.get(i).getScore().intValue());
+        }
+    }
+
+    @Test
+    public void beanRowsWithDuplicateKeys() {
+        List<User> rows = new ArrayList<User>();
+        rows.add(new User(1, "a", 1));
+        rows.add(new User(2, "b", 2));
+        rows.add(new User(1, "c", 3));
+        rows.add(new User(2, "d", null));
+        db.upsertBatch("users", COLUMNS, KEYS, rows);
+
+        List<User> users = db.queryAsList(User.class, "select * from users order by user_id");
+        Assert.assertEquals(2, users.size());
+        Assert.assertEquals("c", users.get(0).getUserName());
+        Assert.assertEquals(3, users.get(0).getScore().intValue());
+        Assert.assertEquals("d", users.get(1).getUserName());
+        Assert.assertNull(users.get(1).getScore());
+    }
+
+    @Test
+    public void mapRows() {
+        List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+        for (int i = 1; i <= 3; i++) {
+            Map<String, Object> row = new HashMap<String, Object>();
+            row.put("user_id", i);
+            row.put("user_name", "m" + i);
+            row.put("score", i);
+            rows.add(row);
+        }
+        db.upsertBatch("users", COLUMNS, KEYS, rows);
+
+        Assert.assertEquals("m1", db.queryAsString("select user_name from users where user_id = ?", 1));
+        Assert.assertEquals(3, db.queryAsInt("select count(*) from users").intValue());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void unknownProperty() {
+        List<Object> rows = new ArrayList<Object>();
+        rows.add(new Object());
+        db.upsertBatch("users", COLUMNS, KEYS, rows);
+    }
+
+    public static class User {
+        private Integer userId;
+        private String userName;
+        private Integer score;
+
+        public User() {
+        }
+
+        public User(Integer userId, String userName, Integer score) {
+            this.userId = userId;
+            this.userName = userName;
+            this.score = score;
+        }
+
+        public Integer getUserId() {
+            return userId;
+        }
+
+        public void setUserId(Integer userId) {
+            this.userId = userId;
+        }
+
+        public String getUserName() {
+            return userName;
+        }
+
+        public void setUserName(String userName) {
+            this.userName = userName;
+        }
+
+        public Integer getScore() {
+            return score;
+        }
+
+        public void setScore(Integer score) {
+            this.score = score;
+        }
+    }
+}
@@ -0,0 +1,383 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm.mappers;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import jetbrick.dao.orm.RowMapper;
+import jetbrick.reflect.KlassInfo;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.*;
+
+public class BeanRowMapperTest {
+    private static final AtomicInteger sequence = new AtomicInteger();
+
+    private Connection conn;
+
+    @Before
+    public void setUp() throws SQLException {
+        JdbcDataSource ds = new JdbcDataSource();
+        ds.setURL("jdbc:h2:mem:beanrowmapper_" + sequence.incrementAndGet() + ";DB_CLOSE_DELAY=-1");
+        conn = ds.getConnection();
+        Statement stmt = conn.createStatement();
+        stmt.execute("create table item (id int, amount bigint, price double, enabled boolean, total decimal(10, 2), name varchar(20), created timestamp, birthday date, alarm time)");
+        stmt.execute("insert into item values (1, 100, 1.5, true, 12.34, 'a', '2014-01-02 03:04:05.678', '2014-01-02', '03:04:05')");
+        stmt.execute("insert into item (id) values (2)");
+        stmt.close();
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        conn.close();
+    }
+
+    private <T> T queryAsObject(Class<T> beanClass, String sql) throws SQLException {
+        Statement stmt = conn.createStatement();
+        try {
+            ResultSet rs = stmt.executeQuery(sql);
+            Assert.assertTrue(rs.next());
+            return new BeanRowMapper<T>(beanClass).handle(rs);
+        } finally {
+            stmt.close();
+        }
+    }
+
+    private RowMapper<?> lookup(Class<?> beanClass, String sql) throws SQLException {
+        Statement stmt = conn.createStatement();
+        try {
+            return BeanRowMapperCompiler.lookup(KlassInfo.create(beanClass), stmt.executeQuery(sql).getMetaData());
+        } finally {
+            stmt.close();
+        }
+    }
+
+    @Test
+    public void typedGetters() throws SQLException {
+        Item item = queryAsObject(Item.class, "select * from item where id = 1");
+        Assert.assertEquals(Integer.valueOf(1), item.getId());
+        Assert.assertEquals(Long.valueOf(100), item.getAmount());
+        Assert.assertEquals(Double.valueOf(1.5), item.getPrice());
+        Assert.assertEquals(Boolean.TRUE, item.getEnabled());
+        Assert.assertEquals(new BigDecimal("12.34"), item.getTotal());
+        Assert.assertEquals("a", item.getName());
+
+        Assert.assertFalse(lookup(Item.class, "select * from item") instanceof BeanRowMapperCompiler.ReflectBeanRowMapper);
+    }
+
+    @Test
+    public void nullWrapperColumns() throws SQLException {
+        // 和 rs.getObject(i) 一样，NULL 映射成 null，而不是 getInt() 等返回的 0
+        Item item = queryAsObject(Item.class, "select * from item where id = 2");
+        Assert.assertEquals(Integer.valueOf(2), item.getId());
+        Assert.assertNull(item.getAmount());
+        Assert.assertNull(item.getPrice());
+        Assert.assertNull(item.getEnabled());
+        Assert.assertNull(item.getTotal());
+        Assert.assertNull(item.getName());
+        Assert.assertNull(item.getCreated());
+        Assert.assertNull(item.getBirthday());
+        Assert.assertNull(item.getAlarm());
+    }
+
+    @Test
+    public void nullPrimitiveColumn() throws SQLException {
+        Assert.assertEquals(100L, queryAsObject(PrimitiveItem.class, "select id, amount from item where id = 1").getAmount());
+        try {
+            queryAsObject(PrimitiveItem.class, "select id, amount from item where id = 2");
+            Assert.fail();
+        } catch (SQLException e) {
+            Assert.assertTrue(e.getCause() instanceof NullPointerException);
+        }
+    }
+
+    @Test
+    public void dateColumns() throws SQLException {
+        // java.util.Date 的属性，保持和 rs.getObject(i) 一样的类型
+        Item item = queryAsObject(Item.class, "select created, birthday, alarm from item where id = 1");
+        Assert.assertEquals(Timestamp.class, item.getCreated().getClass());
+        Assert.assertEquals(Timestamp.valueOf("2014-01-02 03:04:05.678"), item.getCreated());
+        Assert.assertEquals(java.sql.Date.class, item.getBirthday().getClass());
+        Assert.assertEquals(java.sql.Date.valueOf("2014-01-02"), item.getBirthday());
+        Assert.assertEquals(Time.class, item.getAlarm().getClass());
+        Assert.assertEquals(Time.valueOf("03:04:05"), item.getAlarm());
+
+        SqlDateItem sqlItem = queryAsObject(SqlDateItem.class, "select created, birthday, alarm from item where id = 1");
+        Assert.assertEquals(Timestamp.valueOf("2014-01-02 03:04:05.678"), sqlItem.getCreated());
+        Assert.assertEquals(java.sql.Date.valueOf("2014-01-02"), sqlItem.getBirthday());
+        Assert.assertEquals(Time.valueOf("03:04:05"), sqlItem.getAlarm());
+    }
+
+    @Test
+    public void nonPublicBean() throws SQLException {
+        Assert.assertTrue(lookup(HiddenItem.class, "select id, name from item") instanceof BeanRowMapperCompiler.ReflectBeanRowMapper);
+
+        HiddenItem item = queryAsObject(HiddenItem.class, "select id, name from item where id = 1");
+        Assert.assertEquals(Integer.valueOf(1), item.getId());
+        Assert.assertEquals("a", item.getName());
+    }
+
+    @Test
+    public void planCacheOverflow() throws SQLException {
+        // 每个列的组合都是一个不同的映射计划，超过 64 个之后不再生成新的 class
+        int plans = 0;
+        for (int mask = 1; mask < 128; mask++) {
+            StringBuilder sql = new StringBuilder("select ");
+            for (int i = 0; i < 7; i++) {
+                if ((mask & (1 << i)) != 0) {
+                    sql.append(i).append(" as c").append(i).append(", ");
+                }
+            }
+            sql.setLength(sql.length() - 2);
+            sql.append(" from item where id = 1");
+
+            RowMapper<?> mapper = lookup(WideItem.class, sql.toString());
+            if (mask <= 64) {
+                Assert.assertFalse(mapper instanceof BeanRowMapperCompiler.ReflectBeanRowMapper);
+                plans++;
+            } else {
+                Assert.assertTrue(mapper instanceof BeanRowMapperCompiler.ReflectBeanRowMapper);
+            }
+
+            WideItem item = queryAsObject(WideItem.class, sql.toString());
+            Assert.assertEquals((mask & 1) != 0 ? Integer.valueOf(0) : null, item.getC0());
+            Assert.assertEquals((mask & 64) != 0 ? Integer.valueOf(6) : null, item.getC6());
+        }
+        Assert.assertEquals(64, plans);
+
+        // 已经缓存的计划继续使用生成的 class
+        Assert.assertFalse(lookup(WideItem.class, "select 0 as c0 from item") instanceof BeanRowMapperCompiler.ReflectBeanRowMapper);
+    }
+
+    public static class Item {
+        private Integer id;
+        private Long amount;
+        private Double price;
+        private Boolean enabled;
+        private BigDecimal total;
+        private String name;
+        private java.util.Date created;
+        private java.util.Date birthday;
+        private java.util.Date alarm;
+
+        public Integer getId() {
+            return id;
+        }
+
+        public void setId(Integer id) {
+            this.id = id;
+        }
+
+        public Long getAmount() {
+            return amount;
+        }
+
+        public void setAmount(Long amount) {
+            this.amount = amount;
+        }
+
+        public Double getPrice() {
+            return price;
+        }
+
+        public void setPrice(Double price) {
+            this.price = price;
+        }
+
+        public Boolean getEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(Boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public BigDecimal getTotal() {
+            return total;
+        }
+
+        public void setTotal(BigDecimal total) {
+            this.total = total;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public java.util.Date getCreated() {
+            return created;
+        }
+
+        public void setCreated(java.util.Date created) {
+            this.created = created;
+        }
+
+        public java.util.Date getBirthday() {
+            return birthday;
+        }
+
+        public void setBirthday(java.util.Date birthday) {
+            this.birthday = birthday;
+        }
+
+        public java.util.Date getAlarm() {
+            return alarm;
+        }
+
+        public void setAlarm(java.util.Date alarm) {
+            this.alarm = alarm;
+        }
+    }
+
+    public static class PrimitiveItem {
+        private int id;
+        private long amount;
+
+        public int getId() {
+            return id;
+        }
+
+        public void setId(int id) {
+            this.id = id;
+        }
+
+        public long getAmount() {
+            return amount;
+        }
+
+        public void setAmount(long amount) {
+            this.amount = amount;
+        }
+    }
+
+    public static class SqlDateItem {
+        private Timestamp created;
+        private java.sql.Date birthday;
+        private Time alarm;
+
+        public Timestamp getCreated() {
+            return created;
+        }
+
+        public void setCreated(Timestamp created) {
+            this.created = created;
+        }
+
+        public java.sql.Date getBirthday() {
+            return birthday;
+        }
+
+        public void setBirthday(java.sql.Date birthday) {
+            this.birthday = birthday;
+        }
+
+        public Time getAlarm() {
+            return alarm;
+        }
+
+        public void setAlarm(Time alarm) {
+            this.alarm = alarm;
+        }
+    }
+
+    static class HiddenItem {
+        private Integer id;
+        private String name;
+
+        public Integer getId() {
+            return id;
+        }
+
+        public void setId(Integer id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+
+    public static class WideItem {
+        private Integer c0, c1, c2, c3, c4, c5, c6;
+
+        public Integer getC0() {
+            return c0;
+        }
+
+        public void setC0(Integer c0) {
+            this.c0 = c0;
+        }
+
+        public Integer getC1() {
+            return c1;
+        }
+
+        public void setC1(Integer c1) {
+            this.c1 = c1;
+        }
+
+        public Integer getC2() {
+            return c2;
+        }
+
+        public void setC2(Integer c2) {
+            this.c2 = c2;
+        }
+
+        public Integer getC3() {
+            return c3;
+        }
+
+        public void setC3(Integer c3) {
+            this.c3 = c3;
+        }
+
+        public Integer getC4() {
+            return c4;
+        }
+
+        public void setC4(Integer c4) {
+            this.c4 = c4;
+        }
+
+        public Integer getC5() {
+            return c5;
+        }
+
+        public void setC5(Integer c5) {
+            this.c5 = c5;
+        }
+
+        public Integer getC6() {
+            return c6;
+        }
+
+        public void setC6(Integer c6) {
+            this.c6 = c6;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm.mappers;
+
+import java.util.*;
+import org.junit.*;
+
+public class RowMapTest {
+
+    private RowMap create() {
+        RowMap.Schema schema = new RowMap.Schema("ID", "userName", "age");
+        return new RowMap(schema, new Object[] { 1, "a", 20 });
+    }
+
+    @Test
+    public void mixedCaseLookup() {
+        RowMap map = create();
+        Assert.assertEquals(3, map.size());
+        Assert.assertEquals(1, map.get("ID"));
+        Assert.assertEquals(1, map.get("id"));
+        Assert.assertEquals(1, map.get("Id"));
+        Assert.assertEquals("a", map.get("USERNAME"));
+        Assert.assertEquals("a", map.get("username"));
+        Assert.assertEquals("a", map.get("userName"));
+        Assert.assertTrue(map.containsKey("AGE"));
+        Assert.assertTrue(map.containsKey("uSeRnAmE"));
+        Assert.assertFalse(map.containsKey("name"));
+        Assert.assertFalse(map.containsKey(1));
+        Assert.assertNull(map.get(null));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("id", "username", "age")), map.keySet());
+
+        // 修改已经存在的 key 不会改变结构
+        Assert.assertEquals(20, map.put("Age", 21));
+        Assert.assertEquals(21, map.get("AGE"));
+
+        // 增加新的 key 之后，仍然不区分大小写
+        Assert.assertNull(map.put("Email", "a@b.c"));
+        Assert.assertEquals(4, map.size());
+        Assert.assertEquals("a@b.c", map.get("EMAIL"));
+        Assert.assertEquals(1, map.get("iD"));
+        Assert.assertEquals(21, map.get("age"));
+    }
+
+    @Test
+    public void removeByKey() {
+        RowMap map = create();
+        Assert.assertNull(map.remove("name"));
+        Assert.assertEquals(3, map.size());
+        Assert.assertEquals("a", map.remove("USERNAME"));
+        Assert.assertEquals(2, map.size());
+        Assert.assertFalse(map.containsKey("userName"));
+        Assert.assertEquals(1, map.get("Id"));
+    }
+
+    @Test
+    public void removeByEntryIterator() {
+        RowMap map = create();
+        Iterator<Map.Entry<String, Object>> it = map.entrySet().iterator();
+        try {
+            it.remove();
+            Assert.fail();
+        } catch (IllegalStateException e) {
+        }
+        List<String> keys = new ArrayList<String>();
+        while (it.hasNext()) {
+            Map.Entry<String, Object> entry = it.next();
+            keys.add(entry.getKey());
+            if ("username".equals(entry.getKey())) {
+                it.remove();
+                try {
+                    it.remove();
+                    Assert.fail();
+                } catch (IllegalStateException e) {
+                }
+            }
+        }
+        Assert.assertEquals(Arrays.asList("id", "username", "age"), keys);
+        Assert.assertEquals(2, map.size());
+        Assert.assertFalse(map.containsKey("USERNAME"));
+        Assert.assertEquals(20, map.get("AGE"));
+
+        Assert.assertTrue(map.entrySet().remove(new AbstractMap.SimpleEntry<String, Object>("age", 20)));
+        Assert.assertEquals(Collections.singletonMap("id", (Object) 1), map);
+    }
+
+    @Test
+    public void entrySetValueAfterRemove() {
+        RowMap map = create();
+        Iterator<Map.Entry<String, Object>> it = map.entrySet().iterator();
+        it.next();
+        it.remove();
+        Map.Entry<String, Object> entry = it.next();
+        Assert.assertEquals("a", entry.setValue("b"));
+        Assert.assertEquals("b", map.get("USERNAME"));
+        Assert.assertEquals("b", entry.getValue());
+        Assert.assertTrue(it.hasNext());
+        Assert.assertEquals(20, it.next().getValue());
+        Assert.assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void removeByKeySet() {
+        RowMap map = create();
+        Assert.assertFalse(map.keySet().remove("name"));
+        Assert.assertTrue(map.keySet().remove("id"));
+        Assert.assertEquals(2, map.size());
+        Assert.assertNull(map.get("ID"));
+
+        map = create();
+        Iterator<String> it = map.keySet().iterator();
+        Assert.assertEquals("id", it.next());
+        Assert.assertEquals("username", it.next());
+        it.remove();
+        Assert.assertEquals("age", it.next());
+        Assert.assertFalse(it.hasNext());
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("id", "age")), map.keySet());
+
+        map = create();
+        Assert.assertTrue(map.keySet().retainAll(Collections.singleton("age")));
+        Assert.assertEquals(Collections.singletonMap("age", (Object) 20), map);
+    }
+
+    @Test
+    public void removeByValues() {
+        RowMap map = create();
+        Assert.assertFalse(map.values().remove("x"));
+        Assert.assertTrue(map.values().remove("a"));
+        Assert.assertEquals(2, map.size());
+        Assert.assertFalse(map.containsKey("UserName"));
+
+        map = create();
+        Iterator<Object> it = map.values().iterator();
+        while (it.hasNext()) {
+            if (Integer.valueOf(1).equals(it.next())) {
+                it.remove();
+            }
+        }
+        Assert.assertEquals(2, map.size());
+        Assert.assertFalse(map.containsKey("id"));
+        Assert.assertEquals(new HashSet<Object>(Arrays.asList((Object) "a", 20)), new HashSet<Object>(map.values()));
+    }
+
+    @Test
+    public void clear() {
+        RowMap map = create();
+        map.clear();
+        Assert.assertTrue(map.isEmpty());
+        Assert.assertNull(map.get("id"));
+        Assert.assertFalse(map.entrySet().iterator().hasNext());
+        map.put("ID", 2);
+        Assert.assertEquals(2, map.get("id"));
+    }
+}
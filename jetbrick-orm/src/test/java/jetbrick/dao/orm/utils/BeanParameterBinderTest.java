@@ -0,0 +1,249 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.orm.utils;
+
+import java.lang.reflect.*;
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import jetbrick.dao.orm.DbHelper;
+import jetbrick.reflect.KlassInfo;
+import jetbrick.reflect.PropertyInfo;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.*;
+
+public class BeanParameterBinderTest {
+    private static final AtomicInteger sequence = new AtomicInteger();
+    private static final String INSERT_SQL = "insert into item values (:id, :name, :age, :enabled, :score, :total, :created, :updated, :data, :missing)";
+
+    // 记录所有的 ps.setXXX(index, value) 调用
+    private static PreparedStatement recorder(final List<String> calls) {
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), new Class<?>[] { PreparedStatement.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().startsWith("set")) {
+                    Object value = args[1];
+                    calls.add(method.getName() + "(" + args[0] + ", " + (value instanceof byte[] ? Arrays.toString((byte[]) value) : value) + ")");
+                }
+                return null;
+            }
+        });
+    }
+
+    // 使用 ASM 生成的 ParameterBinder 绑定
+    private static List<String> bindGenerated(String sql, Object bean) throws SQLException {
+        BeanParameterBinder binder = BeanParameterBinder.lookup(sql, bean.getClass());
+        Assert.assertFalse(binder.getParameterBinder() instanceof BeanParameterBinder.ReflectParameterBinder);
+
+        List<String> calls = new ArrayList<String>();
+        binder.getParameterBinder().bind(recorder(calls), bean);
+        return calls;
+    }
+
+    // 使用反射绑定
+    private static List<String> bindReflect(String sql, Object bean) throws SQLException {
+        KlassInfo klass = KlassInfo.create(bean.getClass());
+        String[] names = SqlTemplate.parse(sql).getParameterNames();
+        PropertyInfo[] properties = new PropertyInfo[names.length];
+        for (int i = 0; i < names.length; i++) {
+            properties[i] = klass.getProperty(names[i]);
+        }
+
+        List<String> calls = new ArrayList<String>();
+        new BeanParameterBinder.ReflectParameterBinder(properties).bind(recorder(calls), bean);
+        return calls;
+    }
+
+    private static Item createItem() {
+        Item item = new Item();
+        item.setId(1L);
+        item.setName("a");
+        item.setAge(20);
+        item.setEnabled(true);
+        item.setScore(1.5);
+        item.setTotal(new BigDecimal("12.34"));
+        item.setCreated(new java.util.Date(1000));
+        item.setUpdated(new Timestamp(2000));
+        item.setData(new byte[] { 1, 2 });
+        return item;
+    }
+
+    @Test
+    public void sameValues() throws SQLException {
+        Item item = createItem();
+        List<String> calls = bindGenerated(INSERT_SQL, item);
+        Assert.assertEquals(bindReflect(INSERT_SQL, item), calls);
+        Assert.assertEquals(10, calls.size());
+        Assert.assertEquals("setLong(1, 1)", calls.get(0));
+        Assert.assertEquals("setInt(3, 20)", calls.get(2));
+        Assert.assertEquals("setObject(10, null)", calls.get(9));
+    }
+
+    @Test
+    public void nullProperties() throws SQLException {
+        Item item = new Item();
+        List<String> calls = bindGenerated(INSERT_SQL, item);
+        Assert.assertEquals(bindReflect(INSERT_SQL, item), calls);
+        // 原始类型为默认值，其他的都为 null
+        Assert.assertEquals("setLong(1, 0)", calls.get(0));
+        for (int i = 2; i <= 10; i++) {
+            if (i != 4) {
+                Assert.assertEquals("setObject(" + i + ", null)", calls.get(i - 1));
+            }
+        }
+    }
+
+    @Test
+    @SuppressWarnings("rawtypes")
+    public void roundTrip() {
+        JdbcDataSource ds = new JdbcDataSource();
+        ds.setURL("jdbc:h2:mem:beanbinder_" + sequence.incrementAndGet() + ";DB_CLOSE_DELAY=-1");
+        DbHelper db = new DbHelper(ds);
+        db.execute("create table item (id bigint, name varchar(20), age int, enabled boolean, score double, total decimal(10, 2), created timestamp, updated timestamp, data varbinary(10), missing varchar(10))");
+
+        // 生成的 ParameterBinder 和反射 (非 public 的 Bean) 写入相同的数据
+        Item item = createItem();
+        db.execute(INSERT_SQL, item);
+        HiddenItem hidden = new HiddenItem();
+        hidden.setId(2L);
+        hidden.setName(item.getName());
+        hidden.setAge(item.getAge());
+        hidden.setEnabled(item.isEnabled());
+        hidden.setScore(item.getScore());
+        hidden.setTotal(item.getTotal());
+        hidden.setCreated(item.getCreated());
+        hidden.setUpdated(item.getUpdated());
+        hidden.setData(item.getData());
+        db.execute(INSERT_SQL, hidden);
+        Assert.assertTrue(BeanParameterBinder.lookup(INSERT_SQL, HiddenItem.class).getParameterBinder() instanceof BeanParameterBinder.ReflectParameterBinder);
+
+        db.execute(INSERT_SQL.replace(":missing", ":id"), new Item());
+        db.execute(INSERT_SQL.replace(":missing", ":id"), new HiddenItem());
+
+        List<Map> rows = db.queryAsList(Map.class, "select * from item order by id desc, missing");
+        Assert.assertEquals(4, rows.size());
+        assertSameRow(rows.get(0), rows.get(1));
+        assertSameRow(rows.get(2), rows.get(3));
+        Assert.assertNull(rows.get(2).get("age"));
+        Assert.assertEquals(Boolean.FALSE, rows.get(2).get("enabled"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void assertSameRow(Map<String, Object> expected, Map<String, Object> actual) {
+        for (Map.Entry<String, Object> entry : expected.entrySet()) {
+            if (entry.getKey().equalsIgnoreCase("id")) {
+                continue;
+            }
+            Object value = entry.getValue();
+            if (value instanceof byte[]) {
+                Assert.assertArrayEquals((byte[]) value, (byte[]) actual.get(entry.getKey()));
+            } else {
+                Assert.assertEquals(entry.getKey(), value, actual.get(entry.getKey()));
+            }
+        }
+    }
+
+    public static class Item {
+        private long id;
+        private String name;
+        private Integer age;
+        private boolean enabled;
+        private Double score;
+        private BigDecimal total;
+        private java.util.Date created;
+        private Timestamp updated;
+        private byte[] data;
+
+        public long getId() {
+            return id;
+        }
+
+        public void setId(long id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public Integer getAge() {
+            return age;
+        }
+
+        public void setAge(Integer age) {
+            this.age = age;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Double getScore() {
+            return score;
+        }
+
+        public void setScore(Double score) {
+            this.score = score;
+        }
+
+        public BigDecimal getTotal() {
+            return total;
+        }
+
+        public void setTotal(BigDecimal total) {
+            this.total = total;
+        }
+
+        public java.util.Date getCreated() {
+            return created;
+        }
+
+        public void setCreated(java.util.Date created) {
+            this.created = created;
+        }
+
+        public Timestamp getUpdated() {
+            return updated;
+        }
+
+        public void setUpdated(Timestamp updated) {
+            this.updated = updated;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public void setData(byte[] data) {
+            this.data = data;
+        }
+    }
+
+    static class HiddenItem extends Item {
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.pool;
+
+import java.sql.*;
+import java.util.concurrent.CountDownLatch;
+import javax.sql.DataSource;
+import org.h2.jdbcx.JdbcDataSource;
+
+/**
+ * PooledDataSource 和不带连接池的 H2 JdbcDataSource 的性能对比 (借出连接，执行一个查询，归还连接).
+ *
+ * <pre>
+ * java jetbrick.dao.pool.PooledDataSourceBenchmark [threads] [iterations]
+ * </pre>
+ */
+public class PooledDataSourceBenchmark {
+    private static final String URL = "jdbc:h2:mem:pool_benchmark;DB_CLOSE_DELAY=-1";
+
+    public static void main(String[] args) throws Exception {
+        int threads = (args.length > 0) ? Integer.parseInt(args[0]) : 4;
+        int iterations = (args.length > 1) ? Integer.parseInt(args[1]) : 20000;
+
+        JdbcDataSource unpooled = new JdbcDataSource();
+        unpooled.setURL(URL);
+
+        PooledDataSource pooled = new PooledDataSource(unpooled);
+        pooled.setMaxActive(threads);
+
+        for (int round = 0; round < 3; round++) { // 前面的作为预热
+            report("unpooled", threads, iterations, run(unpooled, threads, iterations));
+            report("pooled", threads, iterations, run(pooled, threads, iterations));
+        }
+        System.out.println(String.format("pooled: avg wait %.4fms, max wait %.4fms, created %d", pooled.getAverageWaitTimeMillis(), pooled.getMaxWaitTimeMillis(), pooled.getCreatedCount()));
+        pooled.close();
+    }
+
+    private static long run(final DataSource ds, int threads, final int iterations) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(threads);
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < iterations; i++) {
+                            execute(ds, i);
+                        }
+                    } catch (SQLException e) {
+                        e.printStackTrace();
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            }).start();
+        }
+        latch.await();
+        return System.nanoTime() - start;
+    }
+
+    private static void execute(DataSource ds, int value) throws SQLException {
+        Connection conn = ds.getConnection();
+        try {
+            PreparedStatement ps = conn.prepareStatement("select ?");
+            ps.setInt(1, value);
+            ResultSet rs = ps.executeQuery();
+            rs.next();
+            rs.close();
+            ps.close();
+        } finally {
+            conn.close();
+        }
+    }
+
+    private static void report(String name, int threads, int iterations, long nanos) {
+        long ops = (long) threads * iterations;
+        System.out.println(String.format("%-10s threads=%d ops=%d: %.2fus/op, %.0f ops/s", name, threads, ops, nanos / 1000D / ops * threads, ops * 1e9 / nanos));
+    }
+}
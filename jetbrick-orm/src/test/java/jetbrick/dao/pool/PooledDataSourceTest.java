@@ -0,0 +1,213 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.dao.pool;
+
+import java.lang.reflect.*;
+import java.sql.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import org.junit.*;
+
+public class PooledDataSourceTest {
+    private static final AtomicInteger sequence = new AtomicInteger();
+
+    private PooledDataSource ds;
+
+    @Before
+    public void setUp() {
+        ds = new PooledDataSource("jdbc:h2:mem:pool_" + sequence.incrementAndGet() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        ds.setDriverClassName("org.h2.Driver");
+        ds.setMaxActive(2);
+        ds.setMaxWaitMillis(100);
+    }
+
+    @After
+    public void tearDown() {
+        ds.close();
+    }
+
+    private static void check(Connection conn) throws SQLException {
+        Statement stmt = conn.createStatement();
+        try {
+            ResultSet rs = stmt.executeQuery("select 1");
+            Assert.assertTrue(rs.next());
+            Assert.assertEquals(1, rs.getInt(1));
+        } finally {
+            stmt.close();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void exhaustionAndTimeout() throws Exception {
+        Connection c1 = ds.getConnection();
+        Connection c2 = ds.getConnection();
+        Assert.assertEquals(2, ds.getActiveCount());
+
+        long start = System.currentTimeMillis();
+        try {
+            ds.getConnection();
+            Assert.fail();
+        } catch (SQLException e) {
+            Assert.assertTrue(System.currentTimeMillis() - start >= 90);
+        }
+        Assert.assertEquals(1, ds.getTimeoutCount());
+
+        c1.close();
+        Connection c3 = ds.getConnection();
+        check(c3);
+        Assert.assertEquals(2, ds.getTotalCount());
+        c2.close();
+        c3.close();
+        Assert.assertEquals(0, ds.getActiveCount());
+        Assert.assertEquals(2, ds.getIdleCount());
+    }
+
+    @Test(timeout = 10000)
+    public void doubleClose() throws Exception {
+        Connection conn = ds.getConnection();
+        conn.close();
+        conn.close();
+        Assert.assertTrue(conn.isClosed());
+        try {
+            conn.createStatement();
+            Assert.fail();
+        } catch (SQLException e) {
+        }
+
+        // 信号量只归还了一次，仍然最多借出 maxActive 个
+        Connection c1 = ds.getConnection();
+        Connection c2 = ds.getConnection();
+        try {
+            ds.getConnection();
+            Assert.fail();
+        } catch (SQLException e) {
+        }
+        c1.close();
+        c2.close();
+        Assert.assertEquals(2, ds.getTotalCount());
+    }
+
+    @Test(timeout = 10000)
+    public void staleThreadEntry() throws Exception {
+        Connection conn = ds.getConnection();
+        check(conn);
+        conn.unwrap(Connection.class).close(); // 物理连接已经断开
+        conn.close(); // 归还的时候移除
+
+        Assert.assertEquals(0, ds.getTotalCount());
+
+        // 当前线程缓存的连接已经被移除，不能再次借出
+        conn = ds.getConnection();
+        check(conn);
+        conn.close();
+        Assert.assertEquals(1, ds.getTotalCount());
+        Assert.assertEquals(2, ds.getCreatedCount());
+    }
+
+    @Test(timeout = 10000)
+    public void threadAffinity() throws Exception {
+        Connection conn = ds.getConnection();
+        Connection physical = conn.unwrap(Connection.class);
+        conn.close();
+
+        conn = ds.getConnection();
+        Assert.assertSame(physical, conn.unwrap(Connection.class));
+        conn.close();
+        Assert.assertEquals(1, ds.getCreatedCount());
+    }
+
+    @Test(timeout = 10000)
+    public void idleEviction() throws Exception {
+        ds.setIdleTimeoutMillis(50);
+        ds.setHousekeepingMillis(20);
+        Connection c1 = ds.getConnection();
+        Connection c2 = ds.getConnection();
+        c1.close();
+        c2.close();
+        Assert.assertEquals(2, ds.getIdleCount());
+
+        while (ds.getTotalCount() > 0) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(0, ds.getIdleCount());
+    }
+
+    @Test(timeout = 10000)
+    public void evictionKeepsMinIdle() throws Exception {
+        ds.setMaxActive(3);
+        ds.setMinIdle(2);
+        ds.setIdleTimeoutMillis(50);
+        ds.setHousekeepingMillis(20);
+
+        Connection c1 = ds.getConnection(); // 初始化的时候创建 minIdle 个空闲的连接
+        Connection c2 = ds.getConnection();
+        Connection c3 = ds.getConnection();
+        c1.close();
+        c2.close();
+        c3.abort(null); // 移除
+        Assert.assertEquals(2, ds.getTotalCount());
+
+        Thread.sleep(200);
+        Assert.assertEquals(2, ds.getIdleCount());
+
+        // 被移除之后，补充到 minIdle
+        c1 = ds.getConnection();
+        c1.abort(null);
+        c2 = ds.getConnection();
+        c2.abort(null);
+        Assert.assertEquals(0, ds.getTotalCount());
+        while (ds.getIdleCount() < 2) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(2, ds.getTotalCount());
+    }
+
+    @Test(timeout = 10000)
+    public void closeConnectionWhenEntryFails() throws Exception {
+        final AtomicInteger closed = new AtomicInteger();
+        final Connection broken = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("close")) {
+                    closed.incrementAndGet();
+                    return null;
+                }
+                throw new SQLException("broken");
+            }
+        });
+        DataSource source = (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { DataSource.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                return broken;
+            }
+        });
+
+        PooledDataSource pool = new PooledDataSource(source);
+        try {
+            pool.getConnection();
+            Assert.fail();
+        } catch (SQLException e) {
+            Assert.assertEquals("broken", e.getMessage());
+        } finally {
+            pool.close();
+        }
+        Assert.assertEquals(1, closed.get());
+        Assert.assertEquals(0, pool.getTotalCount());
+    }
+}
@@ -0,0 +1,264 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc;
+
+import java.io.IOException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.*;
+import javax.servlet.http.HttpServletResponse;
+import jetbrick.beans.ClassLoaderUtils;
+import jetbrick.lang.JdkVersion;
+import jetbrick.web.mvc.config.WebConfig;
+import jetbrick.web.mvc.results.ResultHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 处理异步 Action 的返回结果: {@link Callable}, CompletionStage (如: CompletableFuture, 需要 JDK 8+), {@link DeferredResult}.
+ *
+ * <ul>
+ *   <li>Servlet 3 容器 (DispatcherFilter 需要配置 &lt;async-supported&gt;true&lt;/async-supported&gt;): 启动 AsyncContext，
+ *   释放容器线程，结果完成之后再通过 {@link ResultHandlerResolver} 处理结果。</li>
+ *   <li>不支持异步的时候，在容器线程中同步等待结果。</li>
+ * </ul>
+ *
+ * <p>
+ * Callable 在 web.async.executor 中执行 (默认为固定大小的 daemon 线程池)，执行 Callable 和处理结果的时候，
+ * 都会将 {@link RequestContext} 绑定到当前线程。超时时间为 web.async.timeout (毫秒)。
+ * </p>
+ */
+final class AsyncResultDispatcher {
+    private static final Logger log = LoggerFactory.getLogger(AsyncResultDispatcher.class);
+    private static final int DEFAULT_THREADS = Math.max(16, Runtime.getRuntime().availableProcessors() * 4);
+    private static final int DEFAULT_QUEUE_SIZE = 1000;
+    // JDK 8 之前为 null
+    private static final Class<?> COMPLETION_STAGE_CLASS = JdkVersion.IS_AT_LEAST_JAVA_8 ? ClassLoaderUtils.loadClass("java.util.concurrent.CompletionStage") : null;
+
+    private final ResultHandlerResolver resultHandlerResolver;
+    private final ExceptionHandler exceptionHandler;
+    private final Executor executor;
+    private final long timeout;
+
+    public AsyncResultDispatcher(WebConfig config) {
+        this.resultHandlerResolver = config.getResultHandlerResolver();
+        this.exceptionHandler = config.getExceptionHandler();
+        this.executor = config.getAsyncExecutor() != null ? config.getAsyncExecutor() : createDefaultExecutor();
+        this.timeout = config.getAsyncTimeout();
+    }
+
+    // 是否为异步 Action 的返回类型
+    public static boolean isAsyncResult(Class<?> resultClass) {
+        if (Callable.class.isAssignableFrom(resultClass) || DeferredResult.class.isAssignableFrom(resultClass)) {
+            return true;
+        }
+        return COMPLETION_STAGE_CLASS != null && COMPLETION_STAGE_CLASS.isAssignableFrom(resultClass);
+    }
+
+    public void dispatch(RequestContext ctx, Object result) throws Exception {
+        long timeout = this.timeout;
+        if (result instanceof DeferredResult && ((DeferredResult<?>) result).getTimeout() > 0) {
+            timeout = ((DeferredResult<?>) result).getTimeout();
+        }
+
+        ServletRequest request = ctx.getRequest();
+        if (request.isAsyncSupported()) {
+            AsyncContext asyncContext = request.startAsync(request, ctx.getResponse());
+            asyncContext.setTimeout(timeout);
+            AsyncTask task = new AsyncTask(ctx, result, asyncContext);
+            asyncContext.addListener(task);
+            task.subscribe(result);
+        } else {
+            AsyncTask task = new AsyncTask(ctx, result, null);
+            task.subscribe(result);
+            task.await(timeout);
+        }
+    }
+
+    private static Executor createDefaultExecutor() {
+        final AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        // 线程是在某个请求中创建的，清除继承下来的 RequestContext
+                        RequestContext.restore(null);
+                        r.run();
+                    }
+                }, "jetbrick-mvc-async-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(DEFAULT_THREADS, DEFAULT_THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(DEFAULT_QUEUE_SIZE), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    // 一个异步请求，结果只处理一次 (完成/异常/超时)
+    final class AsyncTask implements AsyncListener, DeferredResult.Callback {
+        private final RequestContext ctx;
+        private final Object result;
+        private final AsyncContext asyncContext; // 不支持异步的时候为 null
+        private final CountDownLatch latch;
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        AsyncTask(RequestContext ctx, Object result, AsyncContext asyncContext) {
+            this.ctx = ctx;
+            this.result = result;
+            this.asyncContext = asyncContext;
+            this.latch = (asyncContext == null) ? new CountDownLatch(1) : null;
+        }
+
+        @SuppressWarnings("unchecked")
+        void subscribe(Object value) {
+            if (value instanceof Callable) {
+                final Callable<Object> callable = (Callable<Object>) value;
+                try {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (done.get()) {
+                                return; // timeout
+                            }
+                            RequestContext previous = RequestContext.bind(ctx);
+                            try {
+                                complete(callable.call(), null);
+                            } catch (Throwable e) {
+                                complete(null, e);
+                            } finally {
+                                RequestContext.restore(previous);
+                            }
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    complete(null, e);
+                }
+            } else if (COMPLETION_STAGE_CLASS != null && COMPLETION_STAGE_CLASS.isInstance(value)) {
+                CompletionStageSubscriber.subscribe(value, this);
+            } else if (value instanceof DeferredResult) {
+                ((DeferredResult<?>) value).setCallback(this);
+            } else {
+                finish(value, null);
+            }
+        }
+
+        // 异步结果完成 (结果可能还是一个异步结果)
+        @Override
+        public void complete(Object value, Throwable error) {
+            if (error == null && value != null && isAsyncResult(value.getClass())) {
+                subscribe(value);
+            } else {
+                finish(value, error);
+            }
+        }
+
+        void await(long timeout) throws InterruptedException {
+            if (!latch.await(timeout, TimeUnit.MILLISECONDS)) {
+                timeout();
+                latch.await();
+            }
+        }
+
+        private void timeout() {
+            Object value = null;
+            if (result instanceof DeferredResult) {
+                value = ((DeferredResult<?>) result).expire();
+            }
+            if (value != null) {
+                finish(value, null);
+            } else {
+                finish(null, new TimeoutException("Async action timeout: " + ctx.getPathInfo()));
+            }
+        }
+
+        // 在当前线程中处理最终的结果
+        private void finish(Object value, Throwable error) {
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+            RequestContext previous = RequestContext.bind(ctx);
+            try {
+                if (error == null) {
+                    Class<?> resultClass = (value == null) ? Void.TYPE : value.getClass();
+                    ResultHandler<Object> handler = resultHandlerResolver.lookup(resultClass);
+                    handler.handle(ctx, value);
+                } else {
+                    handleError(error);
+                }
+            } catch (Throwable e) {
+                handleError(e);
+            } finally {
+                if (asyncContext != null) {
+                    asyncContext.complete();
+                } else {
+                    latch.countDown();
+                }
+                RequestContext.restore(previous);
+            }
+        }
+
+        private void handleError(Throwable error) {
+            Exception e = (error instanceof Exception) ? (Exception) error : new WebException(error);
+            ctx.getRequest().setAttribute(ExceptionHandler.KEY_IN_REQUEST, e);
+            if (exceptionHandler != null) {
+                try {
+                    exceptionHandler.handleError(ctx, e);
+                    return;
+                } catch (Exception ex) {
+                    e = ex;
+                }
+            }
+
+            log.error("Async action error: " + ctx.getPathInfo(), e);
+            HttpServletResponse response = ctx.getResponse();
+            if (!response.isCommitted()) {
+                try {
+                    int status = (e instanceof TimeoutException) ? HttpServletResponse.SC_SERVICE_UNAVAILABLE : HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+                    response.sendError(status);
+                } catch (IOException ex) {
+                    // ignore
+                }
+            }
+        }
+
+        //----- AsyncListener ------------------------------------------
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            timeout();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            Throwable e = event.getThrowable();
+            finish(null, (e != null) ? e : new WebException("Async request error: " + ctx.getPathInfo()));
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
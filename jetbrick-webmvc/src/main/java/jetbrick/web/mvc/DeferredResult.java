@@ -0,0 +1,128 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc;
+
+/**
+ * 异步 Action 的返回结果，由其他线程 (如: 消息回调) 调用 {@link #setResult(Object)} 完成.
+ *
+ * <pre>
+ * &#64;Action
+ * public DeferredResult&lt;String&gt; poll() {
+ *     DeferredResult&lt;String&gt; result = new DeferredResult&lt;String&gt;(60000, "json:{}");
+ *     listeners.add(result); // 有消息的时候调用 result.setResult(...)
+ *     return result;
+ * }
+ * </pre>
+ */
+public class DeferredResult<T> {
+    private final long timeout;
+    private final Object timeoutResult;
+
+    private Object result;
+    private Throwable error;
+    private boolean completed; // 已经设置了结果，或者已经超时
+    private Callback callback;
+
+    /**
+     * 使用默认的超时时间 (web.async.timeout).
+     */
+    public DeferredResult() {
+        this(0, null);
+    }
+
+    public DeferredResult(long timeout) {
+        this(timeout, null);
+    }
+
+    /**
+     * @param timeout 超时时间 (毫秒)，小于等于 0 表示使用默认的超时时间
+     * @param timeoutResult 超时的时候返回的结果，为 null 的时候按照超时异常处理
+     */
+    public DeferredResult(long timeout, T timeoutResult) {
+        this.timeout = timeout;
+        this.timeoutResult = timeoutResult;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * 设置结果，结束异步请求.
+     * @return 如果已经设置过结果或者已经超时，返回 false
+     */
+    public boolean setResult(T result) {
+        return complete(result, null);
+    }
+
+    /**
+     * 设置异常，交给 {@link ExceptionHandler} 处理.
+     * @return 如果已经设置过结果或者已经超时，返回 false
+     */
+    public boolean setErrorResult(Throwable error) {
+        return complete(null, error);
+    }
+
+    public synchronized boolean isSetOrExpired() {
+        return completed;
+    }
+
+    // 超时的时候由 AsyncResultDispatcher 调用
+    Object expire() {
+        synchronized (this) {
+            if (completed) {
+                return null;
+            }
+            completed = true;
+        }
+        return timeoutResult;
+    }
+
+    // 注册回调，如果结果已经设置，立即回调
+    void setCallback(Callback callback) {
+        synchronized (this) {
+            if (!completed) {
+                this.callback = callback;
+                return;
+            }
+        }
+        callback.complete(result, error);
+    }
+
+    private boolean complete(Object result, Throwable error) {
+        Callback callback;
+        synchronized (this) {
+            if (completed) {
+                return false;
+            }
+            completed = true;
+            this.result = result;
+            this.error = error;
+            callback = this.callback;
+        }
+        if (callback != null) {
+            callback.complete(result, error);
+        }
+        return true;
+    }
+
+    interface Callback {
+        void complete(Object result, Throwable error);
+    }
+}
@@ -25,6 +25,8 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import jetbrick.lang.AppVersionUtils;
 import jetbrick.lang.JdkVersion;
+import jetbrick.web.mvc.action.ActionInfo;
+import jetbrick.web.mvc.action.ActionPipeline;
 import jetbrick.web.mvc.action.HttpMethod;
 import jetbrick.web.mvc.config.WebConfig;
 import jetbrick.web.mvc.config.WebConfigBuilder;
@@ -32,6 +34,7 @@ import jetbrick.web.mvc.interceptor.Interceptor;
 import jetbrick.web.mvc.interceptor.InterceptorChainImpl;
 import jetbrick.web.mvc.plugin.Plugin;
 import jetbrick.web.mvc.results.ResultHandler;
+import jetbrick.web.mvc.router.RestfulRouter;
 import jetbrick.web.servlet.RequestUtils;
 import jetbrick.web.servlet.ResponseUtils;
 import org.slf4j.Logger;
@@ -45,6 +48,7 @@ public final class DispatcherFilter implements Filter {
     private Router router;
     private ResultHandlerResolver resultHandlerResolver;
     private ExceptionHandler exceptionHandler;
+    private AsyncResultDispatcher asyncResultDispatcher;
     private String encoding;
 
     @Override
@@ -66,6 +70,7 @@ public final class DispatcherFilter implements Filter {
             router = config.getRouter();
             resultHandlerResolver = config.getResultHandlerResolver();
             exceptionHandler = config.getExceptionHandler();
+            asyncResultDispatcher = new AsyncResultDispatcher(config);
 
             log.info("router = {}", router.getClass().getName());
             log.info("exception.handler = {}", exceptionHandler == null ? null : exceptionHandler.getClass().getName());
@@ -78,6 +83,15 @@ public final class DispatcherFilter implements Filter {
                 log.info("load interceptor: {}", interceptor.getClass().getName());
                 interceptor.init(config);
             }
+
+            // 预编译所有 Action 的执行流程 (其他的 Router 在第一次请求的时候编译)
+            if (router instanceof RestfulRouter) {
+                List<ActionInfo> actions = ((RestfulRouter) router).getActions();
+                for (ActionInfo action : actions) {
+                    action.getPipeline();
+                }
+                log.info("compiled {} action pipelines.", actions.size());
+            }
         } catch (Exception e) {
             log.error("DispatcherFilter init error.", e);
             log.error("************************************");
@@ -129,14 +143,33 @@ public final class DispatcherFilter implements Filter {
             RouteInfo route = router.lookup(request, path, httpMethod);
             ctx = new RequestContext(request, response, path, httpMethod, route);
 
-            List<Interceptor> interceptors = config.getInterceptors();
-            InterceptorChainImpl interceptorChain = new InterceptorChainImpl(interceptors, ctx);
-            interceptorChain.invoke();
+            ResultInfo result;
+            ResultHandler<Object> handler = null;
+            ActionInfo action = route.getAction();
+            if (action != null) {
+                ActionPipeline pipeline = action.getPipeline();
+                result = pipeline.invoke(ctx);
+                handler = pipeline.getResultHandler();
+            } else {
+                // 没有找到 Action，仍然执行全局的 Interceptor，最后抛出异常
+                InterceptorChainImpl interceptorChain = new InterceptorChainImpl(config.getInterceptors(), ctx);
+                interceptorChain.invoke();
+                result = interceptorChain.getResult();
+            }
 
-            ResultInfo result = interceptorChain.getResult();
             if (result != null) {
-                ResultHandler<Object> handler = resultHandlerResolver.lookup(result.getResultClass());
-                handler.handle(ctx, result.getResultObject());
+                Object value = result.getResultObject();
+                if (handler != null) {
+                    handler.handle(ctx, value);
+                } else if (AsyncResultDispatcher.isAsyncResult(result.getResultClass()) || (value != null && AsyncResultDispatcher.isAsyncResult(value.getClass()))) {
+                    // 异步 Action: 结果完成之后再处理
+                    if (value != null) {
+                        asyncResultDispatcher.dispatch(ctx, value);
+                    }
+                } else {
+                    handler = resultHandlerResolver.lookup(result.getResultClass());
+                    handler.handle(ctx, value);
+                }
             }
         } catch (Exception e) {
             request.setAttribute(ExceptionHandler.KEY_IN_REQUEST, e);
@@ -56,6 +56,22 @@ public class RequestContext {
         return threadContext.get();
     }
 
+    // 绑定到当前线程 (异步 Action 在其他线程中执行)，返回之前绑定的 RequestContext
+    static RequestContext bind(RequestContext ctx) {
+        RequestContext previous = threadContext.get();
+        threadContext.set(ctx);
+        return previous;
+    }
+
+    // 恢复 bind() 之前绑定的 RequestContext
+    static void restore(RequestContext previous) {
+        if (previous == null) {
+            threadContext.remove();
+        } else {
+            threadContext.set(previous);
+        }
+    }
+
     //----- servlet ------------------------------------------
     public HttpServletRequest getRequest() {
         return request;
@@ -20,6 +20,7 @@ package jetbrick.web.mvc;
 
 import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import jetbrick.beans.ClassUtils;
 import jetbrick.ioc.Ioc;
 import jetbrick.ioc.annotations.*;
@@ -33,6 +34,8 @@ import com.google.gson.JsonElement;
  */
 public class ResultHandlerResolver {
     private final Map<Class<?>, ResultHandler<?>> mapping = new IdentityHashMap<Class<?>, ResultHandler<?>>();
+    // 运行时查找到的子类 (如: ObjectResultHandler 中的实际类型)，避免每次都遍历 mapping
+    private final Map<Class<?>, ResultHandler<?>> resolvedMapping = new ConcurrentHashMap<Class<?>, ResultHandler<?>>();
 
     @Inject
     private Ioc ioc;
@@ -65,12 +68,17 @@ public class ResultHandlerResolver {
     @SuppressWarnings("unchecked")
     public ResultHandler<Object> lookup(Class<?> resultClass) {
         ResultHandler<Object> result = (ResultHandler<Object>) mapping.get(resultClass);
+        if (result == null) {
+            result = (ResultHandler<Object>) resolvedMapping.get(resultClass);
+        }
         if (result == null) {
             // Special code for Object.class as result
             for (Map.Entry<Class<?>, ResultHandler<?>> entry : mapping.entrySet()) {
                 Class<?> targetClass = entry.getKey();
                 if (targetClass != Object.class && targetClass.isAssignableFrom(resultClass)) {
-                    return (ResultHandler<Object>) entry.getValue();
+                    result = (ResultHandler<Object>) entry.getValue();
+                    resolvedMapping.put(resultClass, result);
+                    return result;
                 }
             }
             throw new IllegalStateException("Unsupported result class: " + resultClass.getName());
@@ -78,12 +86,21 @@ public class ResultHandlerResolver {
         return result;
     }
 
+    // 是否为异步 Action 的返回类型 (Callable/CompletionStage/DeferredResult)，最终的结果在完成之后再查找
+    public boolean isAsyncResult(Class<?> resultClass) {
+        return AsyncResultDispatcher.isAsyncResult(resultClass);
+    }
+
     // 是否支持该 resultClass
     public boolean validate(Class<?> resultClass) {
         // 查找：已经注册的类
         if (mapping.containsKey(resultClass)) {
             return true;
         }
+        // 查找：异步 Action (Callable/CompletionStage/DeferredResult)，最终的结果在完成之后再查找
+        if (AsyncResultDispatcher.isAsyncResult(resultClass)) {
+            return true;
+        }
         // 查找：用 annotation 标注，但是没有注册的 ResultHandler
         ManagedWith with = resultClass.getAnnotation(ManagedWith.class);
         if (with != null && ResultHandler.class.isAssignableFrom(with.value())) {
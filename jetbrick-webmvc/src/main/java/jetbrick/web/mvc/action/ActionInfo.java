@@ -18,11 +18,10 @@
  */
 package jetbrick.web.mvc.action;
 
-import jetbrick.lang.concurrent.ConcurrentInitializer;
-import jetbrick.lang.concurrent.LazyInitializer;
 import jetbrick.reflect.MethodInfo;
 import jetbrick.web.mvc.RequestContext;
 import jetbrick.web.mvc.ResultInfo;
+import jetbrick.web.mvc.config.WebConfig;
 import jetbrick.web.mvc.router.UrlTemplate;
 
 public final class ActionInfo {
@@ -30,12 +29,7 @@ public final class ActionInfo {
     private final MethodInfo method;
     private final UrlTemplate urlTemplate;
 
-    private final ConcurrentInitializer<ActionMethodInjector> methodInjector = new LazyInitializer<ActionMethodInjector>() {
-        @Override
-        protected ActionMethodInjector initialize() {
-            return ActionMethodInjector.create(method, controller.getType());
-        }
-    };
+    private volatile ActionPipeline pipeline; // 启动的时候预编译 (DispatcherFilter)
 
     public ActionInfo(ControllerInfo controller, MethodInfo method, String url) {
         this.controller = controller;
@@ -43,16 +37,40 @@ public final class ActionInfo {
         this.urlTemplate = new UrlTemplate(url);
     }
 
-    // 和实际的 URL 进行匹配，并返回成功匹配的参数(pathVariables)
+    /**
+     * 和实际的 URL 进行匹配，并返回成功匹配的参数(pathVariables).
+     *
+     * @deprecated 路由匹配由 RestfulMatcher 完成，这个方法不再被框架使用
+     */
+    @Deprecated
     public boolean match(String[] urlSegments, PathVariables pathVariables) {
         return urlTemplate.match(urlSegments, pathVariables);
     }
 
+    /**
+     * 返回预编译的执行流程，第一次调用的时候创建.
+     */
+    public ActionPipeline getPipeline() {
+        ActionPipeline result = pipeline;
+        if (result == null) {
+            synchronized (this) {
+                result = pipeline;
+                if (result == null) {
+                    result = ActionPipeline.create(this, WebConfig.getInstance());
+                    pipeline = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    // 只执行 Action (不包括 Interceptor)
     public ResultInfo execute(RequestContext ctx) throws Exception {
-        Object object = controller.getObject();
-        Object result = methodInjector.get().invoke(object, ctx);
+        return getPipeline().execute(ctx);
+    }
 
-        return new ResultInfo(method.getRawReturnType(controller.getType()), result);
+    public String getUrl() {
+        return urlTemplate.getUrl();
     }
 
     public MethodInfo getMethod() {
@@ -62,4 +80,8 @@ public final class ActionInfo {
     public Class<?> getControllerClass() {
         return controller.getType();
     }
+
+    ControllerInfo getControllerInfo() {
+        return controller;
+    }
 }
@@ -0,0 +1,40 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc.action;
+
+import jetbrick.web.mvc.RequestContext;
+import jetbrick.web.mvc.action.annotations.ArgumentGetter;
+
+/**
+ * 直接调用 Action 方法 (由 ActionInvokerBuilder 为每个 Action 生成子类，不使用反射).
+ */
+public abstract class ActionInvoker {
+    protected final ArgumentGetter<?>[] getters;
+
+    protected ActionInvoker(ArgumentGetter<?>[] getters) {
+        this.getters = getters;
+    }
+
+    public abstract Object invoke(Object action, RequestContext ctx) throws Exception;
+
+    // 生成的代码调用: 原始类型的参数不能为 null
+    public static IllegalArgumentException nullArgument(int index) {
+        return new IllegalArgumentException("argument " + index + " of primitive type is null.");
+    }
+}
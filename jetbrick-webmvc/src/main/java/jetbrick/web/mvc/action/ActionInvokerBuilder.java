@@ -0,0 +1,199 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc.action;
+
+import static jetbrick.asm.Opcodes.*;
+import java.lang.reflect.Method;
+import jetbrick.asm.*;
+import jetbrick.web.mvc.RequestContext;
+import jetbrick.web.mvc.action.annotations.ArgumentGetter;
+
+/**
+ * 生成一个专用的 ActionInvoker，等价于:
+ *
+ * <pre>
+ * public Object invoke(Object action, RequestContext ctx) {
+ *     ArgumentGetter[] getters = this.getters;
+ *     Object id = getters[0].get(ctx);
+ *     if (id == null) throw ActionInvoker.nullArgument(0);
+ *     return ((UserController) action).edit(((Number) id).longValue(), (String) getters[1].get(ctx));
+ * }
+ * </pre>
+ */
+final class ActionInvokerBuilder {
+    private static final String INVOKER_KLASS = Type.getInternalName(ActionInvoker.class);
+    private static final String GETTER_KLASS = Type.getInternalName(ArgumentGetter.class);
+    private static final String GETTERS_DESC = "[" + Type.getDescriptor(ArgumentGetter.class);
+    private static final String CTX_DESC = Type.getDescriptor(RequestContext.class);
+    private static final int VAR_ACTION = 1;
+    private static final int VAR_CTX = 2;
+    private static final int VAR_GETTERS = 3;
+
+    private final ClassWriter cw;
+    private final String generatedKlassNameInternal;
+    private final String actionKlassNameInternal;
+
+    public ActionInvokerBuilder(String generatedKlassName, Class<?> actionKlass) {
+        generatedKlassNameInternal = generatedKlassName.replace('.', '/');
+        actionKlassNameInternal = Type.getInternalName(actionKlass);
+
+        // V1_5: 不需要 StackMapTable
+        cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(V1_5, ACC_PUBLIC + ACC_SUPER + ACC_FINAL + ACC_SYNTHETIC, generatedKlassNameInternal, null, INVOKER_KLASS, null);
+    }
+
+    public static byte[] create(String generatedKlassName, Class<?> actionKlass, Method method) {
+        ActionInvokerBuilder builder = new ActionInvokerBuilder(generatedKlassName, actionKlass);
+        builder.insertConstructor();
+        builder.insertInvoke(method);
+        return builder.asByteCode();
+    }
+
+    public void insertConstructor() {
+        String desc = "(" + GETTERS_DESC + ")V";
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC + ACC_SYNTHETIC, "<init>", desc, null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitMethodInsn(INVOKESPECIAL, INVOKER_KLASS, "<init>", desc, false);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(2, 2);
+        mv.visitEnd();
+    }
+
+    public void insertInvoke(Method method) {
+        String desc = "(Ljava/lang/Object;" + CTX_DESC + ")Ljava/lang/Object;";
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC + ACC_SYNTHETIC, "invoke", desc, null, new String[] { "java/lang/Exception" });
+        mv.visitCode();
+
+        // ArgumentGetter[] getters = this.getters;
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        if (parameterTypes.length > 0) {
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitFieldInsn(GETFIELD, INVOKER_KLASS, "getters", GETTERS_DESC);
+            mv.visitVarInsn(ASTORE, VAR_GETTERS);
+        }
+
+        // ((Action) action).method(...)
+        mv.visitVarInsn(ALOAD, VAR_ACTION);
+        mv.visitTypeInsn(CHECKCAST, actionKlassNameInternal);
+        for (int i = 0; i < parameterTypes.length; i++) {
+            // getters[i].get(ctx)
+            mv.visitVarInsn(ALOAD, VAR_GETTERS);
+            insertInt(mv, i);
+            mv.visitInsn(AALOAD);
+            mv.visitVarInsn(ALOAD, VAR_CTX);
+            mv.visitMethodInsn(INVOKEINTERFACE, GETTER_KLASS, "get", "(" + CTX_DESC + ")Ljava/lang/Object;", true);
+            insertCast(mv, parameterTypes[i], i);
+        }
+        mv.visitMethodInsn(INVOKEVIRTUAL, actionKlassNameInternal, method.getName(), Type.getMethodDescriptor(method), false);
+
+        Class<?> returnType = method.getReturnType();
+        if (returnType == void.class) {
+            mv.visitInsn(ACONST_NULL);
+        } else if (returnType.isPrimitive()) {
+            insertBox(mv, Type.getType(returnType));
+        }
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    // 栈顶的 Object 转换成参数的类型，原始类型直接拆箱
+    private static void insertCast(MethodVisitor mv, Class<?> type, int index) {
+        if (type == Object.class) {
+            return;
+        }
+        if (!type.isPrimitive()) {
+            mv.visitTypeInsn(CHECKCAST, Type.getInternalName(type));
+            return;
+        }
+
+        // if (value == null) throw ActionInvoker.nullArgument(index);
+        Label labelNotNull = new Label();
+        mv.visitInsn(DUP);
+        mv.visitJumpInsn(IFNONNULL, labelNotNull);
+        mv.visitInsn(POP);
+        insertInt(mv, index);
+        mv.visitMethodInsn(INVOKESTATIC, INVOKER_KLASS, "nullArgument", "(I)Ljava/lang/IllegalArgumentException;", false);
+        mv.visitInsn(ATHROW);
+        mv.visitLabel(labelNotNull);
+
+        Type t = Type.getType(type);
+        switch (t.getSort()) {
+        case Type.BOOLEAN:
+            mv.visitTypeInsn(CHECKCAST, "java/lang/Boolean");
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Boolean", "booleanValue", "()Z", false);
+            break;
+        case Type.CHAR:
+            mv.visitTypeInsn(CHECKCAST, "java/lang/Character");
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Character", "charValue", "()C", false);
+            break;
+        default:
+            // byte, short, int, long, float, double
+            mv.visitTypeInsn(CHECKCAST, "java/lang/Number");
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Number", t.getClassName() + "Value", "()" + t.getDescriptor(), false);
+        }
+    }
+
+    private static void insertBox(MethodVisitor mv, Type type) {
+        String wrapper;
+        switch (type.getSort()) {
+        case Type.BOOLEAN:
+            wrapper = "java/lang/Boolean";
+            break;
+        case Type.CHAR:
+            wrapper = "java/lang/Character";
+            break;
+        case Type.BYTE:
+            wrapper = "java/lang/Byte";
+            break;
+        case Type.SHORT:
+            wrapper = "java/lang/Short";
+            break;
+        case Type.INT:
+            wrapper = "java/lang/Integer";
+            break;
+        case Type.LONG:
+            wrapper = "java/lang/Long";
+            break;
+        case Type.FLOAT:
+            wrapper = "java/lang/Float";
+            break;
+        default:
+            wrapper = "java/lang/Double";
+        }
+        mv.visitMethodInsn(INVOKESTATIC, wrapper, "valueOf", "(" + type.getDescriptor() + ")L" + wrapper + ";", false);
+    }
+
+    private static void insertInt(MethodVisitor mv, int value) {
+        if (value <= 5) {
+            mv.visitInsn(ICONST_0 + value);
+        } else if (value <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(BIPUSH, value);
+        } else {
+            mv.visitIntInsn(SIPUSH, value);
+        }
+    }
+
+    public byte[] asByteCode() {
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+}
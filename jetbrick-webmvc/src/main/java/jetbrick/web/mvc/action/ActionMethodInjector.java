@@ -19,26 +19,37 @@
 package jetbrick.web.mvc.action;
 
 import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import jetbrick.ioc.Ioc;
 import jetbrick.ioc.annotations.ManagedWith;
 import jetbrick.lang.ArrayUtils;
 import jetbrick.reflect.*;
+import jetbrick.reflect.asm.ASMFactory;
 import jetbrick.web.mvc.RequestContext;
 import jetbrick.web.mvc.action.annotations.*;
 import jetbrick.web.mvc.action.annotations.AnnotatedArgumentGetter.ArgumentContext;
 import jetbrick.web.mvc.config.WebConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 final class ActionMethodInjector {
+    private static final Logger log = LoggerFactory.getLogger(ActionMethodInjector.class);
+    private static final boolean ASM_ENABLED = System.getProperty("jetbrick.web.invoker.asm.disabled") == null;
+    private static final AtomicInteger sequence = new AtomicInteger();
+
     private final Method method;
     private final ArgumentGetter<?>[] resolvers;
+    private final ActionInvoker invoker; // 不支持的时候为 null，使用反射调用
 
     @SuppressWarnings("unchecked")
     public static ActionMethodInjector create(MethodInfo method, Class<?> declaringClass) {
         List<ParameterInfo> parameters = method.getParameters();
         if (parameters.size() == 0) {
-            return new ActionMethodInjector(method.getMethod(), ArgumentGetter.EMPTY_ARRAY);
+            return new ActionMethodInjector(method.getMethod(), ArgumentGetter.EMPTY_ARRAY, declaringClass);
         }
 
         Ioc ioc = WebConfig.getInstance().getIoc();
@@ -83,15 +94,45 @@ final class ActionMethodInjector {
             resolvers[i] = getter;
         }
 
-        return new ActionMethodInjector(method.getMethod(), resolvers);
+        return new ActionMethodInjector(method.getMethod(), resolvers, declaringClass);
     }
 
-    public ActionMethodInjector(Method method, ArgumentGetter<?>[] resolvers) {
+    public ActionMethodInjector(Method method, ArgumentGetter<?>[] resolvers, Class<?> declaringClass) {
         this.method = method;
         this.resolvers = resolvers;
+        this.invoker = compile(method, resolvers, declaringClass);
+    }
+
+    // 生成直接调用 Action 方法的 ActionInvoker
+    private static ActionInvoker compile(Method method, ArgumentGetter<?>[] resolvers, Class<?> declaringClass) {
+        if (!ASM_ENABLED || !Modifier.isPublic(declaringClass.getModifiers()) || !Modifier.isPublic(method.getModifiers())) {
+            return null;
+        }
+        if (declaringClass.getEnclosingClass() != null && !Modifier.isStatic(declaringClass.getModifiers())) {
+            return null;
+        }
+        try {
+            int id = sequence.incrementAndGet();
+            String generatedKlassName = ActionMethodInjector.class.getPackage().getName() + ".delegate." + declaringClass.getName().replace('.', '_') + "$" + method.getName() + "$Invoker" + id;
+            byte[] byteCode = ActionInvokerBuilder.create(generatedKlassName, declaringClass, method);
+            Class<?> generatedKlass = ASMFactory.defineClass(generatedKlassName, byteCode, declaringClass);
+            return (ActionInvoker) generatedKlass.getConstructor(ArgumentGetter[].class).newInstance((Object) resolvers);
+        } catch (Throwable e) {
+            log.warn("Can't generate ActionInvoker for " + method + ", fallback to reflection.", e);
+            return null;
+        }
+    }
+
+    // 是否使用 ASM 生成的 ActionInvoker
+    boolean isCompiled() {
+        return invoker != null;
     }
 
     public Object invoke(Object action, RequestContext ctx) throws Exception {
+        if (invoker != null) {
+            return invoker.invoke(action, ctx);
+        }
+
         Object[] parameters = ArrayUtils.EMPTY_OBJECT_ARRAY;
         int length = resolvers.length;
         if (length > 0) {
@@ -100,6 +141,18 @@ final class ActionMethodInjector {
                 parameters[i] = resolvers[i].get(ctx);
             }
         }
-        return method.invoke(action, parameters);
+        try {
+            return method.invoke(action, parameters);
+        } catch (InvocationTargetException e) {
+            // 和 ActionInvoker 一样，抛出 Action 方法自身的异常 (ExceptionHandler 收到的不是 InvocationTargetException)
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
     }
 }
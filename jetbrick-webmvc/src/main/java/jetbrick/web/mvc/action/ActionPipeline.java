@@ -0,0 +1,135 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc.action;
+
+import java.util.ArrayList;
+import java.util.List;
+import jetbrick.web.mvc.*;
+import jetbrick.web.mvc.config.WebConfig;
+import jetbrick.web.mvc.interceptor.*;
+import jetbrick.web.mvc.results.ResultHandler;
+
+/**
+ * 每个 Action 在启动的时候预编译的执行流程 (不可变):
+ * <ul>
+ *   <li>作用于该 Action 的 Interceptor ({@link ScopedInterceptor} 已经过滤)</li>
+ *   <li>ArgumentGetter 和 ActionInvoker (ActionMethodInjector)</li>
+ *   <li>根据返回类型确定的 ResultHandler</li>
+ * </ul>
+ * 请求的时候只需要依次遍历数组，不需要查找任何 Map。
+ */
+public final class ActionPipeline {
+    private static final Interceptor[] EMPTY_INTERCEPTORS = new Interceptor[0];
+
+    private final ActionInfo action;
+    private final Interceptor[] interceptors;
+    private final ActionMethodInjector methodInjector;
+    private final Class<?> resultClass;
+    private final ResultHandler<Object> resultHandler;
+
+    static ActionPipeline create(ActionInfo action, WebConfig config) {
+        List<Interceptor> list = new ArrayList<Interceptor>();
+        for (Interceptor interceptor : config.getInterceptors()) {
+            if (interceptor instanceof ScopedInterceptor && !((ScopedInterceptor) interceptor).accept(action)) {
+                continue;
+            }
+            list.add(interceptor);
+        }
+        Interceptor[] interceptors = list.isEmpty() ? EMPTY_INTERCEPTORS : list.toArray(new Interceptor[list.size()]);
+
+        Class<?> controllerClass = action.getControllerClass();
+        ActionMethodInjector methodInjector = ActionMethodInjector.create(action.getMethod(), controllerClass);
+        Class<?> resultClass = action.getMethod().getRawReturnType(controllerClass);
+
+        // 返回 Object 的时候，需要根据运行时的类型查找; 异步结果在完成之后再查找
+        // 其他的类型如果找不到 ResultHandler，直接抛出异常 (启动失败)
+        ResultHandler<Object> resultHandler = null;
+        ResultHandlerResolver resultHandlerResolver = config.getResultHandlerResolver();
+        if (resultClass != Object.class && !resultHandlerResolver.isAsyncResult(resultClass)) {
+            resultHandler = resultHandlerResolver.lookup(resultClass);
+        }
+        return new ActionPipeline(action, interceptors, methodInjector, resultClass, resultHandler);
+    }
+
+    private ActionPipeline(ActionInfo action, Interceptor[] interceptors, ActionMethodInjector methodInjector, Class<?> resultClass, ResultHandler<Object> resultHandler) {
+        this.action = action;
+        this.interceptors = interceptors;
+        this.methodInjector = methodInjector;
+        this.resultClass = resultClass;
+        this.resultHandler = resultHandler;
+    }
+
+    public ActionInfo getAction() {
+        return action;
+    }
+
+    public Interceptor[] getInterceptors() {
+        return interceptors.clone();
+    }
+
+    public Class<?> getResultClass() {
+        return resultClass;
+    }
+
+    /**
+     * 预先确定的 ResultHandler.
+     * @return 如果需要根据运行时的结果查找 (返回 Object 或者异步结果)，返回 null
+     */
+    public ResultHandler<Object> getResultHandler() {
+        return resultHandler;
+    }
+
+    /**
+     * 依次执行 Interceptor，最后执行 Action.
+     */
+    public ResultInfo invoke(RequestContext ctx) throws Exception {
+        if (interceptors.length == 0) {
+            return execute(ctx);
+        }
+        Chain chain = new Chain(ctx);
+        chain.invoke();
+        return chain.result;
+    }
+
+    // 只执行 Action
+    ResultInfo execute(RequestContext ctx) throws Exception {
+        Object object = action.getControllerInfo().getObject();
+        Object result = methodInjector.invoke(object, ctx);
+        return new ResultInfo(resultClass, result);
+    }
+
+    final class Chain implements InterceptorChain {
+        private final RequestContext ctx;
+        private int index;
+        private ResultInfo result;
+
+        Chain(RequestContext ctx) {
+            this.ctx = ctx;
+        }
+
+        @Override
+        public void invoke() throws Exception {
+            if (index < interceptors.length) {
+                interceptors[index++].intercept(ctx, this);
+            } else {
+                result = execute(ctx);
+            }
+        }
+    }
+}
@@ -46,6 +46,18 @@ public final class PathVariables {
         size = 0;
     }
 
+    // 当前变量的个数，和 truncate() 配合使用，用于匹配失败之后的回溯
+    public int size() {
+        return size >> 1;
+    }
+
+    // 只保留前面的 count 个变量
+    public void truncate(int count) {
+        if (count < (size >> 1)) {
+            size = count << 1;
+        }
+    }
+
     public String getValue(String name) {
         for (int i = 0; i < size; i += 2) {
             if (items[i].equals(name)) {
@@ -20,6 +20,7 @@ package jetbrick.web.mvc.config;
 
 import java.io.File;
 import java.util.List;
+import java.util.concurrent.Executor;
 import javax.servlet.ServletContext;
 import jetbrick.ioc.Ioc;
 import jetbrick.ioc.annotations.Config;
@@ -74,6 +75,12 @@ public final class WebConfig {
     @Config(value = "web.exception.handler", required = false)
     private ExceptionHandler exceptionHandler;
 
+    @Config(value = "web.async.executor", required = false)
+    private Executor asyncExecutor;
+
+    @Config(value = "web.async.timeout", defaultValue = "30000")
+    private long asyncTimeout;
+
     @Inject
     private ResultHandlerResolver resultHandlerResolver;
 
@@ -129,6 +136,14 @@ public final class WebConfig {
         return exceptionHandler;
     }
 
+    public Executor getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    public long getAsyncTimeout() {
+        return asyncTimeout;
+    }
+
     public ResultHandlerResolver getResultHandlerResolver() {
         return resultHandlerResolver;
     }
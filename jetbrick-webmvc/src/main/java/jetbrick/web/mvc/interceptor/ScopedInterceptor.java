@@ -0,0 +1,41 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc.interceptor;
+
+import jetbrick.web.mvc.action.ActionInfo;
+
+/**
+ * 只作用于部分 Action 的 Interceptor.
+ *
+ * <p>
+ * 启动的时候 (所有的 Interceptor 都已经 init 之后)，对每个 Action 调用一次 {@link #accept(ActionInfo)}，
+ * 只有返回 true 的 Action 才会执行该 Interceptor，请求的时候不再判断。
+ * </p>
+ *
+ * <pre>
+ * public boolean accept(ActionInfo action) {
+ *     return action.getUrl().startsWith("/admin/") || action.getMethod().isAnnotationPresent(Login.class);
+ * }
+ * </pre>
+ */
+public interface ScopedInterceptor extends Interceptor {
+
+    public boolean accept(ActionInfo action);
+
+}
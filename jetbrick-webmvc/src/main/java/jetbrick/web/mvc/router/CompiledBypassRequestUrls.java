@@ -0,0 +1,266 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc.router;
+
+import java.util.*;
+import java.util.regex.Pattern;
+import javax.servlet.http.HttpServletRequest;
+import jetbrick.ioc.annotations.IocInit;
+import jetbrick.lang.StringEscapeUtils;
+import jetbrick.lang.StringUtils;
+import jetbrick.web.mvc.BypassRequestUrls;
+
+/**
+ * 用来过滤静态文件等非 mvc filter 需要处理的文件, 初始化的时候将所有的 pattern 编译成一个整体的匹配结构.
+ *
+ * <ul>
+ *   <li>/assets/* : 前缀匹配，所有的前缀编译成一个前缀树</li>
+ *   <li>*.js : 后缀匹配，所有的后缀反转之后编译成一个后缀树</li>
+ *   <li>/favicon.ico : 完全匹配，使用 HashSet</li>
+ *   <li>/a/*.js : 中间带有通配符 (* 或者 ?)，转换成正则表达式</li>
+ *   <li>^...$ : 正则表达式，所有的正则表达式合并成一个 Pattern</li>
+ * </ul>
+ *
+ * <p>
+ * 合并之后捕获组会被重新编号，所以包含反向引用 (\1, \k&lt;name&gt;) 或者命名捕获组的正则表达式不参与合并，单独进行匹配。
+ * </p>
+ *
+ * <p>
+ * 无论 pattern 有多少个，每次匹配最多只需要遍历 path 一遍 (前缀/后缀) + 一次 HashSet 查询 + 一次正则表达式匹配。
+ * </p>
+ */
+public class CompiledBypassRequestUrls implements BypassRequestUrls {
+    public static final String DEFAULT_PATTERNS = PrefixSuffixBypassRequestUrls.DEFAULT_PATTERNS;
+
+    private String patterns = DEFAULT_PATTERNS;
+    private CharTrie prefixTrie;
+    private CharTrie suffixTrie;
+    private Set<String> staticSet;
+    private Pattern regex;
+    private Pattern[] standaloneRegexes; // 不能合并的正则表达式
+
+    public void setPatterns(String patterns) {
+        this.patterns = patterns;
+    }
+
+    @IocInit
+    private void initialize() {
+        CharTrie prefixes = new CharTrie();
+        CharTrie suffixes = new CharTrie();
+        Set<String> statics = new HashSet<String>();
+        List<String> regexList = new ArrayList<String>();
+
+        if (patterns != null && patterns.length() > 0) {
+            for (String pattern : StringUtils.split(patterns, ',')) {
+                pattern = StringUtils.trimToNull(pattern);
+                if (pattern == null) {
+                    continue;
+                }
+                int last = pattern.length() - 1;
+                if (pattern.charAt(0) == '^') {
+                    regexList.add(pattern);
+                } else if (pattern.charAt(0) == '*' && !isWildcard(pattern, 1, last + 1)) {
+                    suffixes.add(new StringBuilder(pattern.substring(1)).reverse().toString());
+                } else if (pattern.charAt(last) == '*' && !isWildcard(pattern, 0, last)) {
+                    prefixes.add(pattern.substring(0, last));
+                } else if (!isWildcard(pattern, 0, last + 1)) {
+                    statics.add(pattern);
+                } else {
+                    regexList.add(toRegex(pattern));
+                }
+            }
+        }
+
+        prefixTrie = prefixes.isEmpty() ? null : prefixes;
+        suffixTrie = suffixes.isEmpty() ? null : suffixes;
+        staticSet = statics.isEmpty() ? null : statics;
+
+        List<Pattern> standalones = new ArrayList<Pattern>();
+        StringBuilder sb = new StringBuilder(128);
+        Pattern single = null;
+        int merged = 0;
+        for (String s : regexList) {
+            Pattern pattern = Pattern.compile(s); // 先单独编译，出错的时候可以知道是哪一个
+            if (hasGroupReference(s)) {
+                standalones.add(pattern);
+                continue;
+            }
+            // 合并成一个 Pattern: (?:p1)|(?:p2)|...
+            if (sb.length() > 0) {
+                sb.append('|');
+            }
+            sb.append("(?:").append(s).append(')');
+            single = pattern;
+            merged++;
+        }
+        regex = (merged > 1) ? Pattern.compile(sb.toString()) : single;
+        standaloneRegexes = standalones.isEmpty() ? null : standalones.toArray(new Pattern[standalones.size()]);
+    }
+
+    @Override
+    public boolean accept(HttpServletRequest request, String path) {
+        if (staticSet != null && staticSet.contains(path)) {
+            return true;
+        }
+        if (prefixTrie != null && prefixTrie.matchPrefix(path)) {
+            return true;
+        }
+        if (suffixTrie != null && suffixTrie.matchSuffix(path)) {
+            return true;
+        }
+        if (regex != null && regex.matcher(path).matches()) {
+            return true;
+        }
+        if (standaloneRegexes != null) {
+            for (Pattern pattern : standaloneRegexes) {
+                if (pattern.matcher(path).matches()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // 是否包含反向引用 (\1, \k<name>) 或者命名捕获组 (?<name>...)，跳过转义字符和 \Q...\E
+    static boolean hasGroupReference(String regex) {
+        int length = regex.length();
+        for (int i = 0; i < length; i++) {
+            char c = regex.charAt(i);
+            if (c == '\\' && i + 1 < length) {
+                char next = regex.charAt(++i);
+                if ((next >= '1' && next <= '9') || next == 'k') {
+                    return true;
+                }
+                if (next == 'Q') {
+                    int end = regex.indexOf("\\E", i + 1);
+                    if (end == -1) {
+                        return false;
+                    }
+                    i = end + 1;
+                }
+            } else if (c == '(' && regex.startsWith("?<", i + 1) && i + 3 < length) {
+                char next = regex.charAt(i + 3);
+                if (next != '=' && next != '!') {
+                    return true; // (?<name>...)，不是 (?<=...) 或者 (?<!...)
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isWildcard(String pattern, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = pattern.charAt(i);
+            if (c == '*' || c == '?') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 将通配符转换成正则表达式
+    private static String toRegex(String pattern) {
+        StringBuilder sb = new StringBuilder(pattern.length() + 16);
+        int start = 0;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '*' || c == '?') {
+                if (i > start) {
+                    sb.append(StringEscapeUtils.escapeJavaRegexPattern(pattern.substring(start, i)));
+                }
+                sb.append(c == '*' ? ".*" : ".");
+                start = i + 1;
+            }
+        }
+        if (start < pattern.length()) {
+            sb.append(StringEscapeUtils.escapeJavaRegexPattern(pattern.substring(start)));
+        }
+        return sb.toString();
+    }
+
+    // 字符前缀树，每个节点的子节点按照字符排序，使用二分查找
+    static final class CharTrie {
+        private static final char[] EMPTY_LABELS = new char[0];
+        private static final CharTrie[] EMPTY_CHILDREN = new CharTrie[0];
+
+        private char[] labels = EMPTY_LABELS;
+        private CharTrie[] children = EMPTY_CHILDREN;
+        private boolean terminal;
+
+        public boolean isEmpty() {
+            return !terminal && labels.length == 0;
+        }
+
+        public void add(String key) {
+            CharTrie node = this;
+            for (int i = 0; i < key.length(); i++) {
+                node = node.getOrCreateChild(key.charAt(i));
+            }
+            node.terminal = true;
+        }
+
+        // path 是否以树中的某一个 key 开头
+        public boolean matchPrefix(String path) {
+            CharTrie node = this;
+            int length = path.length();
+            for (int i = 0; !node.terminal; i++) {
+                if (i == length || (node = node.getChild(path.charAt(i))) == null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // path 是否以树中的某一个 key 结尾 (key 已经反转)
+        public boolean matchSuffix(String path) {
+            CharTrie node = this;
+            for (int i = path.length() - 1; !node.terminal; i--) {
+                if (i < 0 || (node = node.getChild(path.charAt(i))) == null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private CharTrie getChild(char c) {
+            int index = Arrays.binarySearch(labels, c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        private CharTrie getOrCreateChild(char c) {
+            int index = Arrays.binarySearch(labels, c);
+            if (index >= 0) {
+                return children[index];
+            }
+            index = -(index + 1);
+            CharTrie child = new CharTrie();
+            char[] newLabels = new char[labels.length + 1];
+            CharTrie[] newChildren = new CharTrie[children.length + 1];
+            System.arraycopy(labels, 0, newLabels, 0, index);
+            System.arraycopy(children, 0, newChildren, 0, index);
+            newLabels[index] = c;
+            newChildren[index] = child;
+            System.arraycopy(labels, index, newLabels, index + 1, labels.length - index);
+            System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+            labels = newLabels;
+            children = newChildren;
+            return child;
+        }
+    }
+}
@@ -18,118 +18,239 @@
  */
 package jetbrick.web.mvc.router;
 
-import java.util.*;
-import jetbrick.collections.SoftHashMap;
-import jetbrick.collections.multimap.MultiValueHashMap;
-import jetbrick.collections.multimap.MultiValueMap;
-import jetbrick.lang.StringUtils;
+import java.util.HashMap;
+import java.util.Map;
 import jetbrick.web.mvc.RouteInfo;
 import jetbrick.web.mvc.action.ActionInfo;
 import jetbrick.web.mvc.action.PathVariables;
 
 /*
- * <h2>分组匹配算法</h2>
+ * <h2>路由匹配算法</h2>
  * <ol>
- *   <li>按照 HttpMethod 分组</li>
- *   <li>按照静态/动态 URL 分组(cache)</li>
- *   <li>动态 URL 先按照 path 长度分组，再按照 group 分组</li>
+ *   <li>按照 HttpMethod 分组 (由 RestfulRouter 完成)</li>
+ *   <li>静态 URL (不包含 {var}) 直接使用 HashMap 匹配，其中的 * 和 ? 按照字面匹配</li>
+ *   <li>动态 URL 使用按照 URL Segment 组织的前缀树 (trie)，一次遍历完成匹配，不需要 split URL:
+ *     <ul>
+ *       <li>每个节点优先匹配静态的 Segment (开放地址的 hash 表，直接比较 URL 中的字符，不需要创建 substring)</li>
+ *       <li>然后按照注册顺序匹配正则表达式/通配符的 Segment，最后匹配 {var} 和 *</li>
+ *       <li>子节点匹配失败的时候回溯，并撤销已经匹配的 PathVariables</li>
+ *     </ul>
+ *   </li>
  * </ol>
+ *
+ * <p>
+ * 路由在启动的时候注册，lookup() 不修改任何状态 (没有缓存)，所以可以被多个线程同时调用。
+ * </p>
  */
 final class RestfulMatcher {
-    private static final int MAX_PATH_PARTS = 20;
-
-    private Map<String, RouteInfo> staticUrls = new HashMap<String, RouteInfo>(128);
-    private Map<String, RouteInfo> cachedUrls = new SoftHashMap<String, RouteInfo>(256);
-    private OneByOneMatcher[] matchers = new OneByOneMatcher[MAX_PATH_PARTS]; // 按照长度分组
+    private volatile Map<String, RouteInfo> staticUrls = new HashMap<String, RouteInfo>(128);
+    private volatile Node root = new Node();
 
-    public void register(ActionInfo action, String url) {
+    public synchronized void register(ActionInfo action, String url) {
         if (url.indexOf('{') == -1) {
-            staticUrls.put(url, new RouteInfo(action));
+            // copy-on-write，保证 lookup() 看到的是完整的 map
+            Map<String, RouteInfo> urls = new HashMap<String, RouteInfo>(staticUrls);
+            urls.put(url, new RouteInfo(action));
+            staticUrls = urls;
         } else {
-            String[] urlSegments = StringUtils.split(url.substring(1), '/');
-            if (urlSegments.length >= MAX_PATH_PARTS) {
-                throw new IllegalStateException("exceed max url parts: " + url);
-            }
-            OneByOneMatcher matcher = matchers[urlSegments.length];
-            if (matcher == null) {
-                matcher = new OneByOneMatcher();
-                matchers[urlSegments.length] = matcher;
+            Node node = root;
+            int start = 1;
+            while (true) {
+                int end = url.indexOf('/', start);
+                if (end == -1) {
+                    end = url.length();
+                }
+                node = node.addChild(url.substring(start, end));
+                if (end == url.length()) {
+                    break;
+                }
+                start = end + 1;
             }
-            matcher.register(action, urlSegments);
+            node.action = action;
+            root = root; // volatile write: 发布已经修改的节点
         }
     }
 
     public RouteInfo lookup(String url) {
         // 1. 查询静态路由
         RouteInfo info = staticUrls.get(url);
-        if (info != null) return info;
-
-        // 2. 查询动态路由缓存
-        info = cachedUrls.get(url);
         if (info != null) {
             return info;
         }
 
-        // 3. 开始执行动态路由匹配 (分组匹配)
-        String[] urlSegments = StringUtils.split(url.substring(1), '/');
-        if (urlSegments.length >= MAX_PATH_PARTS) {
-            throw new IllegalStateException("exceed max url parts: " + url);
+        // 2. 动态路由匹配
+        Node node = root;
+        if (node.isEmpty() || url.length() == 0 || url.charAt(0) != '/') {
+            return RouteInfo.NOT_FOUND;
         }
-        OneByOneMatcher matcher = matchers[urlSegments.length];
-        if (matcher != null) {
-            info = matcher.lookup(urlSegments);
+        PathVariables pathVariables = new PathVariables();
+        ActionInfo action = match(node, url, 1, pathVariables);
+        if (action == null) {
+            return RouteInfo.NOT_FOUND;
         }
+        return new RouteInfo(action, pathVariables);
+    }
 
-        // 4. 加入缓存
-        if (info == null) {
-            info = RouteInfo.NOT_FOUND;
+    // 匹配从 start 开始的 Segment (start 为 '/' 后面的位置)
+    private static ActionInfo match(Node node, String url, int start, PathVariables pathVariables) {
+        int length = url.length();
+        int end = url.indexOf('/', start);
+        if (end == -1) {
+            end = length;
         }
-        cachedUrls.put(url, info);
 
-        // 5. 返回
-        return info;
-    }
+        // 1. 静态 Segment
+        Node child = node.getStaticChild(url, start, end);
+        if (child != null) {
+            ActionInfo action = (end == length) ? child.action : match(child, url, end + 1, pathVariables);
+            if (action != null) {
+                return action;
+            }
+        }
 
-    // 动态路由匹配(逐个匹配)
-    static final class OneByOneMatcher {
-        private final MultiValueMap<String, ActionInfo> groups = new MultiValueHashMap<String, ActionInfo>(256);
-        private final List<ActionInfo> ungroupList = new ArrayList<ActionInfo>(32);
-
-        // 添加路由信息（按照 URL 前缀分组）
-        public void register(ActionInfo action, String[] urlSegments) {
-            String group = urlSegments[0];
-            if (group.indexOf('{') == -1) {
-                groups.put(group, action);
-            } else {
-                ungroupList.add(action);
+        // 2. 动态 Segment (空的 Segment 不能匹配 {var}，如 "/users/" 不匹配 "/users/{id}")
+        Edge[] edges = node.dynamicEdges;
+        if (edges.length > 0 && end > start) {
+            String segment = url.substring(start, end);
+            int mark = pathVariables.size();
+            for (Edge edge : edges) {
+                if (end == length && edge.node.action == null) {
+                    continue;
+                }
+                if (edge.matcher.match(segment, pathVariables)) {
+                    ActionInfo action = (end == length) ? edge.node.action : match(edge.node, url, end + 1, pathVariables);
+                    if (action != null) {
+                        return action;
+                    }
+                }
+                pathVariables.truncate(mark); // 回溯
             }
         }
+        return null;
+    }
+
+    // 前缀树的节点，只在 register() 中修改 (数组都是 copy-on-write)，通过 root 的 volatile 写入发布
+    static final class Node {
+        private static final String[] EMPTY_KEYS = new String[0];
+        private static final Node[] EMPTY_NODES = new Node[0];
+        private static final Edge[] EMPTY_EDGES = new Edge[0];
+
+        // 静态 Segment: 开放地址的 hash 表 (长度为 2 的幂)
+        String[] staticKeys = EMPTY_KEYS;
+        Node[] staticNodes = EMPTY_NODES;
+        int staticSize;
+        // 动态 Segment: 正则表达式/通配符在前，{var} 和 * 在后
+        Edge[] dynamicEdges = EMPTY_EDGES;
+        ActionInfo action;
 
-        public RouteInfo lookup(String[] urlSegments) {
-            // 1. 先 new 出一个存放 URL PathVariables 的对象
-            PathVariables pathVariables = new PathVariables();
-
-            // 2. 分组查询
-            String group = urlSegments[0];
-            List<ActionInfo> actions = groups.getList(group);
-            if (actions != null) {
-                RouteInfo info = doLookup(actions, urlSegments, pathVariables);
-                if (info != null) {
-                    return info;
+        boolean isEmpty() {
+            return staticSize == 0 && dynamicEdges.length == 0;
+        }
+
+        Node addChild(String segment) {
+            UrlSegmentMatcher matcher = UrlSegmentMatcher.create(segment);
+            if (matcher instanceof UrlSegmentMatcher.EqualsUrlSegmentMatcher) {
+                Node child = getStaticChild(segment, 0, segment.length());
+                if (child == null) {
+                    child = new Node();
+                    putStaticChild(segment, child);
                 }
+                return child;
             }
 
-            // 3. 查找未分组的内容
-            return doLookup(ungroupList, urlSegments, pathVariables);
+            for (Edge edge : dynamicEdges) {
+                if (edge.segment.equals(segment)) {
+                    return edge.node;
+                }
+            }
+            Edge edge = new Edge(segment, matcher, new Node());
+            int pos = dynamicEdges.length;
+            if (!(matcher instanceof UrlSegmentMatcher.AnyUrlSegmentMatcher)) {
+                // 正则表达式/通配符插入到第一个 {var} 之前
+                for (int i = 0; i < dynamicEdges.length; i++) {
+                    if (dynamicEdges[i].matcher instanceof UrlSegmentMatcher.AnyUrlSegmentMatcher) {
+                        pos = i;
+                        break;
+                    }
+                }
+            }
+            Edge[] edges = new Edge[dynamicEdges.length + 1];
+            System.arraycopy(dynamicEdges, 0, edges, 0, pos);
+            System.arraycopy(dynamicEdges, pos, edges, pos + 1, dynamicEdges.length - pos);
+            edges[pos] = edge;
+            dynamicEdges = edges;
+            return edge.node;
         }
 
-        private RouteInfo doLookup(List<ActionInfo> actions, String[] urlSegments, PathVariables pathVariables) {
-            for (ActionInfo action : actions) {
-                if (action.match(urlSegments, pathVariables)) {
-                    return new RouteInfo(action, pathVariables);
+        Node getStaticChild(String url, int start, int end) {
+            String[] keys = staticKeys;
+            if (keys.length == 0) {
+                return null;
+            }
+            int mask = keys.length - 1;
+            int i = hash(url, start, end) & mask;
+            int len = end - start;
+            String key;
+            while ((key = keys[i]) != null) {
+                if (key.length() == len && url.regionMatches(start, key, 0, len)) {
+                    return staticNodes[i];
                 }
+                i = (i + 1) & mask;
             }
             return null;
         }
+
+        private void putStaticChild(String segment, Node child) {
+            // 装载因子不超过 0.5
+            int capacity = 4;
+            while (capacity < (staticSize + 1) * 2) {
+                capacity <<= 1;
+            }
+            String[] keys = new String[capacity];
+            Node[] nodes = new Node[capacity];
+            for (int i = 0; i < staticKeys.length; i++) {
+                if (staticKeys[i] != null) {
+                    insert(keys, nodes, staticKeys[i], staticNodes[i]);
+                }
+            }
+            insert(keys, nodes, segment, child);
+            // 这两个字段的写入顺序没有任何保证 (都不是 volatile)，
+            // 依靠 register() 最后对 root 的 volatile 写入发布，lookup() 总是先读取 root
+            staticNodes = nodes;
+            staticKeys = keys;
+            staticSize++;
+        }
+
+        private static void insert(String[] keys, Node[] nodes, String key, Node node) {
+            int mask = keys.length - 1;
+            int i = hash(key, 0, key.length()) & mask;
+            while (keys[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            nodes[i] = node;
+        }
+
+        // 等价于 url.substring(start, end).hashCode()，再进行扰动
+        private static int hash(String url, int start, int end) {
+            int h = 0;
+            for (int i = start; i < end; i++) {
+                h = 31 * h + url.charAt(i);
+            }
+            return h ^ (h >>> 16);
+        }
+    }
+
+    // 动态 Segment
+    static final class Edge {
+        final String segment;
+        final UrlSegmentMatcher matcher;
+        final Node node;
+
+        Edge(String segment, UrlSegmentMatcher matcher, Node node) {
+            this.segment = segment;
+            this.matcher = matcher;
+            this.node = node;
+        }
     }
 }
@@ -18,6 +18,7 @@
  */
 package jetbrick.web.mvc.router;
 
+import java.util.*;
 import javax.servlet.http.HttpServletRequest;
 import jetbrick.lang.*;
 import jetbrick.lang.annotations.ValueConstants;
@@ -41,6 +42,7 @@ import org.slf4j.LoggerFactory;
 public final class RestfulRouter implements Router {
     private final Logger log = LoggerFactory.getLogger(RestfulRouter.class);
     private final RestfulMatcher[] matchers = new RestfulMatcher[HttpMethod.METHOD_LENGTH];
+    private final List<ActionInfo> actions = new ArrayList<ActionInfo>();
 
     /**
      * 根据 annotation，获取所有的 Action
@@ -79,6 +81,7 @@ public final class RestfulRouter implements Router {
                 log.debug("found action: {} {}", ArrayUtils.toString(httpMethods), url);
             }
             ActionInfo actionInfo = new ActionInfo(ctrlInfo, actionMethod, url);
+            actions.add(actionInfo);
             for (HttpMethod method : httpMethods) {
                 RestfulMatcher matcher = matchers[method.getIndex()];
                 if (matcher == null) {
@@ -98,4 +101,9 @@ public final class RestfulRouter implements Router {
         }
         return RouteInfo.NOT_FOUND;
     }
+
+    // 所有已经注册的 Action (DispatcherFilter 启动的时候预编译 ActionPipeline)
+    public List<ActionInfo> getActions() {
+        return Collections.unmodifiableList(actions);
+    }
 }
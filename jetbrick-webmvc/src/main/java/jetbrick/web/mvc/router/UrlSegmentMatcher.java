@@ -110,7 +110,7 @@ public abstract class UrlSegmentMatcher {
 
     // 正则表达式匹配
     static abstract class RegexUrlSegmentMatcher extends UrlSegmentMatcher {
-        private static final Pattern PATH_PARAM_PATTERN = Pattern.compile("\\{[^}]+\\}");
+        private static final Pattern PATH_PARAM_PATTERN = Pattern.compile("\\{([^}]+)\\}");
 
         public static RegexUrlSegmentMatcher create(String urlSegment) {
             if (JdkVersion.IS_AT_LEAST_JAVA_7) {
@@ -139,7 +139,7 @@ public abstract class UrlSegmentMatcher {
                 if (namedGroupList != null) {
                     namedGroupList.add(name);
                 }
-                lastpos = m.end() + 1;
+                lastpos = m.end();
             }
             if (lastpos < urlSegment.length()) {
                 String s = urlSegment.substring(lastpos);
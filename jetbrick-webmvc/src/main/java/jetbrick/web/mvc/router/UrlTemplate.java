@@ -22,7 +22,7 @@ import jetbrick.lang.StringUtils;
 import jetbrick.lang.Validate;
 import jetbrick.web.mvc.action.PathVariables;
 
-// 代表 Action 配置的 URL 模板
+// 代表 Action 配置的 URL 模板 (匹配由 RestfulMatcher 完成)
 public final class UrlTemplate {
     private final String url;
     private final UrlSegmentMatcher[] matchers;
@@ -43,7 +43,12 @@ public final class UrlTemplate {
         return url;
     }
 
-    // 和实际的 URL 进行匹配，并返回成功匹配的参数(pathVariables)
+    /**
+     * 和实际的 URL 进行匹配，并返回成功匹配的参数(pathVariables).
+     *
+     * @deprecated 路由匹配由 RestfulMatcher 完成，这个方法不再被框架使用
+     */
+    @Deprecated
     public boolean match(String[] urlSegments, PathVariables pathVariables) {
         Validate.isTrue(urlSegments.length == matchers.length);
 
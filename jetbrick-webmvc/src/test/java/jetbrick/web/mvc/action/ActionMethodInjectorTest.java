@@ -0,0 +1,138 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc.action;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import jetbrick.web.mvc.RequestContext;
+import jetbrick.web.mvc.action.annotations.ArgumentGetter;
+import org.junit.*;
+
+public class ActionMethodInjectorTest {
+
+    // public: 使用生成的 ActionInvoker
+    public static class PublicController {
+        public String edit(long id, String name, int[] values, boolean flag, char ch, double rate) {
+            return id + ":" + name + ":" + Arrays.toString(values) + ":" + flag + ":" + ch + ":" + rate;
+        }
+
+        public void nothing() {
+        }
+
+        public int twice(int x) {
+            return x * 2;
+        }
+
+        public Object fail() throws IOException {
+            throw new IOException("io");
+        }
+
+        public Object error() {
+            throw new AssertionError("error");
+        }
+    }
+
+    // 非 public: 使用反射调用
+    static class HiddenController extends PublicController {
+    }
+
+    private static ArgumentGetter<?> value(final Object value) {
+        return new ArgumentGetter<Object>() {
+            @Override
+            public Object get(RequestContext ctx) {
+                return value;
+            }
+        };
+    }
+
+    private static Method method(String name) {
+        for (Method method : PublicController.class.getMethods()) {
+            if (method.getName().equals(name)) {
+                return method;
+            }
+        }
+        throw new IllegalArgumentException(name);
+    }
+
+    private static ActionMethodInjector[] injectors(String name, ArgumentGetter<?>... getters) {
+        ActionMethodInjector compiled = new ActionMethodInjector(method(name), getters, PublicController.class);
+        ActionMethodInjector reflect = new ActionMethodInjector(method(name), getters, HiddenController.class);
+        Assert.assertTrue(compiled.isCompiled());
+        Assert.assertFalse(reflect.isCompiled());
+        return new ActionMethodInjector[] { compiled, reflect };
+    }
+
+    private static Object invoke(ActionMethodInjector injector) throws Exception {
+        return injector.invoke(new HiddenController(), null);
+    }
+
+    @Test
+    public void arguments() throws Exception {
+        for (ActionMethodInjector injector : injectors("edit", value(12L), value("bob"), value(new int[] { 1, 2 }), value(true), value('x'), value(1.5))) {
+            Assert.assertEquals("12:bob:[1, 2]:true:x:1.5", invoke(injector));
+        }
+        // 包装类型的拓宽转换 (Integer -> long, double)
+        for (ActionMethodInjector injector : injectors("edit", value(12), value(null), value(null), value(false), value('y'), value(2))) {
+            Assert.assertEquals("12:null:null:false:y:2.0", invoke(injector));
+        }
+    }
+
+    @Test
+    public void returnValues() throws Exception {
+        for (ActionMethodInjector injector : injectors("nothing")) {
+            Assert.assertNull(invoke(injector));
+        }
+        for (ActionMethodInjector injector : injectors("twice", value(21))) {
+            Assert.assertEquals(42, invoke(injector));
+        }
+    }
+
+    @Test
+    public void nullPrimitiveArgument() throws Exception {
+        for (ActionMethodInjector injector : injectors("twice", value(null))) {
+            try {
+                invoke(injector);
+                Assert.fail();
+            } catch (IllegalArgumentException e) {
+            }
+        }
+    }
+
+    @Test
+    public void exceptionIsNotWrapped() throws Exception {
+        // 两种方式都直接抛出 Action 方法自身的异常，而不是 InvocationTargetException
+        for (ActionMethodInjector injector : injectors("fail")) {
+            try {
+                invoke(injector);
+                Assert.fail();
+            } catch (IOException e) {
+                Assert.assertEquals("io", e.getMessage());
+            }
+        }
+        for (ActionMethodInjector injector : injectors("error")) {
+            try {
+                invoke(injector);
+                Assert.fail();
+            } catch (AssertionError e) {
+                Assert.assertEquals("error", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc.action;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.*;
+import java.util.concurrent.Callable;
+import jetbrick.ioc.MutableIoc;
+import jetbrick.reflect.KlassInfo;
+import jetbrick.web.mvc.*;
+import jetbrick.web.mvc.config.WebConfig;
+import jetbrick.web.mvc.interceptor.*;
+import jetbrick.web.mvc.results.ResultHandler;
+import org.junit.*;
+
+public class ActionPipelineTest {
+    private static final List<String> events = new ArrayList<String>();
+
+    private static WebConfig config;
+    private static ResultHandlerResolver resultHandlerResolver;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        // WebConfig 是由 IoC 容器创建的单例，这里只设置 ActionPipeline 需要的部分
+        config = WebConfig.getInstance();
+        if (config == null) {
+            Constructor<WebConfig> constructor = WebConfig.class.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            config = constructor.newInstance();
+        }
+        MutableIoc ioc = new MutableIoc();
+        setField(config, "ioc", ioc);
+
+        resultHandlerResolver = new ResultHandlerResolver();
+        setField(resultHandlerResolver, "ioc", ioc);
+        resultHandlerResolver.register(String.class, StringHandler.class);
+        setField(config, "resultHandlerResolver", resultHandlerResolver);
+    }
+
+    @Before
+    public void setUp() {
+        events.clear();
+    }
+
+    private static void setField(Object object, String name, Object value) throws Exception {
+        Field field = object.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(object, value);
+    }
+
+    private static ActionPipeline create(String methodName, Interceptor... interceptors) throws Exception {
+        setField(config, "interceptors", Arrays.asList(interceptors));
+        ControllerInfo controller = new ControllerInfo(UserController.class, UserController.class.getAnnotation(Controller.class));
+        ActionInfo action = new ActionInfo(controller, KlassInfo.create(UserController.class).getDeclaredMethod(methodName), "/" + methodName);
+        return ActionPipeline.create(action, config);
+    }
+
+    @Test
+    public void interceptorOrder() throws Exception {
+        Interceptor a = new RecordingInterceptor("a");
+        Interceptor b = new RecordingInterceptor("b");
+        Interceptor scoped = new RecordingScopedInterceptor("scoped", "/other");
+        ActionPipeline pipeline = create("show", a, scoped, b);
+
+        // 不作用于该 Action 的 ScopedInterceptor 在启动的时候已经被过滤
+        Assert.assertArrayEquals(new Interceptor[] { a, b }, pipeline.getInterceptors());
+
+        ResultInfo result = pipeline.invoke(null);
+        Assert.assertEquals("show", result.getResultObject());
+        Assert.assertEquals(String.class, result.getResultClass());
+        Assert.assertEquals(Arrays.asList("a:before", "b:before", "action:show", "b:after", "a:after"), events);
+
+        // 每个请求使用独立的 chain
+        events.clear();
+        pipeline.invoke(null);
+        Assert.assertEquals(5, events.size());
+    }
+
+    @Test
+    public void scopedInterceptorAccepted() throws Exception {
+        ActionPipeline pipeline = create("show", new RecordingScopedInterceptor("scoped", "/show"));
+        Assert.assertEquals(1, pipeline.getInterceptors().length);
+
+        pipeline.invoke(null);
+        Assert.assertEquals(Arrays.asList("scoped:before", "action:show", "scoped:after"), events);
+    }
+
+    @Test
+    public void shortCircuit() throws Exception {
+        Interceptor deny = new Interceptor() {
+            @Override
+            public void init(WebConfig config) {
+            }
+
+            @Override
+            public void intercept(RequestContext ctx, InterceptorChain chain) {
+                events.add("deny");
+            }
+
+            @Override
+            public void destory() {
+            }
+        };
+        ActionPipeline pipeline = create("show", new RecordingInterceptor("a"), deny, new RecordingInterceptor("b"));
+
+        // 没有调用 chain.invoke()，Action 和后面的 Interceptor 都不执行，结果为 null
+        Assert.assertNull(pipeline.invoke(null));
+        Assert.assertEquals(Arrays.asList("a:before", "deny", "a:after"), events);
+    }
+
+    @Test
+    public void noInterceptors() throws Exception {
+        ActionPipeline pipeline = create("show");
+        Assert.assertEquals(0, pipeline.getInterceptors().length);
+        Assert.assertEquals("show", pipeline.invoke(null).getResultObject());
+        Assert.assertEquals(Arrays.asList("action:show"), events);
+    }
+
+    @Test
+    public void preResolvedResultHandler() throws Exception {
+        ActionPipeline pipeline = create("show");
+        Assert.assertSame(resultHandlerResolver.lookup(String.class), pipeline.getResultHandler());
+        Assert.assertEquals(StringHandler.class, pipeline.getResultHandler().getClass());
+    }
+
+    @Test
+    public void runtimeResolvedResultHandler() throws Exception {
+        // 返回 Object 和异步结果的 Action，在运行时根据实际的结果查找
+        ActionPipeline pipeline = create("any");
+        Assert.assertNull(pipeline.getResultHandler());
+        Assert.assertEquals(Object.class, pipeline.getResultClass());
+        Assert.assertEquals("any", pipeline.invoke(null).getResultObject());
+
+        pipeline = create("async");
+        Assert.assertNull(pipeline.getResultHandler());
+        Assert.assertEquals(Callable.class, pipeline.getResultClass());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void unsupportedResultClass() throws Exception {
+        // 找不到 ResultHandler 的返回类型，启动的时候直接失败
+        create("unsupported");
+    }
+
+    @Controller
+    public static class UserController {
+        public String show() {
+            events.add("action:show");
+            return "show";
+        }
+
+        public Object any() {
+            return "any";
+        }
+
+        public Callable<String> async() {
+            return null;
+        }
+
+        public Locale unsupported() {
+            return null;
+        }
+    }
+
+    public static class StringHandler implements ResultHandler<String> {
+        @Override
+        public void handle(RequestContext ctx, String result) {
+        }
+    }
+
+    static class RecordingInterceptor implements Interceptor {
+        private final String name;
+
+        RecordingInterceptor(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void init(WebConfig config) {
+        }
+
+        @Override
+        public void intercept(RequestContext ctx, InterceptorChain chain) throws Exception {
+            events.add(name + ":before");
+            chain.invoke();
+            events.add(name + ":after");
+        }
+
+        @Override
+        public void destory() {
+        }
+    }
+
+    static class RecordingScopedInterceptor extends RecordingInterceptor implements ScopedInterceptor {
+        private final String url;
+
+        RecordingScopedInterceptor(String name, String url) {
+            super(name);
+            this.url = url;
+        }
+
+        @Override
+        public boolean accept(ActionInfo action) {
+            return action.getUrl().equals(url);
+        }
+    }
+}
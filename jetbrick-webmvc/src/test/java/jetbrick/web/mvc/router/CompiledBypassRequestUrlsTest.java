@@ -0,0 +1,100 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc.router;
+
+import java.lang.reflect.Method;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompiledBypassRequestUrlsTest {
+
+    private static CompiledBypassRequestUrls create(String patterns) throws Exception {
+        CompiledBypassRequestUrls bypass = new CompiledBypassRequestUrls();
+        if (patterns != null) {
+            bypass.setPatterns(patterns);
+        }
+        Method method = CompiledBypassRequestUrls.class.getDeclaredMethod("initialize");
+        method.setAccessible(true);
+        method.invoke(bypass);
+        return bypass;
+    }
+
+    @Test
+    public void defaultPatterns() throws Exception {
+        CompiledBypassRequestUrls bypass = create(null);
+        Assert.assertTrue(bypass.accept(null, "/index.jsp"));
+        Assert.assertTrue(bypass.accept(null, "/js/app.js"));
+        Assert.assertTrue(bypass.accept(null, "/favicon.ico"));
+        Assert.assertTrue(bypass.accept(null, "/assets/a/b.txt"));
+        Assert.assertTrue(bypass.accept(null, "/static/"));
+        Assert.assertFalse(bypass.accept(null, "/users/1"));
+        Assert.assertFalse(bypass.accept(null, "/app.json"));
+        Assert.assertFalse(bypass.accept(null, "/assetsx"));
+    }
+
+    @Test
+    public void staticsAndWildcards() throws Exception {
+        CompiledBypassRequestUrls bypass = create("/robots.txt, /img/*.png, /v?/doc");
+        Assert.assertTrue(bypass.accept(null, "/robots.txt"));
+        Assert.assertFalse(bypass.accept(null, "/robots.txt2"));
+        Assert.assertTrue(bypass.accept(null, "/img/a.png"));
+        Assert.assertFalse(bypass.accept(null, "/img/a.gif"));
+        Assert.assertTrue(bypass.accept(null, "/v1/doc"));
+        Assert.assertFalse(bypass.accept(null, "/v10/doc"));
+    }
+
+    @Test
+    public void mergedRegexes() throws Exception {
+        CompiledBypassRequestUrls bypass = create("^/a/\\d+$, ^/b/(x|y)$, /c/*.txt");
+        Assert.assertTrue(bypass.accept(null, "/a/123"));
+        Assert.assertTrue(bypass.accept(null, "/b/y"));
+        Assert.assertTrue(bypass.accept(null, "/c/1.txt"));
+        Assert.assertFalse(bypass.accept(null, "/a/x"));
+        Assert.assertFalse(bypass.accept(null, "/b/z"));
+    }
+
+    @Test
+    public void backreference() throws Exception {
+        // 合并之后 \1 会指向第一个表达式的捕获组
+        CompiledBypassRequestUrls bypass = create("^/b/(y)$, ^/a/(x+)/\\1$");
+        Assert.assertTrue(bypass.accept(null, "/a/xx/xx"));
+        Assert.assertFalse(bypass.accept(null, "/a/xx/x"));
+        Assert.assertFalse(bypass.accept(null, "/a/xx/y"));
+        Assert.assertTrue(bypass.accept(null, "/b/y"));
+    }
+
+    @Test
+    public void namedGroups() throws Exception {
+        CompiledBypassRequestUrls bypass = create("^/a/(?<id>\\d+)/\\k<id>$, ^/b/(?<id>\\d+)$, ^/c/(?<!x)d$");
+        Assert.assertTrue(bypass.accept(null, "/a/12/12"));
+        Assert.assertFalse(bypass.accept(null, "/a/12/13"));
+        Assert.assertTrue(bypass.accept(null, "/b/7"));
+        Assert.assertTrue(bypass.accept(null, "/c/d"));
+    }
+
+    @Test
+    public void hasGroupReference() {
+        Assert.assertTrue(CompiledBypassRequestUrls.hasGroupReference("^(a)\\1$"));
+        Assert.assertTrue(CompiledBypassRequestUrls.hasGroupReference("^(?<n>a)$"));
+        Assert.assertFalse(CompiledBypassRequestUrls.hasGroupReference("^(a)\\\\1$"));
+        Assert.assertFalse(CompiledBypassRequestUrls.hasGroupReference("^\\Q\\1\\E$"));
+        Assert.assertFalse(CompiledBypassRequestUrls.hasGroupReference("^(?<=a)b(?<!c)$"));
+        Assert.assertFalse(CompiledBypassRequestUrls.hasGroupReference("^/a/\\d+\\.js$"));
+    }
+}
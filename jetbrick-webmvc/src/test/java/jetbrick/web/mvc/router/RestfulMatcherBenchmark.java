@@ -0,0 +1,63 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc.router;
+
+import java.util.Random;
+import jetbrick.web.mvc.action.ActionInfo;
+
+/**
+ * RestfulMatcher 的动态路由匹配性能 (每个路由都包含 2 个 {var}，查询的 URL 都能匹配成功).
+ *
+ * <pre>
+ * java jetbrick.web.mvc.router.RestfulMatcherBenchmark [iterations]
+ * </pre>
+ */
+public class RestfulMatcherBenchmark {
+
+    public static void main(String[] args) {
+        int iterations = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+
+        for (int routes : new int[] { 1000, 10000 }) {
+            RestfulMatcher matcher = new RestfulMatcher();
+            for (int i = 0; i < routes; i++) {
+                String url = "/api/v" + (i % 3) + "/res" + i + "/{id}/items/{item}";
+                matcher.register(new ActionInfo(null, null, url), url);
+            }
+
+            String[] urls = new String[1024];
+            Random random = new Random(1);
+            for (int i = 0; i < urls.length; i++) {
+                urls[i] = "/api/v0/res" + (random.nextInt(routes / 3) * 3) + "/" + random.nextInt(100000) + "/items/" + i;
+            }
+
+            long nanos = 0;
+            for (int round = 0; round < 5; round++) { // 前面的作为预热
+                long start = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    String url = urls[i & (urls.length - 1)];
+                    if (matcher.lookup(url).getAction() == null) {
+                        throw new IllegalStateException("not found: " + url);
+                    }
+                }
+                nanos = System.nanoTime() - start;
+            }
+            System.out.println(String.format("routes=%d lookups=%d: %dns/op", routes, iterations, nanos / iterations));
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright 2013-2014 Guoqiang Chen, Shanghai, China. All rights reserved.
+ *
+ * Email: subchen@gmail.com
+ * URL: http://subchen.github.io/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jetbrick.web.mvc.router;
+
+import jetbrick.web.mvc.RouteInfo;
+import jetbrick.web.mvc.action.ActionInfo;
+import org.junit.*;
+
+public class RestfulMatcherTest {
+    private RestfulMatcher matcher;
+
+    @Before
+    public void setup() {
+        matcher = new RestfulMatcher();
+        register("/users");
+        register("/users/new");
+        register("/users/{id}");
+        register("/users/{id}/edit");
+        register("/files/*");
+        register("/a/new/{x}");
+        register("/a/{id}/{x}");
+        register("/b/{id}/view");
+        register("/b/x/{y}/z");
+        register("/c/{id:\\d+}");
+        register("/c/{name}");
+        register("/d/{id}/*.json");
+    }
+
+    private void register(String url) {
+        matcher.register(new ActionInfo(null, null, url), url);
+    }
+
+    private String lookup(String url) {
+        ActionInfo action = matcher.lookup(url).getAction();
+        return action == null ? null : action.getUrl();
+    }
+
+    @Test
+    public void staticUrls() {
+        Assert.assertEquals("/users", lookup("/users"));
+        Assert.assertEquals("/users/new", lookup("/users/new"));
+        Assert.assertNull(lookup("/users/"));
+        Assert.assertNull(lookup("/unknown"));
+    }
+
+    @Test
+    public void wildcardWithoutVariableIsLiteral() {
+        Assert.assertEquals("/files/*", lookup("/files/*"));
+        Assert.assertNull(lookup("/files/a.txt"));
+    }
+
+    @Test
+    public void pathVariables() {
+        RouteInfo info = matcher.lookup("/users/123/edit");
+        Assert.assertEquals("/users/{id}/edit", info.getAction().getUrl());
+        Assert.assertEquals("123", info.getPathVariable("id"));
+
+        info = matcher.lookup("/users/456");
+        Assert.assertEquals("/users/{id}", info.getAction().getUrl());
+        Assert.assertEquals("456", info.getPathVariable("id"));
+
+        Assert.assertNull(lookup("/users/1/edit/2"));
+    }
+
+    @Test
+    public void staticSegmentFirst() {
+        RouteInfo info = matcher.lookup("/a/new/1");
+        Assert.assertEquals("/a/new/{x}", info.getAction().getUrl());
+        Assert.assertEquals("1", info.getPathVariable("x"));
+        Assert.assertNull(info.getPathVariable("id"));
+
+        info = matcher.lookup("/a/old/1");
+        Assert.assertEquals("/a/{id}/{x}", info.getAction().getUrl());
+        Assert.assertEquals("old", info.getPathVariable("id"));
+        Assert.assertEquals("1", info.getPathVariable("x"));
+    }
+
+    @Test
+    public void backtracking() {
+        // /b/x/{y} 没有 Action，回溯到 /b/{id}/view，并且撤销 y
+        RouteInfo info = matcher.lookup("/b/x/view");
+        Assert.assertEquals("/b/{id}/view", info.getAction().getUrl());
+        Assert.assertEquals("x", info.getPathVariable("id"));
+        Assert.assertNull(info.getPathVariable("y"));
+
+        info = matcher.lookup("/b/x/view/z");
+        Assert.assertEquals("/b/x/{y}/z", info.getAction().getUrl());
+        Assert.assertEquals("view", info.getPathVariable("y"));
+    }
+
+    @Test
+    public void regexBeforeVariable() {
+        RouteInfo info = matcher.lookup("/c/12");
+        Assert.assertEquals("/c/{id:\\d+}", info.getAction().getUrl());
+        Assert.assertEquals("12", info.getPathVariable("id"));
+
+        info = matcher.lookup("/c/abc");
+        Assert.assertEquals("/c/{name}", info.getAction().getUrl());
+        Assert.assertEquals("abc", info.getPathVariable("name"));
+        Assert.assertNull(info.getPathVariable("id"));
+    }
+
+    @Test
+    public void wildcardSegment() {
+        Assert.assertEquals("/d/{id}/*.json", lookup("/d/1/a.json"));
+        Assert.assertNull(lookup("/d/1/a.xml"));
+    }
+
+    @Test
+    public void notFound() {
+        Assert.assertSame(RouteInfo.NOT_FOUND, matcher.lookup("/c/1/2"));
+        Assert.assertSame(RouteInfo.NOT_FOUND, matcher.lookup(""));
+        Assert.assertSame(RouteInfo.NOT_FOUND, matcher.lookup("users"));
+    }
+}